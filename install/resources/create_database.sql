@@ -11,6 +11,7 @@ create table historical_calc (id integer not null auto_increment, provider_type
 create table multi_select_variable (display_type varchar(255), id integer not null, primary key (id));
 create table multi_select_variable_option (variable_id integer not null, option_value varchar(80) not null, option_index integer not null, primary key (variable_id, option_index));
 create table numerical_variable (units varchar(40) not null, lower_bound float not null, lower_inclusive boolean not null, upper_bound float not null, upper_inclusive boolean not null, id integer not null, primary key (id));
+create table pending_risk_save (result_id integer not null, attempt_count integer not null, claimed_by varchar(36), created_timestamp datetime not null, division varchar(10) not null, duz varchar(20) not null, last_error varchar(255), next_attempt_timestamp datetime, primary key (result_id));
 create table procedure_variable (id integer not null, primary key (id));
 create table risk_model (id integer not null auto_increment, constant float, display_name varchar(80) not null, primary key (id));
 create table risk_model_boolean_term (risk_model_id integer not null, variable integer not null, coefficient float not null, primary key (risk_model_id, variable, coefficient));
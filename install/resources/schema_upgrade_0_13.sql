@@ -0,0 +1,2 @@
+/* Adds the outbox of risk calculations waiting to be saved to VistA. */
+create table pending_risk_save (result_id integer not null, attempt_count integer not null, claimed_by varchar(36), created_timestamp datetime not null, division varchar(10) not null, duz varchar(20) not null, last_error varchar(255), next_attempt_timestamp datetime, primary key (result_id));
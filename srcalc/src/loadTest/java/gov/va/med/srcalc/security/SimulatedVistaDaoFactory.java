@@ -0,0 +1,143 @@
+package gov.va.med.srcalc.security;
+
+import java.util.Set;
+
+import gov.va.med.srcalc.vista.*;
+import gov.va.med.srcalc.vista.simulator.SimulatedVistaAuthenticator;
+import gov.va.med.srcalc.vista.simulator.SimulatedVistaProcedureCaller;
+import gov.va.med.srcalc.vista.simulator.VistaSimulator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * <p>A VistaDaoFactory that constructs DAOs backed by a {@link VistaSimulator} instead of
+ * a real VistA, for load testing and development. The DAOs are the same Remote
+ * Procedure-based DAOs used in production, so only the VistA transport is
+ * simulated.</p>
+ * 
+ * <p>Do not use in production: the simulator accepts any credentials.</p>
+ */
+public class SimulatedVistaDaoFactory implements VistaDaoFactory
+{
+    private final VistaSimulator fSimulator;
+    
+    private final ImmutableSet<String> fDivisions;
+    
+    private Optional<VistaRpcExecutors> fRpcExecutors = Optional.absent();
+    
+    private Optional<RpcMetrics> fRpcMetrics = Optional.absent();
+    
+    private Optional<ProviderTypeCache> fProviderTypeCache = Optional.absent();
+    
+    /**
+     * Constructs an instance.
+     * @param simulator the simulator to call
+     * @param divisions the simulated divisions
+     */
+    public SimulatedVistaDaoFactory(
+            final VistaSimulator simulator, final Set<String> divisions)
+    {
+        fSimulator = simulator;
+        fDivisions = ImmutableSet.copyOf(divisions);
+    }
+    
+    /**
+     * Sets the executors on which to retrieve patient data concurrently. If not set,
+     * patient data is retrieved sequentially.
+     */
+    @Autowired(required = false)
+    public void setRpcExecutors(final VistaRpcExecutors rpcExecutors)
+    {
+        fRpcExecutors = Optional.of(rpcExecutors);
+    }
+    
+    /**
+     * Sets where to record the latency and outcome of each simulated call. If not set,
+     * calls are not measured.
+     */
+    @Autowired(required = false)
+    public void setRpcMetrics(final RpcMetrics rpcMetrics)
+    {
+        fRpcMetrics = Optional.of(rpcMetrics);
+    }
+    
+    /**
+     * Sets the cache from which to reuse each user's Provider Type at login. If not set,
+     * the Provider Type is loaded on every login.
+     */
+    @Autowired(required = false)
+    public void setProviderTypeCache(final ProviderTypeCache providerTypeCache)
+    {
+        fProviderTypeCache = Optional.of(providerTypeCache);
+    }
+    
+    @Override
+    public boolean isDivisionKnown(final String division)
+    {
+        return fDivisions.contains(division);
+    }
+    
+    @Override
+    public VistaAuthenticator getAuthenticator(final String division)
+    {
+        if (!isDivisionKnown(division))
+        {
+            throw new IllegalArgumentException("Unknown division: " + division);
+        }
+        final SimulatedVistaAuthenticator authenticator =
+                new SimulatedVistaAuthenticator(makeProcedureCaller(division));
+        if (fProviderTypeCache.isPresent())
+        {
+            authenticator.setProviderTypeCache(fProviderTypeCache.get());
+        }
+        return authenticator;
+    }
+    
+    @Override
+    public VistaPatientDao getVistaPatientDao()
+    {
+        final VistaUserDetails principal = SecurityUtil.getCurrentPrincipal();
+        final VistaProcedureCaller caller = makeProcedureCaller(principal.getDivision());
+        if (fRpcExecutors.isPresent())
+        {
+            final VistaRpcExecutors executors = fRpcExecutors.get();
+            return new RpcVistaPatientDao(
+                    caller,
+                    principal.getDuz(),
+                    executors.getExecutor(principal.getDivision()),
+                    executors.getCallTimeoutMillis());
+        }
+        return new RpcVistaPatientDao(caller, principal.getDuz());
+    }
+    
+    @Override
+    public VistaSurgeryDao getVistaSurgeryDao()
+    {
+        final VistaUserDetails principal = SecurityUtil.getCurrentPrincipal();
+        return getVistaSurgeryDao(principal.getDivision(), principal.getDuz());
+    }
+    
+    @Override
+    public VistaSurgeryDao getVistaSurgeryDao(final String division, final String duz)
+    {
+        return new RpcVistaSurgeryDao(makeProcedureCaller(division), duz);
+    }
+    
+    /**
+     * Constructs a VistaProcedureCaller for the given division, measured by the
+     * configured RpcMetrics if any.
+     */
+    private VistaProcedureCaller makeProcedureCaller(final String division)
+    {
+        final VistaProcedureCaller caller =
+                new SimulatedVistaProcedureCaller(fSimulator, division);
+        if (fRpcMetrics.isPresent())
+        {
+            return new InstrumentedVistaProcedureCaller(caller, fRpcMetrics.get());
+        }
+        return caller;
+    }
+}
@@ -0,0 +1,99 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import java.util.Random;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * <p>A distribution of simulated Remote Procedure latencies and failures. Latencies are
+ * log-normally distributed, which matches the long tail of real VistA response times:
+ * most calls are near the median but a few take many times longer.</p>
+ * 
+ * <p>Immutable.</p>
+ */
+public final class LatencyModel
+{
+    /**
+     * No latency and no errors.
+     */
+    public static final LatencyModel NONE = new LatencyModel(0, 0.0, 0.0);
+    
+    private final int fMedianMillis;
+    
+    private final double fSigma;
+    
+    private final double fErrorRate;
+    
+    /**
+     * Constructs an instance.
+     * @param medianMillis the median latency in milliseconds
+     * @param sigma the standard deviation of the latency's natural logarithm. 0 gives a
+     * constant latency; 0.5 gives a 99th percentile about 3 times the median.
+     * @param errorRate the probability of each call failing, between 0 and 1
+     * @throws IllegalArgumentException if any parameter is out of range
+     */
+    public LatencyModel(final int medianMillis, final double sigma, final double errorRate)
+    {
+        if (medianMillis < 0 || sigma < 0.0 || errorRate < 0.0 || errorRate > 1.0)
+        {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid latency model: median %d ms, sigma %f, error rate %f",
+                    medianMillis, sigma, errorRate));
+        }
+        fMedianMillis = medianMillis;
+        fSigma = sigma;
+        fErrorRate = errorRate;
+    }
+    
+    /**
+     * Returns the median latency in milliseconds.
+     */
+    public int getMedianMillis()
+    {
+        return fMedianMillis;
+    }
+    
+    /**
+     * Returns the standard deviation of the latency's natural logarithm.
+     */
+    public double getSigma()
+    {
+        return fSigma;
+    }
+    
+    /**
+     * Returns the probability of each call failing.
+     */
+    public double getErrorRate()
+    {
+        return fErrorRate;
+    }
+    
+    /**
+     * Returns a random latency in milliseconds.
+     * @param random the source of randomness
+     */
+    public long sampleMillis(final Random random)
+    {
+        return Math.round(fMedianMillis * Math.exp(fSigma * random.nextGaussian()));
+    }
+    
+    /**
+     * Randomly returns true with probability {@link #getErrorRate()}.
+     * @param random the source of randomness
+     */
+    public boolean sampleFailure(final Random random)
+    {
+        return random.nextDouble() < fErrorRate;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+                .add("medianMillis", fMedianMillis)
+                .add("sigma", fSigma)
+                .add("errorRate", fErrorRate)
+                .toString();
+    }
+}
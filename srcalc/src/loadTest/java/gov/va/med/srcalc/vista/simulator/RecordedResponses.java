@@ -0,0 +1,84 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import gov.va.med.srcalc.vista.RemoteProcedure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+
+/**
+ * <p>Recorded Remote Procedure responses to replay, at most one per
+ * {@link RemoteProcedure}.</p>
+ * 
+ * <p>Immutable.</p>
+ */
+public final class RecordedResponses
+{
+    /**
+     * The classpath directory of the default recordings.
+     */
+    public static final String DEFAULT_DIRECTORY = "vista-simulator";
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordedResponses.class);
+    
+    private final Map<RemoteProcedure, ImmutableList<String>> fResponses;
+    
+    /**
+     * Constructs an instance with the given recordings.
+     * @param responses the response lines keyed by procedure. Copied.
+     */
+    public RecordedResponses(final Map<RemoteProcedure, ? extends List<String>> responses)
+    {
+        fResponses = new EnumMap<>(RemoteProcedure.class);
+        for (final Map.Entry<RemoteProcedure, ? extends List<String>> entry :
+            responses.entrySet())
+        {
+            fResponses.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        }
+    }
+    
+    /**
+     * Loads recordings from the given classpath directory. Each recording is a UTF-8 text
+     * file named after the {@link RemoteProcedure} constant, e.g.,
+     * {@code GMV_LATEST_VM.txt}, containing the response lines. Procedures without a
+     * file have no recording.
+     * @param directory the classpath directory, e.g., {@link #DEFAULT_DIRECTORY}
+     * @throws IOException if a recording exists but cannot be read
+     */
+    public static RecordedResponses fromClasspath(final String directory) throws IOException
+    {
+        final Map<RemoteProcedure, List<String>> responses =
+                new EnumMap<>(RemoteProcedure.class);
+        for (final RemoteProcedure procedure : RemoteProcedure.values())
+        {
+            final URL resource = RecordedResponses.class.getClassLoader()
+                    .getResource(directory + "/" + procedure.name() + ".txt");
+            if (resource != null)
+            {
+                responses.put(
+                        procedure, Resources.readLines(resource, StandardCharsets.UTF_8));
+            }
+        }
+        LOGGER.info(
+                "Loaded recorded responses from {} for {}.", directory, responses.keySet());
+        return new RecordedResponses(responses);
+    }
+    
+    /**
+     * Returns the recorded response lines for the given procedure, if any.
+     */
+    public Optional<ImmutableList<String>> get(final RemoteProcedure procedure)
+    {
+        return Optional.fromNullable(fResponses.get(procedure));
+    }
+}
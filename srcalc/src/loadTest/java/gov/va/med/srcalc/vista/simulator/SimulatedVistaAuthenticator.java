@@ -0,0 +1,128 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.security.auth.login.FailedLoginException;
+import javax.security.auth.login.LoginException;
+
+import gov.va.med.srcalc.domain.VistaPerson;
+import gov.va.med.srcalc.vista.ProviderTypeCache;
+import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.VistaAuthenticator;
+import gov.va.med.srcalc.vista.VistaProcedureCaller;
+
+import com.google.common.base.Optional;
+
+/**
+ * <p>A {@link VistaAuthenticator} for a {@link VistaSimulator}. Accepts any non-empty
+ * access/verify code pair or CCOW token. A numeric access code or token is used as the
+ * DUZ so that load tests can log in as many distinct users.</p>
+ * 
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class SimulatedVistaAuthenticator implements VistaAuthenticator
+{
+    private final VistaProcedureCaller fProcedureCaller;
+    
+    private Optional<ProviderTypeCache> fProviderTypeCache = Optional.absent();
+    
+    /**
+     * Constructs an instance.
+     * @param procedureCaller the caller for the simulated division
+     */
+    public SimulatedVistaAuthenticator(final VistaProcedureCaller procedureCaller)
+    {
+        fProcedureCaller = procedureCaller;
+    }
+    
+    /**
+     * Sets the cache from which to reuse each user's Provider Type. If not set, the
+     * Provider Type is loaded on every login.
+     */
+    public void setProviderTypeCache(final ProviderTypeCache providerTypeCache)
+    {
+        fProviderTypeCache = Optional.of(providerTypeCache);
+    }
+    
+    @Override
+    public String getDivision()
+    {
+        return fProcedureCaller.getDivision();
+    }
+    
+    @Override
+    public VistaPerson authenticateViaAccessVerify(
+            final String accessCode, final String verifyCode, final String clientIp)
+            throws FailedLoginException, LoginException
+    {
+        if (accessCode.isEmpty() || verifyCode.isEmpty())
+        {
+            throw new FailedLoginException("Bad access or verify code.");
+        }
+        return loadPerson(toDuz(accessCode));
+    }
+    
+    @Override
+    public VistaPerson authenticateViaCcowToken(
+            final String ccowToken, final String clientIp)
+            throws FailedLoginException, LoginException
+    {
+        if (ccowToken.isEmpty())
+        {
+            throw new FailedLoginException("VistA rejected the CCOW token");
+        }
+        return loadPerson(toDuz(ccowToken));
+    }
+    
+    /**
+     * Returns the DUZ of the simulated user identified by the given credential.
+     */
+    private static String toDuz(final String credential)
+    {
+        if (credential.matches("[1-9][0-9]{0,9}"))
+        {
+            return credential;
+        }
+        // A positive number which is stable for the credential.
+        return String.valueOf((credential.hashCode() & 0x7fffffff) % 1000000 + 1);
+    }
+    
+    /**
+     * Loads the simulated user as
+     * {@link gov.va.med.srcalc.vista.vistalink.VistaLinkAuthenticator} does.
+     */
+    private VistaPerson loadPerson(final String duz) throws LoginException
+    {
+        final List<String> userResults =
+                fProcedureCaller.doRpc(duz, RemoteProcedure.XUS_GET_USER_INFO);
+        final Callable<Optional<String>> providerTypeLoader =
+                new Callable<Optional<String>>()
+                {
+                    @Override
+                    public Optional<String> call() throws LoginException
+                    {
+                        return loadProviderType(duz);
+                    }
+                };
+        return new VistaPerson(
+                getDivision(),
+                userResults.get(0),
+                userResults.get(1),
+                fProviderTypeCache.isPresent() ?
+                        fProviderTypeCache.get().get(getDivision(), duz, providerTypeLoader) :
+                        loadProviderType(duz));
+    }
+    
+    /**
+     * Loads the simulated user's Provider Type, if present.
+     */
+    private Optional<String> loadProviderType(final String duz) throws LoginException
+    {
+        final List<String> personClassResults =
+                fProcedureCaller.doRpc(duz, RemoteProcedure.SR_ASRC_PERSON_CLASSES);
+        return personClassResults.isEmpty() ?
+                Optional.<String>absent() : Optional.of(personClassResults.get(0));
+    }
+}
@@ -0,0 +1,154 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import gov.va.med.srcalc.vista.DelegatingRpcSession;
+import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RpcSession;
+import gov.va.med.srcalc.vista.VistaProcedureCaller;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>A {@link VistaProcedureCaller} which calls a {@link VistaSimulator} instead of a
+ * real VistA.</p>
+ * 
+ * <p>Each call simulates its own connection (see {@link
+ * VistaSimulator#simulateConnection()}) except for calls made through an {@link
+ * RpcSession}, which share one simulated connection.</p>
+ * 
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class SimulatedVistaProcedureCaller implements VistaProcedureCaller
+{
+    private final VistaSimulator fSimulator;
+    
+    private final String fDivision;
+    
+    /**
+     * The DUZ of the session this caller makes calls for, or null if not a session.
+     */
+    private final String fSessionDuz;
+    
+    /**
+     * Whether this caller's session has simulated its connection yet.
+     */
+    private final AtomicBoolean fSessionConnected = new AtomicBoolean(false);
+    
+    /**
+     * Constructs an instance.
+     * @param simulator the simulator to call
+     * @param division the simulated division
+     */
+    public SimulatedVistaProcedureCaller(
+            final VistaSimulator simulator, final String division)
+    {
+        this(simulator, division, null);
+    }
+    
+    private SimulatedVistaProcedureCaller(
+            final VistaSimulator simulator, final String division, final String sessionDuz)
+    {
+        fSimulator = simulator;
+        fDivision = division;
+        fSessionDuz = sessionDuz;
+    }
+    
+    @Override
+    public List<String> doRpc(
+            final String duz, final RemoteProcedure procedure, final String... args)
+    {
+        simulateCall(duz, procedure);
+        return fSimulator.respond(duz, procedure, args);
+    }
+    
+    @Override
+    public String doSaveProgressNoteCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines)
+    {
+        simulateCall(duz, RemoteProcedure.SR_ASRC_SAVE_PROGRESS_NOTE);
+        return RemoteProcedure.VALID_SIGNATURE_RETURN;
+    }
+    
+    @Override
+    public String doSaveRiskCalculationCall(
+            final String duz,
+            final String patientDfn,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+    {
+        simulateCall(duz, RemoteProcedure.SR_ASRC_RISK_SAVE);
+        return RemoteProcedure.RISK_SAVED_RETURN;
+    }
+    
+    @Override
+    public List<String> doSignAndSaveCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+    {
+        simulateCall(duz, RemoteProcedure.SR_ASRC_SIGN_AND_SAVE);
+        return ImmutableList.of(
+                RemoteProcedure.VALID_SIGNATURE_RETURN, RemoteProcedure.RISK_SAVED_RETURN);
+    }
+    
+    @Override
+    public String doRetrieveLabsCall(
+            final String duz,
+            final String patientDfn,
+            final List<String> labNames)
+    {
+        simulateCall(duz, RemoteProcedure.SR_ASRC_LAB_RESULTS);
+        return fSimulator.getPatients().getLabResult(patientDfn, labNames);
+    }
+    
+    @Override
+    public List<String> doRetrieveAllLabsCall(
+            final String duz,
+            final String patientDfn,
+            final Map<String, List<String>> labNameGroups)
+    {
+        simulateCall(duz, RemoteProcedure.SR_ASRC_MULTI_LAB_RESULTS);
+        return fSimulator.getPatients().getAllLabResults(patientDfn, labNameGroups);
+    }
+    
+    /**
+     * Returns a session which simulates a single connection for all of its calls for the
+     * given user. (Unlike VistALink, concurrent calls share the simulated connection.)
+     */
+    @Override
+    public RpcSession openSession(final String duz)
+    {
+        return new DelegatingRpcSession(
+                new SimulatedVistaProcedureCaller(fSimulator, fDivision, duz));
+    }
+    
+    @Override
+    public String getDivision()
+    {
+        return fDivision;
+    }
+    
+    /**
+     * Simulates the connection for a call, if needed, and then the call itself.
+     */
+    private void simulateCall(final String duz, final RemoteProcedure procedure)
+    {
+        if (!duz.equals(fSessionDuz) || fSessionConnected.compareAndSet(false, true))
+        {
+            fSimulator.simulateConnection();
+        }
+        fSimulator.simulateCall(procedure);
+    }
+}
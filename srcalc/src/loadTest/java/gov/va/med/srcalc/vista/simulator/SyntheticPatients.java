@@ -0,0 +1,175 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import gov.va.med.srcalc.domain.VistaLabs;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * <p>Generates plausible demographics and lab results for any patient DFN. The same DFN
+ * always yields the same patient, so any number of distinct patients may be loaded
+ * without recording each one.</p>
+ * 
+ * <p>Immutable.</p>
+ */
+public final class SyntheticPatients
+{
+    /**
+     * The date format of lab results, matching {@code SR ASRC LAB RESULTS}.
+     */
+    private static final DateTimeFormatter LAB_DATE_FORMAT =
+            DateTimeFormat.forPattern("MM/dd/yyyy@HH:mm:ss");
+    
+    /**
+     * The probability that a synthetic patient has a result for any given lab.
+     */
+    private static final double LAB_PROBABILITY = 0.8;
+    
+    /**
+     * The plausible range of each lab.
+     */
+    private static final ImmutableMap<VistaLabs, LabRange> LAB_RANGES =
+            ImmutableMap.<VistaLabs, LabRange>builder()
+            .put(VistaLabs.ALBUMIN, new LabRange(2.5, 5.0, "g/dL"))
+            .put(VistaLabs.CREATININE, new LabRange(0.6, 2.5, "mg/dL"))
+            .put(VistaLabs.ALKALINE_PHOSPHATASE, new LabRange(40.0, 200.0, "U/L"))
+            .put(VistaLabs.BUN, new LabRange(7.0, 40.0, "mg/dL"))
+            .put(VistaLabs.SGOT, new LabRange(10.0, 80.0, "U/L"))
+            .put(VistaLabs.WBC, new LabRange(3.0, 15.0, "K/cmm"))
+            .put(VistaLabs.PLATELETS, new LabRange(100.0, 450.0, "K/cmm"))
+            .put(VistaLabs.HEMATOCRIT, new LabRange(30.0, 52.0, "%"))
+            .put(VistaLabs.SODIUM, new LabRange(130.0, 148.0, "mmol/L"))
+            .put(VistaLabs.INR, new LabRange(0.9, 3.0, ""))
+            .put(VistaLabs.BILIRUBIN, new LabRange(0.2, 2.5, "mg/dL"))
+            .put(VistaLabs.PTT, new LabRange(25.0, 45.0, "sec"))
+            .put(VistaLabs.POTASSIUM, new LabRange(3.3, 5.5, "mmol/L"))
+            .put(VistaLabs.HGA1C, new LabRange(4.5, 10.0, "%"))
+            .put(VistaLabs.GLUCOSE, new LabRange(70.0, 250.0, "mg/dL"))
+            .build();
+    
+    private final long fSeed;
+    
+    /**
+     * Constructs an instance.
+     * @param seed varies the generated patients. Instances with the same seed generate
+     * the same patients.
+     */
+    public SyntheticPatients(final long seed)
+    {
+        fSeed = seed;
+    }
+    
+    /**
+     * Returns the response of {@code SR ASRC PATIENT} for the given patient.
+     */
+    public ImmutableList<String> getPatientLines(final String dfn)
+    {
+        final Random random = randomFor(dfn);
+        final int age = 25 + random.nextInt(70);
+        final String gender = random.nextBoolean() ? "M" : "F";
+        return ImmutableList.of(
+                String.format("SIMULATED,PATIENT%s^%d^%s", dfn, age, gender));
+    }
+    
+    /**
+     * Returns the response of {@code SR ASRC LAB RESULTS} for the given patient: the
+     * result of the first lab which has any of the given names, or an empty string if
+     * the patient has no such lab.
+     */
+    public String getLabResult(final String dfn, final List<String> labNames)
+    {
+        for (final Map.Entry<VistaLabs, String> result : generateLabs(dfn).entrySet())
+        {
+            if (!Collections.disjoint(result.getKey().getPossibleLabNames(), labNames))
+            {
+                return result.getValue();
+            }
+        }
+        return "";
+    }
+    
+    /**
+     * Returns the response of {@code SR ASRC MULTI LAB RESULTS} for the given patient.
+     */
+    public ImmutableList<String> getAllLabResults(
+            final String dfn, final Map<String, List<String>> labNameGroups)
+    {
+        final List<String> lines = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> group : labNameGroups.entrySet())
+        {
+            final String result = getLabResult(dfn, group.getValue());
+            if (!result.isEmpty())
+            {
+                lines.add(group.getKey() + "^" + result);
+            }
+        }
+        return lines.isEmpty() ? ImmutableList.of("") : ImmutableList.copyOf(lines);
+    }
+    
+    /**
+     * Generates all of the given patient's labs, formatted as lab results.
+     */
+    private ImmutableMap<VistaLabs, String> generateLabs(final String dfn)
+    {
+        final Random random = randomFor(dfn);
+        // Skip the demographics.
+        random.nextInt();
+        random.nextBoolean();
+        final DateTime today = DateTime.now().withTimeAtStartOfDay();
+        final ImmutableMap.Builder<VistaLabs, String> labs = ImmutableMap.builder();
+        for (final Map.Entry<VistaLabs, LabRange> entry : LAB_RANGES.entrySet())
+        {
+            // Always draw the same number of values per lab so that each lab's result
+            // does not depend on which other labs the patient has.
+            final boolean present = random.nextDouble() < LAB_PROBABILITY;
+            final LabRange range = entry.getValue();
+            final double value = range.fMin + random.nextDouble() * (range.fMax - range.fMin);
+            final DateTime date = today.minusDays(random.nextInt(90)).plusMinutes(
+                    random.nextInt(24 * 60));
+            if (present)
+            {
+                labs.put(entry.getKey(), String.format(
+                        Locale.US,
+                        "%s^%.1f^%s^%s",
+                        entry.getKey().getPossibleLabNames().get(0),
+                        value,
+                        LAB_DATE_FORMAT.print(date),
+                        range.fUnits));
+            }
+        }
+        return labs.build();
+    }
+    
+    private Random randomFor(final String dfn)
+    {
+        return new Random(fSeed * 31 + dfn.hashCode());
+    }
+    
+    /**
+     * A plausible range of lab values.
+     */
+    private static final class LabRange
+    {
+        private final double fMin;
+        private final double fMax;
+        private final String fUnits;
+        
+        public LabRange(final double min, final double max, final String units)
+        {
+            fMin = min;
+            fMax = max;
+            fUnits = units;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RemoteProcedureUnavailableException;
+
+import org.springframework.dao.RecoverableDataAccessException;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>A simulated VistA shared by all simulated divisions. Answers Remote Procedures from
+ * {@link RecordedResponses} and {@link SyntheticPatients} after a delay drawn from the
+ * procedure's {@link LatencyModel}. Also simulates the cost of checking out a connection
+ * and re-authenticating the user, which {@link SimulatedVistaProcedureCaller} incurs
+ * once per call, or once per {@link gov.va.med.srcalc.vista.RpcSession}.</p>
+ * 
+ * <p>This class is thread-safe once configured.</p>
+ */
+public class VistaSimulator
+{
+    /**
+     * The Person Class of simulated users if {@link RemoteProcedure#SR_ASRC_PERSON_CLASSES}
+     * has no recording.
+     */
+    public static final String DEFAULT_PROVIDER_TYPE = "Physicians (M.D. and D.O.)";
+    
+    private final RecordedResponses fRecordedResponses;
+    
+    private final SyntheticPatients fPatients;
+    
+    private LatencyModel fDefaultLatency = LatencyModel.NONE;
+    
+    private final Map<RemoteProcedure, LatencyModel> fLatencies =
+            new EnumMap<>(RemoteProcedure.class);
+    
+    private LatencyModel fConnectionLatency = LatencyModel.NONE;
+    
+    private final AtomicLong fConnectionCount = new AtomicLong();
+    
+    /**
+     * Constructs an instance with no latency.
+     * @param recordedResponses the responses to replay
+     * @param patients the patients to return
+     */
+    public VistaSimulator(
+            final RecordedResponses recordedResponses, final SyntheticPatients patients)
+    {
+        fRecordedResponses = recordedResponses;
+        fPatients = patients;
+    }
+    
+    /**
+     * Sets the latency of procedures without a specific latency.
+     */
+    public void setDefaultLatency(final LatencyModel defaultLatency)
+    {
+        fDefaultLatency = defaultLatency;
+    }
+    
+    /**
+     * Sets the latency of specific procedures, replacing any previously set.
+     */
+    public void setLatencies(final Map<RemoteProcedure, LatencyModel> latencies)
+    {
+        fLatencies.clear();
+        fLatencies.putAll(latencies);
+    }
+    
+    /**
+     * Sets the latency of checking out a connection and re-authenticating the user.
+     * Defaults to {@link LatencyModel#NONE}. The error rate is ignored.
+     */
+    public void setConnectionLatency(final LatencyModel connectionLatency)
+    {
+        fConnectionLatency = connectionLatency;
+    }
+    
+    /**
+     * Returns the number of simulated connections made so far.
+     */
+    public long getConnectionCount()
+    {
+        return fConnectionCount.get();
+    }
+    
+    /**
+     * Returns the latency model for the given procedure.
+     */
+    public LatencyModel getLatency(final RemoteProcedure procedure)
+    {
+        final LatencyModel latency = fLatencies.get(procedure);
+        return (latency != null) ? latency : fDefaultLatency;
+    }
+    
+    /**
+     * Returns the synthetic patients.
+     */
+    public SyntheticPatients getPatients()
+    {
+        return fPatients;
+    }
+    
+    /**
+     * Waits for a simulated latency and then randomly fails according to the given
+     * procedure's {@link LatencyModel}.
+     * @throws RecoverableDataAccessException if the call fails
+     */
+    public void simulateCall(final RemoteProcedure procedure)
+    {
+        final LatencyModel latency = getLatency(procedure);
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        sleep(latency.sampleMillis(random));
+        if (latency.sampleFailure(random))
+        {
+            throw new RecoverableDataAccessException(
+                    "Simulated failure of " + procedure.getProcedureName());
+        }
+    }
+    
+    /**
+     * Waits for a simulated connection checkout and re-authentication according to the
+     * connection {@link LatencyModel} and counts the connection.
+     * @throws RecoverableDataAccessException if interrupted
+     */
+    public void simulateConnection()
+    {
+        fConnectionCount.incrementAndGet();
+        sleep(fConnectionLatency.sampleMillis(ThreadLocalRandom.current()));
+    }
+    
+    /**
+     * Sleeps for the given simulated latency.
+     * @throws RecoverableDataAccessException if interrupted
+     */
+    private static void sleep(final long millis)
+    {
+        if (millis > 0)
+        {
+            try
+            {
+                Thread.sleep(millis);
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RecoverableDataAccessException(
+                        "Interrupted while calling simulated VistA", e);
+            }
+        }
+    }
+    
+    /**
+     * Returns the simulated response of a generic Remote Procedure call, without any
+     * latency.
+     * @param duz the calling user's DUZ
+     * @param procedure the Remote Procedure
+     * @param args the arguments
+     * @throws RemoteProcedureUnavailableException if there is no way to simulate the
+     * procedure
+     */
+    public List<String> respond(
+            final String duz, final RemoteProcedure procedure, final String... args)
+    {
+        switch (procedure)
+        {
+            case SR_ASRC_GET_PATIENT:
+                return fPatients.getPatientLines(args[0]);
+            case XUS_GET_USER_INFO:
+                return getUserInfo(duz);
+            case SR_ASRC_PERSON_CLASSES:
+                return fRecordedResponses.get(procedure)
+                        .or(ImmutableList.of(DEFAULT_PROVIDER_TYPE));
+            default:
+                final Optional<ImmutableList<String>> recorded =
+                        fRecordedResponses.get(procedure);
+                if (!recorded.isPresent())
+                {
+                    throw new RemoteProcedureUnavailableException(
+                            "No recorded response for " + procedure.getProcedureName(),
+                            null);
+                }
+                return recorded.get();
+        }
+    }
+    
+    /**
+     * Returns the response of {@link RemoteProcedure#XUS_GET_USER_INFO} for a simulated
+     * user.
+     */
+    public ImmutableList<String> getUserInfo(final String duz)
+    {
+        return ImmutableList.of(
+                duz,
+                "SIMULATED,USER" + duz,
+                "Simulated User " + duz,
+                "500^SIMULATED DIVISION^500",
+                "PHYSICIAN",
+                "SURGERY");
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * <p>
+ * A local VistA simulator for load testing and development without a live VistA. The
+ * simulator replays recorded Remote Procedure responses, generates synthetic patients,
+ * and injects configurable latency and errors.
+ * </p>
+ * 
+ * <p>
+ * The simulator plugs in above VistALink, at the
+ * {@link gov.va.med.srcalc.vista.VistaProcedureCaller VistaProcedureCaller} level, so
+ * all response parsing and call decoration is exercised as in production.
+ * </p>
+ * 
+ * <p>
+ * Because the simulator accepts any credentials, it is built from its own source set
+ * and only packaged in the load-test WAR, never in the production WAR.
+ * </p>
+ */
+package gov.va.med.srcalc.vista.simulator;
@@ -0,0 +1,97 @@
+package gov.va.med.srcalc.archive;
+
+import java.util.Objects;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ComparisonChain;
+
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+
+/**
+ * <p>A position in the archive order of {@link SignedResult}s: by signature timestamp,
+ * then by ID. The archive is ordered by signature instead of by ID alone because a
+ * SignedResult takes its ID from its HistoricalCalculation, which is assigned at the
+ * first run, not at signing.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class ArchivePosition implements Comparable<ArchivePosition>
+{
+    /**
+     * The position before all results, i.e., of an empty archive.
+     */
+    public static final ArchivePosition START = new ArchivePosition(new DateTime(0L), 0);
+
+    private final DateTime fSignatureTimestamp;
+    private final int fId;
+
+    /**
+     * Constructs an instance.
+     * @param signatureTimestamp the signature timestamp of the result
+     * @param id the ID of the result
+     */
+    public ArchivePosition(final DateTime signatureTimestamp, final int id)
+    {
+        fSignatureTimestamp = Objects.requireNonNull(signatureTimestamp);
+        fId = id;
+    }
+
+    /**
+     * Returns the position of the given result.
+     */
+    public static ArchivePosition of(final SignedResult result)
+    {
+        return new ArchivePosition(result.getSignatureTimestamp(), result.getId());
+    }
+
+    /**
+     * Returns the signature timestamp of the result at this position.
+     */
+    public DateTime getSignatureTimestamp()
+    {
+        return fSignatureTimestamp;
+    }
+
+    /**
+     * Returns the ID of the result at this position.
+     */
+    public int getId()
+    {
+        return fId;
+    }
+
+    @Override
+    public int compareTo(final ArchivePosition other)
+    {
+        return ComparisonChain.start()
+                .compare(fSignatureTimestamp.getMillis(), other.fSignatureTimestamp.getMillis())
+                .compare(fId, other.fId)
+                .result();
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (o instanceof ArchivePosition)
+        {
+            final ArchivePosition other = (ArchivePosition)o;
+            return fSignatureTimestamp.getMillis() == other.fSignatureTimestamp.getMillis() &&
+                    fId == other.fId;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fSignatureTimestamp.getMillis(), fId);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s/%d", fSignatureTimestamp, fId);
+    }
+}
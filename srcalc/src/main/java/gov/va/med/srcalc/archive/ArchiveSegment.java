@@ -0,0 +1,325 @@
+package gov.va.med.srcalc.archive;
+
+import static gov.va.med.srcalc.archive.ResultArchiveFormat.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+import org.joda.time.DateTime;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * <p>A single, memory-mapped segment of a result archive. Fixed-width columns are read
+ * directly from the mapped file, so scanning one column (e.g., a risk model's outcomes)
+ * touches only that column's pages. Rows are identified by their index, from 0
+ * (inclusive) to {@link #getRowCount()} (exclusive).</p>
+ *
+ * <p>This class is immutable and therefore thread-safe.</p>
+ *
+ * @see ResultArchiveWriter for the file format
+ */
+public final class ArchiveSegment
+{
+    private final File fFile;
+    private final int fRowCount;
+    private final String[] fDictionary;
+    private final HashMap<String, Integer> fDictionaryIndexes;
+    private final IntBuffer fIds;
+    private final IntBuffer fSpecialties;
+    private final IntBuffer fStations;
+    private final IntBuffer fProviderTypes;
+    private final IntBuffer fCptCodes;
+    private final long[] fStartTimestamps;
+    private final long[] fSignatureTimestamps;
+    private final IntBuffer fSecondsToFirstRun;
+    private final IntBuffer fInputOffsets;
+    private final IntBuffer fInputKeys;
+    private final IntBuffer fInputValues;
+    private final IntBuffer fOutcomeOffsets;
+    private final IntBuffer fOutcomeModels;
+    private final FloatBuffer fOutcomeValues;
+
+    private ArchiveSegment(final File file, final ByteBuffer buffer) throws IOException
+    {
+        fFile = file;
+        if (buffer.getInt() != MAGIC)
+        {
+            throw new IOException(file + " is not an archive segment.");
+        }
+        final short version = buffer.getShort();
+        if (version != VERSION)
+        {
+            throw new IOException(String.format(
+                    "%s has unsupported version %d.", file, version));
+        }
+        final int columnCount = buffer.getShort();
+        fRowCount = buffer.getInt();
+
+        final HashMap<Integer, ByteBuffer> columns = new HashMap<>();
+        for (int i = 0; i < columnCount; ++i)
+        {
+            final int columnId = buffer.getInt();
+            final int offset = buffer.getInt();
+            final int length = buffer.getInt();
+            final ByteBuffer column = buffer.duplicate();
+            column.position(offset);
+            column.limit(offset + length);
+            columns.put(columnId, column.slice());
+        }
+
+        final ByteBuffer dictionary = column(columns, COL_DICTIONARY);
+        fDictionary = new String[dictionary.getInt()];
+        fDictionaryIndexes = new HashMap<>();
+        for (int i = 0; i < fDictionary.length; ++i)
+        {
+            final byte[] utf8 = new byte[dictionary.getInt()];
+            dictionary.get(utf8);
+            fDictionary[i] = new String(utf8, UTF_8);
+            fDictionaryIndexes.put(fDictionary[i], i);
+        }
+
+        fIds = column(columns, COL_ID).asIntBuffer();
+        fSpecialties = column(columns, COL_SPECIALTY).asIntBuffer();
+        fStations = column(columns, COL_STATION).asIntBuffer();
+        fProviderTypes = column(columns, COL_PROVIDER_TYPE).asIntBuffer();
+        fCptCodes = column(columns, COL_CPT_CODE).asIntBuffer();
+        fStartTimestamps = decodeTimestamps(column(columns, COL_START_TIMESTAMP));
+        fSignatureTimestamps = decodeTimestamps(column(columns, COL_SIGNATURE_TIMESTAMP));
+        fSecondsToFirstRun = column(columns, COL_SECONDS_TO_FIRST_RUN).asIntBuffer();
+        fInputOffsets = column(columns, COL_INPUT_OFFSETS).asIntBuffer();
+        fInputKeys = column(columns, COL_INPUT_KEYS).asIntBuffer();
+        fInputValues = column(columns, COL_INPUT_VALUES).asIntBuffer();
+        fOutcomeOffsets = column(columns, COL_OUTCOME_OFFSETS).asIntBuffer();
+        fOutcomeModels = column(columns, COL_OUTCOME_MODELS).asIntBuffer();
+        fOutcomeValues = column(columns, COL_OUTCOME_VALUES).asFloatBuffer();
+    }
+
+    /**
+     * Memory-maps the given segment file.
+     * @param file the segment file
+     * @return the opened segment
+     * @throws IOException if the file cannot be read or is not a valid segment
+     */
+    public static ArchiveSegment open(final File file) throws IOException
+    {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r");
+             final FileChannel channel = raf.getChannel())
+        {
+            // The mapping remains valid after the channel is closed.
+            final ByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ArchiveSegment(file, buffer);
+        }
+        catch (final BufferUnderflowException | IllegalArgumentException ex)
+        {
+            throw new IOException(file + " is truncated or corrupt.", ex);
+        }
+    }
+
+    private static ByteBuffer column(final HashMap<Integer, ByteBuffer> columns, final int id)
+            throws IOException
+    {
+        final ByteBuffer column = columns.get(id);
+        if (column == null)
+        {
+            throw new IOException("Missing column " + id);
+        }
+        return column;
+    }
+
+    private long[] decodeTimestamps(final ByteBuffer column)
+    {
+        final long[] timestamps = new long[fRowCount];
+        long previous = 0;
+        for (int i = 0; i < fRowCount; ++i)
+        {
+            previous += readVarLong(column);
+            timestamps[i] = previous;
+        }
+        return timestamps;
+    }
+
+    private Optional<String> lookupOptional(final int index)
+    {
+        return (index == ABSENT) ? Optional.<String>absent() : Optional.of(fDictionary[index]);
+    }
+
+    /**
+     * Returns the segment file.
+     */
+    public File getFile()
+    {
+        return fFile;
+    }
+
+    /**
+     * Returns the number of results in this segment.
+     */
+    public int getRowCount()
+    {
+        return fRowCount;
+    }
+
+    /**
+     * Returns the position of the last result in this segment, or {@link
+     * ArchivePosition#START} if the segment is empty.
+     */
+    public ArchivePosition getLastPosition()
+    {
+        if (fRowCount == 0)
+        {
+            return ArchivePosition.START;
+        }
+        return new ArchivePosition(
+                getSignatureTimestamp(fRowCount - 1), fIds.get(fRowCount - 1));
+    }
+
+    /**
+     * Returns the SignedResult ID of the given row.
+     */
+    public int getId(final int row)
+    {
+        return fIds.get(row);
+    }
+
+    /**
+     * Returns the specialty name of the given row.
+     */
+    public String getSpecialtyName(final int row)
+    {
+        return fDictionary[fSpecialties.get(row)];
+    }
+
+    /**
+     * Returns the user's station number of the given row.
+     */
+    public String getUserStation(final int row)
+    {
+        return fDictionary[fStations.get(row)];
+    }
+
+    /**
+     * Returns the user's provider type of the given row, if known.
+     */
+    public Optional<String> getProviderType(final int row)
+    {
+        return lookupOptional(fProviderTypes.get(row));
+    }
+
+    /**
+     * Returns the CPT code of the given row, if any.
+     */
+    public Optional<String> getCptCode(final int row)
+    {
+        return lookupOptional(fCptCodes.get(row));
+    }
+
+    /**
+     * Returns the calculation start timestamp of the given row, in milliseconds since the
+     * epoch.
+     */
+    public long getStartTimestampMillis(final int row)
+    {
+        return fStartTimestamps[row];
+    }
+
+    /**
+     * Returns the calculation start timestamp of the given row.
+     */
+    public DateTime getStartTimestamp(final int row)
+    {
+        return new DateTime(fStartTimestamps[row]);
+    }
+
+    /**
+     * Returns the signature timestamp of the given row, in milliseconds since the epoch.
+     */
+    public long getSignatureTimestampMillis(final int row)
+    {
+        return fSignatureTimestamps[row];
+    }
+
+    /**
+     * Returns the signature timestamp of the given row.
+     */
+    public DateTime getSignatureTimestamp(final int row)
+    {
+        return new DateTime(fSignatureTimestamps[row]);
+    }
+
+    /**
+     * Returns the number of seconds from start to first run of the given row.
+     */
+    public int getSecondsToFirstRun(final int row)
+    {
+        return fSecondsToFirstRun.get(row);
+    }
+
+    /**
+     * Returns the inputs of the given row as a Map from variable key to value.
+     */
+    public ImmutableMap<String, String> getInputs(final int row)
+    {
+        final ImmutableMap.Builder<String, String> inputs = ImmutableMap.builder();
+        final int end = fInputOffsets.get(row + 1);
+        for (int i = fInputOffsets.get(row); i < end; ++i)
+        {
+            inputs.put(fDictionary[fInputKeys.get(i)], fDictionary[fInputValues.get(i)]);
+        }
+        return inputs.build();
+    }
+
+    /**
+     * Returns the outcomes of the given row as a Map from risk model name to risk.
+     */
+    public ImmutableMap<String, Float> getOutcomes(final int row)
+    {
+        final ImmutableMap.Builder<String, Float> outcomes = ImmutableMap.builder();
+        final int end = fOutcomeOffsets.get(row + 1);
+        for (int i = fOutcomeOffsets.get(row); i < end; ++i)
+        {
+            outcomes.put(fDictionary[fOutcomeModels.get(i)], fOutcomeValues.get(i));
+        }
+        return outcomes.build();
+    }
+
+    /**
+     * Returns the given risk model's outcome for the given row without allocating any
+     * objects. Scanning many rows this way is the fastest way to read outcomes.
+     * @param row the row index
+     * @param riskModelName the risk model name
+     * @return the outcome, or {@link Float#NaN} if the row has no outcome for the model
+     */
+    public float getOutcome(final int row, final String riskModelName)
+    {
+        final Integer modelIndex = fDictionaryIndexes.get(riskModelName);
+        if (modelIndex == null)
+        {
+            return Float.NaN;
+        }
+        final int end = fOutcomeOffsets.get(row + 1);
+        for (int i = fOutcomeOffsets.get(row); i < end; ++i)
+        {
+            if (fOutcomeModels.get(i) == modelIndex)
+            {
+                return fOutcomeValues.get(i);
+            }
+        }
+        return Float.NaN;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s (%d results)", fFile, fRowCount);
+    }
+}
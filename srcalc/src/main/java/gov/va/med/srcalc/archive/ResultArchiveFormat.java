@@ -0,0 +1,149 @@
+package gov.va.med.srcalc.archive;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Constants and encoding helpers shared by the archive writer and reader.
+ */
+final class ResultArchiveFormat
+{
+    /**
+     * "SRCA" in ASCII.
+     */
+    static final int MAGIC = 0x53524341;
+
+    /**
+     * Change this when changing the format in an incompatible way.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * The size of the fixed-length header: magic, version, column count, row count.
+     */
+    static final int HEADER_SIZE = 4 + 2 + 2 + 4;
+
+    /**
+     * The size of each column directory entry: column ID, offset, and length.
+     */
+    static final int DIRECTORY_ENTRY_SIZE = 4 + 4 + 4;
+
+    /**
+     * The value stored in a dictionary-encoded column for an absent value.
+     */
+    static final int ABSENT = -1;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".srca";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* Column IDs. Never reuse a retired ID. */
+    static final int COL_DICTIONARY = 1;
+    static final int COL_ID = 2;
+    /**
+     * Retired: patient DFNs are PHI and are no longer archived. Readers ignore this
+     * column in segments written before it was retired.
+     */
+    static final int COL_PATIENT_DFN = 3;
+    static final int COL_SPECIALTY = 4;
+    static final int COL_STATION = 5;
+    static final int COL_PROVIDER_TYPE = 6;
+    static final int COL_CPT_CODE = 7;
+    static final int COL_START_TIMESTAMP = 8;
+    static final int COL_SIGNATURE_TIMESTAMP = 9;
+    static final int COL_SECONDS_TO_FIRST_RUN = 10;
+    static final int COL_INPUT_OFFSETS = 11;
+    static final int COL_INPUT_KEYS = 12;
+    static final int COL_INPUT_VALUES = 13;
+    static final int COL_OUTCOME_OFFSETS = 14;
+    static final int COL_OUTCOME_MODELS = 15;
+    static final int COL_OUTCOME_VALUES = 16;
+
+    private ResultArchiveFormat()
+    {
+    }
+
+    /**
+     * Returns the file name of the segment with the given sequence number.
+     */
+    static String segmentFileName(final int sequence)
+    {
+        return String.format(Locale.US, "%s%08d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Returns the segment files in the given directory in sequence order.
+     * @return an array, empty if the directory does not exist
+     */
+    static File[] listSegmentFiles(final File directory)
+    {
+        final File[] files = directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(final File file)
+            {
+                final String name = file.getName();
+                return file.isFile() &&
+                        name.startsWith(SEGMENT_PREFIX) &&
+                        name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null)
+        {
+            return new File[0];
+        }
+        // The zero-padded sequence numbers sort lexically.
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Returns the sequence number of the given segment file.
+     */
+    static int segmentSequence(final File segmentFile)
+    {
+        final String name = segmentFile.getName();
+        return Integer.parseInt(name.substring(
+                SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Writes the given value in a variable-length zig-zag encoding so that small
+     * magnitudes (positive or negative) take few bytes.
+     */
+    static void writeVarLong(final DataOutput out, final long value) throws IOException
+    {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0)
+        {
+            out.writeByte((int)((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int)zigZag);
+    }
+
+    /**
+     * Reads a value written by {@link #writeVarLong(DataOutput, long)} from the given
+     * buffer's current position.
+     */
+    static long readVarLong(final ByteBuffer buffer)
+    {
+        long zigZag = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = buffer.get();
+            zigZag |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+}
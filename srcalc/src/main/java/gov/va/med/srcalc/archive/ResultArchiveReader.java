@@ -0,0 +1,75 @@
+package gov.va.med.srcalc.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>Reads all segments of a result archive directory. The segments are memory-mapped
+ * upon {@link #open(File)}; segments appended afterwards are not visible until the
+ * archive is opened again.</p>
+ *
+ * <p>A typical scan looks like:</p>
+ * <pre>
+ * for (final ArchiveSegment segment : ResultArchiveReader.open(dir).getSegments())
+ * {
+ *     for (int row = 0; row &lt; segment.getRowCount(); ++row)
+ *     {
+ *         final float risk = segment.getOutcome(row, "Thoracic 30-Day Mortality");
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>This class is immutable and therefore thread-safe.</p>
+ */
+public final class ResultArchiveReader
+{
+    private final ImmutableList<ArchiveSegment> fSegments;
+
+    private ResultArchiveReader(final List<ArchiveSegment> segments)
+    {
+        fSegments = ImmutableList.copyOf(segments);
+    }
+
+    /**
+     * Opens all segments in the given archive directory.
+     * @param directory the archive directory
+     * @return the reader, with no segments if the directory does not exist
+     * @throws IOException if any segment cannot be read
+     */
+    public static ResultArchiveReader open(final File directory) throws IOException
+    {
+        final ImmutableList.Builder<ArchiveSegment> segments = ImmutableList.builder();
+        for (final File file : ResultArchiveFormat.listSegmentFiles(directory))
+        {
+            segments.add(ArchiveSegment.open(file));
+        }
+        return new ResultArchiveReader(segments.build());
+    }
+
+    /**
+     * Returns the segments in the order they were appended, i.e., ascending {@link
+     * ArchivePosition}: by signature timestamp, then by result ID. Result IDs alone are
+     * not in order across segments.
+     */
+    public ImmutableList<ArchiveSegment> getSegments()
+    {
+        return fSegments;
+    }
+
+    /**
+     * Returns the total number of results in all segments.
+     */
+    public long getRowCount()
+    {
+        long count = 0;
+        for (final ArchiveSegment segment : fSegments)
+        {
+            count += segment.getRowCount();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,306 @@
+package gov.va.med.srcalc.archive;
+
+import static gov.va.med.srcalc.archive.ResultArchiveFormat.*;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+
+/**
+ * <p>Appends {@link SignedResult}s to an archive directory. Each call to {@link
+ * #appendSegment(List)} writes a new, immutable segment file; existing segments are
+ * never modified.</p>
+ *
+ * <p>A segment file consists of:</p>
+ * <ol>
+ * <li>A header: the magic number "SRCA", a 2-byte format version, a 2-byte column count,
+ * and a 4-byte row count.</li>
+ * <li>A column directory: for each column, a 4-byte column ID, 4-byte offset from the
+ * start of the file, and 4-byte length.</li>
+ * <li>The columns, each padded to a multiple of 4 bytes. All strings (specialty names,
+ * stations, variable keys, risk model names, input values, etc.) are stored once in a
+ * dictionary column and referenced elsewhere by their 4-byte index. Timestamps are
+ * stored as zig-zag variable-length deltas from the previous row. Inputs and outcomes
+ * are flattened into parallel key and value columns with a separate offsets column
+ * (row count + 1 entries) delimiting each row's entries. Outcome values are 4-byte
+ * floats.</li>
+ * </ol>
+ *
+ * <p>The archive is exported for research, so it deliberately contains no patient
+ * identifiers: results are identified only by their SignedResult ID.</p>
+ *
+ * <p>All multi-byte values are big-endian.</p>
+ *
+ * <p>This class is thread-safe, but use a single writer per archive directory. To
+ * append the results after {@link #getLastArchivedPosition()} without another thread
+ * appending in between, hold the writer's lock across both calls.</p>
+ */
+public final class ResultArchiveWriter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultArchiveWriter.class);
+
+    private final File fDirectory;
+
+    /**
+     * Constructs an instance to write to the given directory, which is created if
+     * necessary upon the first append.
+     * @param directory the archive directory
+     */
+    public ResultArchiveWriter(final File directory)
+    {
+        fDirectory = Objects.requireNonNull(directory);
+    }
+
+    /**
+     * Returns the archive directory.
+     */
+    public File getDirectory()
+    {
+        return fDirectory;
+    }
+
+    /**
+     * Returns the {@link ArchivePosition} of the last result in the archive, i.e., the
+     * point from which to continue archiving.
+     * @return the position, or {@link ArchivePosition#START} if the archive is empty
+     * @throws IOException if the last segment cannot be read
+     */
+    public synchronized ArchivePosition getLastArchivedPosition() throws IOException
+    {
+        final File[] segments = listSegmentFiles(fDirectory);
+        if (segments.length == 0)
+        {
+            return ArchivePosition.START;
+        }
+        return ArchiveSegment.open(segments[segments.length - 1]).getLastPosition();
+    }
+
+    /**
+     * Writes the given results to a new segment file.
+     * @param results the results to archive, in ascending {@link ArchivePosition}
+     * order. All must be after {@link #getLastArchivedPosition()}.
+     * @return the new segment file
+     * @throws IllegalArgumentException if the results are empty or not in ascending
+     * order after the last archived position
+     * @throws IOException if the segment cannot be written
+     */
+    public synchronized File appendSegment(final List<SignedResult> results)
+            throws IOException
+    {
+        if (results.isEmpty())
+        {
+            throw new IllegalArgumentException("No results to archive.");
+        }
+        ArchivePosition previous = getLastArchivedPosition();
+        for (final SignedResult result : results)
+        {
+            final ArchivePosition position = ArchivePosition.of(result);
+            if (position.compareTo(previous) <= 0)
+            {
+                throw new IllegalArgumentException(String.format(
+                        "Result %s is not after %s.", position, previous));
+            }
+            previous = position;
+        }
+
+        final byte[] contents = encodeSegment(results);
+
+        if (!fDirectory.isDirectory() && !fDirectory.mkdirs())
+        {
+            throw new IOException("Unable to create directory " + fDirectory);
+        }
+        final File[] existing = listSegmentFiles(fDirectory);
+        final int sequence = (existing.length == 0) ?
+                1 : segmentSequence(existing[existing.length - 1]) + 1;
+        final File segmentFile = new File(fDirectory, segmentFileName(sequence));
+        // Write to a temporary file first so that readers never see a partial segment.
+        final File tempFile = new File(fDirectory, segmentFile.getName() + ".tmp");
+        try (final OutputStream out = new FileOutputStream(tempFile))
+        {
+            out.write(contents);
+        }
+        if (!tempFile.renameTo(segmentFile))
+        {
+            throw new IOException("Unable to create " + segmentFile);
+        }
+
+        LOGGER.info(
+                "Archived {} SignedResults ({} bytes) to {}.",
+                results.size(), contents.length, segmentFile);
+        return segmentFile;
+    }
+
+    /**
+     * Builds the dictionary and encodes each column.
+     */
+    private static byte[] encodeSegment(final List<SignedResult> results) throws IOException
+    {
+        final Dictionary dictionary = new Dictionary();
+        final ColumnBuilder ids = new ColumnBuilder(COL_ID);
+        final ColumnBuilder specialties = new ColumnBuilder(COL_SPECIALTY);
+        final ColumnBuilder stations = new ColumnBuilder(COL_STATION);
+        final ColumnBuilder providerTypes = new ColumnBuilder(COL_PROVIDER_TYPE);
+        final ColumnBuilder cptCodes = new ColumnBuilder(COL_CPT_CODE);
+        final ColumnBuilder startTimestamps = new ColumnBuilder(COL_START_TIMESTAMP);
+        final ColumnBuilder signatureTimestamps = new ColumnBuilder(COL_SIGNATURE_TIMESTAMP);
+        final ColumnBuilder secondsToFirstRun = new ColumnBuilder(COL_SECONDS_TO_FIRST_RUN);
+        final ColumnBuilder inputOffsets = new ColumnBuilder(COL_INPUT_OFFSETS);
+        final ColumnBuilder inputKeys = new ColumnBuilder(COL_INPUT_KEYS);
+        final ColumnBuilder inputValues = new ColumnBuilder(COL_INPUT_VALUES);
+        final ColumnBuilder outcomeOffsets = new ColumnBuilder(COL_OUTCOME_OFFSETS);
+        final ColumnBuilder outcomeModels = new ColumnBuilder(COL_OUTCOME_MODELS);
+        final ColumnBuilder outcomeValues = new ColumnBuilder(COL_OUTCOME_VALUES);
+
+        long previousStart = 0;
+        long previousSignature = 0;
+        int inputCount = 0;
+        int outcomeCount = 0;
+        inputOffsets.fOut.writeInt(0);
+        outcomeOffsets.fOut.writeInt(0);
+        for (final SignedResult result : results)
+        {
+            final HistoricalCalculation historical = result.getHistoricalCalculation();
+            ids.fOut.writeInt(result.getId());
+            specialties.fOut.writeInt(dictionary.indexOf(historical.getSpecialtyName()));
+            stations.fOut.writeInt(dictionary.indexOf(historical.getUserStation()));
+            providerTypes.fOut.writeInt(dictionary.indexOf(historical.getProviderType()));
+            cptCodes.fOut.writeInt(dictionary.indexOf(result.getCptCode()));
+
+            final long start = historical.getStartTimestamp().getMillis();
+            writeVarLong(startTimestamps.fOut, start - previousStart);
+            previousStart = start;
+            final long signature = result.getSignatureTimestamp().getMillis();
+            writeVarLong(signatureTimestamps.fOut, signature - previousSignature);
+            previousSignature = signature;
+            secondsToFirstRun.fOut.writeInt(historical.getSecondsToFirstRun());
+
+            // Sort the entries so that equal results encode identically.
+            final SortedMap<String, String> inputs = new TreeMap<>(result.getInputs());
+            for (final Map.Entry<String, String> input : inputs.entrySet())
+            {
+                inputKeys.fOut.writeInt(dictionary.indexOf(input.getKey()));
+                inputValues.fOut.writeInt(dictionary.indexOf(input.getValue()));
+            }
+            inputCount += inputs.size();
+            inputOffsets.fOut.writeInt(inputCount);
+
+            final SortedMap<String, Float> outcomes = new TreeMap<>(result.getOutcomes());
+            for (final Map.Entry<String, Float> outcome : outcomes.entrySet())
+            {
+                outcomeModels.fOut.writeInt(dictionary.indexOf(outcome.getKey()));
+                outcomeValues.fOut.writeFloat(outcome.getValue());
+            }
+            outcomeCount += outcomes.size();
+            outcomeOffsets.fOut.writeInt(outcomeCount);
+        }
+
+        final ColumnBuilder[] columns = {
+                dictionary.encode(),
+                ids, specialties, stations, providerTypes, cptCodes,
+                startTimestamps, signatureTimestamps, secondsToFirstRun,
+                inputOffsets, inputKeys, inputValues,
+                outcomeOffsets, outcomeModels, outcomeValues };
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(columns.length);
+        out.writeInt(results.size());
+        int offset = HEADER_SIZE + columns.length * DIRECTORY_ENTRY_SIZE;
+        for (final ColumnBuilder column : columns)
+        {
+            column.pad();
+            out.writeInt(column.fColumnId);
+            out.writeInt(offset);
+            out.writeInt(column.fBytes.size());
+            offset += column.fBytes.size();
+        }
+        for (final ColumnBuilder column : columns)
+        {
+            column.fBytes.writeTo(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Accumulates the bytes of a single column.
+     */
+    private static final class ColumnBuilder
+    {
+        final int fColumnId;
+        final ByteArrayOutputStream fBytes;
+        final DataOutputStream fOut;
+
+        ColumnBuilder(final int columnId)
+        {
+            fColumnId = columnId;
+            fBytes = new ByteArrayOutputStream();
+            fOut = new DataOutputStream(fBytes);
+        }
+
+        /**
+         * Pads the column to a multiple of 4 bytes so that the next column is aligned.
+         */
+        void pad() throws IOException
+        {
+            while (fBytes.size() % 4 != 0)
+            {
+                fOut.writeByte(0);
+            }
+        }
+    }
+
+    /**
+     * Assigns each distinct string an index in order of first appearance.
+     */
+    private static final class Dictionary
+    {
+        private final LinkedHashMap<String, Integer> fIndexes = new LinkedHashMap<>();
+
+        int indexOf(final String string)
+        {
+            Integer index = fIndexes.get(string);
+            if (index == null)
+            {
+                index = fIndexes.size();
+                fIndexes.put(string, index);
+            }
+            return index;
+        }
+
+        int indexOf(final Optional<String> string)
+        {
+            return string.isPresent() ? indexOf(string.get()) : ABSENT;
+        }
+
+        /**
+         * Encodes the dictionary as a count followed by length-prefixed UTF-8 strings.
+         */
+        ColumnBuilder encode() throws IOException
+        {
+            final ColumnBuilder column = new ColumnBuilder(COL_DICTIONARY);
+            column.fOut.writeInt(fIndexes.size());
+            for (final String string : fIndexes.keySet())
+            {
+                final byte[] utf8 = string.getBytes(UTF_8);
+                column.fOut.writeInt(utf8.length);
+                column.fOut.write(utf8);
+            }
+            return column;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * <p>A compact, column-oriented binary archive of signed results for the research
+ * repository. An archive is a directory of immutable segment files: new results are
+ * only ever appended as new segments. Segments are memory-mapped when read so that
+ * analysts may scan millions of results without touching the production database.</p>
+ *
+ * <p>See {@link gov.va.med.srcalc.archive.ResultArchiveWriter} for the file format.</p>
+ */
+package gov.va.med.srcalc.archive;
@@ -0,0 +1,579 @@
+package gov.va.med.srcalc.db;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
+
+/**
+ * <p>Persists {@link HistoricalCalculation}s on a background thread so that running a
+ * calculation does not have to wait on the database for what is purely analytics data.
+ * Offered objects are buffered in a bounded queue and inserted in batches, one
+ * transaction per batch. If the queue is full, {@link #offer(HistoricalCalculation)}
+ * returns false and the caller should persist the object itself.</p>
+ *
+ * <p>Upon {@link #shutdown()}, any objects not yet written are serialized to a local
+ * journal file, which is replayed into the database upon the next {@link #start()}. This
+ * includes a batch which the background thread is still writing when shutdown stops
+ * waiting for it, so such a batch may be written twice rather than lost. A failed batch
+ * is returned to the front of the queue and retried after a delay.</p>
+ *
+ * <p>Since a {@link gov.va.med.srcalc.domain.calculation.SignedResult} shares its
+ * HistoricalCalculation's identifier, callers must use {@link
+ * #reclaim(HistoricalCalculation)} before persisting a SignedResult.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class HistoricalCalcWriter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoricalCalcWriter.class);
+
+    /**
+     * The name of the background thread, for identification in thread dumps.
+     */
+    public static final String THREAD_NAME = "srcalc-historical-writer";
+
+    /**
+     * The default time to wait before retrying a failed batch, in milliseconds.
+     */
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 30000;
+
+    /**
+     * The default maximum time to wait for the background thread to finish its current
+     * batch upon shutdown, in milliseconds.
+     */
+    private static final long DEFAULT_SHUTDOWN_WAIT_MILLIS = 10000;
+
+    private final SessionFactory fSessionFactory;
+    private final int fCapacity;
+    private final int fBatchSize;
+    private final File fJournalFile;
+    private long fRetryDelayMillis;
+    private long fShutdownWaitMillis;
+
+    /**
+     * Guards all of the below mutable fields.
+     */
+    private final Object fLock = new Object();
+    private final ArrayDeque<HistoricalCalculation> fQueue;
+    /**
+     * The objects currently being written by the background thread.
+     */
+    private final ArrayList<HistoricalCalculation> fInFlight;
+    private boolean fRunning;
+    private Thread fThread;
+    private long fWrittenCount;
+    private long fFailedBatchCount;
+
+    /**
+     * Constructs an instance. Nothing will be written until {@link #start()} is called.
+     * @param sessionFactory used to open a StatelessSession for each batch
+     * @param capacity the maximum number of objects to buffer
+     * @param batchSize the maximum number of objects to insert in one transaction
+     * @param journalFile the file in which to save unwritten objects upon shutdown
+     * @throws IllegalArgumentException if capacity or batchSize is not positive
+     */
+    public HistoricalCalcWriter(
+            final SessionFactory sessionFactory,
+            final int capacity,
+            final int batchSize,
+            final File journalFile)
+    {
+        if (capacity < 1 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        fSessionFactory = Objects.requireNonNull(sessionFactory);
+        fCapacity = capacity;
+        fBatchSize = batchSize;
+        fJournalFile = Objects.requireNonNull(journalFile);
+        fRetryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+        fShutdownWaitMillis = DEFAULT_SHUTDOWN_WAIT_MILLIS;
+        fQueue = new ArrayDeque<>(capacity);
+        fInFlight = new ArrayList<>(batchSize);
+        fRunning = false;
+        fWrittenCount = 0;
+        fFailedBatchCount = 0;
+    }
+
+    /**
+     * Sets the time to wait before retrying a failed batch. Defaults to {@link
+     * #DEFAULT_RETRY_DELAY_MILLIS}.
+     * @param retryDelayMillis the delay in milliseconds
+     */
+    public void setRetryDelayMillis(final long retryDelayMillis)
+    {
+        synchronized (fLock)
+        {
+            fRetryDelayMillis = retryDelayMillis;
+        }
+    }
+
+    /**
+     * Sets the maximum time to wait for the background thread to finish its current
+     * batch upon shutdown. For tests.
+     */
+    void setShutdownWaitMillis(final long shutdownWaitMillis)
+    {
+        synchronized (fLock)
+        {
+            fShutdownWaitMillis = shutdownWaitMillis;
+        }
+    }
+
+    /**
+     * Replays any journaled objects from a previous shutdown and then starts the
+     * background thread. Does nothing if already started.
+     */
+    public void start()
+    {
+        synchronized (fLock)
+        {
+            if (fRunning)
+            {
+                return;
+            }
+            fRunning = true;
+        }
+
+        replayJournal();
+
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runWriter();
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        synchronized (fLock)
+        {
+            fThread = thread;
+        }
+        thread.start();
+        LOGGER.info(
+                "Started writing HistoricalCalculations in the background (capacity {}).",
+                fCapacity);
+    }
+
+    /**
+     * Stops the background thread and saves any unwritten objects to the journal file,
+     * including any batch still being written. Does nothing if not started.
+     */
+    public void shutdown()
+    {
+        final Thread thread;
+        final long waitMillis;
+        synchronized (fLock)
+        {
+            if (!fRunning)
+            {
+                return;
+            }
+            fRunning = false;
+            waitMillis = fShutdownWaitMillis;
+            thread = fThread;
+            fThread = null;
+            fLock.notifyAll();
+        }
+
+        try
+        {
+            if (thread != null)
+            {
+                thread.join(waitMillis);
+            }
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        final ArrayList<HistoricalCalculation> unwritten;
+        synchronized (fLock)
+        {
+            // The background thread only leaves a batch in flight if it is still
+            // writing it.
+            if (!fInFlight.isEmpty())
+            {
+                LOGGER.warn(
+                        "Still writing {} HistoricalCalculations after {} ms. Journaling " +
+                        "them too, so they may be written twice.",
+                        fInFlight.size(), waitMillis);
+            }
+            unwritten = new ArrayList<>(fInFlight.size() + fQueue.size());
+            unwritten.addAll(fInFlight);
+            unwritten.addAll(fQueue);
+            fQueue.clear();
+        }
+        if (!unwritten.isEmpty())
+        {
+            writeJournal(unwritten);
+        }
+        LOGGER.info(
+                "Stopped writing HistoricalCalculations. Journaled {} unwritten.",
+                unwritten.size());
+    }
+
+    /**
+     * Queues the given object for writing if there is room.
+     * @param calc the new (aka transient) object to write
+     * @return true if queued, false if the queue is full or the writer is not running,
+     * in which case the caller is responsible for persisting the object
+     */
+    public boolean offer(final HistoricalCalculation calc)
+    {
+        Objects.requireNonNull(calc);
+        synchronized (fLock)
+        {
+            if (!fRunning || fQueue.size() >= fCapacity)
+            {
+                return false;
+            }
+            fQueue.addLast(calc);
+            fLock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Takes back the given object if it has not been written yet. If the object is
+     * currently being written, waits for that write to complete.
+     * @param calc the object, compared by identity
+     * @return true if the object was removed from the queue, in which case the caller is
+     * responsible for persisting it; false if it was written or never queued
+     */
+    public boolean reclaim(final HistoricalCalculation calc)
+    {
+        synchronized (fLock)
+        {
+            try
+            {
+                while (containsIdentical(fInFlight, calc))
+                {
+                    fLock.wait();
+                }
+            }
+            catch (final InterruptedException ex)
+            {
+                LOGGER.warn("Interrupted while waiting for HistoricalCalculation write.");
+                Thread.currentThread().interrupt();
+            }
+
+            final Iterator<HistoricalCalculation> it = fQueue.iterator();
+            while (it.hasNext())
+            {
+                if (it.next() == calc)
+                {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean containsIdentical(
+            final List<HistoricalCalculation> list, final HistoricalCalculation calc)
+    {
+        for (final HistoricalCalculation c : list)
+        {
+            if (c == calc)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of objects waiting to be written, including any batch currently
+     * being written.
+     */
+    public int getQueueDepth()
+    {
+        synchronized (fLock)
+        {
+            return fQueue.size() + fInFlight.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of objects that may wait in the queue.
+     */
+    public int getCapacity()
+    {
+        return fCapacity;
+    }
+
+    /**
+     * Returns the number of objects successfully written by this writer (including any
+     * replayed from the journal).
+     */
+    public long getWrittenCount()
+    {
+        synchronized (fLock)
+        {
+            return fWrittenCount;
+        }
+    }
+
+    /**
+     * Returns the number of batches that have failed to write.
+     */
+    public long getFailedBatchCount()
+    {
+        synchronized (fLock)
+        {
+            return fFailedBatchCount;
+        }
+    }
+
+    /**
+     * Returns true if the background thread is running, false otherwise.
+     */
+    public boolean isRunning()
+    {
+        synchronized (fLock)
+        {
+            return fRunning;
+        }
+    }
+
+    /**
+     * The main loop of the background thread.
+     */
+    private void runWriter()
+    {
+        final ArrayList<HistoricalCalculation> batch = new ArrayList<>(fBatchSize);
+        while (true)
+        {
+            synchronized (fLock)
+            {
+                try
+                {
+                    while (fRunning && fQueue.isEmpty())
+                    {
+                        fLock.wait();
+                    }
+                }
+                catch (final InterruptedException ex)
+                {
+                    return;
+                }
+                if (!fRunning)
+                {
+                    return;
+                }
+                while (fInFlight.size() < fBatchSize && !fQueue.isEmpty())
+                {
+                    fInFlight.add(fQueue.removeFirst());
+                }
+                batch.clear();
+                batch.addAll(fInFlight);
+            }
+
+            final boolean written = writeBatch(batch);
+
+            synchronized (fLock)
+            {
+                if (written)
+                {
+                    fWrittenCount += batch.size();
+                }
+                else
+                {
+                    ++fFailedBatchCount;
+                    // Return the batch to the front of the queue (in the same order) so
+                    // that it may be reclaimed or retried.
+                    for (int i = batch.size() - 1; i >= 0; --i)
+                    {
+                        fQueue.addFirst(batch.get(i));
+                    }
+                }
+                fInFlight.clear();
+                fLock.notifyAll();
+
+                if (!written)
+                {
+                    try
+                    {
+                        fLock.wait(fRetryDelayMillis);
+                    }
+                    catch (final InterruptedException ex)
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the given objects in a single transaction.
+     * @return true if successful, false otherwise
+     */
+    private boolean writeBatch(final List<HistoricalCalculation> batch)
+    {
+        LOGGER.debug("Writing {} HistoricalCalculations.", batch.size());
+        final StatelessSession session = fSessionFactory.openStatelessSession();
+        try
+        {
+            final Transaction tx = session.beginTransaction();
+            try
+            {
+                for (final HistoricalCalculation calc : batch)
+                {
+                    session.insert(calc);
+                }
+                tx.commit();
+                return true;
+            }
+            catch (final RuntimeException ex)
+            {
+                LOGGER.warn("Unable to write {} HistoricalCalculations.", batch.size(), ex);
+                try
+                {
+                    tx.rollback();
+                }
+                catch (final RuntimeException rollbackEx)
+                {
+                    LOGGER.warn("Unable to roll back: {}", rollbackEx.toString());
+                }
+                // The inserts may have assigned identifiers that were rolled back.
+                final ClassMetadata metadata =
+                        fSessionFactory.getClassMetadata(HistoricalCalculation.class);
+                for (final HistoricalCalculation calc : batch)
+                {
+                    metadata.setIdentifier(calc, 0, (SessionImplementor)session);
+                }
+                return false;
+            }
+        }
+        catch (final RuntimeException ex)
+        {
+            LOGGER.warn("Unable to begin a transaction: {}", ex.toString());
+            return false;
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+
+    /**
+     * Writes any objects saved in the journal file to the database and deletes the file.
+     * If any batch fails, the remaining objects are left in the journal.
+     */
+    private void replayJournal()
+    {
+        final List<HistoricalCalculation> journaled = readJournal();
+        if (journaled.isEmpty())
+        {
+            return;
+        }
+        LOGGER.info("Replaying {} journaled HistoricalCalculations.", journaled.size());
+
+        for (int start = 0; start < journaled.size(); start += fBatchSize)
+        {
+            final List<HistoricalCalculation> batch = journaled.subList(
+                    start, Math.min(start + fBatchSize, journaled.size()));
+            if (writeBatch(batch))
+            {
+                synchronized (fLock)
+                {
+                    fWrittenCount += batch.size();
+                }
+            }
+            else
+            {
+                synchronized (fLock)
+                {
+                    ++fFailedBatchCount;
+                }
+                // Keep the rest for next time.
+                replaceJournal(journaled.subList(start, journaled.size()));
+                return;
+            }
+        }
+        if (!fJournalFile.delete())
+        {
+            LOGGER.warn("Unable to delete journal file {}.", fJournalFile);
+        }
+    }
+
+    /**
+     * Reads the objects saved in the journal file.
+     * @return the objects, or an empty list if there is no journal
+     */
+    private List<HistoricalCalculation> readJournal()
+    {
+        if (!fJournalFile.exists())
+        {
+            return new ArrayList<>();
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(fJournalFile))))
+        {
+            @SuppressWarnings("unchecked") // we wrote it
+            final List<HistoricalCalculation> calcs =
+                    (List<HistoricalCalculation>)in.readObject();
+            return calcs;
+        }
+        catch (final IOException | ClassNotFoundException | ClassCastException ex)
+        {
+            LOGGER.error("Unable to read journal file {}: {}", fJournalFile, ex.toString());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Appends the given objects to any objects already in the journal file.
+     */
+    private void writeJournal(final List<HistoricalCalculation> calcs)
+    {
+        final ArrayList<HistoricalCalculation> all = new ArrayList<>(readJournal());
+        all.addAll(calcs);
+        replaceJournal(all);
+    }
+
+    /**
+     * Replaces the contents of the journal file with the given objects. Writes to a
+     * temporary file first so that a failure does not corrupt an existing journal.
+     */
+    private void replaceJournal(final List<HistoricalCalculation> calcs)
+    {
+        final File tempFile = new File(fJournalFile.getPath() + ".tmp");
+        try (final ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile))))
+        {
+            out.writeObject(new ArrayList<>(calcs));
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.error(
+                    "Unable to journal {} HistoricalCalculations to {}: {}",
+                    calcs.size(), tempFile, ex.toString());
+            return;
+        }
+
+        if ((fJournalFile.exists() && !fJournalFile.delete()) ||
+                !tempFile.renameTo(fJournalFile))
+        {
+            LOGGER.error("Unable to replace journal file {}.", fJournalFile);
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package gov.va.med.srcalc.db;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
 import org.hibernate.Criteria;
-import org.hibernate.FetchMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -16,8 +18,10 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.util.SearchResults;
 
@@ -166,11 +170,9 @@ public final class ResultSearchParameters
 
         final Criteria criteria = session.createCriteria(SignedResult.class);
         criteria.setReadOnly(true);  // We are loading immutable objects.
-        criteria.setFetchMode("outcomes", FetchMode.JOIN);
+        // Note: we do not join-fetch the outcomes because Hibernate would then apply the
+        // maximum results in memory after loading every matching row. See below.
         criteria.addOrder(Order.desc("signatureTimestamp"));
-        // See <http://tinyurl.com/oucuyt3>. I have no idea why this isn't Hibernate's
-        // default.
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
         final Criteria historicalCriteria =
                 criteria.createCriteria("historicalCalculation");
         
@@ -213,9 +215,138 @@ public final class ResultSearchParameters
         @SuppressWarnings("unchecked")  // trust Hibernate
         final List<SignedResult> foundItems = criteria.list();
         
+        // Callers use the outcomes outside of the Session, so load them now. Due to
+        // SignedResult's @BatchSize, this takes one query per batch, not per result.
+        for (final SignedResult result : foundItems)
+        {
+            Hibernate.initialize(result.getOutcomes());
+        }
+        
         return SearchResults.fromList(foundItems, MAX_RESULTS);
     }
     
+    /**
+     * Returns the lower boundary of the given {@link OutcomeDistribution} bin as a risk
+     * fraction.
+     */
+    private static double binBoundary(final int binIndex)
+    {
+        return (double)binIndex / OutcomeDistribution.BIN_COUNT;
+    }
+    
+    /**
+     * Builds the HQL select statement computing the {@link OutcomeDistribution} bins. Each
+     * bin is a sum of a CASE expression so that the database computes the whole
+     * histogram for each group in a single pass.
+     */
+    private static String makeDistributionSelect()
+    {
+        final StringBuilder select = new StringBuilder(
+                "select index(o), h.specialtyName, h.userStation");
+        for (int i = 0; i < OutcomeDistribution.BIN_COUNT; ++i)
+        {
+            select.append(", sum(case when ");
+            // Risks outside of [0, 1] fall into the first or last bin.
+            if (i > 0)
+            {
+                select.append("value(o) >= ").append(binBoundary(i));
+            }
+            if (i > 0 && i < OutcomeDistribution.BIN_COUNT - 1)
+            {
+                select.append(" and ");
+            }
+            if (i < OutcomeDistribution.BIN_COUNT - 1)
+            {
+                select.append("value(o) < ").append(binBoundary(i + 1));
+            }
+            select.append(" then 1 else 0 end)");
+        }
+        return select.toString();
+    }
+    
+    /**
+     * Computes the distribution of outcomes for each risk model, specialty, and station
+     * among the SignedResults matching the parameters in the calling instance. The
+     * outcomes are binned and counted by the database so only the counts are loaded,
+     * regardless of the number of matching results. Unlike {@link #doSearch(Session)},
+     * this search is not limited to {@value #MAX_RESULTS} results.
+     * @param session the current Hibernate session
+     * @return the distributions, ordered by risk model name, specialty name, and station
+     */
+    ImmutableList<OutcomeDistribution> doOutcomeDistributionQuery(final Session session)
+    {
+        LOGGER.debug("Doing OutcomeDistribution query with parameters {}", this);
+
+        final StringBuilder hql = new StringBuilder(makeDistributionSelect())
+                .append(" from SignedResult r join r.outcomes o")
+                .append(" join r.historicalCalculation h where 1 = 1");
+        // Apply the same restrictions as doSearch().
+        if (fMinDate.isPresent())
+        {
+            hql.append(" and r.signatureTimestamp >= :minTimestamp");
+        }
+        if (fMaxDate.isPresent())
+        {
+            hql.append(" and r.signatureTimestamp < :maxTimestamp");
+        }
+        if (fCptCode.isPresent())
+        {
+            hql.append(" and r.cptCodeNullable = :cptCode");
+        }
+        if (!fSpecialtyNames.isEmpty())
+        {
+            hql.append(" and h.specialtyName in (:specialtyNames)");
+        }
+        if (fStationNumber.isPresent())
+        {
+            hql.append(" and h.userStation = :stationNumber");
+        }
+        hql.append(" group by index(o), h.specialtyName, h.userStation")
+            .append(" order by index(o), h.specialtyName, h.userStation");
+        
+        LOGGER.trace("Querying with HQL {}", hql);
+        final Query query = session.createQuery(hql.toString());
+        if (fMinDate.isPresent())
+        {
+            query.setParameter("minTimestamp", fMinDate.get().toDateTimeAtStartOfDay());
+        }
+        if (fMaxDate.isPresent())
+        {
+            // See doSearch() for why we use the start of the next day.
+            query.setParameter(
+                    "maxTimestamp", fMaxDate.get().plusDays(1).toDateTimeAtStartOfDay());
+        }
+        if (fCptCode.isPresent())
+        {
+            query.setParameter("cptCode", fCptCode.get());
+        }
+        if (!fSpecialtyNames.isEmpty())
+        {
+            query.setParameterList("specialtyNames", fSpecialtyNames);
+        }
+        if (fStationNumber.isPresent())
+        {
+            query.setParameter("stationNumber", fStationNumber.get());
+        }
+        
+        @SuppressWarnings("unchecked")  // trust Hibernate
+        final List<Object[]> rows = query.list();
+        final ImmutableList.Builder<OutcomeDistribution> distributions =
+                ImmutableList.builder();
+        for (final Object[] row : rows)
+        {
+            final ArrayList<Integer> binCounts = new ArrayList<>(OutcomeDistribution.BIN_COUNT);
+            for (int i = 0; i < OutcomeDistribution.BIN_COUNT; ++i)
+            {
+                // The database may return any numeric type for SUM().
+                binCounts.add(((Number)row[3 + i]).intValue());
+            }
+            distributions.add(new OutcomeDistribution(
+                    (String)row[0], (String)row[1], (String)row[2], binCounts));
+        }
+        return distributions.build();
+    }
+    
     @Override
     public String toString()
     {
@@ -15,6 +15,8 @@ import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
+import org.hibernate.criterion.Restrictions;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -25,6 +27,7 @@ import com.google.common.collect.ImmutableList;
 
 import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
 import gov.va.med.srcalc.domain.calculation.HistoricalRunInfo;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.util.SearchResults;
 
@@ -95,6 +98,56 @@ public class ResultsDao
         return parameters.doSearch(getCurrentSession());
     }
     
+    /**
+     * Returns the {@link SignedResult}s after the given position in (signature
+     * timestamp, ID) order, for incremental archiving. Inputs and outcomes are
+     * lazy-loaded in batches (see {@link SignedResult#COLLECTION_BATCH_SIZE}).
+     * @param lastSignatureTimestamp the signature timestamp of the last result already
+     * archived
+     * @param lastId the ID of the last result already archived
+     * @param signedBefore only return results signed before this time
+     * @param maxResults the maximum number of results to return
+     * @return the results, in ascending signature timestamp and then ID order
+     */
+    public List<SignedResult> getSignedResultsAfter(
+            final DateTime lastSignatureTimestamp,
+            final int lastId,
+            final DateTime signedBefore,
+            final int maxResults)
+    {
+        final Criteria criteria = getCurrentSession().createCriteria(SignedResult.class)
+                // Join the HistoricalCalculations: they would otherwise be loaded with
+                // one query each.
+                .createAlias("historicalCalculation", "h")
+                .add(Restrictions.or(
+                        Restrictions.gt("signatureTimestamp", lastSignatureTimestamp),
+                        Restrictions.and(
+                                Restrictions.eq("signatureTimestamp", lastSignatureTimestamp),
+                                Restrictions.gt("id", lastId))))
+                .add(Restrictions.lt("signatureTimestamp", signedBefore))
+                .addOrder(Order.asc("signatureTimestamp"))
+                .addOrder(Order.asc("id"))
+                .setMaxResults(maxResults)
+                .setReadOnly(true);  // We are loading immutable objects.
+        @SuppressWarnings("unchecked") // trust Hibernate
+        final List<SignedResult> results = criteria.list();
+        return results;
+    }
+    
+    /**
+     * Returns the distribution of outcomes for each risk model, specialty, and station
+     * among the {@link SignedResult}s matching the given parameters. The distributions
+     * are computed by the database without loading the individual results.
+     * @param parameters specifies which results to consider
+     * @return the distributions, ordered by risk model name, specialty name, and station
+     */
+    public ImmutableList<OutcomeDistribution> getOutcomeDistributions(
+            final ResultSearchParameters parameters)
+    {
+        // ResultSearchParameters does all the work for us.
+        return parameters.doOutcomeDistributionQuery(getCurrentSession());
+    }
+    
     /**
      * Merges the given HistoricalCalculations and SignedResults into HistoricalRunInfo
      * objects.
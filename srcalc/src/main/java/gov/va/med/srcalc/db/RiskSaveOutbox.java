@@ -0,0 +1,723 @@
+package gov.va.med.srcalc.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import gov.va.med.srcalc.domain.calculation.PendingRiskSave;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+import gov.va.med.srcalc.vista.ConnectionUnavailableException;
+import gov.va.med.srcalc.vista.DivisionUnavailableException;
+import gov.va.med.srcalc.vista.VistaDaoFactory;
+
+/**
+ * <p>Saves {@link SignedResult}s to VistA Surgery on a background thread so that signing a
+ * calculation does not have to wait on the Surgery package. {@link #enqueue(SignedResult,
+ * String, String)} records a {@link PendingRiskSave} in the caller's transaction, so the
+ * save is durable exactly when the SignedResult is.</p>
+ *
+ * <p>The background thread saves due entries in batches. It claims the batch in one short
+ * transaction, calls VistA outside of any transaction, and then records the outcomes in
+ * a second transaction: a saved entry is deleted and a failed entry is rescheduled with
+ * exponential backoff. An entry is abandoned after the maximum number of attempts or
+ * upon any other failure (see below), and remains in the table for an administrator to
+ * investigate.</p>
+ *
+ * <p>Several application instances may share the database, so each entry is claimed
+ * with a conditional update before it is sent: the update sets this instance as the
+ * owner and moves the next attempt out by {@link #CLAIM_LEASE_MILLIS}, and succeeds for
+ * only one instance. An instance only records an outcome for an entry it still owns.</p>
+ *
+ * <p>Resending a result is not safe: {@link
+ * gov.va.med.srcalc.vista.RemoteProcedure#SR_ASRC_RISK_SAVE} files a new Surgical Risk
+ * Calculations entry on each call and accepts no idempotency key. Therefore an entry is
+ * only retried if the failed attempt certainly did not reach VistA (i.e., the division
+ * refused the call or no connection could be obtained). After any other failure, such as
+ * a timeout, VistA may have saved the result, so the entry is abandoned for an
+ * administrator to check VistA Surgery. Likewise, an entry whose owner stopped before
+ * recording the outcome is abandoned, not resent, once its claim lapses. Each entry is
+ * keyed by the result's identifier so that a result is never queued twice.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class RiskSaveOutbox
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RiskSaveOutbox.class);
+
+    /**
+     * The name of the background thread, for identification in thread dumps.
+     */
+    public static final String THREAD_NAME = "srcalc-risk-save-outbox";
+
+    /**
+     * The default time between checks for due entries, in milliseconds. Newly-enqueued
+     * entries are processed immediately regardless.
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 60000;
+
+    /**
+     * The maximum number of entries to save in one batch.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * The maximum time to wait for the background thread to finish its current batch
+     * upon shutdown, in milliseconds.
+     */
+    private static final long SHUTDOWN_WAIT_MILLIS = 10000;
+
+    /**
+     * How long a claim on an entry lasts, in milliseconds. Must comfortably exceed the
+     * time to save a full batch to VistA.
+     */
+    public static final long CLAIM_LEASE_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * The error recorded for an entry whose claim lapsed without an outcome.
+     */
+    static final String LAPSED_CLAIM_ERROR =
+            "The claim lapsed during an attempt which may have saved the result.";
+
+    /**
+     * Abandons the entries whose claims have lapsed: their owners may have sent them.
+     */
+    static final String ABANDON_LAPSED_HQL = "update PendingRiskSave " +
+            "set lastErrorNullable = :lastError, nextAttemptTimestampNullable = null, " +
+            "claimOwnerNullable = null " +
+            "where claimOwnerNullable is not null and nextAttemptTimestampNullable <= :now";
+
+    /**
+     * Claims a due entry for this instance. Only matches an unclaimed entry which is
+     * still due, so only one instance's update succeeds.
+     */
+    static final String CLAIM_HQL = "update PendingRiskSave " +
+            "set claimOwnerNullable = :owner, nextAttemptTimestampNullable = :leaseExpiry " +
+            "where resultId = :resultId and claimOwnerNullable is null " +
+            "and nextAttemptTimestampNullable <= :now";
+
+    /**
+     * Deletes a saved entry if this instance still owns it.
+     */
+    static final String DELETE_HQL = "delete PendingRiskSave " +
+            "where resultId = :resultId and claimOwnerNullable = :owner";
+
+    /**
+     * Records a failed attempt to be retried, releasing the claim, if this instance
+     * still owns the entry.
+     */
+    static final String RESCHEDULE_HQL = "update PendingRiskSave " +
+            "set attemptCount = :attemptCount, lastErrorNullable = :lastError, " +
+            "nextAttemptTimestampNullable = :nextAttempt, claimOwnerNullable = null " +
+            "where resultId = :resultId and claimOwnerNullable = :owner";
+
+    /**
+     * Records a failed attempt which will not be retried, releasing the claim, if this
+     * instance still owns the entry.
+     */
+    static final String ABANDON_HQL = "update PendingRiskSave " +
+            "set attemptCount = :attemptCount, lastErrorNullable = :lastError, " +
+            "nextAttemptTimestampNullable = null, claimOwnerNullable = null " +
+            "where resultId = :resultId and claimOwnerNullable = :owner";
+
+    private final SessionFactory fSessionFactory;
+    private final VistaDaoFactory fVistaDaoFactory;
+    private final int fMaxAttempts;
+    private final long fInitialRetryDelayMillis;
+    private final long fMaxRetryDelayMillis;
+    /**
+     * Identifies this instance as the owner of its claimed entries.
+     */
+    private final String fOwner;
+
+    /**
+     * Guards all of the below mutable fields.
+     */
+    private final Object fLock = new Object();
+    private long fPollIntervalMillis;
+    private boolean fRunning;
+    /**
+     * Whether entries have been enqueued since the background thread last checked.
+     */
+    private boolean fWakeRequested;
+    private Thread fThread;
+    private long fSavedCount;
+    private long fFailedAttemptCount;
+
+    /**
+     * Constructs an instance. Nothing will be saved until {@link #start()} is called.
+     * @param sessionFactory used for enqueuing in the current session and opening a
+     * Session for each background transaction
+     * @param vistaDaoFactory provides the VistaSurgeryDao for each entry's user
+     * @param maxAttempts the number of attempts after which to abandon an entry
+     * @param initialRetryDelayMillis the delay before the first retry, which doubles with
+     * each further attempt
+     * @param maxRetryDelayMillis the maximum delay between attempts
+     * @throws IllegalArgumentException if maxAttempts or initialRetryDelayMillis is not
+     * positive or maxRetryDelayMillis is less than initialRetryDelayMillis
+     */
+    public RiskSaveOutbox(
+            final SessionFactory sessionFactory,
+            final VistaDaoFactory vistaDaoFactory,
+            final int maxAttempts,
+            final long initialRetryDelayMillis,
+            final long maxRetryDelayMillis)
+    {
+        if (maxAttempts < 1 || initialRetryDelayMillis < 1 ||
+                maxRetryDelayMillis < initialRetryDelayMillis)
+        {
+            throw new IllegalArgumentException("invalid attempt limits");
+        }
+        fSessionFactory = Objects.requireNonNull(sessionFactory);
+        fVistaDaoFactory = Objects.requireNonNull(vistaDaoFactory);
+        fMaxAttempts = maxAttempts;
+        fInitialRetryDelayMillis = initialRetryDelayMillis;
+        fMaxRetryDelayMillis = maxRetryDelayMillis;
+        fOwner = UUID.randomUUID().toString();
+        fPollIntervalMillis = DEFAULT_POLL_INTERVAL_MILLIS;
+        fRunning = false;
+        fWakeRequested = false;
+        fSavedCount = 0;
+        fFailedAttemptCount = 0;
+    }
+
+    /**
+     * Sets the time between checks for due entries. Defaults to {@link
+     * #DEFAULT_POLL_INTERVAL_MILLIS}.
+     * @param pollIntervalMillis the interval in milliseconds
+     */
+    public void setPollIntervalMillis(final long pollIntervalMillis)
+    {
+        synchronized (fLock)
+        {
+            fPollIntervalMillis = pollIntervalMillis;
+        }
+    }
+
+    /**
+     * Starts the background thread, which first processes any entries left from a
+     * previous run. Does nothing if already started.
+     */
+    public void start()
+    {
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runSaver();
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        synchronized (fLock)
+        {
+            if (fRunning)
+            {
+                return;
+            }
+            fRunning = true;
+            fWakeRequested = true;
+            fThread = thread;
+        }
+        thread.start();
+        LOGGER.info("Started saving risk calculations to VistA in the background.");
+    }
+
+    /**
+     * Stops the background thread. Unsaved entries remain in the database for the next
+     * {@link #start()}. Does nothing if not started.
+     */
+    public void shutdown()
+    {
+        final Thread thread;
+        synchronized (fLock)
+        {
+            if (!fRunning)
+            {
+                return;
+            }
+            fRunning = false;
+            thread = fThread;
+            fThread = null;
+            fLock.notifyAll();
+        }
+
+        try
+        {
+            thread.join(SHUTDOWN_WAIT_MILLIS);
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Stopped saving risk calculations to VistA.");
+    }
+
+    /**
+     * Records that the given result must be saved to VistA on behalf of the given user.
+     * Must be called within the transaction persisting the result: the background thread
+     * is notified once that transaction commits.
+     * @param result the already-persisted result
+     * @param division the VistA division of the user
+     * @param duz the DUZ of the user
+     */
+    public void enqueue(final SignedResult result, final String division, final String duz)
+    {
+        final PendingRiskSave entry = new PendingRiskSave(
+                result, division, duz, new DateTime());
+        LOGGER.debug("Enqueuing {}.", entry);
+        fSessionFactory.getCurrentSession().save(entry);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter()
+                    {
+                        @Override
+                        public void afterCommit()
+                        {
+                            wake();
+                        }
+                    });
+        }
+        else
+        {
+            wake();
+        }
+    }
+
+    /**
+     * Tells the background thread to check for due entries now.
+     */
+    private void wake()
+    {
+        synchronized (fLock)
+        {
+            fWakeRequested = true;
+            fLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of entries waiting to be saved, whether due now or later.
+     */
+    public long getPendingCount()
+    {
+        return countEntries(Restrictions.isNotNull("nextAttemptTimestampNullable"));
+    }
+
+    /**
+     * Returns the number of entries which will not be retried.
+     */
+    public long getAbandonedCount()
+    {
+        return countEntries(Restrictions.isNull("nextAttemptTimestampNullable"));
+    }
+
+    /**
+     * Returns the number of results saved by this instance since startup.
+     */
+    public long getSavedCount()
+    {
+        synchronized (fLock)
+        {
+            return fSavedCount;
+        }
+    }
+
+    /**
+     * Returns the number of failed attempts by this instance since startup.
+     */
+    public long getFailedAttemptCount()
+    {
+        synchronized (fLock)
+        {
+            return fFailedAttemptCount;
+        }
+    }
+
+    /**
+     * Returns the maximum number of attempts before an entry is abandoned.
+     */
+    public int getMaxAttempts()
+    {
+        return fMaxAttempts;
+    }
+
+    /**
+     * Returns the identifier with which this instance claims entries.
+     */
+    String getOwner()
+    {
+        return fOwner;
+    }
+
+    /**
+     * Returns true if the background thread is running, false otherwise.
+     */
+    public boolean isRunning()
+    {
+        synchronized (fLock)
+        {
+            return fRunning;
+        }
+    }
+
+    /**
+     * Returns the delay before the next attempt after the given number of failed
+     * attempts.
+     */
+    long retryDelayMillis(final int failedAttempts)
+    {
+        // Stop doubling once past the maximum to avoid overflow.
+        long delay = fInitialRetryDelayMillis;
+        for (int i = 1; i < failedAttempts && delay < fMaxRetryDelayMillis; ++i)
+        {
+            delay *= 2;
+        }
+        return Math.min(delay, fMaxRetryDelayMillis);
+    }
+
+    /**
+     * The main loop of the background thread.
+     */
+    private void runSaver()
+    {
+        while (true)
+        {
+            synchronized (fLock)
+            {
+                try
+                {
+                    if (fRunning && !fWakeRequested)
+                    {
+                        fLock.wait(fPollIntervalMillis);
+                    }
+                }
+                catch (final InterruptedException ex)
+                {
+                    return;
+                }
+                if (!fRunning)
+                {
+                    return;
+                }
+                fWakeRequested = false;
+            }
+
+            try
+            {
+                // Keep going while there are full batches.
+                boolean more = true;
+                while (more && isRunning())
+                {
+                    more = (saveDueEntries() == BATCH_SIZE);
+                }
+            }
+            catch (final RuntimeException ex)
+            {
+                // Most likely the database is unavailable. Try again next time.
+                LOGGER.warn("Unable to process risk calculation saves: {}", ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Attempts to save one batch of due entries.
+     * @return the number of due entries found, whether or not this instance claimed
+     * them
+     */
+    int saveDueEntries()
+    {
+        final DateTime now = new DateTime();
+        final List<PendingRiskSave> entries = new ArrayList<>(BATCH_SIZE);
+        final List<SignedResult> results = new ArrayList<>(BATCH_SIZE);
+        final int dueCount = claimDueEntries(now, entries, results);
+        if (entries.isEmpty())
+        {
+            // Keep going if another instance claimed a full batch first.
+            return dueCount;
+        }
+        LOGGER.debug("Saving {} risk calculations to VistA.", entries.size());
+
+        // Call VistA outside of any transaction so that no database connection is held
+        // for the duration of the calls.
+        final List<PendingRiskSave> saved = new ArrayList<>(entries.size());
+        final List<PendingRiskSave> failed = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); ++i)
+        {
+            final PendingRiskSave entry = entries.get(i);
+            if (attemptSave(entry, results.get(i), now))
+            {
+                saved.add(entry);
+            }
+            else
+            {
+                failed.add(entry);
+            }
+        }
+
+        recordOutcomes(saved, failed);
+        synchronized (fLock)
+        {
+            fSavedCount += saved.size();
+            fFailedAttemptCount += failed.size();
+        }
+        return Math.max(entries.size(), dueCount);
+    }
+
+    /**
+     * Claims the due entries and loads them and their SignedResults (with outcomes
+     * initialized) in a single transaction. An entry whose result no longer exists is
+     * abandoned.
+     * @return the number of due entries found, including any claimed by another instance
+     * first
+     */
+    private int claimDueEntries(
+            final DateTime now,
+            final List<PendingRiskSave> entries,
+            final List<SignedResult> results)
+    {
+        final DateTime leaseExpiry = now.plus(CLAIM_LEASE_MILLIS);
+        final Session session = fSessionFactory.openSession();
+        try
+        {
+            final Transaction tx = session.beginTransaction();
+            try
+            {
+                final int lapsed = session.createQuery(ABANDON_LAPSED_HQL)
+                        .setParameter("lastError", LAPSED_CLAIM_ERROR)
+                        .setParameter("now", now)
+                        .executeUpdate();
+                if (lapsed > 0)
+                {
+                    LOGGER.error(
+                            "Abandoned {} risk calculation saves with lapsed claims.",
+                            lapsed);
+                }
+
+                final Criteria criteria = session.createCriteria(PendingRiskSave.class)
+                        .add(Restrictions.le("nextAttemptTimestampNullable", now))
+                        .addOrder(Order.asc("nextAttemptTimestampNullable"))
+                        .setProjection(Projections.id())
+                        .setMaxResults(BATCH_SIZE);
+                @SuppressWarnings("unchecked") // trust Hibernate
+                final List<Integer> dueIds = criteria.list();
+                for (final Integer resultId : dueIds)
+                {
+                    final int claimed = session.createQuery(CLAIM_HQL)
+                            .setParameter("owner", fOwner)
+                            .setParameter("leaseExpiry", leaseExpiry)
+                            .setParameter("resultId", resultId)
+                            .setParameter("now", now)
+                            .executeUpdate();
+                    if (claimed != 1)
+                    {
+                        LOGGER.debug("Result {} was claimed by another instance.", resultId);
+                        continue;
+                    }
+                    // Since the claim bypassed the Session, this loads the claimed state.
+                    final PendingRiskSave entry = (PendingRiskSave)session.get(
+                            PendingRiskSave.class, resultId);
+                    final SignedResult result = (SignedResult)session.get(
+                            SignedResult.class, resultId);
+                    if (result == null)
+                    {
+                        LOGGER.error("Abandoning {}: result does not exist.", entry);
+                        entry.abandon("The signed result does not exist.");
+                        continue;
+                    }
+                    // Load the lazy outcomes while the Session is open. (The
+                    // unmodifiable wrapper hides the collection from
+                    // Hibernate.initialize().)
+                    result.getOutcomes().size();
+                    entries.add(entry);
+                    results.add(result);
+                }
+                tx.commit();
+                return dueIds.size();
+            }
+            catch (final RuntimeException ex)
+            {
+                rollback(tx);
+                throw ex;
+            }
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+
+    /**
+     * Attempts to save the given result to VistA, updating the entry upon failure. Only
+     * reschedules the entry if the call did not reach VistA: see the class
+     * documentation.
+     * @return true if saved, false otherwise
+     */
+    private boolean attemptSave(
+            final PendingRiskSave entry, final SignedResult result, final DateTime now)
+    {
+        try
+        {
+            fVistaDaoFactory.getVistaSurgeryDao(entry.getDivision(), entry.getDuz())
+                .saveCalculationResult(result);
+            return true;
+        }
+        catch (final NonTransientDataAccessException ex)
+        {
+            // Retrying would not help.
+            LOGGER.error("Abandoning {}: {}", entry, ex.toString());
+            entry.abandon(ex.toString());
+            return false;
+        }
+        catch (final DivisionUnavailableException | ConnectionUnavailableException ex)
+        {
+            if (entry.getAttemptCount() + 1 >= fMaxAttempts)
+            {
+                LOGGER.error("Abandoning {} after {} attempts: {}",
+                        entry, fMaxAttempts, ex.toString());
+                entry.abandon(ex.toString());
+            }
+            else
+            {
+                final long delay = retryDelayMillis(entry.getAttemptCount() + 1);
+                LOGGER.warn("Unable to save {}, retrying in {} ms: {}",
+                        entry, delay, ex.toString());
+                entry.recordFailure(ex.toString(), now.plus(delay));
+            }
+            return false;
+        }
+        catch (final RuntimeException ex)
+        {
+            LOGGER.error("Abandoning {}: VistA may have saved it: {}", entry, ex.toString());
+            entry.abandon("Possibly saved: " + ex.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the saved entries and updates the failed ones in a single transaction,
+     * skipping any entry whose claim has since passed to another instance.
+     */
+    private void recordOutcomes(
+            final List<PendingRiskSave> saved, final List<PendingRiskSave> failed)
+    {
+        final Session session = fSessionFactory.openSession();
+        try
+        {
+            final Transaction tx = session.beginTransaction();
+            try
+            {
+                for (final PendingRiskSave entry : saved)
+                {
+                    final Query delete = session.createQuery(DELETE_HQL);
+                    executeIfOwned(delete, entry);
+                }
+                for (final PendingRiskSave entry : failed)
+                {
+                    final Query update;
+                    if (entry.isAbandoned())
+                    {
+                        update = session.createQuery(ABANDON_HQL);
+                    }
+                    else
+                    {
+                        update = session.createQuery(RESCHEDULE_HQL)
+                                .setParameter(
+                                        "nextAttempt", entry.getNextAttemptTimestamp().get());
+                    }
+                    update.setParameter("attemptCount", entry.getAttemptCount())
+                        .setParameter("lastError", entry.getLastError().get());
+                    executeIfOwned(update, entry);
+                }
+                tx.commit();
+            }
+            catch (final RuntimeException ex)
+            {
+                // The entries stay claimed, so they are not sent again: they are
+                // abandoned as possibly saved once the lease lapses.
+                rollback(tx);
+                throw ex;
+            }
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+
+    /**
+     * Executes the given update of the given entry, which only matches the entry while
+     * this instance owns it.
+     */
+    private void executeIfOwned(final Query update, final PendingRiskSave entry)
+    {
+        final int updated = update
+                .setParameter("resultId", entry.getResultId())
+                .setParameter("owner", fOwner)
+                .executeUpdate();
+        if (updated != 1)
+        {
+            LOGGER.warn("Not recording the outcome for {}: the claim has expired.", entry);
+        }
+    }
+
+    /**
+     * Counts the entries matching the given criterion in a new read-only transaction.
+     */
+    private long countEntries(final Criterion criterion)
+    {
+        final Session session = fSessionFactory.openSession();
+        try
+        {
+            final Transaction tx = session.beginTransaction();
+            try
+            {
+                final Number count = (Number)session.createCriteria(PendingRiskSave.class)
+                        .add(criterion)
+                        .setProjection(Projections.rowCount())
+                        .uniqueResult();
+                tx.commit();
+                return count.longValue();
+            }
+            catch (final RuntimeException ex)
+            {
+                rollback(tx);
+                throw ex;
+            }
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+
+    private static void rollback(final Transaction tx)
+    {
+        try
+        {
+            tx.rollback();
+        }
+        catch (final RuntimeException rollbackEx)
+        {
+            LOGGER.warn("Unable to roll back: {}", rollbackEx.toString());
+        }
+    }
+}
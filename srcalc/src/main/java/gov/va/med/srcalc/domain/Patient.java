@@ -10,7 +10,13 @@ import java.util.Map;
 import java.util.Objects;
 
 /**
- * Represents a patient (for which we perform a calculation).
+ * <p>Represents a patient (for which we perform a calculation).</p>
+ *
+ * <p>A Patient may be retrieved with only part of its data (see {@link
+ * PatientRetrievalPlan}). Such a Patient loads the remaining data on demand through its
+ * {@link Loader} when it is first accessed, so callers need not know which data was
+ * retrieved up front. Loaders are not serializable: a deserialized Patient leaves any
+ * unloaded data empty.</p>
  */
 public class Patient implements Serializable
 {
@@ -24,10 +30,25 @@ public class Patient implements Serializable
         Unknown
     }
 
+    /**
+     * Loads sections of a Patient's data that were not retrieved with the Patient.
+     */
+    public interface Loader
+    {
+        /**
+         * Retrieves the given data into the given Patient. Called while holding the
+         * Patient's lock, during which the Patient does not load any other data on
+         * demand.
+         * @param patient the Patient to populate
+         * @param plan the data to retrieve
+         */
+        void load(Patient patient, PatientRetrievalPlan plan);
+    }
+
     /**
      * Change this when changing the class!
      */
-    private static final long serialVersionUID = 2L;
+    private static final long serialVersionUID = 3L;
     
     private final int fDfn;
     
@@ -43,6 +64,13 @@ public class Patient implements Serializable
     private List<String> fActiveMedications;
     private List<ReferenceNote> fAdlNotes;
     private List<ReferenceNote> fDnrNotes;
+    private transient Loader fLoader;
+    /**
+     * The data not loaded yet. Only updated once loading has finished so that readers
+     * on other threads wait for the data rather than seeing it partially loaded.
+     */
+    private volatile PatientRetrievalPlan fUnloaded;
+    private transient boolean fLoading;
     
     /**
      * Constructs an instance with the given properties and empty collections for all
@@ -59,6 +87,65 @@ public class Patient implements Serializable
         this.fActiveMedications = new ArrayList<String>();
         this.fAdlNotes = new ArrayList<ReferenceNote>();
         this.fDnrNotes = new ArrayList<ReferenceNote>(); 
+        this.fUnloaded = PatientRetrievalPlan.NONE;
+    }
+    
+    /**
+     * Sets the Loader to retrieve the given data when it is first accessed.
+     * @param loader the Loader
+     * @param unloaded the data not retrieved yet
+     */
+    public synchronized void setLoader(final Loader loader, final PatientRetrievalPlan unloaded)
+    {
+        fLoader = Objects.requireNonNull(loader);
+        fUnloaded = Objects.requireNonNull(unloaded);
+    }
+    
+    /**
+     * Returns the data that has not been loaded yet.
+     */
+    public PatientRetrievalPlan getUnloaded()
+    {
+        return fUnloaded;
+    }
+    
+    /**
+     * Loads any of the given data that has not been loaded yet. Loading all needed data
+     * with one call is more efficient than loading each part on demand. Does nothing if
+     * this Patient has no Loader.
+     * @param plan the data to load
+     */
+    public void load(final PatientRetrievalPlan plan)
+    {
+        // Avoid locking once everything needed has been loaded.
+        if (!fUnloaded.overlaps(plan))
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            // Do not load recursively: the Loader uses the accessors to populate this
+            // Patient.
+            if (fLoader == null || fLoading)
+            {
+                return;
+            }
+            final PatientRetrievalPlan toLoad = fUnloaded.intersection(plan);
+            if (toLoad.isEmpty())
+            {
+                return;
+            }
+            fLoading = true;
+            try
+            {
+                fLoader.load(this, toLoad);
+            }
+            finally
+            {
+                fLoading = false;
+                fUnloaded = fUnloaded.minus(toLoad);
+            }
+        }
     }
     
     /**
@@ -102,6 +189,7 @@ public class Patient implements Serializable
      */
     public RetrievedValue getBmi()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.VITALS));
         return fBmi;
     }
     
@@ -119,6 +207,7 @@ public class Patient implements Serializable
      */
     public RetrievedValue getWeight()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.VITALS));
         return fWeight;
     }
     
@@ -138,6 +227,7 @@ public class Patient implements Serializable
      */
     public RetrievedValue getWeight6MonthsAgo()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.VITALS));
         return fWeight6MonthsAgo;
     }
     
@@ -155,6 +245,7 @@ public class Patient implements Serializable
      */
     public RetrievedValue getHeight()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.VITALS));
         return fHeight;
     }
     
@@ -172,15 +263,28 @@ public class Patient implements Serializable
      */
     public Map<VistaLabs,RetrievedValue> getLabs()
     {
+        load(PatientRetrievalPlan.ALL_LABS);
         return fLabs;
     }
     
+    /**
+     * Returns the given lab's value, if it was able to be retrieved. Unlike {@link
+     * #getLabs()}, only loads the given lab if it has not been loaded.
+     * @return the value, or null if there is none
+     */
+    public RetrievedValue getLab(final VistaLabs lab)
+    {
+        load(PatientRetrievalPlan.ofLab(lab));
+        return fLabs.get(lab);
+    }
+    
     /**
      * Returns the patient's health factors as a list of {@link HealthFactor}s.
      * @return a mutable list
      */
     public List<HealthFactor> getHealthFactors()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.HEALTH_FACTORS));
         return fHealthFactors;
     }
     
@@ -192,6 +296,7 @@ public class Patient implements Serializable
      */
     public List<String> getActiveMedications()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.ACTIVE_MEDICATIONS));
         return fActiveMedications;
     }
     
@@ -201,6 +306,7 @@ public class Patient implements Serializable
      */
     public List<ReferenceNote> getAdlNotes()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.ADL_NOTES));
         return fAdlNotes;
     }
     
@@ -210,6 +316,7 @@ public class Patient implements Serializable
      */
     public List<ReferenceNote> getDnrNotes()
     {
+        load(PatientRetrievalPlan.of(PatientRetrievalPlan.Section.DNR_NOTES));
         return fDnrNotes;
     }
     
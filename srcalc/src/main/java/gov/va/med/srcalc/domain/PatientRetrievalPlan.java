@@ -0,0 +1,303 @@
+package gov.va.med.srcalc.domain;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import gov.va.med.srcalc.domain.calculation.ValueRetriever;
+import gov.va.med.srcalc.domain.model.Variable;
+
+/**
+ * <p>Identifies which sections of a {@link Patient}'s data to retrieve from VistA
+ * beyond the basic demographics (name, gender, and age), which are always retrieved.
+ * Each section (and each lab) corresponds to separate remote procedure calls, so
+ * retrieving only what a specialty needs saves calls.</p>
+ *
+ * <p>Immutable.</p>
+ */
+public final class PatientRetrievalPlan implements Serializable
+{
+    /**
+     * The sections of patient data other than labs, which are identified by {@link
+     * VistaLabs}.
+     */
+    public enum Section
+    {
+        /**
+         * Height, weight, weight 6 months ago, and BMI.
+         */
+        VITALS,
+        HEALTH_FACTORS,
+        ACTIVE_MEDICATIONS,
+        ADL_NOTES,
+        DNR_NOTES
+    }
+
+    /**
+     * Change this when changing the class!
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Retrieves nothing beyond the basic demographics.
+     */
+    public static final PatientRetrievalPlan NONE = new PatientRetrievalPlan(
+            EnumSet.noneOf(Section.class), EnumSet.noneOf(VistaLabs.class));
+
+    /**
+     * Retrieves all patient data.
+     */
+    public static final PatientRetrievalPlan ALL = new PatientRetrievalPlan(
+            EnumSet.allOf(Section.class), EnumSet.allOf(VistaLabs.class));
+
+    /**
+     * Retrieves every lab and nothing else.
+     */
+    public static final PatientRetrievalPlan ALL_LABS = new PatientRetrievalPlan(
+            EnumSet.noneOf(Section.class), EnumSet.allOf(VistaLabs.class));
+
+    /**
+     * Retrieves the reference information displayed for every specialty: health factors
+     * and active medications.
+     */
+    public static final PatientRetrievalPlan MINIMAL = new PatientRetrievalPlan(
+            EnumSet.of(Section.HEALTH_FACTORS, Section.ACTIVE_MEDICATIONS),
+            EnumSet.noneOf(VistaLabs.class));
+
+    /**
+     * Cached single-section plans to avoid allocating them on each Patient access.
+     */
+    private static final Map<Section, PatientRetrievalPlan> SECTION_PLANS;
+
+    /**
+     * Cached single-lab plans to avoid allocating them on each Patient access.
+     */
+    private static final Map<VistaLabs, PatientRetrievalPlan> LAB_PLANS;
+
+    static
+    {
+        SECTION_PLANS = new EnumMap<>(Section.class);
+        for (final Section section : Section.values())
+        {
+            SECTION_PLANS.put(section, new PatientRetrievalPlan(
+                    EnumSet.of(section), EnumSet.noneOf(VistaLabs.class)));
+        }
+        LAB_PLANS = new EnumMap<>(VistaLabs.class);
+        for (final VistaLabs lab : VistaLabs.values())
+        {
+            LAB_PLANS.put(lab, new PatientRetrievalPlan(
+                    EnumSet.noneOf(Section.class), EnumSet.of(lab)));
+        }
+    }
+
+    private final ImmutableSet<Section> fSections;
+    private final ImmutableSet<VistaLabs> fLabs;
+
+    private PatientRetrievalPlan(final Set<Section> sections, final Set<VistaLabs> labs)
+    {
+        fSections = Sets.immutableEnumSet(sections);
+        fLabs = Sets.immutableEnumSet(labs);
+    }
+
+    /**
+     * Returns a plan retrieving only the given section.
+     */
+    public static PatientRetrievalPlan of(final Section section)
+    {
+        return SECTION_PLANS.get(Objects.requireNonNull(section));
+    }
+
+    /**
+     * Returns a plan retrieving only the given lab.
+     */
+    public static PatientRetrievalPlan ofLab(final VistaLabs lab)
+    {
+        return LAB_PLANS.get(Objects.requireNonNull(lab));
+    }
+
+    /**
+     * Returns the plan retrieving the data the given retriever reads from a Patient.
+     * Unrecognized retrievers are assumed to need all data.
+     */
+    public static PatientRetrievalPlan forRetriever(final ValueRetriever retriever)
+    {
+        switch (retriever)
+        {
+            case GENDER:
+            case AGE:
+                return NONE;
+            case BMI:
+            case WEIGHT:
+            case WEIGHT_6_MONTHS_AGO:
+            case HEIGHT:
+                return of(Section.VITALS);
+            case ALBUMIN:
+                return ofLab(VistaLabs.ALBUMIN);
+            case CREATININE:
+                return ofLab(VistaLabs.CREATININE);
+            case ALKALINE_PHOSPHATASE:
+                return ofLab(VistaLabs.ALKALINE_PHOSPHATASE);
+            case BUN:
+                return ofLab(VistaLabs.BUN);
+            case SGOT:
+                return ofLab(VistaLabs.SGOT);
+            case WBC:
+                return ofLab(VistaLabs.WBC);
+            case PLATELETS:
+                return ofLab(VistaLabs.PLATELETS);
+            case HEMATOCRIT:
+                return ofLab(VistaLabs.HEMATOCRIT);
+            case SODIUM:
+                return ofLab(VistaLabs.SODIUM);
+            case INR:
+                return ofLab(VistaLabs.INR);
+            case BILIRUBIN:
+                return ofLab(VistaLabs.BILIRUBIN);
+            case PTT:
+                return ofLab(VistaLabs.PTT);
+            case POTASSIUM:
+                return ofLab(VistaLabs.POTASSIUM);
+            case HGA1C:
+                return ofLab(VistaLabs.HGA1C);
+            case GLUCOSE:
+                return ofLab(VistaLabs.GLUCOSE);
+            case ADL_NOTES:
+                return of(Section.ADL_NOTES);
+            case DNR_NOTES:
+                return of(Section.DNR_NOTES);
+            default:
+                return ALL;
+        }
+    }
+
+    /**
+     * Returns the plan retrieving the data needed to retrieve values for the given
+     * variables (see {@link Variable#getRetriever()}) plus the {@link #MINIMAL} data
+     * displayed for every specialty.
+     */
+    public static PatientRetrievalPlan forVariables(
+            final Collection<? extends Variable> variables)
+    {
+        final EnumSet<Section> sections = EnumSet.noneOf(Section.class);
+        sections.addAll(MINIMAL.fSections);
+        final EnumSet<VistaLabs> labs = EnumSet.noneOf(VistaLabs.class);
+        for (final Variable variable : variables)
+        {
+            if (variable.getRetriever() != null)
+            {
+                final PatientRetrievalPlan plan = forRetriever(variable.getRetriever());
+                sections.addAll(plan.fSections);
+                labs.addAll(plan.fLabs);
+            }
+        }
+        return new PatientRetrievalPlan(sections, labs);
+    }
+
+    /**
+     * Returns the sections to retrieve.
+     */
+    public ImmutableSet<Section> getSections()
+    {
+        return fSections;
+    }
+
+    /**
+     * Returns the labs to retrieve.
+     */
+    public ImmutableSet<VistaLabs> getLabs()
+    {
+        return fLabs;
+    }
+
+    /**
+     * Returns true if this plan retrieves the given section.
+     */
+    public boolean includes(final Section section)
+    {
+        return fSections.contains(section);
+    }
+
+    /**
+     * Returns true if this plan retrieves nothing beyond the basic demographics.
+     */
+    public boolean isEmpty()
+    {
+        return fSections.isEmpty() && fLabs.isEmpty();
+    }
+
+    /**
+     * Returns true if this plan and the given plan retrieve any of the same data.
+     */
+    public boolean overlaps(final PatientRetrievalPlan other)
+    {
+        return !Sets.intersection(fSections, other.fSections).isEmpty() ||
+                !Sets.intersection(fLabs, other.fLabs).isEmpty();
+    }
+
+    /**
+     * Returns a plan retrieving the data retrieved by either this plan or the given plan.
+     */
+    public PatientRetrievalPlan union(final PatientRetrievalPlan other)
+    {
+        return new PatientRetrievalPlan(
+                Sets.union(fSections, other.fSections),
+                Sets.union(fLabs, other.fLabs));
+    }
+
+    /**
+     * Returns a plan retrieving the data retrieved by both this plan and the given plan.
+     */
+    public PatientRetrievalPlan intersection(final PatientRetrievalPlan other)
+    {
+        return new PatientRetrievalPlan(
+                Sets.intersection(fSections, other.fSections),
+                Sets.intersection(fLabs, other.fLabs));
+    }
+
+    /**
+     * Returns a plan retrieving the data retrieved by this plan but not the given plan.
+     */
+    public PatientRetrievalPlan minus(final PatientRetrievalPlan other)
+    {
+        return new PatientRetrievalPlan(
+                Sets.difference(fSections, other.fSections),
+                Sets.difference(fLabs, other.fLabs));
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (o instanceof PatientRetrievalPlan) // false if o == null
+        {
+            final PatientRetrievalPlan other = (PatientRetrievalPlan) o;
+            return fSections.equals(other.fSections) && fLabs.equals(other.fLabs);
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fSections, fLabs);
+    }
+
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+                .add("sections", fSections)
+                .add("labs", fLabs)
+                .toString();
+    }
+}
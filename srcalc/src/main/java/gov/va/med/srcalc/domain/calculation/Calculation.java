@@ -175,17 +175,7 @@ public class Calculation implements Serializable
         final TreeMap<String, Float> outcomes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         // Collect all missing variables into this set.
         final Set<Variable> missingVars = new HashSet<>();
-        for (final RiskModel model : getSpecialty().getRiskModels())
-        {
-            try
-            {
-                outcomes.put(model.getDisplayName(), model.calculate(values));
-            }
-            catch (final MissingValuesException e)
-            {
-                missingVars.addAll(e.getMissingVariables());
-            }
-        }
+        calculateModels(values, outcomes, missingVars);
 
         if (!missingVars.isEmpty())
         {
@@ -216,6 +206,44 @@ public class Calculation implements Serializable
         return result;
     }
     
+    /**
+     * Calculates the outcome of each risk model which has all of its values, without
+     * running the calculation: the result is not recorded and this Calculation is not
+     * changed. Intended to update the outcomes as the user enters values.
+     * @param values the variable values entered so far
+     * @return the outcomes and the variables still missing a value
+     * @throws IllegalArgumentException if incomplete values are provided
+     */
+    public OutcomePreview preview(final Collection<Value> values)
+    {
+        final TreeMap<String, Float> outcomes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final Set<Variable> missingVars = new HashSet<>();
+        calculateModels(values, outcomes, missingVars);
+        return new OutcomePreview(outcomes, missingVars);
+    }
+    
+    /**
+     * Calculates each risk model of the specialty with the given values, putting each
+     * outcome into the given map or the model's missing variables into the given set.
+     */
+    private void calculateModels(
+            final Collection<Value> values,
+            final Map<String, Float> outcomes,
+            final Set<Variable> missingVars)
+    {
+        for (final RiskModel model : getSpecialty().getRiskModels())
+        {
+            try
+            {
+                outcomes.put(model.getDisplayName(), model.calculate(values));
+            }
+            catch (final MissingValuesException e)
+            {
+                missingVars.addAll(e.getMissingVariables());
+            }
+        }
+    }
+    
     /**
      * Constructs a HistoricalCalculation object from this Calculation, given the
      * timestamp of the first result.
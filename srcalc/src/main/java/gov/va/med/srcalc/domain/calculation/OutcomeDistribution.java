@@ -0,0 +1,168 @@
+package gov.va.med.srcalc.domain.calculation;
+
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>Encapsulates the distribution of calculated risk for a single risk model among
+ * signed results from a single specialty and station. The risks are counted into
+ * {@value #BIN_COUNT} equal-width bins covering 0% to 100%. This object is intended to be
+ * computed by the database so that the individual outcomes do not need to be loaded.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class OutcomeDistribution
+{
+    /**
+     * The number of bins in each distribution.
+     */
+    public static final int BIN_COUNT = 10;
+    
+    private final String fRiskModelName;
+    private final String fSpecialtyName;
+    private final String fStationNumber;
+    private final ImmutableList<Integer> fBinCounts;
+    
+    /**
+     * Constructs an instance with the given properties.
+     * @param riskModelName See {@link #getRiskModelName()}.
+     * @param specialtyName See {@link #getSpecialtyName()}.
+     * @param stationNumber See {@link #getStationNumber()}.
+     * @param binCounts See {@link #getBinCounts()}. Defensively copied.
+     * @throws NullPointerException if any argument is null
+     * @throws IllegalArgumentException if binCounts does not have {@link #BIN_COUNT}
+     * elements
+     */
+    public OutcomeDistribution(
+            final String riskModelName,
+            final String specialtyName,
+            final String stationNumber,
+            final List<Integer> binCounts)
+    {
+        fRiskModelName = Objects.requireNonNull(riskModelName);
+        fSpecialtyName = Objects.requireNonNull(specialtyName);
+        fStationNumber = Objects.requireNonNull(stationNumber);
+        fBinCounts = ImmutableList.copyOf(binCounts);
+        if (fBinCounts.size() != BIN_COUNT)
+        {
+            throw new IllegalArgumentException(
+                    "There must be exactly " + BIN_COUNT + " bin counts.");
+        }
+    }
+    
+    /**
+     * Returns the bin index for the given risk fraction. Risks below 0 or above 1 are
+     * counted in the first and last bins, respectively.
+     * @param risk the risk as a fraction (i.e., not a percentage)
+     */
+    public static int binIndex(final float risk)
+    {
+        final int index = (int)Math.floor((double)risk * BIN_COUNT);
+        return Math.max(0, Math.min(BIN_COUNT - 1, index));
+    }
+    
+    /**
+     * Returns the lower bounds, as percentages, of each bin in order. Useful for
+     * labeling the bins.
+     * @return an immutable list of {@link #BIN_COUNT} elements
+     */
+    public static ImmutableList<Integer> getBinLowerPercentages()
+    {
+        final ImmutableList.Builder<Integer> bounds = ImmutableList.builder();
+        for (int i = 0; i < BIN_COUNT; ++i)
+        {
+            bounds.add(i * 100 / BIN_COUNT);
+        }
+        return bounds.build();
+    }
+    
+    /**
+     * Returns the name of the risk model whose outcomes are counted.
+     */
+    public String getRiskModelName()
+    {
+        return fRiskModelName;
+    }
+    
+    /**
+     * Returns the specialty name of the counted calculations.
+     * @see HistoricalCalculation#getSpecialtyName()
+     */
+    public String getSpecialtyName()
+    {
+        return fSpecialtyName;
+    }
+    
+    /**
+     * Returns the station number of the counted calculations.
+     * @see HistoricalCalculation#getUserStation()
+     */
+    public String getStationNumber()
+    {
+        return fStationNumber;
+    }
+    
+    /**
+     * Returns the number of outcomes in each bin, in ascending order of risk. The bin at
+     * index {@code i} holds risks from {@code i / BIN_COUNT} (inclusive) to {@code (i + 1) /
+     * BIN_COUNT} (exclusive), except that the first and last bins also hold any risks
+     * below 0% and at or above 100%, respectively.
+     * @return an immutable list of {@link #BIN_COUNT} elements
+     */
+    public ImmutableList<Integer> getBinCounts()
+    {
+        return fBinCounts;
+    }
+    
+    /**
+     * Returns the total number of outcomes in all bins.
+     */
+    public int getTotalCount()
+    {
+        int total = 0;
+        for (final int count : fBinCounts)
+        {
+            total += count;
+        }
+        return total;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+                .add("riskModelName", fRiskModelName)
+                .add("specialtyName", fSpecialtyName)
+                .add("stationNumber", fStationNumber)
+                .add("binCounts", fBinCounts)
+                .toString();
+    }
+    
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (obj instanceof OutcomeDistribution)
+        {
+            final OutcomeDistribution other = (OutcomeDistribution)obj;
+            
+            return Objects.equals(this.fRiskModelName, other.fRiskModelName) &&
+                    Objects.equals(this.fSpecialtyName, other.fSpecialtyName) &&
+                    Objects.equals(this.fStationNumber, other.fStationNumber) &&
+                    Objects.equals(this.fBinCounts, other.fBinCounts);
+        }
+        else
+        {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fRiskModelName, fSpecialtyName, fStationNumber, fBinCounts);
+    }
+}
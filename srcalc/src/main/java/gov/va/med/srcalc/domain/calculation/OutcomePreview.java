@@ -0,0 +1,71 @@
+package gov.va.med.srcalc.domain.calculation;
+
+import java.util.Map;
+import java.util.Set;
+
+import gov.va.med.srcalc.domain.model.Variable;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * <p>The outcomes of a calculation for a possibly-incomplete set of values, for
+ * presentation while the user is still entering them. Unlike a {@link
+ * CalculationResult}, a preview is not a calculation run: it is never recorded or
+ * signed.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class OutcomePreview
+{
+    private final ImmutableSortedMap<String, Float> fOutcomes;
+    private final ImmutableSet<Variable> fMissingVariables;
+
+    /**
+     * Constructs an instance.
+     * @param outcomes the outcomes of the risk models which had all of their values
+     * @param missingVariables the variables without values needed by the other risk
+     * models
+     */
+    public OutcomePreview(
+            final Map<String, Float> outcomes, final Set<? extends Variable> missingVariables)
+    {
+        fOutcomes = ImmutableSortedMap.copyOf(outcomes, String.CASE_INSENSITIVE_ORDER);
+        fMissingVariables = ImmutableSet.copyOf(missingVariables);
+    }
+
+    /**
+     * Returns the outcome of each risk model which had all of its values, keyed by
+     * the risk model's display name.
+     */
+    public ImmutableSortedMap<String, Float> getOutcomes()
+    {
+        return fOutcomes;
+    }
+
+    /**
+     * Returns the variables which still need a value before the calculation can be run.
+     * Empty if the calculation is complete.
+     */
+    public ImmutableSet<Variable> getMissingVariables()
+    {
+        return fMissingVariables;
+    }
+
+    /**
+     * Returns true if all risk models had their values, i.e., if running the calculation
+     * with the same values would succeed.
+     */
+    public boolean isComplete()
+    {
+        return fMissingVariables.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+                "Outcomes %s, missing %s", fOutcomes, fMissingVariables);
+    }
+}
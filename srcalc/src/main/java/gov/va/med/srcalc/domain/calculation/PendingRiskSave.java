@@ -0,0 +1,319 @@
+package gov.va.med.srcalc.domain.calculation;
+
+import gov.va.med.srcalc.util.Preconditions;
+
+import java.util.Objects;
+
+import javax.persistence.*;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+/**
+ * <p>Records that a {@link SignedResult} still needs to be saved to VistA Surgery. These
+ * are written in the same transaction as the SignedResult and removed once VistA has
+ * accepted the result, which makes the table an outbox: a result is never lost even if
+ * VistA is down when the calculation is signed.</p>
+ *
+ * <p>The identifier is the SignedResult's identifier, so there can be at most one pending
+ * save per result and a retried save always refers to the same result.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+@Entity
+@Table(name = "pending_risk_save")
+public final class PendingRiskSave
+{
+    /**
+     * The maximum length of a DUZ String.
+     */
+    public static final int DUZ_MAX = 20;
+
+    /**
+     * The maximum length of {@link #getLastError()}. Longer messages are truncated.
+     */
+    public static final int LAST_ERROR_MAX = 255;
+
+    /**
+     * The maximum length of {@link #getClaimOwner()}.
+     */
+    public static final int CLAIM_OWNER_MAX = 36;
+
+    private int fResultId;
+    private String fDivision;
+    private String fDuz;
+    private int fAttemptCount;
+    private DateTime fCreatedTimestamp;
+    private Optional<DateTime> fNextAttemptTimestamp;
+    private Optional<String> fLastError;
+    private Optional<String> fClaimOwner;
+
+    /**
+     * Intended for reflection-based construction only. Business code should use the other
+     * constructor.
+     */
+    PendingRiskSave()
+    {
+        fNextAttemptTimestamp = Optional.absent();
+        fLastError = Optional.absent();
+        fClaimOwner = Optional.absent();
+    }
+
+    /**
+     * Constructs an instance for a save that has not been attempted yet and is due now.
+     * @param result the result to save, which must already have an identifier
+     * @param division see {@link #getDivision()}
+     * @param duz see {@link #getDuz()}
+     * @param now the current time
+     * @throws IllegalArgumentException if the division or DUZ is empty or too long
+     */
+    public PendingRiskSave(
+            final SignedResult result,
+            final String division,
+            final String duz,
+            final DateTime now)
+    {
+        fResultId = result.getId();
+        fDivision = Preconditions.requireWithin(
+                division, 1, HistoricalCalculation.STATION_NUMBER_MAX);
+        fDuz = Preconditions.requireWithin(duz, 1, DUZ_MAX);
+        fAttemptCount = 0;
+        fCreatedTimestamp = Objects.requireNonNull(now);
+        fNextAttemptTimestamp = Optional.of(now);
+        fLastError = Optional.absent();
+        fClaimOwner = Optional.absent();
+    }
+
+    /**
+     * The identifier of the {@link SignedResult} to save. Also identifies this object.
+     */
+    @Id
+    public int getResultId()
+    {
+        return fResultId;
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setResultId(final int resultId)
+    {
+        fResultId = resultId;
+    }
+
+    /**
+     * Returns the VistA division in which to save the result.
+     */
+    @Basic
+    @Column(nullable = false, length = HistoricalCalculation.STATION_NUMBER_MAX)
+    public String getDivision()
+    {
+        return fDivision;
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setDivision(final String division)
+    {
+        fDivision = division;
+    }
+
+    /**
+     * Returns the DUZ of the user who signed the result, on whose behalf to save it.
+     */
+    @Basic
+    @Column(nullable = false, length = DUZ_MAX)
+    public String getDuz()
+    {
+        return fDuz;
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setDuz(final String duz)
+    {
+        fDuz = duz;
+    }
+
+    /**
+     * Returns the number of failed attempts to save the result so far.
+     */
+    @Basic
+    public int getAttemptCount()
+    {
+        return fAttemptCount;
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setAttemptCount(final int attemptCount)
+    {
+        fAttemptCount = attemptCount;
+    }
+
+    /**
+     * Returns when the result was signed and this object created.
+     */
+    @Basic
+    @Column(nullable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    public DateTime getCreatedTimestamp()
+    {
+        return fCreatedTimestamp;
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setCreatedTimestamp(final DateTime createdTimestamp)
+    {
+        fCreatedTimestamp = createdTimestamp;
+    }
+
+    /**
+     * Returns the earliest time at which to (re)try saving the result.
+     * @return an Optional containing the time, or absent if saving has been abandoned
+     */
+    @Transient
+    public Optional<DateTime> getNextAttemptTimestamp()
+    {
+        return fNextAttemptTimestamp;
+    }
+
+    /**
+     * Similar to {@link #getNextAttemptTimestamp()}, but represents an abandoned save as
+     * null. Purely to support Hibernate, which does not support Guava's Optional class.
+     */
+    @Basic
+    @Column(name = "next_attempt_timestamp", nullable = true)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    DateTime getNextAttemptTimestampNullable()
+    {
+        return fNextAttemptTimestamp.orNull();
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setNextAttemptTimestampNullable(final DateTime nextAttemptTimestamp)
+    {
+        fNextAttemptTimestamp = Optional.fromNullable(nextAttemptTimestamp);
+    }
+
+    /**
+     * Returns true if saving the result has been abandoned, false if it will be retried.
+     */
+    @Transient
+    public boolean isAbandoned()
+    {
+        return !fNextAttemptTimestamp.isPresent();
+    }
+
+    /**
+     * Returns a description of the most recent failure, if any.
+     */
+    @Transient
+    public Optional<String> getLastError()
+    {
+        return fLastError;
+    }
+
+    /**
+     * Similar to {@link #getLastError()}, but represents no error as null. Purely to
+     * support Hibernate, which does not support Guava's Optional class.
+     */
+    @Basic
+    @Column(name = "last_error", nullable = true, length = LAST_ERROR_MAX)
+    String getLastErrorNullable()
+    {
+        return fLastError.orNull();
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setLastErrorNullable(final String lastError)
+    {
+        fLastError = Optional.fromNullable(lastError);
+    }
+
+    /**
+     * Returns the application instance which has claimed this entry in order to save the
+     * result, if any. While claimed, {@link #getNextAttemptTimestamp()} is when the claim
+     * expires.
+     */
+    @Transient
+    public Optional<String> getClaimOwner()
+    {
+        return fClaimOwner;
+    }
+
+    /**
+     * Similar to {@link #getClaimOwner()}, but represents no claim as null. Purely to
+     * support Hibernate, which does not support Guava's Optional class.
+     */
+    @Basic
+    @Column(name = "claimed_by", nullable = true, length = CLAIM_OWNER_MAX)
+    String getClaimOwnerNullable()
+    {
+        return fClaimOwner.orNull();
+    }
+
+    /**
+     * For reflection-based construction only.
+     */
+    void setClaimOwnerNullable(final String claimOwner)
+    {
+        fClaimOwner = Optional.fromNullable(claimOwner);
+    }
+
+    /**
+     * Records a failed attempt which should be retried, releasing any claim.
+     * @param error a description of the failure, truncated if necessary
+     * @param nextAttempt when to retry
+     */
+    public void recordFailure(final String error, final DateTime nextAttempt)
+    {
+        ++fAttemptCount;
+        fLastError = Optional.of(truncate(error));
+        fNextAttemptTimestamp = Optional.of(nextAttempt);
+        fClaimOwner = Optional.absent();
+    }
+
+    /**
+     * Records a failed attempt after which the save should not be retried, releasing
+     * any claim.
+     * @param error a description of the failure, truncated if necessary
+     */
+    public void abandon(final String error)
+    {
+        ++fAttemptCount;
+        fLastError = Optional.of(truncate(error));
+        fNextAttemptTimestamp = Optional.absent();
+        fClaimOwner = Optional.absent();
+    }
+
+    private static String truncate(final String error)
+    {
+        return (error.length() > LAST_ERROR_MAX) ? error.substring(0, LAST_ERROR_MAX) : error;
+    }
+
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+                .add("resultId", fResultId)
+                .add("division", fDivision)
+                .add("attemptCount", fAttemptCount)
+                .add("nextAttempt", fNextAttemptTimestamp)
+                .add("claimOwner", fClaimOwner)
+                .toString();
+    }
+}
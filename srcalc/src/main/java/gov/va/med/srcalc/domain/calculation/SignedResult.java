@@ -11,6 +11,7 @@ import java.util.Objects;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Immutable;
 import org.hibernate.annotations.Type;
 import org.joda.time.DateTime;
@@ -34,6 +35,13 @@ import com.google.common.collect.ImmutableMap;
 @Immutable
 public final class SignedResult
 {
+    /**
+     * When the inputs or outcomes of one SignedResult in a Session are loaded, also load
+     * those of up to this many other SignedResults in the same query. This avoids one
+     * query per result when iterating over search results.
+     */
+    public static final int COLLECTION_BATCH_SIZE = 250;
+    
     private int fId;
     private HistoricalCalculation fHistoricalCalculation;
     private int fPatientDfn;
@@ -243,7 +251,8 @@ public final class SignedResult
      * Returns the calculation input values as a Map from variable key to value.
      * @return an unmodifiable map
      */
-    @ElementCollection(fetch = FetchType.LAZY) // No code actually uses these.
+    @ElementCollection(fetch = FetchType.LAZY) // Only used for archiving.
+    @BatchSize(size = COLLECTION_BATCH_SIZE)
     // Override various defaults for a better schema.
     @CollectionTable(
             name = "signed_result_input",
@@ -278,6 +287,7 @@ public final class SignedResult
     // Though there are few outcomes per result, do a lazy fetch to ensure correct counts
     // when searching.
     @ElementCollection(fetch = FetchType.LAZY)
+    @BatchSize(size = COLLECTION_BATCH_SIZE)
     // Override various defaults for a better schema.
     @CollectionTable(
             name = "signed_result_outcome",
@@ -1,12 +1,15 @@
 package gov.va.med.srcalc.domain.calculation;
 
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import gov.va.med.srcalc.domain.Patient;
 import gov.va.med.srcalc.domain.ReferenceNote;
 import gov.va.med.srcalc.domain.VistaLabs;
 import gov.va.med.srcalc.domain.model.Variable;
-import gov.va.med.srcalc.util.XmlDateAdapter;
 import gov.va.med.srcalc.web.view.VariableEntry;
 
 /**
@@ -198,18 +201,9 @@ public enum ValueRetriever
     ADL_NOTES
     {
         @Override
-        public String retrieveReferenceInfo(final Patient patient, final Variable var)
+        public List<ReferenceNote> getReferenceNotes(final Patient patient)
         {
-            final StringBuilder variableRefInfo = new StringBuilder();
-            for(final ReferenceNote note: patient.getAdlNotes())
-            {
-                // Add a line break here so that the note body is separated.
-                variableRefInfo.append(String.format("Local Title: %s Sign Date: %s%n%s%n%n",
-                        note.getLocalTitle(), 
-                        XmlDateAdapter.REFERENCE_NOTE_DATE_FORMAT.print(note.getSignDate()),
-                        note.getNoteBody()));
-            }
-            return variableRefInfo.toString();
+            return Collections.unmodifiableList(patient.getAdlNotes());
         }
     },
     POTASSIUM
@@ -242,19 +236,9 @@ public enum ValueRetriever
     DNR_NOTES
     {
         @Override
-        public String retrieveReferenceInfo(final Patient patient, final Variable var)
+        public List<ReferenceNote> getReferenceNotes(final Patient patient)
         {
-            final StringBuilder variableRefInfo = new StringBuilder();
-            for(final ReferenceNote note: patient.getDnrNotes())
-            {
-                // Add a line break here so that the note body is separated.
-                variableRefInfo.append(String.format(
-                        "Local Title: %s Sign Date: %s%n%s%n%n",
-                        note.getLocalTitle(),
-                        XmlDateAdapter.REFERENCE_NOTE_DATE_FORMAT.print(note.getSignDate()),
-                        note.getNoteBody()));
-            }
-            return variableRefInfo.toString();
+            return Collections.unmodifiableList(patient.getDnrNotes());
         }
     };
     
@@ -321,15 +305,15 @@ public enum ValueRetriever
     }
     
     /**
-     * Attempt to retrieve any reference information for this instance. Return an empty 
-     * String if here is no reference information for the specified variable.
+     * Returns the patient's reference notes for this instance in the order VistA
+     * returned them, or an empty list if there are none. The notes are presented on request rather than
+     * embedded in the variable entry page.
      * @param patient the current patient
-     * @param var the variable to get reference information for
-     * @return the reference information or an empty String
+     * @return an unmodifiable view of the notes
      */
-    public String retrieveReferenceInfo(final Patient patient, final Variable var)
+    public List<ReferenceNote> getReferenceNotes(final Patient patient)
     {
-        return "";
+        return ImmutableList.of();
     }
     
     /**
@@ -346,7 +330,7 @@ public enum ValueRetriever
             final VariableEntry variableEntry,
             final String key)
     {
-        final RetrievedValue labValue = patient.getLabs().get(vistaLab);
+        final RetrievedValue labValue = patient.getLab(vistaLab);
         if(labValue != null)
         {
             variableEntry.putRetrievedValue(key, labValue);
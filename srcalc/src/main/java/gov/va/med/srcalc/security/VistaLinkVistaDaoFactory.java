@@ -2,14 +2,92 @@ package gov.va.med.srcalc.security;
 
 import gov.va.med.srcalc.vista.*;
 import gov.va.med.srcalc.vista.vistalink.VistaLinkAuthenticator;
+import gov.va.med.srcalc.vista.vistalink.VistaLinkConnectionFactoryRegistry;
 import gov.va.med.srcalc.vista.vistalink.VistaLinkProcedureCaller;
 import gov.va.med.srcalc.vista.vistalink.VistaLinkUtil;
 
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+
 /**
  * A VistaDaoFactory that constructs VistALink-implemented DAOs.
  */
 public class VistaLinkVistaDaoFactory implements VistaDaoFactory
 {
+    private Optional<VistaRpcExecutors> fRpcExecutors = Optional.absent();
+    
+    private Optional<PatientCache> fPatientCache = Optional.absent();
+    
+    private Optional<Integer> fMaxReferenceNotes = Optional.absent();
+    
+    private Optional<VistaCircuitBreakers> fCircuitBreakers = Optional.absent();
+    
+    private Optional<RpcMetrics> fRpcMetrics = Optional.absent();
+    
+    private Optional<ProviderTypeCache> fProviderTypeCache = Optional.absent();
+    
+    /**
+     * Sets the executors on which to retrieve patient data concurrently. If not set,
+     * patient data is retrieved sequentially.
+     */
+    @Autowired(required = false)
+    public void setRpcExecutors(final VistaRpcExecutors rpcExecutors)
+    {
+        fRpcExecutors = Optional.of(rpcExecutors);
+    }
+    
+    /**
+     * Sets the cache for retrieved patients. If not set, patients are retrieved from
+     * VistA every time.
+     */
+    @Autowired(required = false)
+    public void setPatientCache(final PatientCache patientCache)
+    {
+        fPatientCache = Optional.of(patientCache);
+    }
+    
+    /**
+     * Sets the circuit breakers with which to guard calls to each division. If not set,
+     * calls are not guarded.
+     */
+    @Autowired(required = false)
+    public void setCircuitBreakers(final VistaCircuitBreakers circuitBreakers)
+    {
+        fCircuitBreakers = Optional.of(circuitBreakers);
+    }
+    
+    /**
+     * Sets where to record the latency and outcome of each Remote Procedure call. If not
+     * set, calls are not measured.
+     */
+    @Autowired(required = false)
+    public void setRpcMetrics(final RpcMetrics rpcMetrics)
+    {
+        fRpcMetrics = Optional.of(rpcMetrics);
+    }
+    
+    /**
+     * Sets the cache from which to reuse each user's Provider Type at login. If not set,
+     * the Provider Type is loaded from VistA on every login.
+     */
+    @Autowired(required = false)
+    public void setProviderTypeCache(final ProviderTypeCache providerTypeCache)
+    {
+        fProviderTypeCache = Optional.of(providerTypeCache);
+    }
+    
+    /**
+     * Limits the ADL and DNR notes retrieved for each patient to the given number of
+     * most recent notes. If not set, all notes are retrieved.
+     * @see RpcVistaPatientDao#setMaxReferenceNotes(int)
+     */
+    public void setMaxReferenceNotes(final int maxReferenceNotes)
+    {
+        fMaxReferenceNotes = Optional.of(maxReferenceNotes);
+    }
+    
     /**
      * {@inheritDoc}
      * 
@@ -18,23 +96,65 @@ public class VistaLinkVistaDaoFactory implements VistaDaoFactory
     @Override
     public boolean isDivisionKnown(final String division)
     {
-        return VistaLinkUtil.isDivisionKnown(division);
+        return VistaLinkConnectionFactoryRegistry.getInstance().isDivisionKnown(division);
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>The login Remote Procedures are guarded by the division's circuit breaker if
+     * configured, like the DAOs' calls.</p>
+     */
     @Override
     public VistaAuthenticator getAuthenticator(final String division)
     {
-        return new VistaLinkAuthenticator(division);
+        final VistaLinkAuthenticator authenticator = new VistaLinkAuthenticator(division);
+        if (fCircuitBreakers.isPresent())
+        {
+            authenticator.setCircuitBreaker(fCircuitBreakers.get().getBreaker(division));
+        }
+        if (fProviderTypeCache.isPresent())
+        {
+            authenticator.setProviderTypeCache(fProviderTypeCache.get());
+        }
+        if (fRpcMetrics.isPresent())
+        {
+            authenticator.setRpcMetrics(fRpcMetrics.get());
+        }
+        return authenticator;
     }
     
     @Override
     public VistaPatientDao getVistaPatientDao()
     {
         final VistaUserDetails principal = SecurityUtil.getCurrentPrincipal();
+        final VistaProcedureCaller caller = makeProcedureCaller(principal.getDivision());
 
-        return new RpcVistaPatientDao(
-                new VistaLinkProcedureCaller(principal.getDivision()),
-                principal.getDuz());
+        final RpcVistaPatientDao rpcDao;
+        if (fRpcExecutors.isPresent())
+        {
+            final VistaRpcExecutors executors = fRpcExecutors.get();
+            rpcDao = new RpcVistaPatientDao(
+                    caller,
+                    principal.getDuz(),
+                    executors.getExecutor(principal.getDivision()),
+                    executors.getCallTimeoutMillis());
+        }
+        else
+        {
+            rpcDao = new RpcVistaPatientDao(caller, principal.getDuz());
+        }
+        if (fMaxReferenceNotes.isPresent())
+        {
+            rpcDao.setMaxReferenceNotes(fMaxReferenceNotes.get());
+        }
+        
+        if (fPatientCache.isPresent())
+        {
+            return new CachingVistaPatientDao(
+                    rpcDao, fPatientCache.get(), principal.getDivision(), principal.getDuz());
+        }
+        return rpcDao;
     }
     
     @Override
@@ -42,8 +162,41 @@ public class VistaLinkVistaDaoFactory implements VistaDaoFactory
     {
         final VistaUserDetails principal = SecurityUtil.getCurrentPrincipal();
         
-        return new RpcVistaSurgeryDao(
-                new VistaLinkProcedureCaller(principal.getDivision()),
-                principal.getDuz());
+        return getVistaSurgeryDao(principal.getDivision(), principal.getDuz());
+    }
+    
+    @Override
+    public VistaSurgeryDao getVistaSurgeryDao(final String division, final String duz)
+    {
+        return new RpcVistaSurgeryDao(makeProcedureCaller(division), duz);
+    }
+    
+    /**
+     * Constructs a VistaProcedureCaller for the given division, measured by the
+     * configured RpcMetrics and guarded by the division's circuit breaker if configured.
+     * Calls refused by the breaker never reach VistA and so are not measured.
+     */
+    private VistaProcedureCaller makeProcedureCaller(final String division)
+    {
+        final VistaLinkProcedureCaller vistaLinkCaller = new VistaLinkProcedureCaller(division);
+        VistaProcedureCaller caller = vistaLinkCaller;
+        if (fRpcMetrics.isPresent())
+        {
+            caller = new InstrumentedVistaProcedureCaller(caller, fRpcMetrics.get());
+        }
+        if (fCircuitBreakers.isPresent())
+        {
+            final DivisionCircuitBreaker breaker = fCircuitBreakers.get().getBreaker(division);
+            vistaLinkCaller.setCallTimeoutMillis(new Supplier<Integer>()
+            {
+                @Override
+                public Integer get()
+                {
+                    return breaker.getCallTimeoutMillis();
+                }
+            });
+            caller = new CircuitBreakingVistaProcedureCaller(caller, breaker);
+        }
+        return caller;
     }
 }
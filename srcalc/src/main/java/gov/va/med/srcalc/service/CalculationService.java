@@ -5,6 +5,9 @@ import java.util.List;
 
 import org.springframework.dao.DataAccessException;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+import gov.va.med.srcalc.domain.Patient;
 import gov.va.med.srcalc.domain.calculation.*;
 import gov.va.med.srcalc.domain.model.MissingValuesException;
 import gov.va.med.srcalc.domain.model.Specialty;
@@ -28,6 +31,38 @@ public interface CalculationService
      * @return the newly-started calculation object
      */
     public Calculation startNewCalculation(int patientId);
+    
+    /**
+     * Starts retrieving a patient for a new calculation without necessarily waiting
+     * for it, so that the user may select a specialty in the meantime. Only the data
+     * needed regardless of specialty is retrieved: see {@link
+     * #retrieveSpecialtyDataAsync(Calculation, ListenableFuture)}.
+     * @param patientId the patient identifier (DFN)
+     * @return a Future for the patient, which fails with a {@link DataAccessException}
+     * if the patient could not be retrieved
+     */
+    public ListenableFuture<Patient> retrievePatientAsync(int patientId);
+    
+    /**
+     * Starts retrieving any of the patient data needed by the calculation's specialty
+     * that has not been retrieved yet, without necessarily waiting for it.
+     * @param calculation the calculation, which must have a specialty
+     * @param patient the calculation's patient, which may still be being retrieved
+     * @return a Future for the same patient once the data has been retrieved, which
+     * fails with a {@link DataAccessException} if the patient could not be retrieved
+     */
+    public ListenableFuture<Patient> retrieveSpecialtyDataAsync(
+            Calculation calculation, ListenableFuture<Patient> patient);
+    
+    /**
+     * Starts a new calculation for the same patient and specialty as the given
+     * calculation, with the patient's data freshly retrieved from VistA instead of any
+     * previously-retrieved data. Only the data needed by the specialty is retrieved up
+     * front.
+     * @param calculation the in-progress calculation
+     * @return the newly-started calculation object
+     */
+    public Calculation refreshPatient(Calculation calculation);
 
     /**
      * Sets the specialty for the Calculation, moving the Calculation into the
@@ -48,6 +83,17 @@ public interface CalculationService
      */
     public CalculationResult runCalculation(Calculation calculation, Collection<Value> variableValues)
             throws MissingValuesException;
+    
+    /**
+     * Calculates the outcomes of the calculation's risk models which have all of their
+     * values, without running the calculation: nothing is recorded and the calculation
+     * is not changed. For updating the outcomes as the user enters values.
+     * @param calculation the in-progress calculation
+     * @param variableValues the input values entered so far
+     * @return the available outcomes and the variables still missing a value
+     */
+    public OutcomePreview previewCalculation(
+            Calculation calculation, Collection<Value> variableValues);
 
     /**
      * Saves the given calculation result to VistA and the database.
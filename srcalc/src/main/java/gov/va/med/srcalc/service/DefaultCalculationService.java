@@ -1,17 +1,33 @@
 package gov.va.med.srcalc.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import gov.va.med.srcalc.db.HistoricalCalcWriter;
 import gov.va.med.srcalc.db.ResultsDao;
+import gov.va.med.srcalc.db.RiskSaveOutbox;
 import gov.va.med.srcalc.db.SpecialtyDao;
 import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
 import gov.va.med.srcalc.domain.VistaPerson;
 import gov.va.med.srcalc.domain.calculation.*;
 import gov.va.med.srcalc.domain.model.MissingValuesException;
@@ -19,9 +35,14 @@ import gov.va.med.srcalc.domain.model.Specialty;
 import gov.va.med.srcalc.vista.*;
 import gov.va.med.srcalc.vista.VistaPatientDao.SaveNoteCode;
 import gov.va.med.srcalc.security.SecurityUtil;
+import gov.va.med.srcalc.security.VistaUserDetails;
 
 /**
- * The canonical implementation of {@link CalculationService}.
+ * <p>The canonical implementation of {@link CalculationService}.</p>
+ *
+ * <p>VistA calls can take seconds, so methods which call VistA are not
+ * {@link Transactional}: they run any database work in a separate, short transaction
+ * instead of holding a database connection while waiting on VistA.</p>
  */
 public class DefaultCalculationService implements CalculationService
 {
@@ -31,6 +52,18 @@ public class DefaultCalculationService implements CalculationService
     private final VistaPatientDao fPatientDao;
     private final VistaSurgeryDao fSurgeryDao;
     private final ResultsDao fResultsDao;
+    private final TransactionTemplate fTransactionTemplate;
+    private HistoricalCalcWriter fHistoricalCalcWriter;
+    private RiskSaveOutbox fRiskSaveOutbox;
+    private PatientPrefetcher fPatientPrefetcher;
+    /**
+     * The results which VistA Surgery saved along with their note but which could not
+     * be saved to the database, so that signing them again does not save a duplicate
+     * risk calculation. Weakly keyed: a result is only signed again from the session
+     * holding it.
+     */
+    private final Set<CalculationResult> fSavedOnlyToSurgery = Collections.newSetFromMap(
+            new MapMaker().weakKeys().<CalculationResult, Boolean>makeMap());
     
     /**
      * Constructs an instance.
@@ -38,18 +71,62 @@ public class DefaultCalculationService implements CalculationService
      * @param patientDao DAO to access patient information
      * @param surgeryDao DAO to save VistA Surgery information
      * @param resultsDao DAO to save calculation results
+     * @param transactionManager for the database transactions of methods which also
+     * call VistA
      */
     @Inject
     public DefaultCalculationService(
             final SpecialtyDao specialtyDao,
             final VistaPatientDao patientDao,
             final VistaSurgeryDao surgeryDao,
-            final ResultsDao resultsDao)
+            final ResultsDao resultsDao,
+            final PlatformTransactionManager transactionManager)
     {
         fSpecialtyDao = specialtyDao;
         fPatientDao = patientDao;
         fSurgeryDao = surgeryDao;
         fResultsDao = resultsDao;
+        fTransactionTemplate = new TransactionTemplate(transactionManager);
+        fHistoricalCalcWriter = null;
+        fRiskSaveOutbox = null;
+        fPatientPrefetcher = null;
+    }
+    
+    /**
+     * Sets an optional writer to persist {@link HistoricalCalculation}s in the
+     * background. If not set, they are persisted synchronously in {@link
+     * #runCalculation(Calculation, Collection)}.
+     * @param writer the writer, which must already be started, or null
+     */
+    @Autowired(required = false)
+    public void setHistoricalCalcWriter(final HistoricalCalcWriter writer)
+    {
+        fHistoricalCalcWriter = writer;
+    }
+    
+    /**
+     * Sets an optional outbox to save {@link SignedResult}s to VistA Surgery in the
+     * background. If not set, they are saved synchronously in {@link
+     * #signRiskCalculation(CalculationResult, String)}.
+     * @param outbox the outbox, or null
+     */
+    @Autowired(required = false)
+    public void setRiskSaveOutbox(final RiskSaveOutbox outbox)
+    {
+        fRiskSaveOutbox = outbox;
+    }
+    
+    /**
+     * Sets an optional prefetcher to retrieve patients in the background. If not set,
+     * {@link #retrievePatientAsync(int)} and {@link
+     * #retrieveSpecialtyDataAsync(Calculation, ListenableFuture)} retrieve the patient
+     * data synchronously.
+     * @param prefetcher the prefetcher, or null
+     */
+    @Autowired(required = false)
+    public void setPatientPrefetcher(final PatientPrefetcher prefetcher)
+    {
+        fPatientPrefetcher = prefetcher;
     }
     
     @Override
@@ -60,7 +137,6 @@ public class DefaultCalculationService implements CalculationService
     }
 
     @Override
-    @Transactional
     public Calculation startNewCalculation(final int patientId)
     {
         final Patient patient = fPatientDao.getPatient(patientId);
@@ -70,6 +146,65 @@ public class DefaultCalculationService implements CalculationService
         return Calculation.forPatient(patient);
     }
     
+    @Override
+    public ListenableFuture<Patient> retrievePatientAsync(final int patientId)
+    {
+        // The specialty is not known yet.
+        final PatientRetrievalPlan plan = PatientRetrievalPlan.MINIMAL;
+        if (fPatientPrefetcher != null)
+        {
+            return fPatientPrefetcher.prefetch(patientId, plan);
+        }
+        return Futures.immediateFuture(fPatientDao.getPatient(patientId, plan));
+    }
+    
+    @Override
+    public ListenableFuture<Patient> retrieveSpecialtyDataAsync(
+            final Calculation calculation, final ListenableFuture<Patient> patient)
+    {
+        final PatientRetrievalPlan plan = getRetrievalPlan(calculation);
+        LOGGER.debug("Retrieving {} for the {} specialty.", plan, calculation.getSpecialty());
+        if (fPatientPrefetcher != null)
+        {
+            return fPatientPrefetcher.load(patient, plan);
+        }
+        return Futures.transform(patient, new Function<Patient, Patient>()
+        {
+            @Override
+            public Patient apply(final Patient input)
+            {
+                input.load(plan);
+                return input;
+            }
+        });
+    }
+    
+    /**
+     * Returns the patient data needed for the given calculation's specialty, or the
+     * data needed regardless of specialty if it has none.
+     */
+    private static PatientRetrievalPlan getRetrievalPlan(final Calculation calculation)
+    {
+        if (calculation.getSpecialty() == null)
+        {
+            return PatientRetrievalPlan.MINIMAL;
+        }
+        return PatientRetrievalPlan.forVariables(calculation.getVariables());
+    }
+    
+    @Override
+    public Calculation refreshPatient(final Calculation calculation)
+    {
+        final Patient patient = fPatientDao.refreshPatient(
+                calculation.getPatient().getDfn(), getRetrievalPlan(calculation));
+        
+        LOGGER.debug("Refreshed patient {}.", patient);
+        
+        final Calculation refreshed = Calculation.forPatient(patient);
+        refreshed.setSpecialty(calculation.getSpecialty());
+        return refreshed;
+    }
+    
     @Override
     @Transactional
     public void setSpecialty(final Calculation calculation, final String specialtyName)
@@ -102,8 +237,18 @@ public class DefaultCalculationService implements CalculationService
         // If it was the first run, save the historical result for metrics.
         if (firstRun)
         {
-            LOGGER.debug("Was first run: saving HistoricalCalculation.");
-            fResultsDao.persistHistoricalCalc(calculation.getHistoricalCalculation().get());
+            final HistoricalCalculation historical =
+                    calculation.getHistoricalCalculation().get();
+            // Don't make the user wait on the database if we can help it.
+            if (fHistoricalCalcWriter != null && fHistoricalCalcWriter.offer(historical))
+            {
+                LOGGER.debug("Was first run: queued HistoricalCalculation.");
+            }
+            else
+            {
+                LOGGER.debug("Was first run: saving HistoricalCalculation.");
+                fResultsDao.persistHistoricalCalc(historical);
+            }
         }
         
         // Log something at INFO level for running a calculation, but don't log
@@ -114,23 +259,67 @@ public class DefaultCalculationService implements CalculationService
     }
 
     @Override
-    @Transactional
+    public OutcomePreview previewCalculation(
+            final Calculation calculation, final Collection<Value> variableValues)
+    {
+        // No transaction: nothing is persisted and the specialty is already loaded.
+        return calculation.preview(variableValues);
+    }
+
+    @Override
     public VistaPatientDao.SaveNoteCode signRiskCalculation(
             CalculationResult result, String electronicSignature)
     {
         // Note: we must save the note first because this is how we check the given
-        // signature code.
-        final VistaPatientDao.SaveNoteCode returnCode = 
-            fPatientDao.saveRiskCalculationNote(
-                result.getPatientDfn(), electronicSignature, result.buildNoteBody());
+        // signature code. Save the risk calculation to VistA Surgery in the same
+        // round-trip if VistA supports it, unless an earlier attempt already did.
+        final SignedResult signedResult = result.signed();
+        final String noteBody = result.buildNoteBody();
+        final boolean alreadyInSurgery = fSavedOnlyToSurgery.contains(result);
+        final Optional<NoteAndResultStatus> combinedStatus = alreadyInSurgery ?
+                Optional.<NoteAndResultStatus>absent() :
+                fPatientDao.saveRiskCalculationNoteAndResult(
+                        signedResult, electronicSignature, noteBody);
+        // If VistA signed the note but did not save the result, save it separately
+        // like any other result.
+        final boolean savedToSurgery = alreadyInSurgery ||
+                (combinedStatus.isPresent() && combinedStatus.get().isResultSaved());
+        final VistaPatientDao.SaveNoteCode returnCode = combinedStatus.isPresent() ?
+                combinedStatus.get().getNoteCode() :
+                fPatientDao.saveRiskCalculationNote(
+                        result.getPatientDfn(), electronicSignature, noteBody);
 
         if (returnCode == SaveNoteCode.SUCCESS)
         {
-            final SignedResult signedResult = result.signed();
-            // Save to the DB first because the DB can rollback if VistA fails. (VistA
-            // can't rollback if DB fails.)
-            fResultsDao.persistSignedResult(signedResult);
-            fSurgeryDao.saveCalculationResult(signedResult);
+            try
+            {
+                fTransactionTemplate.execute(new TransactionCallbackWithoutResult()
+                {
+                    @Override
+                    protected void doInTransactionWithoutResult(
+                            final TransactionStatus status)
+                    {
+                        saveSignedResult(signedResult, !savedToSurgery);
+                    }
+                });
+            }
+            catch (final RuntimeException ex)
+            {
+                if (savedToSurgery)
+                {
+                    // VistA Surgery can't rollback: remember the result so that
+                    // signing it again only saves it to the database, and log it for
+                    // reconciliation. Don't log the patient to avoid PHI.
+                    fSavedOnlyToSurgery.add(result);
+                    LOGGER.error(
+                            "VistA Surgery saved a {} risk calculation signed at {}, " +
+                            "but the database did not.",
+                            result.getSpecialtyName(),
+                            signedResult.getSignatureTimestamp());
+                }
+                throw ex;
+            }
+            fSavedOnlyToSurgery.remove(result);
             
             // Log something at INFO level for signing a calculation, but don't log
             // too much to avoid PHI in the log file.
@@ -139,4 +328,41 @@ public class DefaultCalculationService implements CalculationService
         return returnCode;
     }
     
+    /**
+     * Saves the given result to the database and, if requested, to VistA Surgery. Must
+     * be called in a transaction.
+     * @param saveToSurgery false if VistA Surgery already has the result
+     */
+    private void saveSignedResult(final SignedResult signedResult, final boolean saveToSurgery)
+    {
+        // When saving to VistA Surgery here, save to the DB first because the DB can
+        // rollback if VistA fails. (VistA can't rollback if DB fails: see
+        // signRiskCalculation() for when VistA saved the result with the note.) The
+        // SignedResult shares the HistoricalCalculation's identifier, so make sure it
+        // is not still queued.
+        if (fHistoricalCalcWriter != null &&
+                fHistoricalCalcWriter.reclaim(signedResult.getHistoricalCalculation()))
+        {
+            fResultsDao.persistHistoricalCalc(signedResult.getHistoricalCalculation());
+        }
+        fResultsDao.persistSignedResult(signedResult);
+        if (saveToSurgery)
+        {
+            if (fRiskSaveOutbox != null)
+            {
+                // The note is what the clinician is waiting on: save the risk
+                // calculation once this transaction commits.
+                final VistaUserDetails principal = SecurityUtil.getCurrentPrincipal();
+                fRiskSaveOutbox.enqueue(
+                        signedResult, principal.getDivision(), principal.getDuz());
+            }
+            else
+            {
+                // Without an outbox, the only way to keep the database consistent with
+                // VistA is to save to VistA within the transaction.
+                fSurgeryDao.saveCalculationResult(signedResult);
+            }
+        }
+    }
+    
 }
@@ -1,15 +1,22 @@
 package gov.va.med.srcalc.service;
 
+import java.io.IOException;
+import java.util.List;
+
 import javax.inject.Inject;
 
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
 
+import gov.va.med.srcalc.archive.ArchivePosition;
+import gov.va.med.srcalc.archive.ResultArchiveWriter;
 import gov.va.med.srcalc.db.HistoricalSearchParameters;
 import gov.va.med.srcalc.db.ResultSearchParameters;
 import gov.va.med.srcalc.db.ResultsDao;
 import gov.va.med.srcalc.domain.calculation.HistoricalRunInfo;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.util.SearchResults;
 
@@ -20,6 +27,14 @@ public class DefaultReportService implements ReportService
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultReportService.class);
     
+    /**
+     * Only results signed at least this long ago are archived. A result's signature
+     * timestamp is assigned before the note is signed in VistA, so a result may be
+     * committed some time after its signature timestamp: this delay keeps the archive
+     * from moving past it in the meantime.
+     */
+    public static final int ARCHIVE_DELAY_MINUTES = 10;
+    
     private final ResultsDao fResultsDao;
     
     /**
@@ -43,6 +58,19 @@ public class DefaultReportService implements ReportService
         return results;
     }
     
+    @Override
+    @Transactional
+    public List<OutcomeDistribution> getOutcomeDistributions(
+            final ResultSearchParameters parameters)
+    {
+        final List<OutcomeDistribution> distributions =
+                fResultsDao.getOutcomeDistributions(parameters);
+        
+        LOGGER.debug("OutcomeDistribution query returned {} groups.", distributions.size());
+        
+        return distributions;
+    }
+    
     @Override
     @Transactional
     public SearchResults<HistoricalRunInfo> getHistoricalRunInfos(
@@ -57,4 +85,31 @@ public class DefaultReportService implements ReportService
         return results;
     }
     
+    @Override
+    @Transactional
+    public int archiveNewSignedResults(final ResultArchiveWriter writer, final int maxResults)
+            throws IOException
+    {
+        final List<SignedResult> results;
+        // Hold the writer's lock so that concurrent requests do not both append the
+        // results after the same position.
+        synchronized (writer)
+        {
+            final ArchivePosition lastArchived = writer.getLastArchivedPosition();
+            results = fResultsDao.getSignedResultsAfter(
+                    lastArchived.getSignatureTimestamp(),
+                    lastArchived.getId(),
+                    DateTime.now().minusMinutes(ARCHIVE_DELAY_MINUTES),
+                    maxResults);
+            if (!results.isEmpty())
+            {
+                writer.appendSegment(results);
+            }
+        }
+        
+        LOGGER.debug("Archived {} new SignedResults.", results.size());
+        
+        return results.size();
+    }
+    
 }
@@ -1,10 +1,15 @@
 package gov.va.med.srcalc.service;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.springframework.dao.DataAccessException;
 
+import gov.va.med.srcalc.archive.ResultArchiveWriter;
 import gov.va.med.srcalc.db.HistoricalSearchParameters;
 import gov.va.med.srcalc.db.ResultSearchParameters;
 import gov.va.med.srcalc.domain.calculation.HistoricalRunInfo;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.util.SearchResults;
 
@@ -22,6 +27,18 @@ public interface ReportService
     public SearchResults<SignedResult> getSignedResults(
             final ResultSearchParameters parameters);
     
+    /**
+     * Computes the distribution of outcomes for each risk model, specialty, and station
+     * among the SignedResults matching the given search parameters. The persistent store
+     * computes the distributions so this operation is efficient for any number of
+     * results.
+     * @return distributions ordered by risk model name, specialty name, and station
+     * @throws DataAccessException if any error occurs interacting with the persistent
+     * store
+     */
+    public List<OutcomeDistribution> getOutcomeDistributions(
+            final ResultSearchParameters parameters);
+    
     /**
      * Generates {@link HistoricalRunInfo}s from historical calculation data.
      * @param parameters specifies which calculations to consider
@@ -31,4 +48,19 @@ public interface ReportService
      */
     public SearchResults<HistoricalRunInfo> getHistoricalRunInfos(
             final HistoricalSearchParameters parameters);
+    
+    /**
+     * Appends SignedResults that are not yet in the given research archive as a new
+     * archive segment, in signature order. Call repeatedly until it returns less than
+     * maxResults to archive all results. Recently-signed results are left for a later
+     * call in case any result signed before them has not been committed yet.
+     * @param writer the archive to which to append
+     * @param maxResults the maximum number of results to append in one segment
+     * @return the number of results appended, possibly 0
+     * @throws IOException if the archive cannot be read or written
+     * @throws DataAccessException if any error occurs interacting with the persistent
+     * store
+     */
+    public int archiveNewSignedResults(final ResultArchiveWriter writer, final int maxResults)
+            throws IOException;
 }
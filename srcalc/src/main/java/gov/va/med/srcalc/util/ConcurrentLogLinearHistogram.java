@@ -0,0 +1,71 @@
+package gov.va.med.srcalc.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A thread-safe variant of {@link LogLinearHistogram} for recording values from many
+ * threads, e.g., request latencies. Recording never blocks: each value is counted with
+ * a few atomic operations. Percentiles and other statistics are computed from a
+ * {@link #snapshot()}.</p>
+ *
+ * <p>A snapshot taken while other threads are recording is not atomic: a value being
+ * recorded concurrently may be reflected in some of the statistics but not others. Each
+ * snapshot is internally consistent enough for reporting.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class ConcurrentLogLinearHistogram
+{
+    private final AtomicLongArray fCounts =
+            new AtomicLongArray(LogLinearHistogram.BUCKET_COUNT);
+    private final AtomicLong fSum = new AtomicLong();
+    private final AtomicInteger fMin = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicInteger fMax = new AtomicInteger(0);
+
+    /**
+     * Records a single value.
+     * @param value the value to record
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void record(final int value)
+    {
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Cannot record a negative value: " + value);
+        }
+
+        // Update the minimum and maximum before the count so that any counted value
+        // is within the range seen by snapshot().
+        int min = fMin.get();
+        while (value < min && !fMin.compareAndSet(min, value))
+        {
+            min = fMin.get();
+        }
+        int max = fMax.get();
+        while (value > max && !fMax.compareAndSet(max, value))
+        {
+            max = fMax.get();
+        }
+        fCounts.incrementAndGet(LogLinearHistogram.bucketIndex(value));
+        fSum.addAndGet(value);
+    }
+
+    /**
+     * Returns a copy of the statistics recorded so far.
+     */
+    public LogLinearHistogram snapshot()
+    {
+        // Read the counts first: see record().
+        final long[] counts = new long[LogLinearHistogram.BUCKET_COUNT];
+        long totalCount = 0;
+        for (int i = 0; i < counts.length; ++i)
+        {
+            counts[i] = fCounts.get(i);
+            totalCount += counts[i];
+        }
+        return new LogLinearHistogram(counts, totalCount, fSum.get(), fMin.get(), fMax.get());
+    }
+}
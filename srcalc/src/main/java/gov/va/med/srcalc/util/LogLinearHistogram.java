@@ -0,0 +1,399 @@
+package gov.va.med.srcalc.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>A streaming histogram of non-negative integer values (e.g., durations in seconds)
+ * for computing approximate percentiles in a single pass. Values are counted into a
+ * fixed set of log-linear buckets in the manner of an HDR histogram: values below
+ * {@value #LINEAR_LIMIT} each get their own bucket and larger values are grouped into
+ * {@value #SUB_BUCKETS_PER_MAGNITUDE} equal-width buckets per power of two. Therefore
+ * memory use is constant regardless of the number of recorded values and any reported
+ * percentile is within 1/{@value #SUB_BUCKETS_PER_MAGNITUDE} of the actual value.</p>
+ *
+ * <p>Two histograms may be combined with {@link #merge(LogLinearHistogram)}, so
+ * statistics may be computed per group and then rolled up without revisiting the
+ * original values. The count, sum, minimum, and maximum are tracked exactly.</p>
+ *
+ * <p>This class is mutable and not thread-safe.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class LogLinearHistogram implements Serializable
+{
+    /**
+     * Values below this limit are counted exactly.
+     */
+    public static final int LINEAR_LIMIT = 32;
+    
+    /**
+     * The number of buckets into which each power-of-two range above
+     * {@link #LINEAR_LIMIT} is divided.
+     */
+    public static final int SUB_BUCKETS_PER_MAGNITUDE = 16;
+    
+    /**
+     * Change this when changing the fields to avoid deserializing an incompatible object.
+     */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * log2 of {@link #LINEAR_LIMIT}.
+     */
+    private static final int LINEAR_LIMIT_BITS = 5;
+    
+    /**
+     * log2 of {@link #SUB_BUCKETS_PER_MAGNITUDE}.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+    
+    /**
+     * The number of buckets necessary to cover all non-negative ints.
+     */
+    static final int BUCKET_COUNT = bucketIndex(Integer.MAX_VALUE) + 1;
+    
+    private final long[] fCounts;
+    private long fTotalCount;
+    private long fSum;
+    private int fMin;
+    private int fMax;
+    
+    /**
+     * Constructs an empty instance.
+     */
+    public LogLinearHistogram()
+    {
+        fCounts = new long[BUCKET_COUNT];
+        fTotalCount = 0;
+        fSum = 0;
+        fMin = Integer.MAX_VALUE;
+        fMax = 0;
+    }
+    
+    /**
+     * Constructs a copy of the given histogram.
+     * @param other the histogram to copy
+     */
+    public LogLinearHistogram(final LogLinearHistogram other)
+    {
+        fCounts = other.fCounts.clone();
+        fTotalCount = other.fTotalCount;
+        fSum = other.fSum;
+        fMin = other.fMin;
+        fMax = other.fMax;
+    }
+    
+    /**
+     * Constructs an instance with the given statistics. For {@link
+     * ConcurrentLogLinearHistogram#snapshot()}.
+     * @param counts the count for each bucket. Not copied.
+     */
+    LogLinearHistogram(
+            final long[] counts,
+            final long totalCount,
+            final long sum,
+            final int min,
+            final int max)
+    {
+        fCounts = counts;
+        fTotalCount = totalCount;
+        fSum = sum;
+        fMin = min;
+        fMax = max;
+    }
+    
+    /**
+     * Returns the index of the bucket holding the given non-negative value.
+     */
+    static int bucketIndex(final int value)
+    {
+        if (value < LINEAR_LIMIT)
+        {
+            return value;
+        }
+        // The position of the highest set bit. At least LINEAR_LIMIT_BITS here.
+        final int magnitude = 31 - Integer.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        // Between SUB_BUCKETS_PER_MAGNITUDE and 2 * SUB_BUCKETS_PER_MAGNITUDE - 1.
+        final int subBucket = value >>> shift;
+        return LINEAR_LIMIT +
+                (magnitude - LINEAR_LIMIT_BITS) * SUB_BUCKETS_PER_MAGNITUDE +
+                (subBucket - SUB_BUCKETS_PER_MAGNITUDE);
+    }
+    
+    /**
+     * Returns the smallest value held by the bucket at the given index.
+     */
+    private static long bucketLowerBound(final int index)
+    {
+        if (index < LINEAR_LIMIT)
+        {
+            return index;
+        }
+        final int offset = index - LINEAR_LIMIT;
+        final int magnitude = offset / SUB_BUCKETS_PER_MAGNITUDE + LINEAR_LIMIT_BITS;
+        final long subBucket = offset % SUB_BUCKETS_PER_MAGNITUDE + SUB_BUCKETS_PER_MAGNITUDE;
+        return subBucket << (magnitude - SUB_BUCKET_BITS);
+    }
+    
+    /**
+     * Returns the largest value held by the bucket at the given index.
+     */
+    private static long bucketUpperBound(final int index)
+    {
+        return bucketLowerBound(index + 1) - 1;
+    }
+    
+    /**
+     * Records a single value.
+     * @param value the value to record
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void record(final int value)
+    {
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Cannot record a negative value: " + value);
+        }
+        
+        ++fCounts[bucketIndex(value)];
+        ++fTotalCount;
+        fSum += value;
+        fMin = Math.min(fMin, value);
+        fMax = Math.max(fMax, value);
+    }
+    
+    /**
+     * Adds all values recorded in the given histogram to this histogram. The given
+     * histogram is not modified.
+     * @param other the histogram to merge into this one
+     * @return this object for convenience
+     */
+    public LogLinearHistogram merge(final LogLinearHistogram other)
+    {
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+        {
+            fCounts[i] += other.fCounts[i];
+        }
+        fTotalCount += other.fTotalCount;
+        fSum += other.fSum;
+        fMin = Math.min(fMin, other.fMin);
+        fMax = Math.max(fMax, other.fMax);
+        return this;
+    }
+    
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getTotalCount()
+    {
+        return fTotalCount;
+    }
+    
+    /**
+     * Returns the exact sum of all recorded values.
+     */
+    public long getSum()
+    {
+        return fSum;
+    }
+    
+    /**
+     * Returns the smallest recorded value, or -1 if no values have been recorded.
+     */
+    public int getMin()
+    {
+        return (fTotalCount == 0) ? -1 : fMin;
+    }
+    
+    /**
+     * Returns the largest recorded value, or -1 if no values have been recorded.
+     */
+    public int getMax()
+    {
+        return (fTotalCount == 0) ? -1 : fMax;
+    }
+    
+    /**
+     * Returns the arithmetic mean of the recorded values, truncated to an integer. If no
+     * values have been recorded, returns -1.
+     */
+    public int getMean()
+    {
+        // The mean of ints always fits in an int.
+        return (fTotalCount == 0) ? -1 : (int)(fSum / fTotalCount);
+    }
+    
+    /**
+     * Returns the (approximate) value at the given percentile: that is, a value at least
+     * as large as the given percentage of the recorded values. The returned value is
+     * exact for values below {@link #LINEAR_LIMIT} and never outside of the range of
+     * recorded values.
+     * @param percentile the percentile, between 0 and 100 inclusive
+     * @return the value, or -1 if no values have been recorded
+     * @throws IllegalArgumentException if the percentile is not between 0 and 100
+     */
+    public int getValueAtPercentile(final double percentile)
+    {
+        if (percentile < 0.0 || percentile > 100.0)
+        {
+            throw new IllegalArgumentException(
+                    "percentile must be between 0 and 100 (was " + percentile + ")");
+        }
+        if (fTotalCount == 0)
+        {
+            return -1;
+        }
+        
+        // The 1-based rank of the value we are looking for.
+        final long rank = Math.max(1L, (long)Math.ceil(percentile / 100.0 * fTotalCount));
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+        {
+            cumulativeCount += fCounts[i];
+            if (cumulativeCount >= rank)
+            {
+                final long upperBound = Math.min(bucketUpperBound(i), fMax);
+                return (int)Math.max(upperBound, fMin);
+            }
+        }
+        // Unreachable since the counts sum to fTotalCount.
+        return fMax;
+    }
+    
+    /**
+     * Returns the non-empty buckets of this histogram in ascending order.
+     * @return an immutable list, empty if no values have been recorded
+     */
+    public ImmutableList<Bucket> getBuckets()
+    {
+        final ImmutableList.Builder<Bucket> buckets = ImmutableList.builder();
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+        {
+            if (fCounts[i] > 0)
+            {
+                buckets.add(new Bucket(bucketLowerBound(i), bucketUpperBound(i), fCounts[i]));
+            }
+        }
+        return buckets.build();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+                .add("totalCount", fTotalCount)
+                .add("min", getMin())
+                .add("max", getMax())
+                .add("mean", getMean())
+                .toString();
+    }
+    
+    /**
+     * Returns true if the given object is also a {@link LogLinearHistogram} with the same
+     * recorded statistics, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (obj instanceof LogLinearHistogram)
+        {
+            final LogLinearHistogram other = (LogLinearHistogram)obj;
+            
+            return this.fTotalCount == other.fTotalCount &&
+                    this.fSum == other.fSum &&
+                    this.fMin == other.fMin &&
+                    this.fMax == other.fMax &&
+                    Arrays.equals(this.fCounts, other.fCounts);
+        }
+        else
+        {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fTotalCount, fSum, fMin, fMax, Arrays.hashCode(fCounts));
+    }
+    
+    /**
+     * A single histogram bucket: a range of values and the number of recorded values in
+     * that range. Immutable.
+     */
+    public static final class Bucket
+    {
+        private final long fLowerBound;
+        private final long fUpperBound;
+        private final long fCount;
+        
+        /**
+         * Constructs an instance with the given properties.
+         */
+        Bucket(final long lowerBound, final long upperBound, final long count)
+        {
+            fLowerBound = lowerBound;
+            fUpperBound = upperBound;
+            fCount = count;
+        }
+        
+        /**
+         * Returns the smallest value in this bucket's range, inclusive.
+         */
+        public long getLowerBound()
+        {
+            return fLowerBound;
+        }
+        
+        /**
+         * Returns the largest value in this bucket's range, inclusive.
+         */
+        public long getUpperBound()
+        {
+            return fUpperBound;
+        }
+        
+        /**
+         * Returns the number of recorded values in this bucket's range.
+         */
+        public long getCount()
+        {
+            return fCount;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.format("[%d-%d]: %d", fLowerBound, fUpperBound, fCount);
+        }
+        
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (obj instanceof Bucket)
+            {
+                final Bucket other = (Bucket)obj;
+                return this.fLowerBound == other.fLowerBound &&
+                        this.fUpperBound == other.fUpperBound &&
+                        this.fCount == other.fCount;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(fLowerBound, fUpperBound, fCount);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.concurrent.Callable;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+/**
+ * <p>A {@link VistaPatientDao} that caches retrieved {@link Patient}s in a {@link
+ * PatientCache} in front of another VistaPatientDao. Like the wrapped DAO, each
+ * instance is tied to a particular user.</p>
+ *
+ * <p>Saving a note for a patient discards all cached data for that patient, since the
+ * note changes the patient's data in VistA.</p>
+ *
+ * <p>A cached Patient may have been retrieved with a different {@link
+ * PatientRetrievalPlan}, so this class loads any missing data before returning it.</p>
+ */
+public class CachingVistaPatientDao implements VistaPatientDao
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingVistaPatientDao.class);
+
+    private final VistaPatientDao fTarget;
+
+    private final PatientCache fCache;
+
+    private final String fDivision;
+
+    private final String fDuz;
+
+    /**
+     * Constructs an instance.
+     * @param target the DAO to retrieve uncached patients from and save notes to
+     * @param cache the cache to use
+     * @param division the division of the target DAO's VistA
+     * @param duz the DUZ of the target DAO's user
+     */
+    public CachingVistaPatientDao(
+            final VistaPatientDao target,
+            final PatientCache cache,
+            final String division,
+            final String duz)
+    {
+        fTarget = target;
+        fCache = cache;
+        fDivision = division;
+        fDuz = duz;
+    }
+
+    @Override
+    public Patient getPatient(final int dfn)
+    {
+        return getPatient(dfn, PatientRetrievalPlan.ALL);
+    }
+
+    @Override
+    public Patient getPatient(final int dfn, final PatientRetrievalPlan plan)
+    {
+        final Patient patient = fCache.get(fDivision, dfn, fDuz, new Callable<Patient>()
+        {
+            @Override
+            public Patient call()
+            {
+                LOGGER.debug("Patient not cached: retrieving from VistA.");
+                return fTarget.getPatient(dfn, plan);
+            }
+        });
+        patient.load(plan);
+        return patient;
+    }
+
+    @Override
+    public Patient refreshPatient(final int dfn, final PatientRetrievalPlan plan)
+    {
+        final Patient patient = fTarget.refreshPatient(dfn, plan);
+        fCache.put(fDivision, fDuz, patient);
+        return patient;
+    }
+
+    @Override
+    public SaveNoteCode saveRiskCalculationNote(
+            final int patientDfn, final String electronicSignature, final String noteBody)
+    {
+        final SaveNoteCode code =
+                fTarget.saveRiskCalculationNote(patientDfn, electronicSignature, noteBody);
+        if (code == SaveNoteCode.SUCCESS)
+        {
+            fCache.invalidatePatient(fDivision, patientDfn);
+        }
+        return code;
+    }
+
+    @Override
+    public Optional<NoteAndResultStatus> saveRiskCalculationNoteAndResult(
+            final SignedResult result, final String electronicSignature, final String noteBody)
+    {
+        final Optional<NoteAndResultStatus> status = fTarget.saveRiskCalculationNoteAndResult(
+                result, electronicSignature, noteBody);
+        if (status.isPresent() && status.get().getNoteCode() == SaveNoteCode.SUCCESS)
+        {
+            fCache.invalidatePatient(fDivision, result.getPatientDfn());
+        }
+        return status;
+    }
+}
@@ -0,0 +1,108 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.Arrays;
+
+/**
+ * <p>The caret-delimited pieces of a line of a remote procedure response, e.g.,
+ * <code>"03/05/10^ALCOHOL USE"</code>. Each piece is a view of the line: no characters
+ * are copied unless requested as a String.</p>
+ *
+ * <p>Like {@link com.google.common.base.Splitter}, empty pieces are retained, so a line
+ * with n carets always has n + 1 pieces.</p>
+ *
+ * <p>Immutable if the line is.</p>
+ */
+public final class CaretPieces
+{
+    private static final char DELIMITER = '^';
+
+    private final CharSequence fLine;
+
+    /**
+     * The positions of each delimiter in the line.
+     */
+    private final int[] fDelimiters;
+
+    /**
+     * The number of delimiters in the line, which may be less than the length of
+     * fDelimiters.
+     */
+    private final int fDelimiterCount;
+
+    private CaretPieces(final CharSequence line, final int[] delimiters, final int count)
+    {
+        fLine = line;
+        fDelimiters = delimiters;
+        fDelimiterCount = count;
+    }
+
+    /**
+     * Splits the given line into pieces.
+     */
+    public static CaretPieces of(final CharSequence line)
+    {
+        int[] delimiters = new int[8];
+        int count = 0;
+        for (int i = 0; i < line.length(); ++i)
+        {
+            if (line.charAt(i) == DELIMITER)
+            {
+                if (count == delimiters.length)
+                {
+                    delimiters = Arrays.copyOf(delimiters, count * 2);
+                }
+                delimiters[count++] = i;
+            }
+        }
+        return new CaretPieces(line, delimiters, count);
+    }
+
+    /**
+     * Returns the number of pieces.
+     */
+    public int size()
+    {
+        return fDelimiterCount + 1;
+    }
+
+    /**
+     * Returns a view of the given piece.
+     * @param index the zero-based piece index
+     * @throws IndexOutOfBoundsException if there is no such piece
+     */
+    public CharSequence get(final int index)
+    {
+        if (index < 0 || index >= size())
+        {
+            throw new IndexOutOfBoundsException("Piece " + index + " of " + size());
+        }
+        final int start = (index == 0) ? 0 : fDelimiters[index - 1] + 1;
+        final int end = (index == fDelimiterCount) ? fLine.length() : fDelimiters[index];
+        return new CharSlice(fLine, start, end);
+    }
+
+    /**
+     * Returns the given piece as a new String.
+     * @param index the zero-based piece index
+     * @throws IndexOutOfBoundsException if there is no such piece
+     */
+    public String getString(final int index)
+    {
+        return get(index).toString();
+    }
+
+    /**
+     * Returns a view of everything after the given piece's trailing delimiter, i.e.,
+     * the remaining pieces joined by carets.
+     * @param index the zero-based piece index
+     * @throws IndexOutOfBoundsException if there is no piece after the given one
+     */
+    public CharSequence after(final int index)
+    {
+        if (index < 0 || index >= fDelimiterCount)
+        {
+            throw new IndexOutOfBoundsException("No piece after " + index + " of " + size());
+        }
+        return new CharSlice(fLine, fDelimiters[index] + 1, fLine.length());
+    }
+}
@@ -0,0 +1,68 @@
+package gov.va.med.srcalc.vista;
+
+/**
+ * <p>A {@link CharSequence} view of a range of another CharSequence. The characters are
+ * not copied until {@link #toString()} is called.</p>
+ *
+ * <p>Immutable if the underlying CharSequence is.</p>
+ */
+final class CharSlice implements CharSequence
+{
+    private final CharSequence fSource;
+
+    private final int fStart;
+
+    private final int fEnd;
+
+    /**
+     * Constructs an instance viewing source[start, end).
+     * @throws IndexOutOfBoundsException if the range is not within the source
+     */
+    public CharSlice(final CharSequence source, final int start, final int end)
+    {
+        if (start < 0 || end > source.length() || start > end)
+        {
+            throw new IndexOutOfBoundsException(
+                    "Invalid range [" + start + ", " + end + ") of length " + source.length());
+        }
+        fSource = source;
+        fStart = start;
+        fEnd = end;
+    }
+
+    @Override
+    public int length()
+    {
+        return fEnd - fStart;
+    }
+
+    @Override
+    public char charAt(final int index)
+    {
+        if (index < 0 || index >= length())
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " of length " + length());
+        }
+        return fSource.charAt(fStart + index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end)
+    {
+        if (start < 0 || end > length() || start > end)
+        {
+            throw new IndexOutOfBoundsException(
+                    "Invalid range [" + start + ", " + end + ") of length " + length());
+        }
+        return new CharSlice(fSource, fStart + start, fStart + end);
+    }
+
+    /**
+     * Returns the viewed characters as a new String.
+     */
+    @Override
+    public String toString()
+    {
+        return fSource.subSequence(fStart, fEnd).toString();
+    }
+}
@@ -0,0 +1,199 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.login.LoginException;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * <p>A {@link VistaProcedureCaller} that guards each call to another VistaProcedureCaller
+ * with a {@link DivisionCircuitBreaker}.</p>
+ *
+ * <p>Calls refused by the breaker throw {@link DivisionUnavailableException} without
+ * contacting VistA, so callers that tolerate failed calls (e.g., by leaving patient data
+ * for manual entry) fail fast instead of waiting on an unresponsive division.</p>
+ */
+public final class CircuitBreakingVistaProcedureCaller implements VistaProcedureCaller
+{
+    private final VistaProcedureCaller fTarget;
+
+    private final DivisionCircuitBreaker fBreaker;
+
+    /**
+     * Constructs an instance.
+     * @param target the caller to guard
+     * @param breaker the breaker for the target's division
+     */
+    public CircuitBreakingVistaProcedureCaller(
+            final VistaProcedureCaller target, final DivisionCircuitBreaker breaker)
+    {
+        fTarget = target;
+        fBreaker = breaker;
+    }
+
+    @Override
+    public List<String> doRpc(
+            final String duz, final RemoteProcedure procedure, final String... args)
+            throws LoginException, DataAccessException
+    {
+        return guard(new Call<List<String>>()
+        {
+            @Override
+            public List<String> call() throws LoginException
+            {
+                return fTarget.doRpc(duz, procedure, args);
+            }
+        });
+    }
+
+    @Override
+    public String doSaveProgressNoteCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines)
+            throws LoginException, DataAccessException
+    {
+        return guard(new Call<String>()
+        {
+            @Override
+            public String call() throws LoginException
+            {
+                return fTarget.doSaveProgressNoteCall(
+                        duz, encryptedSignature, patientDfn, noteLines);
+            }
+        });
+    }
+
+    @Override
+    public String doSaveRiskCalculationCall(
+            final String duz,
+            final String patientDfn,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException
+    {
+        return guard(new Call<String>()
+        {
+            @Override
+            public String call() throws LoginException
+            {
+                return fTarget.doSaveRiskCalculationCall(
+                        duz, patientDfn, cptCode, dateTime, outcomes);
+            }
+        });
+    }
+
+    @Override
+    public List<String> doSignAndSaveCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException
+    {
+        return guard(new Call<List<String>>()
+        {
+            @Override
+            public List<String> call() throws LoginException
+            {
+                return fTarget.doSignAndSaveCall(
+                        duz,
+                        encryptedSignature,
+                        patientDfn,
+                        noteLines,
+                        cptCode,
+                        dateTime,
+                        outcomes);
+            }
+        });
+    }
+
+    @Override
+    public String doRetrieveLabsCall(
+            final String duz,
+            final String patientDfn,
+            final List<String> labNames)
+            throws LoginException, DataAccessException
+    {
+        return guard(new Call<String>()
+        {
+            @Override
+            public String call() throws LoginException
+            {
+                return fTarget.doRetrieveLabsCall(duz, patientDfn, labNames);
+            }
+        });
+    }
+
+    @Override
+    public List<String> doRetrieveAllLabsCall(
+            final String duz,
+            final String patientDfn,
+            final Map<String, List<String>> labNameGroups)
+            throws LoginException, DataAccessException
+    {
+        return guard(new Call<List<String>>()
+        {
+            @Override
+            public List<String> call() throws LoginException
+            {
+                return fTarget.doRetrieveAllLabsCall(duz, patientDfn, labNameGroups);
+            }
+        });
+    }
+
+    @Override
+    public RpcSession openSession(final String duz)
+    {
+        // Guard the session's calls with the same breaker.
+        final RpcSession session = fTarget.openSession(duz);
+        return new DelegatingRpcSession(
+                new CircuitBreakingVistaProcedureCaller(session, fBreaker), session);
+    }
+
+    @Override
+    public String getDivision()
+    {
+        return fTarget.getDivision();
+    }
+
+    /**
+     * Makes the given call if the breaker allows it, recording its outcome.
+     */
+    private <T> T guard(final Call<T> call) throws LoginException
+    {
+        final DivisionCircuitBreaker.Permit permit = fBreaker.acquire();
+        boolean responded = false;
+        try
+        {
+            final T result = call.call();
+            responded = true;
+            return result;
+        }
+        catch (final LoginException | RemoteProcedureUnavailableException e)
+        {
+            // VistA responded, just not with the result we wanted.
+            responded = true;
+            throw e;
+        }
+        finally
+        {
+            fBreaker.release(permit, responded);
+        }
+    }
+
+    /**
+     * A call to the target caller.
+     */
+    private interface Call<T>
+    {
+        T call() throws LoginException;
+    }
+}
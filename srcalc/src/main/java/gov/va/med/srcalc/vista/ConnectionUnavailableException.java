@@ -0,0 +1,24 @@
+package gov.va.med.srcalc.vista;
+
+import org.springframework.dao.RecoverableDataAccessException;
+
+/**
+ * Indicates that no connection to VistA could be obtained, so the Remote Procedure was
+ * never sent. Unlike other communication errors, this guarantees that VistA did not act
+ * on the call.
+ */
+public class ConnectionUnavailableException extends RecoverableDataAccessException
+{
+    /**
+     * Change this when changing the class!
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * See {@link RecoverableDataAccessException#RecoverableDataAccessException(String, Throwable)}.
+     */
+    public ConnectionUnavailableException(final String message, final Throwable cause)
+    {
+        super(message, cause);
+    }
+}
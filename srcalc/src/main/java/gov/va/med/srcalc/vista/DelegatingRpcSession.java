@@ -0,0 +1,152 @@
+package gov.va.med.srcalc.vista;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.login.LoginException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+/**
+ * <p>An {@link RpcSession} which makes its calls through another VistaProcedureCaller
+ * and releases a given resource (usually another session) when closed. Useful for
+ * decorating the session of another VistaProcedureCaller and for callers which have no
+ * connections to reuse.</p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class DelegatingRpcSession implements RpcSession
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DelegatingRpcSession.class);
+
+    private final VistaProcedureCaller fTarget;
+
+    private final Closeable fResource;
+
+    /**
+     * Constructs an instance which has nothing to release.
+     * @param target the caller to make calls through
+     */
+    public DelegatingRpcSession(final VistaProcedureCaller target)
+    {
+        this(target, new Closeable()
+        {
+            @Override
+            public void close()
+            {
+                // Nothing to release.
+            }
+        });
+    }
+
+    /**
+     * Constructs an instance.
+     * @param target the caller to make calls through
+     * @param resource the resource to release when closed
+     */
+    public DelegatingRpcSession(final VistaProcedureCaller target, final Closeable resource)
+    {
+        fTarget = target;
+        fResource = resource;
+    }
+
+    @Override
+    public List<String> doRpc(
+            final String duz, final RemoteProcedure procedure, final String... args)
+            throws LoginException, DataAccessException
+    {
+        return fTarget.doRpc(duz, procedure, args);
+    }
+
+    @Override
+    public String doSaveProgressNoteCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines)
+            throws LoginException, DataAccessException
+    {
+        return fTarget.doSaveProgressNoteCall(duz, encryptedSignature, patientDfn, noteLines);
+    }
+
+    @Override
+    public String doSaveRiskCalculationCall(
+            final String duz,
+            final String patientDfn,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException
+    {
+        return fTarget.doSaveRiskCalculationCall(duz, patientDfn, cptCode, dateTime, outcomes);
+    }
+
+    @Override
+    public List<String> doSignAndSaveCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException
+    {
+        return fTarget.doSignAndSaveCall(
+                duz, encryptedSignature, patientDfn, noteLines, cptCode, dateTime, outcomes);
+    }
+
+    @Override
+    public String doRetrieveLabsCall(
+            final String duz,
+            final String patientDfn,
+            final List<String> labNames)
+            throws LoginException, DataAccessException
+    {
+        return fTarget.doRetrieveLabsCall(duz, patientDfn, labNames);
+    }
+
+    @Override
+    public List<String> doRetrieveAllLabsCall(
+            final String duz,
+            final String patientDfn,
+            final Map<String, List<String>> labNameGroups)
+            throws LoginException, DataAccessException
+    {
+        return fTarget.doRetrieveAllLabsCall(duz, patientDfn, labNameGroups);
+    }
+
+    /**
+     * Returns a new session of the target caller: sessions do not nest.
+     */
+    @Override
+    public RpcSession openSession(final String duz)
+    {
+        return fTarget.openSession(duz);
+    }
+
+    @Override
+    public String getDivision()
+    {
+        return fTarget.getDivision();
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            fResource.close();
+        }
+        catch (final IOException e)
+        {
+            // There is nothing the caller could do about it.
+            LOGGER.warn("Unable to release RPC session resource.", e);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+
+/**
+ * <p>Protects the application from one slow or failing VistA division. Provides:</p>
+ *
+ * <ul>
+ * <li>A bulkhead: a limit on the number of concurrent calls to the division, so that
+ * threads waiting on one division cannot exhaust the server's request threads.</li>
+ * <li>A circuit breaker: after a number of consecutive failed calls, calls are refused
+ * immediately for a while. After that, a single trial call is allowed through: if it
+ * succeeds, calls resume; if not, calls are refused for another while.</li>
+ * <li>An adaptive timeout: a recommended call timeout based on the division's recent
+ * latency, computed like TCP's retransmission timeout (smoothed latency plus four times
+ * its smoothed deviation) and bounded to a configured range.</li>
+ * </ul>
+ *
+ * <p>Callers must {@link #release(Permit, boolean) release} each {@link #acquire()
+ * acquired} permit exactly once.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class DivisionCircuitBreaker
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DivisionCircuitBreaker.class);
+
+    /**
+     * The weight of each new sample in the smoothed latency, per RFC 6298.
+     */
+    private static final double LATENCY_GAIN = 0.125;
+
+    /**
+     * The weight of each new sample in the smoothed deviation, per RFC 6298.
+     */
+    private static final double DEVIATION_GAIN = 0.25;
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State
+    {
+        /**
+         * Calls are allowed.
+         */
+        CLOSED,
+        /**
+         * Calls are refused.
+         */
+        OPEN,
+        /**
+         * A single trial call is allowed to determine whether to close again.
+         */
+        HALF_OPEN;
+    }
+
+    /**
+     * Represents permission to make one call. Opaque to callers.
+     */
+    public static final class Permit
+    {
+        private final long fStartNanos;
+
+        private final boolean fTrial;
+
+        private Permit(final long startNanos, final boolean trial)
+        {
+            fStartNanos = startNanos;
+            fTrial = trial;
+        }
+    }
+
+    private final String fDivision;
+
+    private final int fMaxConcurrentCalls;
+
+    private final long fMaxWaitMillis;
+
+    private final int fFailureThreshold;
+
+    private final long fOpenNanos;
+
+    private final int fMinTimeoutMillis;
+
+    private final int fMaxTimeoutMillis;
+
+    private final Ticker fTicker;
+
+    private final Semaphore fBulkhead;
+
+    private final AtomicLong fRejectedCount = new AtomicLong();
+
+    // The following fields are guarded by this.
+
+    private State fState = State.CLOSED;
+
+    private int fConsecutiveFailures = 0;
+
+    private long fOpenedAtNanos;
+
+    private boolean fTrialInProgress = false;
+
+    /**
+     * The smoothed latency of successful calls, or a negative number if there have been
+     * none.
+     */
+    private double fSmoothedLatencyMillis = -1.0;
+
+    private double fLatencyDeviationMillis = 0.0;
+
+    /**
+     * Constructs an instance. See {@link VistaCircuitBreakers} for the parameters.
+     */
+    DivisionCircuitBreaker(
+            final String division,
+            final int maxConcurrentCalls,
+            final long maxWaitMillis,
+            final int failureThreshold,
+            final long openMillis,
+            final int minTimeoutMillis,
+            final int maxTimeoutMillis,
+            final Ticker ticker)
+    {
+        fDivision = division;
+        fMaxConcurrentCalls = maxConcurrentCalls;
+        fMaxWaitMillis = maxWaitMillis;
+        fFailureThreshold = failureThreshold;
+        fOpenNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        fMinTimeoutMillis = minTimeoutMillis;
+        fMaxTimeoutMillis = maxTimeoutMillis;
+        fTicker = ticker;
+        fBulkhead = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**
+     * Returns the division protected by this breaker.
+     */
+    public String getDivision()
+    {
+        return fDivision;
+    }
+
+    /**
+     * Returns the current state. Note that an {@link State#OPEN OPEN} breaker only
+     * becomes {@link State#HALF_OPEN HALF_OPEN} upon the next call.
+     */
+    public synchronized State getState()
+    {
+        return fState;
+    }
+
+    /**
+     * Returns the number of failed calls since the last successful call.
+     */
+    public synchronized int getConsecutiveFailures()
+    {
+        return fConsecutiveFailures;
+    }
+
+    /**
+     * Returns the maximum number of concurrent calls.
+     */
+    public int getMaxConcurrentCalls()
+    {
+        return fMaxConcurrentCalls;
+    }
+
+    /**
+     * Returns the approximate number of calls in progress.
+     */
+    public int getActiveCalls()
+    {
+        return fMaxConcurrentCalls - fBulkhead.availablePermits();
+    }
+
+    /**
+     * Returns the number of calls refused since startup.
+     */
+    public long getRejectedCount()
+    {
+        return fRejectedCount.get();
+    }
+
+    /**
+     * Returns the recommended timeout for the next call, in milliseconds. Until a call
+     * has succeeded, this is the maximum timeout.
+     */
+    public synchronized int getCallTimeoutMillis()
+    {
+        if (fSmoothedLatencyMillis < 0)
+        {
+            return fMaxTimeoutMillis;
+        }
+        final long timeout =
+                Math.round(fSmoothedLatencyMillis + 4 * fLatencyDeviationMillis);
+        return (int)Math.max(fMinTimeoutMillis, Math.min(fMaxTimeoutMillis, timeout));
+    }
+
+    /**
+     * Obtains permission to make a call, waiting a short while if the maximum number of
+     * calls are already in progress.
+     * @return the permit to {@link #release(Permit, boolean) release} after the call
+     * @throws DivisionUnavailableException if the breaker is open or the call could not
+     * be admitted in time
+     */
+    public Permit acquire()
+    {
+        final boolean trial;
+        synchronized (this)
+        {
+            if (fState == State.OPEN)
+            {
+                if (fTicker.read() - fOpenedAtNanos < fOpenNanos)
+                {
+                    throw reject("recent calls to it have failed");
+                }
+                LOGGER.info("Allowing a trial call to division {}.", fDivision);
+                fState = State.HALF_OPEN;
+            }
+            if (fState == State.HALF_OPEN)
+            {
+                if (fTrialInProgress)
+                {
+                    throw reject("a trial call to it is in progress");
+                }
+                fTrialInProgress = true;
+                trial = true;
+            }
+            else
+            {
+                trial = false;
+            }
+        }
+
+        boolean acquired = false;
+        try
+        {
+            acquired = fBulkhead.tryAcquire(fMaxWaitMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (!acquired)
+        {
+            if (trial)
+            {
+                synchronized (this)
+                {
+                    fTrialInProgress = false;
+                }
+            }
+            throw reject("too many calls to it are in progress");
+        }
+        return new Permit(fTicker.read(), trial);
+    }
+
+    /**
+     * Records the outcome of a call and releases its permit.
+     * @param permit the permit returned by {@link #acquire()}
+     * @param succeeded true if the division responded, even if the response was an
+     * application-level error (e.g., an invalid login); false if the division could not
+     * be reached or did not respond in time
+     */
+    public void release(final Permit permit, final boolean succeeded)
+    {
+        final double elapsedMillis = (fTicker.read() - permit.fStartNanos) / 1e6;
+        fBulkhead.release();
+        synchronized (this)
+        {
+            if (permit.fTrial)
+            {
+                fTrialInProgress = false;
+            }
+            if (succeeded)
+            {
+                recordLatency(elapsedMillis);
+                fConsecutiveFailures = 0;
+                if (fState != State.CLOSED)
+                {
+                    LOGGER.info("Division {} is responding again.", fDivision);
+                    fState = State.CLOSED;
+                }
+            }
+            else
+            {
+                ++fConsecutiveFailures;
+                if (fState == State.HALF_OPEN ||
+                        (fState == State.CLOSED && fConsecutiveFailures >= fFailureThreshold))
+                {
+                    LOGGER.warn(
+                            "Refusing calls to division {} after {} consecutive failures.",
+                            fDivision, fConsecutiveFailures);
+                    fState = State.OPEN;
+                    fOpenedAtNanos = fTicker.read();
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the smoothed latency and deviation with the given sample. Must hold the
+     * lock on this.
+     */
+    private void recordLatency(final double sampleMillis)
+    {
+        if (fSmoothedLatencyMillis < 0)
+        {
+            fSmoothedLatencyMillis = sampleMillis;
+            fLatencyDeviationMillis = sampleMillis / 2;
+        }
+        else
+        {
+            fLatencyDeviationMillis += DEVIATION_GAIN *
+                    (Math.abs(fSmoothedLatencyMillis - sampleMillis) - fLatencyDeviationMillis);
+            fSmoothedLatencyMillis += LATENCY_GAIN * (sampleMillis - fSmoothedLatencyMillis);
+        }
+    }
+
+    private DivisionUnavailableException reject(final String reason)
+    {
+        fRejectedCount.incrementAndGet();
+        return new DivisionUnavailableException(
+                "VistA division " + fDivision + " is unavailable because " + reason + ".");
+    }
+}
@@ -0,0 +1,24 @@
+package gov.va.med.srcalc.vista;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * Indicates that a call to a VistA division was refused without being attempted
+ * because the division is failing or already has too many calls in progress.
+ * @see DivisionCircuitBreaker
+ */
+public class DivisionUnavailableException extends TransientDataAccessResourceException
+{
+    /**
+     * Change this when changing the class!
+     */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * See {@link TransientDataAccessResourceException#TransientDataAccessResourceException(String)}.
+     */
+    public DivisionUnavailableException(final String message)
+    {
+        super(message);
+    }
+}
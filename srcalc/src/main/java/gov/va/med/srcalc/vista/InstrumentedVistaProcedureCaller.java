@@ -0,0 +1,248 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.login.LoginException;
+
+import org.springframework.dao.DataAccessException;
+
+import com.google.common.base.Ticker;
+
+/**
+ * <p>A {@link VistaProcedureCaller} that records the latency, response size, and outcome
+ * of each call to another VistaProcedureCaller in an {@link RpcMetrics}.</p>
+ *
+ * <p>Any exception counts as an error, including {@link LoginException}s, as these are
+ * all calls that did not return the requested data.</p>
+ */
+public final class InstrumentedVistaProcedureCaller implements VistaProcedureCaller
+{
+    private final VistaProcedureCaller fTarget;
+
+    private final RpcMetrics fMetrics;
+
+    private final Ticker fTicker;
+
+    /**
+     * Constructs an instance using the system ticker.
+     * @param target the caller to instrument
+     * @param metrics where to record the calls
+     */
+    public InstrumentedVistaProcedureCaller(
+            final VistaProcedureCaller target, final RpcMetrics metrics)
+    {
+        this(target, metrics, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructs an instance with the given ticker. For tests.
+     */
+    InstrumentedVistaProcedureCaller(
+            final VistaProcedureCaller target, final RpcMetrics metrics, final Ticker ticker)
+    {
+        fTarget = target;
+        fMetrics = metrics;
+        fTicker = ticker;
+    }
+
+    @Override
+    public List<String> doRpc(
+            final String duz, final RemoteProcedure procedure, final String... args)
+            throws LoginException, DataAccessException
+    {
+        return measure(procedure, new Call<List<String>>()
+        {
+            @Override
+            public List<String> call() throws LoginException
+            {
+                return fTarget.doRpc(duz, procedure, args);
+            }
+        });
+    }
+
+    @Override
+    public String doSaveProgressNoteCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines)
+            throws LoginException, DataAccessException
+    {
+        return measure(RemoteProcedure.SR_ASRC_SAVE_PROGRESS_NOTE, new Call<String>()
+        {
+            @Override
+            public String call() throws LoginException
+            {
+                return fTarget.doSaveProgressNoteCall(
+                        duz, encryptedSignature, patientDfn, noteLines);
+            }
+        });
+    }
+
+    @Override
+    public String doSaveRiskCalculationCall(
+            final String duz,
+            final String patientDfn,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException
+    {
+        return measure(RemoteProcedure.SR_ASRC_RISK_SAVE, new Call<String>()
+        {
+            @Override
+            public String call() throws LoginException
+            {
+                return fTarget.doSaveRiskCalculationCall(
+                        duz, patientDfn, cptCode, dateTime, outcomes);
+            }
+        });
+    }
+
+    @Override
+    public List<String> doSignAndSaveCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException
+    {
+        return measure(RemoteProcedure.SR_ASRC_SIGN_AND_SAVE, new Call<List<String>>()
+        {
+            @Override
+            public List<String> call() throws LoginException
+            {
+                return fTarget.doSignAndSaveCall(
+                        duz,
+                        encryptedSignature,
+                        patientDfn,
+                        noteLines,
+                        cptCode,
+                        dateTime,
+                        outcomes);
+            }
+        });
+    }
+
+    @Override
+    public String doRetrieveLabsCall(
+            final String duz,
+            final String patientDfn,
+            final List<String> labNames)
+            throws LoginException, DataAccessException
+    {
+        return measure(RemoteProcedure.SR_ASRC_LAB_RESULTS, new Call<String>()
+        {
+            @Override
+            public String call() throws LoginException
+            {
+                return fTarget.doRetrieveLabsCall(duz, patientDfn, labNames);
+            }
+        });
+    }
+
+    @Override
+    public List<String> doRetrieveAllLabsCall(
+            final String duz,
+            final String patientDfn,
+            final Map<String, List<String>> labNameGroups)
+            throws LoginException, DataAccessException
+    {
+        return measure(RemoteProcedure.SR_ASRC_MULTI_LAB_RESULTS, new Call<List<String>>()
+        {
+            @Override
+            public List<String> call() throws LoginException
+            {
+                return fTarget.doRetrieveAllLabsCall(duz, patientDfn, labNameGroups);
+            }
+        });
+    }
+
+    @Override
+    public RpcSession openSession(final String duz)
+    {
+        // Measure the session's calls just like this caller's.
+        final RpcSession session = fTarget.openSession(duz);
+        return new DelegatingRpcSession(
+                new InstrumentedVistaProcedureCaller(session, fMetrics, fTicker), session);
+    }
+
+    @Override
+    public String getDivision()
+    {
+        return fTarget.getDivision();
+    }
+
+    /**
+     * Makes the given call, recording its latency, response size, and outcome.
+     */
+    private <T> T measure(final RemoteProcedure procedure, final Call<T> call)
+            throws LoginException
+    {
+        final long start = fTicker.read();
+        boolean succeeded = false;
+        try
+        {
+            final T result = call.call();
+            succeeded = true;
+            fMetrics.recordSuccess(
+                    procedure, getDivision(), fTicker.read() - start, responseSize(result));
+            return result;
+        }
+        finally
+        {
+            if (!succeeded)
+            {
+                fMetrics.recordError(procedure, getDivision(), fTicker.read() - start);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of characters in the given response, not counting line
+     * separators.
+     */
+    private static long responseSize(final Object response)
+    {
+        if (response instanceof CharSequence)
+        {
+            return ((CharSequence)response).length();
+        }
+        else if (response instanceof ResponseLines)
+        {
+            // Measure the line views to avoid copying each line.
+            final ResponseLines lines = (ResponseLines)response;
+            long size = 0;
+            for (int i = 0; i < lines.size(); ++i)
+            {
+                size += lines.line(i).length();
+            }
+            return size;
+        }
+        else if (response instanceof List)
+        {
+            long size = 0;
+            for (final Object line : (List<?>)response)
+            {
+                size += ((CharSequence)line).length();
+            }
+            return size;
+        }
+        else
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * A call to the target caller.
+     */
+    private interface Call<T>
+    {
+        T call() throws LoginException;
+    }
+}
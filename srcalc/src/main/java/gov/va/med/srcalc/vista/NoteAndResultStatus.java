@@ -0,0 +1,76 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.Objects;
+
+import gov.va.med.srcalc.vista.VistaPatientDao.SaveNoteCode;
+
+/**
+ * <p>The outcome of saving a risk calculation note and result in one round-trip: see
+ * {@link VistaPatientDao#saveRiskCalculationNoteAndResult}. VistA only saves the result
+ * with a signed note, but may sign the note and still fail to save the result. Immutable.
+ * </p>
+ *
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class NoteAndResultStatus
+{
+    private final SaveNoteCode fNoteCode;
+    private final boolean fResultSaved;
+
+    /**
+     * Constructs an instance.
+     * @param noteCode the outcome of saving the note
+     * @param resultSaved whether VistA Surgery saved the result
+     * @throws IllegalArgumentException if resultSaved is true but the note was not
+     * signed
+     */
+    public NoteAndResultStatus(final SaveNoteCode noteCode, final boolean resultSaved)
+    {
+        fNoteCode = Objects.requireNonNull(noteCode, "noteCode must not be null");
+        if (resultSaved && noteCode != SaveNoteCode.SUCCESS)
+        {
+            throw new IllegalArgumentException("result saved without a signed note");
+        }
+        fResultSaved = resultSaved;
+    }
+
+    /**
+     * Returns the outcome of saving the note.
+     */
+    public SaveNoteCode getNoteCode()
+    {
+        return fNoteCode;
+    }
+
+    /**
+     * Returns true if VistA Surgery saved the result, false if it must still be saved.
+     */
+    public boolean isResultSaved()
+    {
+        return fResultSaved;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (o instanceof NoteAndResultStatus)
+        {
+            final NoteAndResultStatus other = (NoteAndResultStatus)o;
+            return fNoteCode == other.fNoteCode && fResultSaved == other.fResultSaved;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fNoteCode, fResultSaved);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("note %s, result saved: %s", fNoteCode, fResultSaved);
+    }
+}
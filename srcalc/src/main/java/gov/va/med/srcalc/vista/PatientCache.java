@@ -0,0 +1,161 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import gov.va.med.srcalc.domain.Patient;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * <p>A short-lived, in-memory cache of {@link Patient}s retrieved from VistA. Entries are
+ * keyed by division, patient DFN, and the DUZ of the user who retrieved them, so one
+ * user never sees data retrieved under another user's VistA permissions.</p>
+ *
+ * <p>Since Patients contain PHI, entries are never written to disk and expire a fixed
+ * time after retrieval. The cache is also bounded in size.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class PatientCache
+{
+    private final Cache<Key, Patient> fCache;
+
+    /**
+     * Constructs an instance.
+     * @param maximumSize the maximum number of Patients to cache
+     * @param expireAfterSeconds how long after retrieval to discard each Patient
+     */
+    public PatientCache(final long maximumSize, final long expireAfterSeconds)
+    {
+        this(maximumSize, expireAfterSeconds, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructs an instance using the given Ticker to measure time. For tests.
+     */
+    PatientCache(final long maximumSize, final long expireAfterSeconds, final Ticker ticker)
+    {
+        fCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Returns the cached Patient for the given key, retrieving and caching it with the
+     * given loader if necessary. Concurrent calls for the same key only call the loader
+     * once.
+     * @param division the VistA division
+     * @param dfn the patient's DFN
+     * @param duz the DUZ of the user retrieving the patient
+     * @param loader retrieves the Patient from VistA
+     * @return the Patient
+     * @throws RuntimeException any RuntimeException thrown by the loader
+     */
+    public Patient get(
+            final String division,
+            final int dfn,
+            final String duz,
+            final Callable<Patient> loader)
+    {
+        try
+        {
+            return fCache.get(new Key(division, dfn, duz), loader);
+        }
+        catch (final ExecutionException | UncheckedExecutionException e)
+        {
+            // Rethrow the original Exception to avoid changing the loader's contract.
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Caches the given Patient, replacing any existing entry for the same key.
+     * @param division the VistA division
+     * @param duz the DUZ of the user who retrieved the patient
+     * @param patient the Patient
+     */
+    public void put(final String division, final String duz, final Patient patient)
+    {
+        fCache.put(new Key(division, patient.getDfn(), duz), patient);
+    }
+
+    /**
+     * Discards any cached data for the given patient, regardless of user.
+     * @param division the VistA division
+     * @param dfn the patient's DFN
+     */
+    public void invalidatePatient(final String division, final int dfn)
+    {
+        final Iterator<Key> keys = fCache.asMap().keySet().iterator();
+        while (keys.hasNext())
+        {
+            final Key key = keys.next();
+            if (key.fDfn == dfn && key.fDivision.equals(division))
+            {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards all cached data.
+     */
+    public void invalidateAll()
+    {
+        fCache.invalidateAll();
+    }
+
+    /**
+     * Returns the approximate number of cached Patients.
+     */
+    public long size()
+    {
+        return fCache.size();
+    }
+
+    /**
+     * A cache key. Immutable.
+     */
+    private static final class Key
+    {
+        private final String fDivision;
+        private final int fDfn;
+        private final String fDuz;
+
+        public Key(final String division, final int dfn, final String duz)
+        {
+            fDivision = Objects.requireNonNull(division);
+            fDfn = dfn;
+            fDuz = Objects.requireNonNull(duz);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (o instanceof Key)
+            {
+                final Key other = (Key)o;
+                return fDfn == other.fDfn &&
+                        fDivision.equals(other.fDivision) &&
+                        fDuz.equals(other.fDuz);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(fDivision, fDfn, fDuz);
+        }
+    }
+}
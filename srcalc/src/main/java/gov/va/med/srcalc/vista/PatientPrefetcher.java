@@ -0,0 +1,149 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+
+/**
+ * <p>Retrieves patients from VistA on background threads so that a new calculation can
+ * proceed (e.g., to specialty selection) while the patient's data loads.</p>
+ *
+ * <p>This pool is separate from {@link VistaRpcExecutors} because each retrieval itself
+ * waits on calls submitted to the division's RPC pool: running both on the same pool
+ * could deadlock. When the pool and its queue are both full, the submitting thread
+ * retrieves the patient itself.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class PatientPrefetcher
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientPrefetcher.class);
+
+    /**
+     * The prefix of each pool thread's name, for identification in thread dumps.
+     */
+    public static final String THREAD_NAME_PREFIX = "srcalc-patient-prefetch-";
+
+    /**
+     * How long idle pool threads are kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final VistaDaoFactory fDaoFactory;
+
+    private final ListeningExecutorService fExecutor;
+
+    /**
+     * Constructs an instance. No threads are started until the first retrieval.
+     * @param daoFactory provides the VistaPatientDao for the current user
+     * @param threads the maximum number of concurrent retrievals
+     * @param queueCapacity the maximum number of retrievals waiting for a thread
+     * @throws IllegalArgumentException if any number is not positive
+     */
+    public PatientPrefetcher(
+            final VistaDaoFactory daoFactory, final int threads, final int queueCapacity)
+    {
+        if (threads < 1 || queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        }
+        fDaoFactory = daoFactory;
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                new PrefetchThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        fExecutor = MoreExecutors.listeningDecorator(executor);
+    }
+
+    /**
+     * Starts retrieving the given patient on behalf of the current user. Must be called
+     * on a thread with an authenticated user, as the user's DAO is obtained before
+     * handing off to the background thread.
+     * @param patientDfn the patient's DFN
+     * @param plan the data to retrieve up front
+     * @return a future for the patient, which fails with the DAO's exception if the
+     * patient could not be retrieved
+     */
+    public ListenableFuture<Patient> prefetch(
+            final int patientDfn, final PatientRetrievalPlan plan)
+    {
+        final VistaPatientDao dao = fDaoFactory.getVistaPatientDao();
+        LOGGER.debug("Prefetching patient {}.", patientDfn);
+        return fExecutor.submit(new Callable<Patient>()
+        {
+            @Override
+            public Patient call()
+            {
+                return dao.getPatient(patientDfn, plan);
+            }
+        });
+    }
+
+    /**
+     * Once the given patient has been retrieved, loads any of the given data that it
+     * has not loaded yet (see {@link Patient#load(PatientRetrievalPlan)}).
+     * @param patient the patient, which may still be being retrieved
+     * @param plan the data to load
+     * @return a future for the same patient once the data has been loaded, which fails
+     * if the patient could not be retrieved
+     */
+    public ListenableFuture<Patient> load(
+            final ListenableFuture<Patient> patient, final PatientRetrievalPlan plan)
+    {
+        return Futures.transform(patient, new Function<Patient, Patient>()
+        {
+            @Override
+            public Patient apply(final Patient input)
+            {
+                input.load(plan);
+                return input;
+            }
+        }, fExecutor);
+    }
+
+    /**
+     * Shuts down the pool, interrupting any running retrievals.
+     */
+    public void shutdown()
+    {
+        fExecutor.shutdownNow();
+    }
+
+    /**
+     * Creates named daemon threads for the pool.
+     */
+    private static final class PrefetchThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger fNextThreadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(
+                    runnable, THREAD_NAME_PREFIX + fNextThreadNumber.getAndIncrement());
+            // Never prevent JVM shutdown.
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
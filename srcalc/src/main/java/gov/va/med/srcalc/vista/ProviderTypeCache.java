@@ -0,0 +1,254 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.login.LoginException;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * <p>An in-memory cache of each VistA user's Provider Type (see {@link
+ * RemoteProcedure#SR_ASRC_PERSON_CLASSES}), keyed by division and DUZ. CPRS relaunches
+ * the application many times a day for each provider, so caching the Provider Type
+ * leaves only the credential validation call on each repeat login.</p>
+ *
+ * <p>An entry is refreshed in the background when it is accessed some time after it was
+ * loaded: the login uses the cached Provider Type in the meantime. An entry which is not
+ * accessed is discarded after a longer, fixed time so that a changed Person Class is
+ * eventually seen. If a background refresh fails, the cached Provider Type is kept.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class ProviderTypeCache implements ProviderTypeCacheMXBean
+{
+    /**
+     * The name of the background refresh thread, for identification in thread dumps.
+     */
+    public static final String THREAD_NAME = "srcalc-provider-type-refresh";
+
+    /**
+     * How long the idle refresh thread is kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The maximum number of refreshes waiting for the refresh thread. Any more are
+     * skipped and retried on the next access.
+     */
+    private static final int REFRESH_QUEUE_CAPACITY = 100;
+
+    private final LoadingCache<Key, Optional<String>> fCache;
+
+    private final ExecutorService fOwnedExecutor;
+
+    /**
+     * Constructs an instance. No thread is started until the first refresh.
+     * @param maximumSize the maximum number of users to cache
+     * @param refreshAfterSeconds how long after loading to refresh each entry when it is
+     * next accessed
+     * @param expireAfterSeconds how long after loading to discard each entry
+     */
+    public ProviderTypeCache(
+            final long maximumSize,
+            final long refreshAfterSeconds,
+            final long expireAfterSeconds)
+    {
+        this(
+                maximumSize,
+                refreshAfterSeconds,
+                expireAfterSeconds,
+                Ticker.systemTicker(),
+                newRefreshExecutor());
+    }
+
+    /**
+     * Constructs an instance using the given Ticker to measure time and the given
+     * Executor to refresh entries. For tests.
+     */
+    ProviderTypeCache(
+            final long maximumSize,
+            final long refreshAfterSeconds,
+            final long expireAfterSeconds,
+            final Ticker ticker,
+            final ExecutorService refreshExecutor)
+    {
+        fOwnedExecutor = refreshExecutor;
+        fCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(refreshAfterSeconds, TimeUnit.SECONDS)
+                .expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(new KeyLoader(), refreshExecutor));
+    }
+
+    /**
+     * Returns the cached Provider Type for the given user, loading and caching it with
+     * the given loader if necessary. The loader which first loaded the entry is kept to
+     * refresh it later. Concurrent calls for the same user only call the loader once.
+     * @param division the VistA division
+     * @param duz the user's DUZ
+     * @param loader loads the Provider Type from VistA
+     * @return the Provider Type, which is absent if the user has none
+     * @throws LoginException if the loader throws one
+     * @throws RuntimeException any RuntimeException thrown by the loader
+     */
+    public Optional<String> get(
+            final String division,
+            final String duz,
+            final Callable<Optional<String>> loader)
+            throws LoginException
+    {
+        try
+        {
+            // Use the cache's own CacheLoader, not get(K, Callable), so that refreshes
+            // happen on the refresh thread.
+            return fCache.get(new Key(division, duz, loader));
+        }
+        catch (final ExecutionException | UncheckedExecutionException e)
+        {
+            // Rethrow the original Exception to avoid changing the loader's contract.
+            Throwables.propagateIfInstanceOf(e.getCause(), LoginException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        fCache.invalidateAll();
+    }
+
+    @Override
+    public long getSize()
+    {
+        return fCache.size();
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return fCache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return fCache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate()
+    {
+        return fCache.stats().hitRate();
+    }
+
+    @Override
+    public long getLoadFailureCount()
+    {
+        return fCache.stats().loadExceptionCount();
+    }
+
+    /**
+     * Stops the background refresh thread. Any pending refreshes are abandoned.
+     */
+    public void shutdown()
+    {
+        fOwnedExecutor.shutdownNow();
+    }
+
+    private static ExecutorService newRefreshExecutor()
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(REFRESH_QUEUE_CAPACITY),
+                new RefreshThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Loads and refreshes entries with each Key's loader.
+     */
+    private static final class KeyLoader extends CacheLoader<Key, Optional<String>>
+    {
+        @Override
+        public Optional<String> load(final Key key) throws Exception
+        {
+            return Objects.requireNonNull(key.fLoader.call());
+        }
+    }
+
+    /**
+     * Creates the named daemon refresh thread.
+     */
+    private static final class RefreshThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger fThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(
+                    runnable, THREAD_NAME + "-" + fThreadCount.incrementAndGet());
+            // Never prevent JVM shutdown.
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * A cache key, which also carries the loader for the entry. Only the division and
+     * DUZ take part in equality. Immutable.
+     */
+    private static final class Key
+    {
+        private final String fDivision;
+        private final String fDuz;
+        private final Callable<Optional<String>> fLoader;
+
+        public Key(
+                final String division,
+                final String duz,
+                final Callable<Optional<String>> loader)
+        {
+            fDivision = Objects.requireNonNull(division);
+            fDuz = Objects.requireNonNull(duz);
+            fLoader = Objects.requireNonNull(loader);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (o instanceof Key)
+            {
+                final Key other = (Key)o;
+                return fDivision.equals(other.fDivision) && fDuz.equals(other.fDuz);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(fDivision, fDuz);
+        }
+    }
+}
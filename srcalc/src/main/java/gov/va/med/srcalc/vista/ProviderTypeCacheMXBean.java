@@ -0,0 +1,38 @@
+package gov.va.med.srcalc.vista;
+
+/**
+ * The JMX management interface of {@link ProviderTypeCache}.
+ */
+public interface ProviderTypeCacheMXBean
+{
+    /**
+     * Returns the number of cached users.
+     */
+    public long getSize();
+
+    /**
+     * Returns the number of logins which used a cached Provider Type since startup.
+     */
+    public long getHitCount();
+
+    /**
+     * Returns the number of logins which had to load the Provider Type since startup.
+     */
+    public long getMissCount();
+
+    /**
+     * Returns the ratio of hits to all lookups, or 1.0 if there have been no lookups.
+     */
+    public double getHitRate();
+
+    /**
+     * Returns the number of loads and background refreshes which failed since startup.
+     */
+    public long getLoadFailureCount();
+
+    /**
+     * Discards all cached Provider Types, for example after a Person Class change which
+     * must take effect immediately.
+     */
+    public void invalidateAll();
+}
@@ -0,0 +1,126 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import gov.va.med.srcalc.domain.ReferenceNote;
+import gov.va.med.srcalc.domain.ReferenceNotes;
+
+/**
+ * <p>Parses the {@link ReferenceNotes} XML returned by the note RPCs (e.g., {@link
+ * RemoteProcedure#SR_ASRC_ADL_NOTES}) into {@link ReferenceNote}s.</p>
+ *
+ * <p>The XML is streamed directly from the RPC's {@link ResponseLines} and each
+ * <code>&lt;note&gt;</code> element is unmarshalled as it is encountered, so the whole
+ * document never needs to be in memory as a single String. Since the RPCs return notes
+ * most recent first, callers may also stop after a given number of notes.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+final class ReferenceNotesParser
+{
+    /**
+     * Pass to {@link #parse(List, int)} to parse all notes.
+     */
+    public static final int ALL_NOTES = Integer.MAX_VALUE;
+
+    private static final String NOTE_ELEMENT = "note";
+
+    /**
+     * The maximum number of idle Unmarshallers to keep.
+     */
+    private static final int UNMARSHALLER_POOL_SIZE = 8;
+
+    /**
+     * JAXBContexts are expensive to create but thread-safe, so share one.
+     */
+    private static final JAXBContext JAXB_CONTEXT;
+
+    static
+    {
+        try
+        {
+            JAXB_CONTEXT = JAXBContext.newInstance(ReferenceNote.class);
+        }
+        catch (final JAXBException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final XMLInputFactory fInputFactory;
+
+    /**
+     * Unmarshallers are not thread-safe, so each parse borrows one from this pool.
+     */
+    private final BlockingQueue<Unmarshaller> fUnmarshallers =
+            new ArrayBlockingQueue<>(UNMARSHALLER_POOL_SIZE);
+
+    /**
+     * Constructs an instance.
+     */
+    public ReferenceNotesParser()
+    {
+        fInputFactory = XMLInputFactory.newInstance();
+        // The XML comes from VistA and never needs a DTD: don't resolve anything
+        // external.
+        fInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        fInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Parses the given lines of XML.
+     * @param lines the RPC response lines, which together form a <code>&lt;notes&gt;</code>
+     * document
+     * @param maxNotes the maximum number of notes to parse, or {@link #ALL_NOTES}. Any
+     * notes after these are ignored.
+     * @return a mutable list of the parsed notes, in document order
+     * @throws XMLStreamException if the XML is malformed
+     * @throws JAXBException if a note could not be unmarshalled
+     */
+    public List<ReferenceNote> parse(final List<String> lines, final int maxNotes)
+            throws XMLStreamException, JAXBException
+    {
+        final List<ReferenceNote> notes = new ArrayList<>();
+        final Unmarshaller unmarshaller = borrowUnmarshaller();
+        final XMLStreamReader xml = fInputFactory.createXMLStreamReader(
+                ResponseLines.of(lines).asReader());
+        try
+        {
+            while (notes.size() < maxNotes && xml.hasNext())
+            {
+                // Note that unmarshal() leaves the reader positioned after the
+                // element, so only advance if we didn't just unmarshal.
+                if (xml.isStartElement() && NOTE_ELEMENT.equals(xml.getLocalName()))
+                {
+                    notes.add(unmarshaller.unmarshal(xml, ReferenceNote.class).getValue());
+                }
+                else
+                {
+                    xml.next();
+                }
+            }
+            return notes;
+        }
+        finally
+        {
+            xml.close();
+            fUnmarshallers.offer(unmarshaller);
+        }
+    }
+
+    private Unmarshaller borrowUnmarshaller() throws JAXBException
+    {
+        final Unmarshaller pooled = fUnmarshallers.poll();
+        return (pooled != null) ? pooled : JAXB_CONTEXT.createUnmarshaller();
+    }
+}
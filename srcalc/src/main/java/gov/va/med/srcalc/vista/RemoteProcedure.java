@@ -71,6 +71,17 @@ public enum RemoteProcedure
      */
     SR_ASRC_RISK_SAVE("SR ASRC RISK SAVE"),
     
+    /**
+     * <p>Submits a completed calculation as a note on the patient's records and, if the
+     * note was signed, saves it as discrete data to VistA Surgery. Equivalent to calling
+     * {@link #SR_ASRC_SAVE_PROGRESS_NOTE} and then {@link #SR_ASRC_RISK_SAVE}, but in a
+     * single round-trip.</p>
+     * 
+     * <p>As this Remote Procedure is defined in the ASRC VistA patch, consult the ASRC
+     * Technical Manual for parameter and return value documentation.</p>
+     */
+    SR_ASRC_SIGN_AND_SAVE("SR ASRC SIGN AND SAVE"),
+    
     /**
      * <p>Returns the most recent result for the given lab name possibilities.</p>
      * 
@@ -79,6 +90,16 @@ public enum RemoteProcedure
      */
     SR_ASRC_LAB_RESULTS("SR ASRC LAB RESULTS"),
     
+    /**
+     * <p>Returns the most recent result for each of several groups of lab name
+     * possibilities. Equivalent to calling {@link #SR_ASRC_LAB_RESULTS} once per group,
+     * but in a single round-trip.</p>
+     * 
+     * <p>As this Remote Procedure is defined in the ASRC VistA patch, consult the ASRC
+     * Technical Manual for parameter and return value documentation.</p>
+     */
+    SR_ASRC_MULTI_LAB_RESULTS("SR ASRC MULTI LAB RESULTS"),
+    
     /**
      * <p>Returns any of the patient's health factors in the last year.</p>
      * 
@@ -0,0 +1,23 @@
+package gov.va.med.srcalc.vista;
+
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+/**
+ * Indicates that the target VistA does not provide a requested Remote Procedure, usually
+ * because the site has not installed the VistA patch that defines it.
+ */
+public class RemoteProcedureUnavailableException extends InvalidDataAccessResourceUsageException
+{
+    /**
+     * Change this when changing the class!
+     */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * See {@link InvalidDataAccessResourceUsageException#InvalidDataAccessResourceUsageException(String, Throwable)}.
+     */
+    public RemoteProcedureUnavailableException(final String message, final Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,288 @@
+package gov.va.med.srcalc.vista;
+
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <p>The lines of a remote procedure response. Each line is available either as a
+ * String through the {@link List} interface or, without copying, as a {@link
+ * CharSequence} view through {@link #line(int)}.</p>
+ *
+ * <p>Instances are immutable.</p>
+ */
+public abstract class ResponseLines extends AbstractList<String> implements RandomAccess
+{
+    /**
+     * Package-private to restrict implementations to this class.
+     */
+    ResponseLines()
+    {
+    }
+
+    /**
+     * Splits a newline-delimited response into lines. Like {@link String#split(String)},
+     * omits any trailing empty lines.
+     * @param buffer the full response. Each line is a view of this String.
+     */
+    public static ResponseLines split(final String buffer)
+    {
+        return new BufferLines(buffer);
+    }
+
+    /**
+     * Returns the given lines as a ResponseLines. If the given List is already a
+     * ResponseLines, returns it.
+     */
+    public static ResponseLines of(final List<String> lines)
+    {
+        if (lines instanceof ResponseLines)
+        {
+            return (ResponseLines)lines;
+        }
+        return new ListLines(lines);
+    }
+
+    /**
+     * Returns a view of the given line, excluding the newline.
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public abstract CharSequence line(final int index);
+
+    /**
+     * Returns the given line as a new String.
+     */
+    @Override
+    public String get(final int index)
+    {
+        return line(index).toString();
+    }
+
+    /**
+     * Returns a Reader over the lines as if they were joined with newlines.
+     */
+    public Reader asReader()
+    {
+        return new LinesReader();
+    }
+
+    /**
+     * Lines within a single newline-delimited buffer.
+     */
+    private static final class BufferLines extends ResponseLines
+    {
+        private final String fBuffer;
+
+        /**
+         * The start offset of each line within the buffer.
+         */
+        private final int[] fStarts;
+
+        /**
+         * The end offset of each line within the buffer.
+         */
+        private final int[] fEnds;
+
+        private final int fSize;
+
+        public BufferLines(final String buffer)
+        {
+            fBuffer = buffer;
+            int capacity = 8;
+            int[] starts = new int[capacity];
+            int[] ends = new int[capacity];
+            int size = 0;
+            int lineStart = 0;
+            // The number of lines, not counting trailing empty lines.
+            int nonEmptySize = 0;
+            while (true)
+            {
+                int lineEnd = buffer.indexOf('\n', lineStart);
+                if (lineEnd < 0)
+                {
+                    lineEnd = buffer.length();
+                }
+                if (size == capacity)
+                {
+                    capacity *= 2;
+                    starts = Arrays.copyOf(starts, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                }
+                starts[size] = lineStart;
+                ends[size] = lineEnd;
+                ++size;
+                if (lineEnd > lineStart)
+                {
+                    nonEmptySize = size;
+                }
+                if (lineEnd == buffer.length())
+                {
+                    break;
+                }
+                lineStart = lineEnd + 1;
+            }
+            // Mimic String.split(): an input without any delimiter is one line, even if
+            // empty. Otherwise, trailing empty lines are dropped.
+            fSize = (size == 1) ? 1 : nonEmptySize;
+            fStarts = starts;
+            fEnds = ends;
+        }
+
+        @Override
+        public int size()
+        {
+            return fSize;
+        }
+
+        @Override
+        public CharSequence line(final int index)
+        {
+            checkIndex(index);
+            return new CharSlice(fBuffer, fStarts[index], fEnds[index]);
+        }
+
+        @Override
+        public String get(final int index)
+        {
+            checkIndex(index);
+            return fBuffer.substring(fStarts[index], fEnds[index]);
+        }
+
+        @Override
+        public Reader asReader()
+        {
+            // The lines are already joined with newlines in the buffer.
+            final int end = (fSize == 0) ? 0 : fEnds[fSize - 1];
+            return new BufferReader(fBuffer, end);
+        }
+
+        private void checkIndex(final int index)
+        {
+            if (index < 0 || index >= fSize)
+            {
+                throw new IndexOutOfBoundsException("Index " + index + " of size " + fSize);
+            }
+        }
+    }
+
+    /**
+     * Lines from a List of Strings.
+     */
+    private static final class ListLines extends ResponseLines
+    {
+        private final List<String> fLines;
+
+        public ListLines(final List<String> lines)
+        {
+            fLines = lines;
+        }
+
+        @Override
+        public int size()
+        {
+            return fLines.size();
+        }
+
+        @Override
+        public CharSequence line(final int index)
+        {
+            return fLines.get(index);
+        }
+
+        @Override
+        public String get(final int index)
+        {
+            return fLines.get(index);
+        }
+    }
+
+    /**
+     * Reads the first end characters of a String without copying them.
+     */
+    private static final class BufferReader extends Reader
+    {
+        private final String fBuffer;
+
+        private final int fEnd;
+
+        private int fPosition = 0;
+
+        public BufferReader(final String buffer, final int end)
+        {
+            fBuffer = buffer;
+            fEnd = end;
+        }
+
+        @Override
+        public int read(final char[] destination, final int offset, final int length)
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (fPosition >= fEnd)
+            {
+                return -1;
+            }
+            final int count = Math.min(length, fEnd - fPosition);
+            fBuffer.getChars(fPosition, fPosition + count, destination, offset);
+            fPosition += count;
+            return count;
+        }
+
+        @Override
+        public void close()
+        {
+            // Nothing to release.
+        }
+    }
+
+    /**
+     * Reads this instance's lines with a newline between each.
+     */
+    private final class LinesReader extends Reader
+    {
+        private int fLineIndex = 0;
+
+        /**
+         * The position in the current line of the next char to read. A position equal
+         * to the length of the line denotes the newline after it.
+         */
+        private int fPosition = 0;
+
+        @Override
+        public int read(final char[] destination, final int offset, final int length)
+        {
+            int count = 0;
+            while (count < length && fLineIndex < size())
+            {
+                final CharSequence line = line(fLineIndex);
+                if (fPosition < line.length())
+                {
+                    destination[offset + count] = line.charAt(fPosition);
+                    ++fPosition;
+                    ++count;
+                }
+                else
+                {
+                    ++fLineIndex;
+                    fPosition = 0;
+                    if (fLineIndex < size())
+                    {
+                        destination[offset + count] = '\n';
+                        ++count;
+                    }
+                }
+            }
+            return (count == 0 && length > 0) ? -1 : count;
+        }
+
+        @Override
+        public void close()
+        {
+            // Nothing to release.
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gov.va.med.srcalc.util.ConcurrentLogLinearHistogram;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * <p>Records the latency, response size, and error count of Remote Procedure calls per
+ * Remote Procedure and division. See {@link InstrumentedVistaProcedureCaller}.</p>
+ *
+ * <p>Recording is lock-free so that it adds negligible overhead to each call. The
+ * statistics are only kept in memory and are lost on restart.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class RpcMetrics implements RpcMetricsMXBean
+{
+    private final ConcurrentMap<Key, ProcedureMetrics> fMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * Records a successful call.
+     * @param procedure the Remote Procedure called
+     * @param division the division called
+     * @param elapsedNanos the duration of the call
+     * @param responseSize the size of the response, in characters
+     */
+    public void recordSuccess(
+            final RemoteProcedure procedure,
+            final String division,
+            final long elapsedNanos,
+            final long responseSize)
+    {
+        final ProcedureMetrics metrics = getMetrics(procedure, division);
+        metrics.fLatencies.record(toMillis(elapsedNanos));
+        metrics.fResponseSizes.record(Ints.saturatedCast(responseSize));
+    }
+
+    /**
+     * Records a failed call.
+     * @param procedure the Remote Procedure called
+     * @param division the division called
+     * @param elapsedNanos the duration of the call until it failed
+     */
+    public void recordError(
+            final RemoteProcedure procedure, final String division, final long elapsedNanos)
+    {
+        final ProcedureMetrics metrics = getMetrics(procedure, division);
+        metrics.fLatencies.record(toMillis(elapsedNanos));
+        metrics.fErrorCount.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The returned list is sorted by division and then procedure name.</p>
+     */
+    @Override
+    public List<RpcStatistics> getStatistics()
+    {
+        final List<RpcStatistics> statistics = new ArrayList<>(fMetrics.size());
+        for (final Map.Entry<Key, ProcedureMetrics> entry : fMetrics.entrySet())
+        {
+            final ProcedureMetrics metrics = entry.getValue();
+            statistics.add(RpcStatistics.fromHistograms(
+                    entry.getKey().fDivision,
+                    entry.getKey().fProcedure.getProcedureName(),
+                    metrics.fLatencies.snapshot(),
+                    metrics.fResponseSizes.snapshot(),
+                    metrics.fErrorCount.get()));
+        }
+        Collections.sort(statistics, new Comparator<RpcStatistics>()
+        {
+            @Override
+            public int compare(final RpcStatistics a, final RpcStatistics b)
+            {
+                final int byDivision = a.getDivision().compareTo(b.getDivision());
+                return (byDivision != 0) ?
+                        byDivision : a.getProcedureName().compareTo(b.getProcedureName());
+            }
+        });
+        return statistics;
+    }
+
+    @Override
+    public void reset()
+    {
+        fMetrics.clear();
+    }
+
+    private ProcedureMetrics getMetrics(final RemoteProcedure procedure, final String division)
+    {
+        final Key key = new Key(procedure, division);
+        final ProcedureMetrics existing = fMetrics.get(key);
+        if (existing != null)
+        {
+            return existing;
+        }
+        final ProcedureMetrics created = new ProcedureMetrics();
+        final ProcedureMetrics raced = fMetrics.putIfAbsent(key, created);
+        return (raced != null) ? raced : created;
+    }
+
+    private static int toMillis(final long nanos)
+    {
+        return Ints.saturatedCast(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * The metrics for one procedure and division.
+     */
+    private static final class ProcedureMetrics
+    {
+        private final ConcurrentLogLinearHistogram fLatencies =
+                new ConcurrentLogLinearHistogram();
+        private final ConcurrentLogLinearHistogram fResponseSizes =
+                new ConcurrentLogLinearHistogram();
+        private final AtomicLong fErrorCount = new AtomicLong();
+    }
+
+    /**
+     * A metrics key. Immutable.
+     */
+    private static final class Key
+    {
+        private final RemoteProcedure fProcedure;
+        private final String fDivision;
+
+        public Key(final RemoteProcedure procedure, final String division)
+        {
+            fProcedure = Objects.requireNonNull(procedure);
+            fDivision = Objects.requireNonNull(division);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (o instanceof Key)
+            {
+                final Key other = (Key)o;
+                return fProcedure == other.fProcedure && fDivision.equals(other.fDivision);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(fProcedure, fDivision);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.List;
+
+/**
+ * The JMX management interface of {@link RpcMetrics}.
+ */
+public interface RpcMetricsMXBean
+{
+    /**
+     * Returns the statistics for each Remote Procedure and division called since
+     * startup or the last {@link #reset()}.
+     */
+    public List<RpcStatistics> getStatistics();
+
+    /**
+     * Discards all recorded statistics.
+     */
+    public void reset();
+}
@@ -0,0 +1,27 @@
+package gov.va.med.srcalc.vista;
+
+import java.io.Closeable;
+
+/**
+ * <p>A {@link VistaProcedureCaller} for one unit of work (e.g., loading a patient) on
+ * behalf of one user. Calls for that user reuse the session's connections instead of
+ * each checking out a connection and re-authenticating the user, and the connections
+ * are released when the session is closed.</p>
+ *
+ * <p>Sessions are thread-safe so that a unit of work may fan out its calls. Each
+ * concurrent call uses its own connection, so a session holds at most as many
+ * connections as it has concurrent calls.</p>
+ *
+ * <p>Use try-with-resources to ensure the session is closed.</p>
+ *
+ * @see VistaProcedureCaller#openSession(String)
+ */
+public interface RpcSession extends VistaProcedureCaller, Closeable
+{
+    /**
+     * Releases the session's connections. Any calls still in progress release their
+     * connection when they finish. Does nothing if the session is already closed.
+     */
+    @Override
+    public void close();
+}
@@ -0,0 +1,179 @@
+package gov.va.med.srcalc.vista;
+
+import java.beans.ConstructorProperties;
+
+import gov.va.med.srcalc.util.LogLinearHistogram;
+
+/**
+ * <p>A snapshot of the statistics recorded by {@link RpcMetrics} for one Remote
+ * Procedure at one division. Latencies are in milliseconds and response sizes are in
+ * characters. Statistics which have no recorded values are -1.</p>
+ *
+ * <p>Immutable.</p>
+ */
+public final class RpcStatistics
+{
+    private final String fDivision;
+    private final String fProcedureName;
+    private final long fCallCount;
+    private final long fErrorCount;
+    private final int fMeanLatency;
+    private final int fMedianLatency;
+    private final int fLatency90thPercentile;
+    private final int fLatency99thPercentile;
+    private final int fMaxLatency;
+    private final int fMeanResponseSize;
+    private final int fMaxResponseSize;
+
+    /**
+     * Constructs an instance with the given properties. Intended for JMX: most code
+     * should use {@link #fromHistograms(String, String, LogLinearHistogram,
+     * LogLinearHistogram, long)}.
+     */
+    @ConstructorProperties({
+        "division", "procedureName", "callCount", "errorCount", "meanLatency",
+        "medianLatency", "latency90thPercentile", "latency99thPercentile", "maxLatency",
+        "meanResponseSize", "maxResponseSize"})
+    public RpcStatistics(
+            final String division,
+            final String procedureName,
+            final long callCount,
+            final long errorCount,
+            final int meanLatency,
+            final int medianLatency,
+            final int latency90thPercentile,
+            final int latency99thPercentile,
+            final int maxLatency,
+            final int meanResponseSize,
+            final int maxResponseSize)
+    {
+        fDivision = division;
+        fProcedureName = procedureName;
+        fCallCount = callCount;
+        fErrorCount = errorCount;
+        fMeanLatency = meanLatency;
+        fMedianLatency = medianLatency;
+        fLatency90thPercentile = latency90thPercentile;
+        fLatency99thPercentile = latency99thPercentile;
+        fMaxLatency = maxLatency;
+        fMeanResponseSize = meanResponseSize;
+        fMaxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Summarizes the given histograms.
+     * @param division the VistA division
+     * @param procedureName the Remote Procedure name
+     * @param latencies the latencies of all calls, including failed ones
+     * @param responseSizes the response sizes of successful calls
+     * @param errorCount the number of failed calls
+     */
+    public static RpcStatistics fromHistograms(
+            final String division,
+            final String procedureName,
+            final LogLinearHistogram latencies,
+            final LogLinearHistogram responseSizes,
+            final long errorCount)
+    {
+        return new RpcStatistics(
+                division,
+                procedureName,
+                latencies.getTotalCount(),
+                errorCount,
+                latencies.getMean(),
+                latencies.getValueAtPercentile(50.0),
+                latencies.getValueAtPercentile(90.0),
+                latencies.getValueAtPercentile(99.0),
+                latencies.getMax(),
+                responseSizes.getMean(),
+                responseSizes.getMax());
+    }
+
+    /**
+     * Returns the VistA division.
+     */
+    public String getDivision()
+    {
+        return fDivision;
+    }
+
+    /**
+     * Returns the Remote Procedure name, e.g., "SR ASRC PATIENT".
+     */
+    public String getProcedureName()
+    {
+        return fProcedureName;
+    }
+
+    /**
+     * Returns the number of calls, including failed ones.
+     */
+    public long getCallCount()
+    {
+        return fCallCount;
+    }
+
+    /**
+     * Returns the number of failed calls.
+     */
+    public long getErrorCount()
+    {
+        return fErrorCount;
+    }
+
+    /**
+     * Returns the mean latency.
+     */
+    public int getMeanLatency()
+    {
+        return fMeanLatency;
+    }
+
+    /**
+     * Returns the approximate median latency.
+     */
+    public int getMedianLatency()
+    {
+        return fMedianLatency;
+    }
+
+    /**
+     * Returns the approximate 90th percentile latency.
+     */
+    public int getLatency90thPercentile()
+    {
+        return fLatency90thPercentile;
+    }
+
+    /**
+     * Returns the approximate 99th percentile latency.
+     */
+    public int getLatency99thPercentile()
+    {
+        return fLatency99thPercentile;
+    }
+
+    /**
+     * Returns the maximum latency.
+     */
+    public int getMaxLatency()
+    {
+        return fMaxLatency;
+    }
+
+    /**
+     * Returns the mean response size of successful calls.
+     */
+    public int getMeanResponseSize()
+    {
+        return fMeanResponseSize;
+    }
+
+    /**
+     * Returns the maximum response size of successful calls.
+     */
+    public int getMaxResponseSize()
+    {
+        return fMaxResponseSize;
+    }
+}
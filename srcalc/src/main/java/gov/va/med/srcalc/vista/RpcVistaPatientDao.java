@@ -1,71 +1,115 @@
 package gov.va.med.srcalc.vista;
 
-import java.io.StringReader;
-
 import gov.va.med.srcalc.domain.HealthFactor;
 import gov.va.med.srcalc.domain.Patient;
-import gov.va.med.srcalc.domain.ReferenceNotes;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+import gov.va.med.srcalc.domain.ReferenceNote;
 import gov.va.med.srcalc.domain.VistaLabs;
 import gov.va.med.srcalc.domain.calculation.RetrievedValue;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.vista.vistalink.VistaLinkUtil;
 
 import java.security.GeneralSecurityException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.text.WordUtils;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.NonTransientDataAccessResourceException;
 import org.springframework.dao.PermissionDeniedDataAccessException;
 import org.springframework.dao.RecoverableDataAccessException;
-import org.xml.sax.InputSource;
 
-import com.google.common.base.Joiner;
+import com.google.common.base.Enums;
+import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.primitives.Ints;
 
 /**
- * Implementation of {@link VistaPatientDao} using remote procedures. Each
+ * <p>Implementation of {@link VistaPatientDao} using remote procedures. Each
  * instance is tied to a particular user to avoid having to specify the user
- * when calling each method.
+ * when calling each method.</p>
+ * 
+ * <p>If constructed with an {@link ExecutorService}, {@link #getPatient(int)} retrieves
+ * the independent sections of patient data (vitals, each lab, health factors, etc.)
+ * concurrently. Otherwise, it retrieves them one after another.</p>
+ * 
+ * <p>{@link #getPatient(int, PatientRetrievalPlan)} only retrieves the sections in the
+ * given plan. The returned Patient retrieves other sections in the same way when they
+ * are first accessed.</p>
+ * 
+ * <p>Each retrieval makes its calls through one {@link RpcSession} so that the calls
+ * reuse connections instead of each re-authenticating the user.</p>
  */
 public class RpcVistaPatientDao implements VistaPatientDao
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(RpcVistaPatientDao.class);
     private static final String NO_WEIGHT = "0^NO WEIGHT ENTERED WITHIN THIS PERIOD";
-    private static final String WEIGHT_UNITS = "lbs.";
-    private static final String HEIGHT_UNITS = "inches";
     private static final String ADL_ENTERPRISE_TITLE = "NURSING ADMISSION EVALUATION NOTE";
     
     /**
-     * The expected date format for information received from VistA.
+     * Splits a note body into lines.
      */
-    public static final SimpleDateFormat VISTA_DATE_OUTPUT_FORMAT = new SimpleDateFormat("MM/dd/yy@HH:mm");
+    private static final Splitter NOTE_LINE_SPLITTER = Splitter.on(Pattern.compile("\\r?\\n"));
     
     private static final ImmutableMap<String, Patient.Gender> TRANSLATION_MAP = ImmutableMap.of(
                     "M", Patient.Gender.Male,
                     "F", Patient.Gender.Female);
     
+    /**
+     * How long to remember that a division does not provide an optional Remote Procedure
+     * before trying it again, in minutes.
+     */
+    static final long PROCEDURE_RECHECK_MINUTES = 60;
+    
+    /**
+     * The divisions known not to provide {@link RemoteProcedure#SR_ASRC_MULTI_LAB_RESULTS}
+     * so that we don't keep trying it. Sites which install it later will use it within
+     * {@link #PROCEDURE_RECHECK_MINUTES}.
+     */
+    private static final Set<String> DIVISIONS_WITHOUT_MULTI_LAB =
+            newExpiringDivisionSet(Ticker.systemTicker());
+    
+    /**
+     * The divisions known not to provide {@link RemoteProcedure#SR_ASRC_SIGN_AND_SAVE}
+     * so that we don't keep trying it. Sites which install it later will use it within
+     * {@link #PROCEDURE_RECHECK_MINUTES}.
+     */
+    private static final Set<String> DIVISIONS_WITHOUT_SIGN_AND_SAVE =
+            newExpiringDivisionSet(Ticker.systemTicker());
+    
+    private static final ReferenceNotesParser NOTES_PARSER = new ReferenceNotesParser();
+    
     private final VistaProcedureCaller fProcedureCaller;
     
     private final String fDuz;
     
+    private final Optional<ExecutorService> fExecutor;
+    
+    private final long fCallTimeoutMillis;
+    
+    private int fMaxReferenceNotes = ReferenceNotesParser.ALL_NOTES;
+    
     /**
-     * Constructs an instance.
+     * Constructs an instance that retrieves patient data sequentially.
      * 
      * @param procedureCaller for making the procedure calls
      * @param duz the user DUZ under which to perform the procedure calls. Must identify a
@@ -76,6 +120,61 @@ public class RpcVistaPatientDao implements VistaPatientDao
     {
         fProcedureCaller = procedureCaller;
         fDuz = duz;
+        fExecutor = Optional.absent();
+        fCallTimeoutMillis = 0L;
+    }
+    
+    /**
+     * Constructs an instance that retrieves independent sections of patient data
+     * concurrently.
+     * 
+     * @param procedureCaller for making the procedure calls. Must be thread-safe.
+     * @param duz the user DUZ under which to perform the procedure calls. Must identify a
+     * valid VistA user.
+     * @param executor the executor on which to make the procedure calls. This should be
+     * bounded to the VistALink connection pool size of the caller's division (see
+     * {@link VistaRpcExecutors}).
+     * @param callTimeoutMillis the maximum time, in milliseconds, to wait for each
+     * section of patient data. A section which takes longer is abandoned and left empty.
+     */
+    public RpcVistaPatientDao(
+            final VistaProcedureCaller procedureCaller,
+            final String duz,
+            final ExecutorService executor,
+            final long callTimeoutMillis)
+    {
+        fProcedureCaller = procedureCaller;
+        fDuz = duz;
+        fExecutor = Optional.of(executor);
+        fCallTimeoutMillis = callTimeoutMillis;
+    }
+    
+    /**
+     * Constructs a copy of the given DAO which makes its calls through the given
+     * session.
+     */
+    private RpcVistaPatientDao(final RpcVistaPatientDao dao, final RpcSession session)
+    {
+        fProcedureCaller = session;
+        fDuz = dao.fDuz;
+        fExecutor = dao.fExecutor;
+        fCallTimeoutMillis = dao.fCallTimeoutMillis;
+        fMaxReferenceNotes = dao.fMaxReferenceNotes;
+    }
+    
+    /**
+     * Limits the number of ADL and DNR notes retrieved to the given number of most
+     * recent notes. By default, all notes are retrieved.
+     * @param maxReferenceNotes the maximum number of each type of note to retrieve
+     * @throws IllegalArgumentException if the given number is not positive
+     */
+    public void setMaxReferenceNotes(final int maxReferenceNotes)
+    {
+        if (maxReferenceNotes < 1)
+        {
+            throw new IllegalArgumentException("maxReferenceNotes must be positive");
+        }
+        fMaxReferenceNotes = maxReferenceNotes;
     }
     
     /**
@@ -88,33 +187,17 @@ public class RpcVistaPatientDao implements VistaPatientDao
     @Override
     public Patient getPatient(final int dfn)
     {
-        try
+        return getPatient(dfn, PatientRetrievalPlan.ALL);
+    }
+    
+    @Override
+    public Patient getPatient(final int dfn, final PatientRetrievalPlan plan)
+    {
+        try (final RpcSession session = fProcedureCaller.openSession(fDuz))
         {
-            final List<String> basicResults = fProcedureCaller.doRpc(
-                    fDuz, RemoteProcedure.SR_ASRC_GET_PATIENT, String.valueOf(dfn));
-            
-            // Fields are separated by '^'
-            // Basic patient demographics (age, gender)
-            final List<String> basicArray = Splitter.on('^').splitToList(basicResults.get(0));
-            final String patientName = basicArray.get(0);
-            final int patientAge = Integer.parseInt(basicArray.get(1));
-            final Patient.Gender patientGender = translateFromVista(basicArray.get(2));
-            final Patient patient = new Patient(dfn, patientName, patientGender, patientAge);
-            
-            // Retrieve all of the patient's vitals.
-            // Will only collect the most recent values for each vital.
-            retrieveVitals(patient);
-            // Retrieve all labs from VistA
-            retrieveLabs(dfn, patient);
-            // Retrieve all health factors in the last year from VistA and filter
-            // by the list given to us by the NSO.
-            retrieveHealthFactors(dfn, patient);
-            // Retrieve only medications with the "Active" status and not "Pending"
-            retrieveActiveMedications(dfn, patient);
-            // Retrieve the patient's nursing notes from VistA
-            retrieveAdlNotes(dfn, patient);
-            // Retrieve any notes with DNR in the title.
-            retrieveDnrNotes(dfn, patient);
+            final Patient patient =
+                    new RpcVistaPatientDao(this, session).retrievePatient(dfn, plan);
+            patient.setLoader(new SectionLoader(), PatientRetrievalPlan.ALL.minus(plan));
             
             LOGGER.debug("Loaded {} from VistA.", patient);
             return patient;
@@ -132,7 +215,370 @@ public class RpcVistaPatientDao implements VistaPatientDao
             throw new NonTransientDataAccessResourceException(e.getMessage(), e);
         }
     }
+    
+    /**
+     * Retrieves the patient's basic demographics and the sections in the given plan.
+     * @throws GeneralSecurityException if VistA refused to authenticate the user
+     */
+    private Patient retrievePatient(final int dfn, final PatientRetrievalPlan plan)
+            throws GeneralSecurityException
+    {
+        final List<String> basicResults = fProcedureCaller.doRpc(
+                fDuz, RemoteProcedure.SR_ASRC_GET_PATIENT, String.valueOf(dfn));
+        
+        // Fields are separated by '^'
+        // Basic patient demographics (age, gender)
+        final CaretPieces basicPieces =
+                CaretPieces.of(ResponseLines.of(basicResults).line(0));
+        final String patientName = basicPieces.getString(0);
+        final int patientAge = Integer.parseInt(basicPieces.getString(1));
+        final Patient.Gender patientGender = translateFromVista(basicPieces.getString(2));
+        final Patient patient = new Patient(dfn, patientName, patientGender, patientAge);
+        
+        retrieveSections(patient, getSections(plan));
+        return patient;
+    }
+    
+    /**
+     * Retrieves the given sections, concurrently if this DAO has an executor.
+     */
+    private void retrieveSections(final Patient patient, final List<PatientSection> sections)
+    {
+        if (fExecutor.isPresent())
+        {
+            retrieveConcurrently(patient, sections, fExecutor.get());
+        }
+        else
+        {
+            for (final PatientSection section : sections)
+            {
+                section.retrieve(patient);
+            }
+        }
+    }
+    
+    /**
+     * Retrieves the sections a Patient did not retrieve up front once they are accessed.
+     */
+    private final class SectionLoader implements Patient.Loader
+    {
+        @Override
+        public void load(final Patient patient, final PatientRetrievalPlan plan)
+        {
+            LOGGER.debug("Loading {} for {} on demand.", plan, patient);
+            try (final RpcSession session = fProcedureCaller.openSession(fDuz))
+            {
+                final RpcVistaPatientDao sessionDao =
+                        new RpcVistaPatientDao(RpcVistaPatientDao.this, session);
+                sessionDao.retrieveSections(patient, sessionDao.getSections(plan));
+            }
+        }
+    }
 
+    /**
+     * One independently-retrievable section of a Patient's data. Each section's retrieve
+     * method must handle its own errors by logging them and leaving the section empty
+     * so that as much patient data as possible can still be retrieved.
+     */
+    private abstract static class PatientSection
+    {
+        private final String fDescription;
+        
+        public PatientSection(final String description)
+        {
+            fDescription = description;
+        }
+        
+        /**
+         * Returns a description of the section, for logging.
+         */
+        public String getDescription()
+        {
+            return fDescription;
+        }
+        
+        /**
+         * Retrieves this section's data from VistA into the given Patient.
+         */
+        public abstract void retrieve(final Patient patient);
+        
+        /**
+         * Copies this section's data from one Patient to another.
+         */
+        public abstract void copy(final Patient from, final Patient to);
+    }
+    
+    /**
+     * Returns the sections of patient data in the given plan, in the order they should
+     * be retrieved.
+     */
+    private List<PatientSection> getSections(final PatientRetrievalPlan plan)
+    {
+        final List<PatientSection> sections = new ArrayList<>();
+        // Retrieve all of the patient's vitals.
+        // Will only collect the most recent values for each vital.
+        if (plan.includes(PatientRetrievalPlan.Section.VITALS))
+        {
+            sections.add(newVitalsSection());
+        }
+        // Retrieve the labs from VistA, in one round-trip if the site supports it.
+        if (plan.getLabs().isEmpty())
+        {
+            // Nothing to retrieve.
+        }
+        else if (DIVISIONS_WITHOUT_MULTI_LAB.contains(fProcedureCaller.getDivision()))
+        {
+            for (final VistaLabs lab : plan.getLabs())
+            {
+                sections.add(newLabSection(lab));
+            }
+        }
+        else
+        {
+            sections.add(newLabsSection(plan.getLabs()));
+        }
+        // Retrieve all health factors in the last year from VistA and filter
+        // by the list given to us by the NSO.
+        if (plan.includes(PatientRetrievalPlan.Section.HEALTH_FACTORS))
+        {
+            sections.add(newHealthFactorsSection());
+        }
+        // Retrieve only medications with the "Active" status and not "Pending"
+        if (plan.includes(PatientRetrievalPlan.Section.ACTIVE_MEDICATIONS))
+        {
+            sections.add(newActiveMedicationsSection());
+        }
+        // Retrieve the patient's nursing notes from VistA
+        if (plan.includes(PatientRetrievalPlan.Section.ADL_NOTES))
+        {
+            sections.add(newAdlNotesSection());
+        }
+        // Retrieve any notes with DNR in the title.
+        if (plan.includes(PatientRetrievalPlan.Section.DNR_NOTES))
+        {
+            sections.add(newDnrNotesSection());
+        }
+        return sections;
+    }
+    
+    private PatientSection newVitalsSection()
+    {
+        return new PatientSection("vitals")
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveVitals(patient);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                to.setHeight(from.getHeight());
+                to.setWeight(from.getWeight());
+                to.setWeight6MonthsAgo(from.getWeight6MonthsAgo());
+                to.setBmi(from.getBmi());
+            }
+        };
+    }
+    
+    private PatientSection newLabSection(final VistaLabs lab)
+    {
+        return new PatientSection("lab " + lab.name())
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveLab(patient, lab);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                if (from.getLabs().containsKey(lab))
+                {
+                    to.getLabs().put(lab, from.getLabs().get(lab));
+                }
+            }
+        };
+    }
+    
+    private PatientSection newLabsSection(final Collection<VistaLabs> labs)
+    {
+        return new PatientSection("labs")
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveLabs(patient, labs);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                to.getLabs().putAll(from.getLabs());
+            }
+        };
+    }
+    
+    private PatientSection newHealthFactorsSection()
+    {
+        return new PatientSection("health factors")
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveHealthFactors(patient.getDfn(), patient);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                to.getHealthFactors().clear();
+                to.getHealthFactors().addAll(from.getHealthFactors());
+            }
+        };
+    }
+    
+    private PatientSection newActiveMedicationsSection()
+    {
+        return new PatientSection("active medications")
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveActiveMedications(patient.getDfn(), patient);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                to.getActiveMedications().clear();
+                to.getActiveMedications().addAll(from.getActiveMedications());
+            }
+        };
+    }
+    
+    private PatientSection newAdlNotesSection()
+    {
+        return new PatientSection("ADL notes")
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveAdlNotes(patient.getDfn(), patient);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                to.getAdlNotes().clear();
+                to.getAdlNotes().addAll(from.getAdlNotes());
+            }
+        };
+    }
+    
+    private PatientSection newDnrNotesSection()
+    {
+        return new PatientSection("DNR notes")
+        {
+            @Override
+            public void retrieve(final Patient patient)
+            {
+                retrieveDnrNotes(patient.getDfn(), patient);
+            }
+            
+            @Override
+            public void copy(final Patient from, final Patient to)
+            {
+                to.getDnrNotes().clear();
+                to.getDnrNotes().addAll(from.getDnrNotes());
+            }
+        };
+    }
+    
+    /**
+     * <p>Retrieves the given sections concurrently on the given executor. Each section
+     * is retrieved into its own copy of the Patient and then copied into the given
+     * Patient on this thread, so a section that misses its deadline can never modify
+     * the returned Patient.</p>
+     * 
+     * <p>Each section must finish within {@link #fCallTimeoutMillis} of being submitted.
+     * Sections that do not are cancelled, logged, and left empty, just like sections
+     * that fail.</p>
+     */
+    private void retrieveConcurrently(
+            final Patient patient,
+            final List<PatientSection> sections,
+            final ExecutorService executor)
+    {
+        final List<Future<Patient>> futures = new ArrayList<>(sections.size());
+        for (final PatientSection section : sections)
+        {
+            final Patient sectionPatient = new Patient(
+                    patient.getDfn(), patient.getName(), patient.getGender(), patient.getAge());
+            futures.add(executor.submit(new Callable<Patient>()
+            {
+                @Override
+                public Patient call()
+                {
+                    section.retrieve(sectionPatient);
+                    return sectionPatient;
+                }
+            }));
+        }
+        // All sections were submitted at effectively the same time, so they share a
+        // deadline.
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fCallTimeoutMillis);
+        for (int i = 0; i < sections.size(); ++i)
+        {
+            final PatientSection section = sections.get(i);
+            final Future<Patient> future = futures.get(i);
+            try
+            {
+                final Patient sectionPatient =
+                        future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                section.copy(sectionPatient, patient);
+            }
+            catch (final TimeoutException e)
+            {
+                future.cancel(true);
+                LOGGER.warn(
+                        "Timed out retrieving patient's {} after {} ms.",
+                        section.getDescription(), fCallTimeoutMillis);
+            }
+            catch (final ExecutionException e)
+            {
+                // Sections log their own expected failures, so this is unexpected.
+                LOGGER.warn(
+                        "Unable to retrieve patient's {}.", section.getDescription(), e.getCause());
+            }
+            catch (final InterruptedException e)
+            {
+                // Abandon the remaining sections, but preserve the interrupt for the
+                // caller.
+                LOGGER.warn("Interrupted while retrieving patient data.");
+                for (final Future<Patient> remaining : futures.subList(i, futures.size()))
+                {
+                    remaining.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>This implementation does not cache patients, so this is the same as {@link
+     * #getPatient(int, PatientRetrievalPlan)}.</p>
+     */
+    @Override
+    public Patient refreshPatient(final int dfn, final PatientRetrievalPlan plan)
+    {
+        return getPatient(dfn, plan);
+    }
+    
     private static Patient.Gender translateFromVista(final String vistaField)
     {
         if(TRANSLATION_MAP.containsKey(vistaField))
@@ -156,7 +602,7 @@ public class RpcVistaPatientDao implements VistaPatientDao
             {
                 // Parse the returned data and put it into the patient data
                 // This will include the most recent height, current weight, and BMI
-                parseRecentVitalResults(patient, vitalResults);
+                VistaResponseParser.parseLatestVitals(vitalResults, patient);
             }
             
             // We have to get the current weight before we do this
@@ -170,9 +616,14 @@ public class RpcVistaPatientDao implements VistaPatientDao
                 if (weightResults.size() > 0 && !weightResults.get(0).equals(NO_WEIGHT))
                 {
                     LOGGER.debug("Patient Vital Results: {}", weightResults);
-                    // Parse the returned data and put it into the patient data
-                    // This includes weight and BMI currently.
-                    parseWeightResults(patient, weightResults);
+                    // The weight 6 months ago is the most recent weight in the range.
+                    final Optional<RetrievedValue> weight =
+                            VistaResponseParser.parseWeight(weightResults);
+                    if (weight.isPresent())
+                    {
+                        patient.setWeight6MonthsAgo(weight.get());
+                    }
+                    LOGGER.debug("Weight 6 months ago: {}", patient.getWeight6MonthsAgo());
                 }
             }
         }
@@ -189,159 +640,118 @@ public class RpcVistaPatientDao implements VistaPatientDao
     {
         // Our range for weight 6 months ago is 3-12 months prior to the
         // most recent weight.
-        final Calendar cal = Calendar.getInstance();
-        cal.setTime(patient.getWeight().getMeasureDate());
-        cal.add(Calendar.MONTH, -6);
-        final String endDateString = String.format("%03d%02d%02d", (cal.get(Calendar.YEAR) - 1700),
-                cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
-        cal.setTime(patient.getWeight().getMeasureDate());
-        cal.add(Calendar.YEAR, -1);
-        final String startDateString = String.format("%03d%02d%02d", (cal.get(Calendar.YEAR) - 1700),
-                cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
+        final LocalDate weightDate = new LocalDate(patient.getWeight().getMeasureDate());
+        final String endDateString =
+                VistaResponseParser.toFileManDate(weightDate.minusMonths(6));
+        final String startDateString =
+                VistaResponseParser.toFileManDate(weightDate.minusYears(1));
         final String rpcParameter =
                 String.valueOf(patient.getDfn()) + "^" + endDateString + "^WT^" + startDateString;
         LOGGER.debug("Weight 6 Months Ago Parameter: {}", rpcParameter);
         return fProcedureCaller.doRpc(fDuz, RemoteProcedure.GMV_EXTRACT_REC, rpcParameter);
     }
     
-    private void parseWeightResults(
-            final Patient patient, final List<String> weightResults)
-            throws ParseException
-    {
-        /*-
-         * The last entries are the most recent so we use those. Get the most recent
-         * weight measurement within the already specified range. The format expected from
-         * VistA is:
-         * 
-         * 21557^04/17/09@12:00 Wt: 185.00 lb (84.09 kg) _NURSE,ONE
-         *        @12:00 Body Mass Index: 25.86
-         * 22296^08/24/09@14:00 Wt: 190.00 lb (86.36 kg) _NURSE,ONE
-         *        @14:00 Body Mass Index: 26.56
-         *        
-         * Where the most recent weight is the last result and each result consists of two
-         * lines. The first line is a measurement identifier, the date and time, the
-         * weight in pounds and kilograms and the person providing the measurement. The
-         * second line is the time on the same date as the weight measurement, along with
-         * the BMI for the patient.
-         */
-        final List<String> weightLineTokens = Splitter.on(Pattern.compile("[\\s\\^]+"))
-                .splitToList(weightResults.get(weightResults.size()-2));
-        // Get the date of the measurement
-        LOGGER.debug("weight line tokens: {}", weightResults);
-        final Date measurementDate = VISTA_DATE_OUTPUT_FORMAT.parse(weightLineTokens.get(1));
-        patient.setWeight6MonthsAgo(new RetrievedValue(
-                Double.parseDouble(weightLineTokens.get(3)), measurementDate, WEIGHT_UNITS));
-        LOGGER.debug("Weight 6 months ago: {}", patient.getWeight6MonthsAgo());
-    }
-    
-    private void parseRecentVitalResults(final Patient patient, final List<String> vitalResults)
-            throws ParseException
-    {
-        // The date inside of returned vitals is inside of parentheses.
-        // For example, pulse is returned as: "Pulse:       (03/05/10@09:00)  74  _NURSE,ONE_Vitals"
-        final SimpleDateFormat dateFormat = new SimpleDateFormat(
-                "(" + VISTA_DATE_OUTPUT_FORMAT.toPattern() + ")");
-        final Pattern pattern = Pattern.compile(
-                "(.+):\\s+" // Match to the first colon in order to get the name of the vital
-                + "(\\(.+?\\))?\\s+" // Optional capture group for the date
-                + "(.+)\\s+" // Match the value of the vital and any other information
-                             //between the optional date and the name
-                + "(\\S+)"); // Match the name of the person who recorded the vital
-        for(final String line: vitalResults)
-        {
-            // For each line, determine if we need to pull the vital information for that line
-            // Each entry comes with an optional date and time.
-            
-            final Matcher matcher = pattern.matcher(line);
-            if(!matcher.matches())
-            {
-                LOGGER.debug("The vitals line does not match the expected regular expression."
-                        + " Line: {}", line);
-                // Invalid results were received that do not match the expected pattern.
-                break;
-            }
-            // Matcher groups begin at 1, as 0 denotes the entire pattern that was matched.
-            final String vitalName = matcher.group(1);
-            // This will be null when the date is not present.
-            final String dateString = matcher.group(2);
-            
-            final List<String> valuesWords = Splitter.onPattern("\\s+")
-                    .splitToList(matcher.group(3));
-            switch(vitalName)
-            {
-                case "Ht.":
-                    patient.setHeight(new RetrievedValue(
-                            findHeightInInches(valuesWords),
-                            dateFormat.parse(dateString),
-                            HEIGHT_UNITS));
-                    break;
-                case "Wt.":
-                    patient.setWeight(new RetrievedValue(
-                            // Remove any asterisks in the weight value
-                            Double.parseDouble(valuesWords.get(0).replace("*", "")),
-                            dateFormat.parse(dateString),
-                            WEIGHT_UNITS));
-                    break;
-                case "Body Mass Index":
-                    patient.setBmi(new RetrievedValue(
-                        // Remove any asterisks in the BMI value
-                        Double.parseDouble(valuesWords.get(0).replace("*", "")),
-                        patient.getWeight().getMeasureDate(),
-                        ""));
-                    break;
-            }
-        }
-    }
-    
-    private double findHeightInInches(final List<String> valuesWords)
-    {
-        final int feet = Integer.parseInt(valuesWords.get(0));
-        // Inches are not necessarily used
-        // Remove any asterisks in the height value
-        final Integer inches = Ints.tryParse(valuesWords.get(2).replace("*", ""));
-        final double totalInches;
-        if(inches == null)
-        {
-            totalInches = feet * 12.0;
+    /**
+     * Retrieves the given labs using {@link RemoteProcedure#SR_ASRC_MULTI_LAB_RESULTS},
+     * falling back to {@link #retrieveLab(Patient, VistaLabs)} for each lab if the
+     * division does not provide it.
+     */
+    private void retrieveLabs(final Patient patient, final Collection<VistaLabs> labs)
+    {
+        final Map<String, List<String>> labNameGroups = new LinkedHashMap<>();
+        for (final VistaLabs lab : labs)
+        {
+            labNameGroups.put(lab.name(), lab.getPossibleLabNames());
         }
-        else
+        final List<String> rpcResults;
+        try
         {
-            totalInches = (feet * 12.0) + inches;
+            rpcResults = fProcedureCaller.doRetrieveAllLabsCall(
+                    fDuz, String.valueOf(patient.getDfn()), labNameGroups);
+        }
+        catch (final RemoteProcedureUnavailableException e)
+        {
+            LOGGER.info(
+                    "Division {} does not provide {}. Retrieving labs individually.",
+                    fProcedureCaller.getDivision(),
+                    RemoteProcedure.SR_ASRC_MULTI_LAB_RESULTS.getProcedureName());
+            DIVISIONS_WITHOUT_MULTI_LAB.add(fProcedureCaller.getDivision());
+            for (final VistaLabs lab : labs)
+            {
+                retrieveLab(patient, lab);
+            }
+            return;
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Unable to retrieve labs. {}", e.toString());
+            return;
+        }
+        final ResponseLines lines = ResponseLines.of(rpcResults);
+        for (int i = 0; i < lines.size(); ++i)
+        {
+            final CharSequence line = lines.line(i);
+            // Lines with no result are empty.
+            if (line.length() == 0)
+            {
+                continue;
+            }
+            // The expected format is "<group>^<lab result>", where <lab result> is in
+            // the same format as returned by SR ASRC LAB RESULTS.
+            final CaretPieces pieces = CaretPieces.of(line);
+            final Optional<VistaLabs> lab = Enums.getIfPresent(
+                    VistaLabs.class, pieces.getString(0));
+            final Optional<RetrievedValue> value = (pieces.size() > 1) ?
+                    VistaResponseParser.parseLabResult(pieces.after(0)) :
+                    Optional.<RetrievedValue>absent();
+            if (lab.isPresent() && value.isPresent())
+            {
+                patient.getLabs().put(lab.get(), value.get());
+            }
+            else
+            {
+                // Move to the next lab so that as much patient data as possible can
+                // still be retrieved.
+                LOGGER.warn("Unable to parse lab result \"{}\".", line);
+            }
         }
-        return totalInches;
     }
     
-    private void retrieveLabs(final int dfn, final Patient patient) throws ParseException
+    private void retrieveLab(final Patient patient, final VistaLabs labRetrievalEnum)
     {
-        final VistaLabs[] enumValues = VistaLabs.values();
-        for(final VistaLabs labRetrievalEnum: enumValues)
+        try
         {
-            try
+            final String rpcResultString = fProcedureCaller.doRetrieveLabsCall(
+                    fDuz,
+                    String.valueOf(patient.getDfn()),
+                    labRetrievalEnum.getPossibleLabNames());
+            // If the resultString is a success, add it to the patient's lab data.
+            // Else, we don't need to do anything.
+            if(!rpcResultString.isEmpty())
             {
-                final String rpcResultString = fProcedureCaller.doRetrieveLabsCall(
-                        fDuz,
-                        String.valueOf(dfn),
-                        labRetrievalEnum.getPossibleLabNames());
-                // If the resultString is a success, add it to the patient's lab data.
-                // Else, we don't need to do anything.
-                if(!rpcResultString.isEmpty())
+                final Optional<RetrievedValue> value =
+                        VistaResponseParser.parseLabResult(rpcResultString);
+                if (value.isPresent())
                 {
-                    List<String> rpcSplit = Splitter.on('^').splitToList(rpcResultString);
-                    final double labValue = Double.parseDouble(rpcSplit.get(1));
-                    final SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyyy@HH:mm:ss");
-                    patient.getLabs().put(labRetrievalEnum,
-                            new RetrievedValue(labValue, format.parse(rpcSplit.get(2)), rpcSplit.get(3)));
+                    patient.getLabs().put(labRetrievalEnum, value.get());
+                }
+                else
+                {
+                    LOGGER.warn(
+                            "Unable to parse lab {} result \"{}\".",
+                            labRetrievalEnum.name(),
+                            rpcResultString);
                 }
             }
-            catch(final Exception e)
-            {
-                // If an exception occurs for any reason, move to the next lab so that as much patient
-                // data as possible can still be retrieved.
-                LOGGER.warn("Unable to retrieve lab {}. {}", labRetrievalEnum.name(), e.toString());
-            }
+        }
+        catch(final Exception e)
+        {
+            // If an exception occurs for any reason, move to the next lab so that as much patient
+            // data as possible can still be retrieved.
+            LOGGER.warn("Unable to retrieve lab {}. {}", labRetrievalEnum.name(), e.toString());
         }
     }
-
+    
     private void retrieveHealthFactors(final int dfn, final Patient patient)
     {
         try
@@ -351,17 +761,20 @@ public class RpcVistaPatientDao implements VistaPatientDao
                     fDuz, RemoteProcedure.SR_ASRC_HEALTH_FACTORS, String.valueOf(dfn));
             // Now that we have all of the health factors, filter out any that are not present
             // in the list provided by the NSO.
-            final Iterator<String> iter = rpcResults.iterator();
-            final DateTimeFormatter format = DateTimeFormat.forPattern("MM/dd/yy");
-            while(iter.hasNext())
+            final ResponseLines lines = ResponseLines.of(rpcResults);
+            for (int i = 0; i < lines.size(); ++i)
             {
-                final String healthFactor = iter.next();
-                final String[] factorSplitArray = healthFactor.split("\\^");
-                if(HEALTH_FACTORS_SET.contains(factorSplitArray[1]))
+                // The expected format is "<date>^<health factor name>".
+                final CaretPieces pieces = CaretPieces.of(lines.line(i));
+                if (pieces.size() < 2)
+                {
+                    continue;
+                }
+                final Optional<String> name = findHealthFactor(pieces.get(1));
+                final LocalDate date = VistaResponseParser.parseDate(pieces.get(0));
+                if (name.isPresent() && date != null)
                 {
-                    patient.getHealthFactors().add(new HealthFactor(
-                            format.parseLocalDate(factorSplitArray[0]),
-                            factorSplitArray[1]));
+                    patient.getHealthFactors().add(new HealthFactor(date, name.get()));
                 }
             }
             LOGGER.debug("Retrieved Health factors: {} ", patient.getHealthFactors());
@@ -372,6 +785,23 @@ public class RpcVistaPatientDao implements VistaPatientDao
         }
     }
     
+    /**
+     * Returns the member of {@link #HEALTH_FACTORS_SET} with the same characters as the
+     * given name, if any. Avoids creating a String for the (many) health factors that
+     * are not of interest.
+     */
+    private static Optional<String> findHealthFactor(final CharSequence name)
+    {
+        for (final String healthFactor : HEALTH_FACTORS_SET)
+        {
+            if (healthFactor.contentEquals(name))
+            {
+                return Optional.of(healthFactor);
+            }
+        }
+        return Optional.absent();
+    }
+    
     private void retrieveActiveMedications(final int dfn, final Patient patient)
     {
         try
@@ -379,12 +809,13 @@ public class RpcVistaPatientDao implements VistaPatientDao
             patient.getActiveMedications().clear();
             final List<String> rpcResults = fProcedureCaller.doRpc(
                     fDuz, RemoteProcedure.SR_ASRC_ACTIVE_MEDS, String.valueOf(dfn));
-            for(final String medResult: rpcResults)
+            final ResponseLines lines = ResponseLines.of(rpcResults);
+            for (int i = 0; i < lines.size(); ++i)
             {
                 // The expected format is "<identifier>^<medication name>^<date>^^^<dose per day>"
                 // for example, "403962R;O^METOPROLOL TARTRATE 50MG TAB^3110228^^^3"
-                final List<String> medInfo = Splitter.on('^').splitToList(medResult);
-                patient.getActiveMedications().add(medInfo.get(1));
+                patient.getActiveMedications().add(
+                        CaretPieces.of(lines.line(i)).getString(1));
             }
             LOGGER.debug("Retrieved Active Medications: {} ", patient.getActiveMedications());
         }
@@ -407,9 +838,8 @@ public class RpcVistaPatientDao implements VistaPatientDao
             // Else, we don't need to do anything.
             if(!rpcResults.isEmpty())
             {
-                final ReferenceNotes adlNotes = getReferenceNotes(rpcResults);
                 patient.getAdlNotes().clear();
-                patient.getAdlNotes().addAll(adlNotes.getAllNotes());
+                patient.getAdlNotes().addAll(getReferenceNotes(rpcResults));
             }
         }
         catch(final Exception e)
@@ -433,9 +863,8 @@ public class RpcVistaPatientDao implements VistaPatientDao
             // Else, we don't need to do anything.
             if(!rpcResults.isEmpty())
             {
-                final ReferenceNotes dnrNotes = getReferenceNotes(rpcResults);
                 patient.getDnrNotes().clear();
-                patient.getDnrNotes().addAll(dnrNotes.getAllNotes());
+                patient.getDnrNotes().addAll(getReferenceNotes(rpcResults));
             }
         }
         catch(final Exception e)
@@ -447,50 +876,43 @@ public class RpcVistaPatientDao implements VistaPatientDao
     }
     
     /**
-     * Translates the results of the RPC call into a {@link ReferenceNotes} object.
+     * Returns a new concurrent Set of divisions from which each division is removed
+     * {@link #PROCEDURE_RECHECK_MINUTES} after it was added, as measured by the given
+     * Ticker.
+     */
+    static Set<String> newExpiringDivisionSet(final Ticker ticker)
+    {
+        return Collections.newSetFromMap(CacheBuilder.newBuilder()
+                .expireAfterWrite(PROCEDURE_RECHECK_MINUTES, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .<String, Boolean>build()
+                .asMap());
+    }
+    
+    /**
+     * Parses the results of a note RPC call into {@link ReferenceNote}s, limited to
+     * the configured number of most recent notes.
      * @param rpcResults the original results returned from the RPC. In order for this method
      *          to translate the results properly, they need to be valid XML.
-     * @throws JAXBException if there is a problem unmarshalling the input
+     * @throws XMLStreamException if the results are not well-formed XML
+     * @throws JAXBException if there is a problem unmarshalling a note
      */
-    private ReferenceNotes getReferenceNotes(final List<String> rpcResults) throws JAXBException
+    private List<ReferenceNote> getReferenceNotes(final List<String> rpcResults)
+            throws XMLStreamException, JAXBException
     {
-        // Parse the String as XML and format it into separate notes
-        final InputSource input = new InputSource();
-        input.setCharacterStream(new StringReader(Joiner.on("\n").join(rpcResults)));
-        final JAXBContext context = JAXBContext.newInstance(ReferenceNotes.class);
-        final Unmarshaller unmarshaller = context.createUnmarshaller();
-        return (ReferenceNotes) unmarshaller.unmarshal(input);
+        return NOTES_PARSER.parse(rpcResults, fMaxReferenceNotes);
     }
     
     @Override
     public SaveNoteCode saveRiskCalculationNote(final int patientDfn, final String electronicSignature,
             final String noteBody)
     {
-        // Split on line feed or carriage return
-        // Wrap any lines that are too long so that users do not have to
-        // scroll when viewing the note in CPRS.
-        final List<String> bodyArray = Splitter.on(Pattern.compile("\\r?\\n")).splitToList(noteBody);
-        final StringBuilder wrappedNote = new StringBuilder();
-        for (final String line : bodyArray)
-        {
-            wrappedNote.append(WordUtils.wrap(line, VistaPatientDao.MAX_LINE_LENGTH, "\n    ", false) + "\n");
-        }
         try
         {
             final String rpcResultString = fProcedureCaller.doSaveProgressNoteCall(fDuz,
                     VistaLinkUtil.encrypt(electronicSignature), String.valueOf(patientDfn),
-                    // Use Guava Splitter to get a List.
-                    Splitter.on('\n').splitToList(wrappedNote));
-            
-            final VistaOperationResult rpcResult = VistaOperationResult.fromString(rpcResultString);
-            if (rpcResult.getCode().equals("1"))
-            {
-                return SaveNoteCode.SUCCESS;
-            }
-            else
-            {
-                return SaveNoteCode.INVALID_SIGNATURE;
-            }
+                    wrapNote(noteBody));
+            return toSaveNoteCode(rpcResultString);
         }
         catch (final Exception e)
         {
@@ -500,4 +922,92 @@ public class RpcVistaPatientDao implements VistaPatientDao
             throw new RecoverableDataAccessException(e.getMessage(), e);
         }
     }
+    
+    @Override
+    public Optional<NoteAndResultStatus> saveRiskCalculationNoteAndResult(
+            final SignedResult result, final String electronicSignature, final String noteBody)
+    {
+        if (DIVISIONS_WITHOUT_SIGN_AND_SAVE.contains(fProcedureCaller.getDivision()))
+        {
+            return Optional.absent();
+        }
+        final List<String> rpcResults;
+        try
+        {
+            rpcResults = fProcedureCaller.doSignAndSaveCall(
+                    fDuz,
+                    VistaLinkUtil.encrypt(electronicSignature),
+                    String.valueOf(result.getPatientDfn()),
+                    wrapNote(noteBody),
+                    RpcVistaSurgeryDao.formatCptCode(result),
+                    RpcVistaSurgeryDao.formatSignatureTimestamp(result),
+                    RpcVistaSurgeryDao.formatOutcomes(result));
+        }
+        catch (final RemoteProcedureUnavailableException e)
+        {
+            LOGGER.info(
+                    "Division {} does not provide {}. Saving note and result separately.",
+                    fProcedureCaller.getDivision(),
+                    RemoteProcedure.SR_ASRC_SIGN_AND_SAVE.getProcedureName());
+            DIVISIONS_WITHOUT_SIGN_AND_SAVE.add(fProcedureCaller.getDivision());
+            return Optional.absent();
+        }
+        catch (final Exception e)
+        {
+            // Same as saveRiskCalculationNote().
+            throw new RecoverableDataAccessException(e.getMessage(), e);
+        }
+        final SaveNoteCode code = toSaveNoteCode(rpcResults.get(0));
+        // VistA only saves the result with a signed note.
+        if (code != SaveNoteCode.SUCCESS)
+        {
+            return Optional.of(new NoteAndResultStatus(code, false));
+        }
+        // The note is signed regardless, so report a result which was not saved instead
+        // of throwing: the caller must still record the signature.
+        final Optional<String> saveError = (rpcResults.size() < 2) ?
+                Optional.of("No risk calculation result returned.") :
+                RpcVistaSurgeryDao.getSaveError(rpcResults.get(1));
+        if (saveError.isPresent())
+        {
+            LOGGER.warn(
+                    "VistA signed the note but did not save the result: {}",
+                    saveError.get());
+        }
+        return Optional.of(new NoteAndResultStatus(code, !saveError.isPresent()));
+    }
+    
+    /**
+     * Splits the given note body into lines, wrapping any lines that are too long so
+     * that users do not have to scroll when viewing the note in CPRS.
+     */
+    private static List<String> wrapNote(final String noteBody)
+    {
+        // Split on line feed or carriage return
+        final List<String> bodyArray = NOTE_LINE_SPLITTER.splitToList(noteBody);
+        final StringBuilder wrappedNote = new StringBuilder();
+        for (final String line : bodyArray)
+        {
+            wrappedNote.append(WordUtils.wrap(line, VistaPatientDao.MAX_LINE_LENGTH, "\n    ", false) + "\n");
+        }
+        // Use Guava Splitter to get a List.
+        return Splitter.on('\n').splitToList(wrappedNote);
+    }
+    
+    /**
+     * Translates the given response of {@link RemoteProcedure#SR_ASRC_SAVE_PROGRESS_NOTE}
+     * into a {@link SaveNoteCode}.
+     */
+    private static SaveNoteCode toSaveNoteCode(final String rpcResultString)
+    {
+        final VistaOperationResult rpcResult = VistaOperationResult.fromString(rpcResultString);
+        if (rpcResult.getCode().equals("1"))
+        {
+            return SaveNoteCode.SUCCESS;
+        }
+        else
+        {
+            return SaveNoteCode.INVALID_SIGNATURE;
+        }
+    }
 }
@@ -2,6 +2,7 @@ package gov.va.med.srcalc.vista;
 
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.format.DateTimeFormat;
@@ -9,6 +10,8 @@ import org.joda.time.format.DateTimeFormatter;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.dao.PermissionDeniedDataAccessException;
 
+import com.google.common.base.Optional;
+
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 
 /**
@@ -39,13 +42,48 @@ public class RpcVistaSurgeryDao implements VistaSurgeryDao
     @Override
     public void saveCalculationResult(final SignedResult result)
     {
-        // The VistaOperationResult that we expect.
-        final VistaOperationResult expectedResult =
-                VistaOperationResult.fromString(RemoteProcedure.RISK_SAVED_RETURN);
-
+        try
+        {
+            final String rpcResultString = fProcedureCaller.doSaveRiskCalculationCall(
+                    fDuz,
+                    String.valueOf(result.getPatientDfn()),
+                    formatCptCode(result),
+                    formatSignatureTimestamp(result),
+                    formatOutcomes(result));
+            checkSaved(rpcResultString);
+        }
+        catch (final GeneralSecurityException ex)
+        {
+            // Translate per method contract.
+            throw new PermissionDeniedDataAccessException("VistA security error", ex);
+        }
+    }
+    
+    /**
+     * Returns the given result's CPT code as {@link RemoteProcedure#SR_ASRC_RISK_SAVE}
+     * expects it.
+     */
+    static String formatCptCode(final SignedResult result)
+    {
         // Translate a missing CPT to an empty string per specification.
-        final String cptString = result.getCptCode().or("");
-        
+        return result.getCptCode().or("");
+    }
+    
+    /**
+     * Returns the given result's signature timestamp as {@link
+     * RemoteProcedure#SR_ASRC_RISK_SAVE} expects it.
+     */
+    static String formatSignatureTimestamp(final SignedResult result)
+    {
+        return VISTA_DATE_TIME_FORMAT.print(result.getSignatureTimestamp());
+    }
+    
+    /**
+     * Returns the given result's outcomes as {@link RemoteProcedure#SR_ASRC_RISK_SAVE}
+     * expects them.
+     */
+    static List<String> formatOutcomes(final SignedResult result)
+    {
         // Translate the outcomes to Strings per specification.
         final ArrayList<String> outcomes = new ArrayList<>(result.getOutcomes().size());
         for (final Map.Entry<String, Float> entry : result.getOutcomes().entrySet())
@@ -54,30 +92,42 @@ public class RpcVistaSurgeryDao implements VistaSurgeryDao
                     // Minimum width 4 characters: "XX.X"
                     "%s^%04.1f", entry.getKey(), entry.getValue() * 100));
         }
-
-        try
+        return outcomes;
+    }
+    
+    /**
+     * Verifies that the given response of {@link RemoteProcedure#SR_ASRC_RISK_SAVE}
+     * indicates success.
+     * @throws InvalidDataAccessResourceUsageException if it does not
+     */
+    static void checkSaved(final String rpcResultString)
+    {
+        final Optional<String> error = getSaveError(rpcResultString);
+        if (error.isPresent())
         {
-            final String rpcResultString = fProcedureCaller.doSaveRiskCalculationCall(
-                    fDuz,
-                    String.valueOf(result.getPatientDfn()),
-                    cptString,
-                    VISTA_DATE_TIME_FORMAT.print(result.getSignatureTimestamp()),
-                    outcomes);
-            
-            final VistaOperationResult rpcResult =
-                    VistaOperationResult.fromString(rpcResultString);
-            // Just compare the codes.
-            if (!expectedResult.getCode().equals(rpcResult.getCode()))
-            {
-                // Any error return now is not due to a network failure, we provided
-                // bad data. Throw a non-transient exception.
-                throw new InvalidDataAccessResourceUsageException(rpcResult.getMessage());
-            }
+            // Any error return now is not due to a network failure, we provided
+            // bad data. Throw a non-transient exception.
+            throw new InvalidDataAccessResourceUsageException(error.get());
         }
-        catch (final GeneralSecurityException ex)
+    }
+    
+    /**
+     * Returns the error message of the given response of {@link
+     * RemoteProcedure#SR_ASRC_RISK_SAVE}, or absent if it indicates success. VistA
+     * does not save anything upon an error.
+     */
+    static Optional<String> getSaveError(final String rpcResultString)
+    {
+        // The VistaOperationResult that we expect.
+        final VistaOperationResult expectedResult =
+                VistaOperationResult.fromString(RemoteProcedure.RISK_SAVED_RETURN);
+        final VistaOperationResult rpcResult =
+                VistaOperationResult.fromString(rpcResultString);
+        // Just compare the codes.
+        if (!expectedResult.getCode().equals(rpcResult.getCode()))
         {
-            // Translate per method contract.
-            throw new PermissionDeniedDataAccessException("VistA security error", ex);
+            return Optional.of(rpcResult.getMessage());
         }
+        return Optional.absent();
     }
 }
@@ -0,0 +1,118 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * <p>Provides a {@link DivisionCircuitBreaker} per VistA division, all with the same
+ * settings.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class VistaCircuitBreakers
+{
+    private final int fMaxConcurrentCalls;
+
+    private final long fMaxWaitMillis;
+
+    private final int fFailureThreshold;
+
+    private final long fOpenMillis;
+
+    private final int fMinTimeoutMillis;
+
+    private final int fMaxTimeoutMillis;
+
+    private final Ticker fTicker;
+
+    private final ConcurrentMap<String, DivisionCircuitBreaker> fBreakers =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an instance.
+     * @param maxConcurrentCalls the maximum number of concurrent calls per division.
+     * This should not exceed the division's VistALink connection pool size.
+     * @param maxWaitMillis how long to wait for a call to be admitted when the maximum
+     * number of calls are in progress
+     * @param failureThreshold the number of consecutive failed calls after which to
+     * refuse calls
+     * @param openMillis how long to refuse calls before allowing a trial call
+     * @param minTimeoutMillis the minimum recommended call timeout
+     * @param maxTimeoutMillis the maximum recommended call timeout
+     * @throws IllegalArgumentException if any argument is not positive or the minimum
+     * timeout exceeds the maximum
+     */
+    public VistaCircuitBreakers(
+            final int maxConcurrentCalls,
+            final long maxWaitMillis,
+            final int failureThreshold,
+            final long openMillis,
+            final int minTimeoutMillis,
+            final int maxTimeoutMillis)
+    {
+        this(maxConcurrentCalls, maxWaitMillis, failureThreshold, openMillis,
+                minTimeoutMillis, maxTimeoutMillis, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructs an instance using the given Ticker to measure time. For tests.
+     */
+    VistaCircuitBreakers(
+            final int maxConcurrentCalls,
+            final long maxWaitMillis,
+            final int failureThreshold,
+            final long openMillis,
+            final int minTimeoutMillis,
+            final int maxTimeoutMillis,
+            final Ticker ticker)
+    {
+        if (maxConcurrentCalls < 1 || maxWaitMillis < 1 || failureThreshold < 1 ||
+                openMillis < 1 || minTimeoutMillis < 1 || maxTimeoutMillis < minTimeoutMillis)
+        {
+            throw new IllegalArgumentException("Invalid circuit breaker settings.");
+        }
+        fMaxConcurrentCalls = maxConcurrentCalls;
+        fMaxWaitMillis = maxWaitMillis;
+        fFailureThreshold = failureThreshold;
+        fOpenMillis = openMillis;
+        fMinTimeoutMillis = minTimeoutMillis;
+        fMaxTimeoutMillis = maxTimeoutMillis;
+        fTicker = ticker;
+    }
+
+    /**
+     * Returns the breaker for the given division, creating it if necessary.
+     * @param division the VistA division (e.g., 500)
+     */
+    public DivisionCircuitBreaker getBreaker(final String division)
+    {
+        final DivisionCircuitBreaker existing = fBreakers.get(division);
+        if (existing != null)
+        {
+            return existing;
+        }
+        final DivisionCircuitBreaker created = new DivisionCircuitBreaker(
+                division,
+                fMaxConcurrentCalls,
+                fMaxWaitMillis,
+                fFailureThreshold,
+                fOpenMillis,
+                fMinTimeoutMillis,
+                fMaxTimeoutMillis,
+                fTicker);
+        final DivisionCircuitBreaker raced = fBreakers.putIfAbsent(division, created);
+        return (raced != null) ? raced : created;
+    }
+
+    /**
+     * Returns all breakers created so far, keyed by division.
+     */
+    public SortedMap<String, DivisionCircuitBreaker> getBreakers()
+    {
+        return ImmutableSortedMap.copyOf(fBreakers);
+    }
+}
@@ -45,4 +45,17 @@ public interface VistaDaoFactory
      * misconfigured
      */
     public VistaSurgeryDao getVistaSurgeryDao();
+
+    /**
+     * <p>Returns a {@link VistaSurgeryDao} that will execute under the context of the
+     * given user. This allows saving on behalf of a user outside of a request, e.g., in
+     * the background.</p>
+     * 
+     * @param division the VistA division of the user
+     * @param duz the DUZ of the user
+     * @throws IllegalArgumentException if the division is unknown
+     * @throws ConfigurationException if the VistA communication is somehow
+     * misconfigured
+     */
+    public VistaSurgeryDao getVistaSurgeryDao(final String division, final String duz);
 }
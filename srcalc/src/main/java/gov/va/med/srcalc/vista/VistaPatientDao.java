@@ -2,9 +2,14 @@ package gov.va.med.srcalc.vista;
 
 import java.util.Set;
 
+import org.springframework.dao.DataAccessException;
+
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 
 import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
 
 /**
  * <p>Data Access Object for VistA Patients.</p>
@@ -89,6 +94,22 @@ public interface VistaPatientDao
      */
     public Patient getPatient(final int dfn);
     
+    /**
+     * Like {@link #getPatient(int)}, but only retrieves the given data up front. The
+     * returned Patient retrieves any other data when it is first accessed.
+     * @param dfn the patient's DFN
+     * @param plan the data to retrieve up front
+     * @throws DataAccessException if any error occurs communicating with VistA
+     */
+    public Patient getPatient(final int dfn, final PatientRetrievalPlan plan);
+    
+    /**
+     * Like {@link #getPatient(int, PatientRetrievalPlan)}, but never returns
+     * previously-retrieved data, even if the implementation caches patients.
+     * @throws DataAccessException if any error occurs communicating with VistA
+     */
+    public Patient refreshPatient(final int dfn, final PatientRetrievalPlan plan);
+    
     /**
      * Saves the finished calculation to VistA, given the patient, electronic signature, 
      * and the note body. Each line of the noteBody is wrapped at {@link VistaPatientDao#MAX_LINE_LENGTH}
@@ -101,4 +122,19 @@ public interface VistaPatientDao
     public SaveNoteCode saveRiskCalculationNote(
             final int patientDfn, final String electronicSignature, String noteBody);
     
+    /**
+     * Like {@link #saveRiskCalculationNote(int, String, String)}, but if the signature
+     * is valid, also saves the given result to VistA Surgery in the same round-trip.
+     * @param result the signed result to save
+     * @param electronicSignature the user's electronic signature code
+     * @param noteBody the note body, built from the same calculation as the result
+     * @return the outcome of saving the note and the result, or absent if the target
+     * VistA cannot save both at once. Nothing has been saved if absent: the caller should
+     * save the note and the result separately. If the note was signed but VistA did not
+     * save the result, the caller should save the result separately.
+     * @throws DataAccessException if any error occurs communicating with VistA
+     */
+    public Optional<NoteAndResultStatus> saveRiskCalculationNoteAndResult(
+            final SignedResult result, final String electronicSignature, String noteBody);
+    
 }
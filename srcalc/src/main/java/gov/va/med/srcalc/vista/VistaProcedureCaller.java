@@ -3,6 +3,7 @@ package gov.va.med.srcalc.vista;
 import gov.va.med.srcalc.ConfigurationException;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.security.auth.login.LoginException;
 
@@ -66,6 +67,42 @@ public interface VistaProcedureCaller
             final List<String> outcomes)
             throws LoginException, DataAccessException;
     
+    /**
+     * <p>A special-purpose method to call {@link RemoteProcedure#SR_ASRC_SIGN_AND_SAVE}
+     * because its parameters are complex. Saves the note and, if the note was signed, the
+     * risk calculation in a single round-trip.</p>
+     * 
+     * <p>Not all sites have installed this Remote Procedure. Callers should be prepared
+     * to fall back to {@link #doSaveProgressNoteCall(String, String, String, List)} and
+     * {@link #doSaveRiskCalculationCall(String, String, String, String, List)}.</p>
+     * 
+     * @param duz the calling user's DUZ (also the signer)
+     * @param encryptedSignature the user's electronic signature code
+     * @param patientDfn the associated patient's DFN
+     * @param noteLines a List of note body lines
+     * @param cptCode the CPT code to store (optional, may be an empty string)
+     * @param dateTime the signature date/time in MM/DD/YYYY@HHMM format
+     * @param outcomes the list of outcomes, each outcoming as a String "Outcome name^XX.X"
+     * @return the VistA response lines: first the note result as returned by {@link
+     * #doSaveProgressNoteCall(String, String, String, List)}, then the risk calculation
+     * result as returned by {@link
+     * #doSaveRiskCalculationCall(String, String, String, String, List)}. The second line
+     * is empty if the note was not signed.
+     * @throws LoginException if unable to authenticate as the calling user with VistA
+     * @throws RemoteProcedureUnavailableException if the target VistA does not provide
+     * the Remote Procedure
+     * @throws DataAccessException if some other error occurred communicating with VistA
+     */
+    public List<String> doSignAndSaveCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException, DataAccessException;
+    
     /**
      * A special-purpose method to call {@link RemoteProcedure#SR_ASRC_LAB_RESULTS}
      * because it requires a List parameter.
@@ -82,6 +119,46 @@ public interface VistaProcedureCaller
             final List<String> labNames)
             throws LoginException, DataAccessException;
     
+    /**
+     * <p>A special-purpose method to call {@link RemoteProcedure#SR_ASRC_MULTI_LAB_RESULTS}
+     * because it requires a List parameter. Retrieves the most recent result for each
+     * group of lab names in a single round-trip.</p>
+     * 
+     * <p>Not all sites have installed this Remote Procedure. Callers should be prepared
+     * to fall back to {@link #doRetrieveLabsCall(String, String, List)}.</p>
+     * 
+     * @param duz the calling user's DUZ
+     * @param patientDfn the associated patient's DFN
+     * @param labNameGroups the potential lab names to retrieve results for, keyed by a
+     * group identifier. Identifiers must not contain a '^'.
+     * @return the VistA response lines, one per group with a result, each formatted as
+     * "Group^Lab Name^Lab Result^Lab Date^Lab Units". May contain a single empty line if
+     * no group had a result.
+     * @throws LoginException if no VistA user could be matched to the given DUZ
+     * @throws RemoteProcedureUnavailableException if the target VistA does not provide
+     * the Remote Procedure
+     * @throws DataAccessException if some other error occurred communicating with VistA
+     */
+    public List<String> doRetrieveAllLabsCall(
+            final String duz,
+            final String patientDfn,
+            final Map<String, List<String>> labNameGroups)
+            throws LoginException, DataAccessException;
+    
+    /**
+     * <p>Begins a session for a unit of work on behalf of the given user, such as
+     * loading a patient. Calls made through the session reuse its connections rather
+     * than each checking out a connection and re-authenticating the user. The caller
+     * must close the session when the unit of work is done.</p>
+     * 
+     * <p>Implementations without connections to reuse may return a session which just
+     * calls this caller.</p>
+     * @param duz the DUZ of the user for whom the session's calls are made. Calls for
+     * other users are made as if outside of the session.
+     * @return the new session
+     */
+    public RpcSession openSession(final String duz);
+    
     /**
      * Returns the division identifier (including any suffix) for the target
      * VistA.
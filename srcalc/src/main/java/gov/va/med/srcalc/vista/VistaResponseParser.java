@@ -0,0 +1,493 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.calculation.RetrievedValue;
+
+/**
+ * <p>Parses the text returned by the patient data remote procedures (vitals, labs, and
+ * health factors) into domain values.</p>
+ *
+ * <p>The dates and numbers in these responses are in fixed formats, so they are
+ * tokenized by hand instead of with a {@link java.text.DateFormat} or a regular
+ * expression. Malformed input is reported through the return value (an absent
+ * Optional, <code>null</code>, or {@link Double#NaN}) rather than an exception, since
+ * VistA data is frequently incomplete and callers simply skip what they cannot
+ * use.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class VistaResponseParser
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(VistaResponseParser.class);
+
+    /**
+     * The format of the dates in VistA vitals responses, e.g. "03/05/10@09:00". Also
+     * used to display retrieved values to the user.
+     */
+    public static final DateTimeFormatter DATE_TIME_FORMAT =
+            DateTimeFormat.forPattern("MM/dd/yy@HH:mm");
+
+    /**
+     * The length of a {@link #DATE_TIME_FORMAT} date.
+     */
+    private static final int DATE_TIME_LENGTH = 14;
+
+    /**
+     * The length of a lab date in the format "MM/dd/yyyy@HH:mm:ss".
+     */
+    private static final int LAB_DATE_TIME_LENGTH = 19;
+
+    /**
+     * The length of a date in the format "MM/dd/yy".
+     */
+    private static final int SHORT_DATE_LENGTH = 8;
+
+    /**
+     * The length of a date in the format "MM/dd/yyyy".
+     */
+    private static final int LONG_DATE_LENGTH = 10;
+
+    /**
+     * Two-digit years are interpreted as within 80 years before and 20 years after the
+     * time this class is loaded, like {@link java.text.SimpleDateFormat}.
+     */
+    private static final int TWO_DIGIT_YEAR_START = new LocalDate().getYear() - 80;
+
+    /**
+     * A line of the GMV LATEST VM response, e.g.
+     * "Pulse:       (03/05/10@09:00)  74  _NURSE,ONE_Vitals".
+     */
+    private static final Pattern VITALS_LINE = Pattern.compile(
+            "(.+):\\s+" // Match to the first colon in order to get the name of the vital
+            + "(\\(.+?\\))?\\s+" // Optional capture group for the date
+            + "(.+)\\s+" // Match the value of the vital and any other information
+                         //between the optional date and the name
+            + "(\\S+)"); // Match the name of the person who recorded the vital
+
+    private static final String WEIGHT_UNITS = "lbs.";
+    private static final String HEIGHT_UNITS = "inches";
+
+    private VistaResponseParser()
+    {
+    }
+
+    /**
+     * Parses the GMV LATEST VM response and sets the patient's height, weight, and BMI
+     * from it. Stops at the first line not in the expected format. Vitals without a
+     * valid value or date are skipped.
+     * @param vitalResults the response lines
+     * @param patient the patient to update
+     */
+    public static void parseLatestVitals(final List<String> vitalResults, final Patient patient)
+    {
+        final ResponseLines lines = ResponseLines.of(vitalResults);
+        for (int i = 0; i < lines.size(); ++i)
+        {
+            final CharSequence line = lines.line(i);
+            final Matcher matcher = VITALS_LINE.matcher(line);
+            if (!matcher.matches())
+            {
+                LOGGER.debug("The vitals line does not match the expected regular expression."
+                        + " Line: {}", line);
+                // Invalid results were received that do not match the expected pattern.
+                break;
+            }
+            // Matcher groups begin at 1, as 0 denotes the entire pattern that was matched.
+            final String vitalName = matcher.group(1);
+            final List<CharSequence> valuesWords = splitWhitespace(
+                    line.subSequence(matcher.start(3), matcher.end(3)));
+            if (valuesWords.isEmpty())
+            {
+                continue;
+            }
+            switch (vitalName)
+            {
+                case "Ht.":
+                    setVital(patient, vitalName, findHeightInInches(valuesWords),
+                            parseParenthesizedDate(line, matcher), HEIGHT_UNITS);
+                    break;
+                case "Wt.":
+                    setVital(patient, vitalName, parseDecimal(valuesWords.get(0)),
+                            parseParenthesizedDate(line, matcher), WEIGHT_UNITS);
+                    break;
+                case "Body Mass Index":
+                    // The BMI has no date of its own: it is calculated from the weight.
+                    final RetrievedValue weight = patient.getWeight();
+                    setVital(patient, vitalName, parseDecimal(valuesWords.get(0)),
+                            (weight == null) ? null : weight.getMeasureDate(), "");
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Sets the given vital on the patient if both the value and the date are valid.
+     */
+    private static void setVital(
+            final Patient patient,
+            final String vitalName,
+            final double value,
+            final Date date,
+            final String units)
+    {
+        if (Double.isNaN(value) || date == null)
+        {
+            LOGGER.debug("Skipping vital {} without a valid value and date.", vitalName);
+            return;
+        }
+        final RetrievedValue retrievedValue = new RetrievedValue(value, date, units);
+        switch (vitalName)
+        {
+            case "Ht.":
+                patient.setHeight(retrievedValue);
+                break;
+            case "Wt.":
+                patient.setWeight(retrievedValue);
+                break;
+            default:
+                patient.setBmi(retrievedValue);
+                break;
+        }
+    }
+
+    /**
+     * Parses the optional "(date)" group of a vitals line. Returns null if it is absent
+     * or invalid.
+     */
+    private static Date parseParenthesizedDate(final CharSequence line, final Matcher matcher)
+    {
+        if (matcher.start(2) < 0)
+        {
+            return null;
+        }
+        // Exclude the parentheses.
+        return parseDateTime(line.subSequence(matcher.start(2) + 1, matcher.end(2) - 1));
+    }
+
+    /**
+     * Returns the height in inches from the words of a height vital, e.g. "5 ft 11 in" or
+     * just "6 ft", or {@link Double#NaN} if the feet are not a number.
+     */
+    private static double findHeightInInches(final List<CharSequence> valuesWords)
+    {
+        final int feet = parseNonNegativeInt(valuesWords.get(0));
+        if (feet < 0)
+        {
+            return Double.NaN;
+        }
+        // Inches are not necessarily used
+        final int inches = (valuesWords.size() > 2) ? parseNonNegativeInt(valuesWords.get(2)) : -1;
+        return (inches < 0) ? feet * 12.0 : feet * 12.0 + inches;
+    }
+
+    /**
+     * Parses the GMV EXTRACT REC response for the most recent weight in the requested
+     * range. Each weight takes two lines, so the most recent weight is on the second to
+     * last line, e.g. "22296^08/24/09@14:00   Wt:   190.00 lb (86.36 kg)  _NURSE,ONE".
+     * @return the weight, or an absent Optional if the response is not in the expected
+     * format
+     */
+    public static Optional<RetrievedValue> parseWeight(final List<String> weightResults)
+    {
+        if (weightResults.size() < 2)
+        {
+            return Optional.absent();
+        }
+        final CaretPieces pieces =
+                CaretPieces.of(ResponseLines.of(weightResults).line(weightResults.size() - 2));
+        if (pieces.size() < 2)
+        {
+            return Optional.absent();
+        }
+        // The expected words are the date, "Wt:", and the weight in pounds.
+        final List<CharSequence> words = splitWhitespace(pieces.get(1));
+        if (words.size() < 3)
+        {
+            return Optional.absent();
+        }
+        final Date date = parseDateTime(words.get(0));
+        final double weight = parseDecimal(words.get(2));
+        if (date == null || Double.isNaN(weight))
+        {
+            return Optional.absent();
+        }
+        return Optional.of(new RetrievedValue(weight, date, WEIGHT_UNITS));
+    }
+
+    /**
+     * Parses a lab result in the format "Lab Name^Lab Result^Lab Date^Lab Units", where
+     * the date is in the format "MM/dd/yyyy@HH:mm:ss".
+     * @return the result, or an absent Optional if it is not in the expected format
+     */
+    public static Optional<RetrievedValue> parseLabResult(final CharSequence labResult)
+    {
+        final CaretPieces pieces = CaretPieces.of(labResult);
+        if (pieces.size() < 4)
+        {
+            return Optional.absent();
+        }
+        final double value = parseDecimal(pieces.get(1));
+        final Date date = parseLabDateTime(pieces.get(2));
+        if (Double.isNaN(value) || date == null)
+        {
+            return Optional.absent();
+        }
+        return Optional.of(new RetrievedValue(value, date, pieces.getString(3)));
+    }
+
+    /**
+     * Parses a date-time in the {@link #DATE_TIME_FORMAT}, e.g. "03/05/10@09:00".
+     * @return the date-time in the default time zone, or null if invalid
+     */
+    public static Date parseDateTime(final CharSequence text)
+    {
+        if (text.length() != DATE_TIME_LENGTH || text.charAt(8) != '@' ||
+                text.charAt(11) != ':')
+        {
+            return null;
+        }
+        final LocalDate date = parseDate(text.subSequence(0, SHORT_DATE_LENGTH));
+        if (date == null)
+        {
+            return null;
+        }
+        return toDate(date, readDigits(text, 9, 2), readDigits(text, 12, 2), 0);
+    }
+
+    /**
+     * Parses a lab date-time in the format "MM/dd/yyyy@HH:mm:ss".
+     * @return the date-time in the default time zone, or null if invalid
+     */
+    public static Date parseLabDateTime(final CharSequence text)
+    {
+        if (text.length() != LAB_DATE_TIME_LENGTH || text.charAt(10) != '@' ||
+                text.charAt(13) != ':' || text.charAt(16) != ':')
+        {
+            return null;
+        }
+        final LocalDate date = parseDate(text.subSequence(0, LONG_DATE_LENGTH));
+        if (date == null)
+        {
+            return null;
+        }
+        return toDate(
+                date, readDigits(text, 11, 2), readDigits(text, 14, 2), readDigits(text, 17, 2));
+    }
+
+    /**
+     * Parses a date in the format "MM/dd/yy" or "MM/dd/yyyy".
+     * @return the date, or null if invalid
+     */
+    public static LocalDate parseDate(final CharSequence text)
+    {
+        final int length = text.length();
+        if ((length != SHORT_DATE_LENGTH && length != LONG_DATE_LENGTH) ||
+                text.charAt(2) != '/' || text.charAt(5) != '/')
+        {
+            return null;
+        }
+        final int month = readDigits(text, 0, 2);
+        final int day = readDigits(text, 3, 2);
+        int year = readDigits(text, 6, length - 6);
+        if (month < 1 || month > 12 || day < 1 || year < 0)
+        {
+            return null;
+        }
+        if (length == SHORT_DATE_LENGTH)
+        {
+            year += TWO_DIGIT_YEAR_START - TWO_DIGIT_YEAR_START % 100;
+            if (year < TWO_DIGIT_YEAR_START)
+            {
+                year += 100;
+            }
+        }
+        if (day > daysInMonth(year, month))
+        {
+            return null;
+        }
+        return new LocalDate(year, month, day);
+    }
+
+    /**
+     * Returns the given time on the given date as a Date in the default time zone, or
+     * null if the time is invalid. Accepts 24:00 as the end of the day.
+     */
+    private static Date toDate(
+            final LocalDate date, final int hour, final int minute, final int second)
+    {
+        if (hour == 24 && minute == 0 && second == 0)
+        {
+            return toDate(date.plusDays(1), 0, 0, 0);
+        }
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+        {
+            return null;
+        }
+        // LocalDateTime.toDate() handles times in daylight saving gaps.
+        return new LocalDateTime(
+                date.getYear(), date.getMonthOfYear(), date.getDayOfMonth(),
+                hour, minute, second).toDate();
+    }
+
+    private static int daysInMonth(final int year, final int month)
+    {
+        switch (month)
+        {
+            case 2:
+                final boolean leapYear =
+                        (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Reads the given number of decimal digits starting at the given index.
+     * @return the number, or -1 if any of the characters is not a digit
+     */
+    private static int readDigits(final CharSequence text, final int start, final int count)
+    {
+        int value = 0;
+        for (int i = start; i < start + count; ++i)
+        {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parses a non-negative integer, ignoring any asterisks (which VistA uses to flag
+     * abnormal values).
+     * @return the integer, or -1 if the text is not a non-negative integer
+     */
+    public static int parseNonNegativeInt(final CharSequence text)
+    {
+        int value = 0;
+        boolean anyDigits = false;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            final char c = text.charAt(i);
+            if (c == '*')
+            {
+                continue;
+            }
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10)
+            {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            anyDigits = true;
+        }
+        return anyDigits ? value : -1;
+    }
+
+    /**
+     * Parses a decimal number such as "-1.5" or "28.27*", ignoring any asterisks (which
+     * VistA uses to flag abnormal values).
+     * @return the number, or {@link Double#NaN} if the text is not a decimal number
+     */
+    public static double parseDecimal(final CharSequence text)
+    {
+        final StringBuilder number = new StringBuilder(text.length());
+        boolean anyDigits = false;
+        boolean decimalPoint = false;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                anyDigits = true;
+            }
+            else if (c == '.' && !decimalPoint)
+            {
+                decimalPoint = true;
+            }
+            else if ((c == '-' || c == '+') && number.length() == 0)
+            {
+                // A leading sign: fall through to append it.
+            }
+            else if (c == '*')
+            {
+                continue;
+            }
+            else
+            {
+                return Double.NaN;
+            }
+            number.append(c);
+        }
+        // The validation above guarantees that parseDouble will not throw.
+        return anyDigits ? Double.parseDouble(number.toString()) : Double.NaN;
+    }
+
+    /**
+     * Splits the given text into words separated by whitespace, omitting empty words.
+     * Each word is a view of the given text.
+     */
+    public static List<CharSequence> splitWhitespace(final CharSequence text)
+    {
+        final List<CharSequence> words = new ArrayList<>();
+        int wordStart = -1;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            if (Character.isWhitespace(text.charAt(i)))
+            {
+                if (wordStart >= 0)
+                {
+                    words.add(new CharSlice(text, wordStart, i));
+                    wordStart = -1;
+                }
+            }
+            else if (wordStart < 0)
+            {
+                wordStart = i;
+            }
+        }
+        if (wordStart >= 0)
+        {
+            words.add(new CharSlice(text, wordStart, text.length()));
+        }
+        return words;
+    }
+
+    /**
+     * Formats the given date as a FileMan date (YYYMMDD, where YYY is the year minus
+     * 1700), as accepted by the vitals remote procedures.
+     */
+    public static String toFileManDate(final LocalDate date)
+    {
+        final int fileManDate = (date.getYear() - 1700) * 10000 +
+                date.getMonthOfYear() * 100 + date.getDayOfMonth();
+        final String digits = String.valueOf(fileManDate);
+        // Years before 1800 would need leading zeroes.
+        return (digits.length() >= 7) ? digits : "0000000".substring(digits.length()) + digits;
+    }
+}
@@ -0,0 +1,176 @@
+package gov.va.med.srcalc.vista;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Provides a bounded thread pool per VistA division for issuing independent remote
+ * procedure calls concurrently. Each division gets its own pool so that a slow division
+ * cannot starve the others, and the pool size should not exceed the division's
+ * VistALink connection pool size so that concurrent calls do not simply queue for a
+ * connection.</p>
+ *
+ * <p>When a division's pool and its queue are both full, the submitting thread runs the
+ * call itself, degrading to sequential retrieval rather than failing.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class VistaRpcExecutors
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(VistaRpcExecutors.class);
+
+    /**
+     * The prefix of each pool thread's name, for identification in thread dumps.
+     */
+    public static final String THREAD_NAME_PREFIX = "srcalc-vista-";
+
+    /**
+     * How long idle pool threads are kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final int fThreadsPerDivision;
+
+    private final int fQueueCapacity;
+
+    private final long fCallTimeoutMillis;
+
+    private final ConcurrentMap<String, ExecutorService> fExecutors =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Whether {@link #shutdown()} has been called. Guarded by fExecutors.
+     */
+    private boolean fShutdown = false;
+
+    /**
+     * Constructs an instance. No threads are started until the first call to
+     * {@link #getExecutor(String)}.
+     * @param threadsPerDivision the maximum number of concurrent calls per division
+     * @param queueCapacity the maximum number of calls waiting for a thread per division
+     * @param callTimeoutMillis the maximum time, in milliseconds, that a caller should
+     * wait for each call (see {@link #getCallTimeoutMillis()})
+     * @throws IllegalArgumentException if any argument is not positive
+     */
+    public VistaRpcExecutors(
+            final int threadsPerDivision, final int queueCapacity, final long callTimeoutMillis)
+    {
+        if (threadsPerDivision < 1 || queueCapacity < 1 || callTimeoutMillis < 1)
+        {
+            throw new IllegalArgumentException("All arguments must be positive.");
+        }
+        fThreadsPerDivision = threadsPerDivision;
+        fQueueCapacity = queueCapacity;
+        fCallTimeoutMillis = callTimeoutMillis;
+    }
+
+    /**
+     * Returns the maximum number of concurrent calls per division.
+     */
+    public int getThreadsPerDivision()
+    {
+        return fThreadsPerDivision;
+    }
+
+    /**
+     * Returns the maximum time, in milliseconds, that a caller should wait for a
+     * submitted call before giving up on it.
+     */
+    public long getCallTimeoutMillis()
+    {
+        return fCallTimeoutMillis;
+    }
+
+    /**
+     * Returns the executor for the given division, creating it if necessary.
+     * @param division the VistA division (e.g., 500)
+     * @throws IllegalStateException if {@link #shutdown()} has been called
+     */
+    public ExecutorService getExecutor(final String division)
+    {
+        final ExecutorService existing = fExecutors.get(division);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        final ThreadPoolExecutor created = new ThreadPoolExecutor(
+                fThreadsPerDivision,
+                fThreadsPerDivision,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(fQueueCapacity),
+                new DivisionThreadFactory(division),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        // Don't hold threads for divisions that are rarely used.
+        created.allowCoreThreadTimeOut(true);
+
+        synchronized (fExecutors)
+        {
+            if (fShutdown)
+            {
+                created.shutdown();
+                throw new IllegalStateException("Executors have been shut down.");
+            }
+            final ExecutorService raced = fExecutors.putIfAbsent(division, created);
+            if (raced != null)
+            {
+                created.shutdown();
+                return raced;
+            }
+        }
+        LOGGER.debug("Created RPC executor for division {}.", division);
+        return created;
+    }
+
+    /**
+     * Shuts down all division executors, interrupting any running calls.
+     */
+    public void shutdown()
+    {
+        synchronized (fExecutors)
+        {
+            fShutdown = true;
+            for (final ExecutorService executor : fExecutors.values())
+            {
+                executor.shutdownNow();
+            }
+            fExecutors.clear();
+        }
+    }
+
+    /**
+     * Creates named daemon threads for one division's pool.
+     */
+    private static final class DivisionThreadFactory implements ThreadFactory
+    {
+        private final String fDivision;
+
+        private final AtomicInteger fNextThreadNumber = new AtomicInteger(1);
+
+        public DivisionThreadFactory(final String division)
+        {
+            fDivision = division;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(
+                    runnable,
+                    THREAD_NAME_PREFIX + fDivision + "-" + fNextThreadNumber.getAndIncrement());
+            // Never prevent JVM shutdown.
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -14,8 +14,11 @@ import gov.va.med.srcalc.domain.calculation.SignedResult;
 public interface VistaSurgeryDao
 {
     /**
-     * Saves the given SignedResult to VistA surgery.
-     * @throws DataAccessException if any error occurs communicating with VistA
+     * Saves the given SignedResult to VistA surgery. This is not idempotent: each call
+     * creates a new record, so only repeat a call which failed before reaching VistA.
+     * @throws ConnectionUnavailableException if no connection to VistA could be obtained
+     * @throws DivisionUnavailableException if the division refused the call
+     * @throws DataAccessException if any other error occurs communicating with VistA
      */
     public void saveCalculationResult(final SignedResult result);
 }
@@ -1,6 +1,7 @@
 package gov.va.med.srcalc.vista.vistalink;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.security.auth.login.FailedLoginException;
 import javax.security.auth.login.LoginException;
@@ -11,11 +12,21 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
 
 import gov.va.med.srcalc.domain.VistaPerson;
+import gov.va.med.srcalc.vista.CircuitBreakingVistaProcedureCaller;
+import gov.va.med.srcalc.vista.DivisionCircuitBreaker;
+import gov.va.med.srcalc.vista.InstrumentedVistaProcedureCaller;
+import gov.va.med.srcalc.vista.ProviderTypeCache;
 import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RemoteProcedureUnavailableException;
+import gov.va.med.srcalc.vista.RpcMetrics;
 import gov.va.med.srcalc.vista.VistaAuthenticator;
+import gov.va.med.srcalc.vista.VistaProcedureCaller;
 import gov.va.med.vistalink.adapter.cci.VistaLinkAppProxyConnectionSpec;
+import gov.va.med.vistalink.adapter.cci.VistaLinkConnectionSpec;
 
 /**
  * <p>A VistaAuthenticator that uses VistALink to perform VistA operations.</p>
@@ -35,6 +46,12 @@ public final class VistaLinkAuthenticator implements VistaAuthenticator
     
     private final VistaLinkProcedureCaller fProcedureCaller;
     
+    private Optional<ProviderTypeCache> fProviderTypeCache = Optional.absent();
+    
+    private Optional<RpcMetrics> fRpcMetrics = Optional.absent();
+    
+    private Optional<DivisionCircuitBreaker> fCircuitBreaker = Optional.absent();
+    
     /**
      * Constructs an instance that will authenticate with the specified VistA division.
      * @throws IllegalArgumentException if the given division is not known to VistALink
@@ -44,6 +61,42 @@ public final class VistaLinkAuthenticator implements VistaAuthenticator
         fProcedureCaller = new VistaLinkProcedureCaller(division);
     }
     
+    /**
+     * Sets the cache from which to reuse each user's Provider Type. If not set, the
+     * Provider Type is loaded from VistA on every login.
+     */
+    public void setProviderTypeCache(final ProviderTypeCache providerTypeCache)
+    {
+        fProviderTypeCache = Optional.of(providerTypeCache);
+    }
+    
+    /**
+     * Sets where to record the latency and outcome of each login Remote Procedure call.
+     * If not set, calls are not measured.
+     */
+    public void setRpcMetrics(final RpcMetrics rpcMetrics)
+    {
+        fRpcMetrics = Optional.of(rpcMetrics);
+    }
+    
+    /**
+     * Sets the circuit breaker with which to guard each login Remote Procedure call,
+     * which also supplies the calls' timeout. If not set, calls are not guarded.
+     * @param circuitBreaker the breaker for this authenticator's division
+     */
+    public void setCircuitBreaker(final DivisionCircuitBreaker circuitBreaker)
+    {
+        fCircuitBreaker = Optional.of(circuitBreaker);
+        fProcedureCaller.setCallTimeoutMillis(new Supplier<Integer>()
+        {
+            @Override
+            public Integer get()
+            {
+                return circuitBreaker.getCallTimeoutMillis();
+            }
+        });
+    }
+    
     @Override
     public String getDivision()
     {
@@ -59,7 +112,7 @@ public final class VistaLinkAuthenticator implements VistaAuthenticator
 
         final AccessVerifyConnectionSpec connectionSpec = new AccessVerifyConnectionSpec(
                 getDivision(), accessCode, verifyCode, clientIp);
-        final List<String> userResults = fProcedureCaller.doRpc(
+        final List<String> userResults = doLoginRpc(
                 connectionSpec, RemoteProcedure.XUS_GET_USER_INFO);
         
         // Just get the pieces we care about.
@@ -69,7 +122,7 @@ public final class VistaLinkAuthenticator implements VistaAuthenticator
                 fProcedureCaller.getDivision(),
                 duz,
                 userName,
-                loadProviderType(duz));
+                getProviderType(duz));
         LOGGER.debug("Successfully authenticated VistA user: {}", person);
         return person;
     }
@@ -87,7 +140,7 @@ public final class VistaLinkAuthenticator implements VistaAuthenticator
         final List<String> userResults;
         try
         {
-            userResults = fProcedureCaller.doRpc(
+            userResults = doLoginRpc(
                     connectionSpec,
                     RemoteProcedure.XUS_KAAJEE_GET_USER_VIA_PROXY,
                     clientIp,
@@ -116,18 +169,128 @@ public final class VistaLinkAuthenticator implements VistaAuthenticator
                 fProcedureCaller.getDivision(),
                 duz,
                 userName,
-                loadProviderType(duz));
+                getProviderType(duz));
         LOGGER.debug("Successfully authenticated VistA user via CCOW: {}", person);
         return person;
     }
     
+    /**
+     * Calls the given Remote Procedure with the given connection spec, guarded by the
+     * configured circuit breaker if any.
+     * @throws gov.va.med.srcalc.vista.DivisionUnavailableException if the breaker
+     * refused the call
+     */
+    private List<String> doLoginRpc(
+            final VistaLinkConnectionSpec connectionSpec,
+            final RemoteProcedure procedure,
+            final String... args)
+            throws LoginException
+    {
+        if (!fCircuitBreaker.isPresent())
+        {
+            return doMeasuredLoginRpc(connectionSpec, procedure, args);
+        }
+        final DivisionCircuitBreaker breaker = fCircuitBreaker.get();
+        final DivisionCircuitBreaker.Permit permit = breaker.acquire();
+        boolean responded = false;
+        try
+        {
+            final List<String> results =
+                    doMeasuredLoginRpc(connectionSpec, procedure, args);
+            responded = true;
+            return results;
+        }
+        catch (final LoginException | RemoteProcedureUnavailableException e)
+        {
+            // VistA responded, e.g., by rejecting the access/verify codes.
+            responded = true;
+            throw e;
+        }
+        finally
+        {
+            breaker.release(permit, responded);
+        }
+    }
+    
+    /**
+     * Calls the given Remote Procedure with the given connection spec, recording the
+     * call in the configured RpcMetrics if any.
+     */
+    private List<String> doMeasuredLoginRpc(
+            final VistaLinkConnectionSpec connectionSpec,
+            final RemoteProcedure procedure,
+            final String... args)
+            throws LoginException
+    {
+        if (!fRpcMetrics.isPresent())
+        {
+            return fProcedureCaller.doRpc(connectionSpec, procedure, args);
+        }
+        final Ticker ticker = Ticker.systemTicker();
+        final long start = ticker.read();
+        boolean succeeded = false;
+        try
+        {
+            final List<String> results =
+                    fProcedureCaller.doRpc(connectionSpec, procedure, args);
+            succeeded = true;
+            long responseSize = 0;
+            for (final String line : results)
+            {
+                responseSize += line.length();
+            }
+            fRpcMetrics.get().recordSuccess(
+                    procedure, getDivision(), ticker.read() - start, responseSize);
+            return results;
+        }
+        finally
+        {
+            if (!succeeded)
+            {
+                fRpcMetrics.get().recordError(
+                        procedure, getDivision(), ticker.read() - start);
+            }
+        }
+    }
+    
+    /**
+     * Returns the user's single Provider Type, if present, from the configured cache if
+     * any.
+     */
+    private Optional<String> getProviderType(final String duz) throws LoginException
+    {
+        if (!fProviderTypeCache.isPresent())
+        {
+            return loadProviderType(duz);
+        }
+        return fProviderTypeCache.get().get(
+                getDivision(), duz, new Callable<Optional<String>>()
+                {
+                    @Override
+                    public Optional<String> call() throws LoginException
+                    {
+                        return loadProviderType(duz);
+                    }
+                });
+    }
+    
     /**
      * Loads the user's single Provider Type, if present.
      */
     private Optional<String> loadProviderType(final String duz) throws LoginException
     {
-        final List<String> personClassResults = fProcedureCaller.doRpc(
-                duz, RemoteProcedure.SR_ASRC_PERSON_CLASSES);
+        VistaProcedureCaller caller = fProcedureCaller;
+        if (fRpcMetrics.isPresent())
+        {
+            caller = new InstrumentedVistaProcedureCaller(caller, fRpcMetrics.get());
+        }
+        if (fCircuitBreaker.isPresent())
+        {
+            caller = new CircuitBreakingVistaProcedureCaller(
+                    caller, fCircuitBreaker.get());
+        }
+        final List<String> personClassResults =
+                caller.doRpc(duz, RemoteProcedure.SR_ASRC_PERSON_CLASSES);
         
         if (!personClassResults.isEmpty())
         {
@@ -0,0 +1,135 @@
+package gov.va.med.srcalc.vista.vistalink;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import gov.va.med.srcalc.ConfigurationException;
+import gov.va.med.vistalink.adapter.cci.VistaLinkConnectionFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+/**
+ * <p>Caches the {@link VistaLinkConnectionFactory} for each VistA division so that the
+ * JNDI lookup happens once per division rather than once per request. Each factory is
+ * looked up lazily on first use.</p>
+ *
+ * <p>A cached factory can become stale if the VistALink adapter is redeployed, so
+ * callers should {@link #invalidate(String, VistaLinkConnectionFactory) invalidate} it
+ * when it fails to provide a connection. The next request for that division then
+ * performs a fresh lookup.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class VistaLinkConnectionFactoryRegistry
+{
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(VistaLinkConnectionFactoryRegistry.class);
+
+    private static final VistaLinkConnectionFactoryRegistry INSTANCE =
+            new VistaLinkConnectionFactoryRegistry();
+
+    private final ConcurrentMap<String, VistaLinkConnectionFactory> fFactories =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty instance. Most code should use {@link #getInstance()}
+     * instead.
+     */
+    VistaLinkConnectionFactoryRegistry()
+    {
+    }
+
+    /**
+     * Returns the application-wide instance.
+     */
+    public static VistaLinkConnectionFactoryRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns whether the given division is supported, without performing a JNDI
+     * lookup.
+     * @see VistaLinkUtil#isDivisionKnown(String)
+     */
+    public boolean isDivisionKnown(final String division)
+    {
+        return fFactories.containsKey(division) || VistaLinkUtil.isDivisionKnown(division);
+    }
+
+    /**
+     * Returns the VistaLinkConnectionFactory for the given division, looking it up in
+     * JNDI if it is not already cached.
+     * @param division the VistA division (e.g., 500)
+     * @throws ConfigurationException if VistALink is not configured properly
+     * @throws IllegalArgumentException if the given division is not known. (Call
+     * {@link #isDivisionKnown(String)} first if unsure.)
+     */
+    public VistaLinkConnectionFactory getFactory(final String division)
+    {
+        final VistaLinkConnectionFactory cached = fFactories.get(division);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        final VistaLinkConnectionFactory found = lookup(division);
+        final VistaLinkConnectionFactory raced = fFactories.putIfAbsent(division, found);
+        return (raced != null) ? raced : found;
+    }
+
+    /**
+     * Discards the cached factory for the given division if it is still the given
+     * factory. (If another thread has already replaced it, the replacement is kept.)
+     * @param division the VistA division
+     * @param failed the factory that failed
+     */
+    public void invalidate(final String division, final VistaLinkConnectionFactory failed)
+    {
+        if (fFactories.remove(division, failed))
+        {
+            LOGGER.info(
+                    "Discarded VistaLinkConnectionFactory for division {}; it will be looked up again.",
+                    division);
+        }
+    }
+
+    /**
+     * Discards all cached factories.
+     */
+    public void clear()
+    {
+        fFactories.clear();
+    }
+
+    /**
+     * Looks up the factory for the given division in JNDI.
+     */
+    private static VistaLinkConnectionFactory lookup(final String division)
+    {
+        final Optional<String> jndiName = VistaLinkUtil.getJndiNameForDivision(division);
+        if (!jndiName.isPresent())
+        {
+            throw new IllegalArgumentException("Division " + division + " not supported");
+        }
+
+        try
+        {
+            final Context namingContext = new InitialContext();
+            LOGGER.debug("Looking up VistaLinkConnectionFactory at {}.", jndiName.get());
+            return (VistaLinkConnectionFactory)namingContext.lookup(jndiName.get());
+        }
+        catch (final NamingException e)
+        {
+            throw new ConfigurationException(
+                    "Could not load VistaLinkConnectionFactory from JNDI", e);
+        }
+    }
+}
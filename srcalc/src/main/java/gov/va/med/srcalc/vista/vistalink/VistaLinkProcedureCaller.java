@@ -1,10 +1,13 @@
 package gov.va.med.srcalc.vista.vistalink;
 
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.naming.*;
 import javax.resource.ResourceException;
 import javax.security.auth.login.AccountNotFoundException;
 import javax.security.auth.login.FailedLoginException;
@@ -12,7 +15,12 @@ import javax.security.auth.login.LoginException;
 
 import gov.va.med.exception.FoundationsException;
 import gov.va.med.srcalc.ConfigurationException;
+import gov.va.med.srcalc.vista.ConnectionUnavailableException;
+import gov.va.med.srcalc.vista.DelegatingRpcSession;
 import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RemoteProcedureUnavailableException;
+import gov.va.med.srcalc.vista.ResponseLines;
+import gov.va.med.srcalc.vista.RpcSession;
 import gov.va.med.srcalc.vista.VistaProcedureCaller;
 import gov.va.med.vistalink.adapter.cci.*;
 import gov.va.med.vistalink.rpc.*;
@@ -24,12 +32,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.*;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 
 /**
  * <p>Provides a simple interface to call VistA Remote Procedures. Uses VistALink.</p>
  * 
+ * <p>Each call checks out a connection for the calling user from the division's
+ * connection pool, which re-authenticates the user, and returns it when done. Calls
+ * made through an {@link RpcSession} instead keep their connections for the next call
+ * of the session.</p>
+ * 
  * <p>Per Effective Java Item 17, this class is marked final because it was not
  * designed for inheritance.</p>
  */
@@ -47,50 +62,83 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
     
     private static final Logger LOGGER = LoggerFactory.getLogger(VistaLinkProcedureCaller.class);
     
+    /**
+     * The maximum number of connections an {@link RpcSession} keeps between calls. Idle
+     * session connections are unavailable to other users' calls, so a session returns
+     * any others to the pool, even when it is fanning out more calls than this.
+     */
+    static final int MAX_IDLE_SESSION_CONNECTIONS = 2;
+    
     /**
      * The division of the remote VistA.
      */
     private final String fDivision;
     
     /**
-     * The JDNI name of the VistaLinkConnectionFactory.
+     * Provides the VistaLinkConnectionFactory for the division.
+     */
+    private final VistaLinkConnectionFactoryRegistry fRegistry;
+    
+    /**
+     * Supplies the timeout for each call, if not using the connection's default.
      */
-    private final String fVlcfJndiName;
+    private Optional<Supplier<Integer>> fCallTimeoutMillis = Optional.absent();
     
     /**
-     * The VistaLinkConnectionFactory.
+     * The connections of the session this caller makes calls for, if any.
      */
-    private final VistaLinkConnectionFactory fVlcf;
+    private final Optional<SessionConnections> fSession;
     
     /**
-     * Constructs an instance for the given VistA division (e.g., 500).
+     * Constructs an instance for the given VistA division (e.g., 500), using the
+     * application-wide {@link VistaLinkConnectionFactoryRegistry}.
      * @throws ConfigurationException if VistALink is not configured properly
      * @throws IllegalArgumentException if the given division is not known. (Call
      * {@link VistaLinkUtil#isDivisionKnown(String)} first if unsure.)
      */
     public VistaLinkProcedureCaller(final String division)
+    {
+        this(division, VistaLinkConnectionFactoryRegistry.getInstance());
+    }
+    
+    /**
+     * Constructs an instance for the given VistA division (e.g., 500), obtaining
+     * connection factories from the given registry.
+     * @throws ConfigurationException if VistALink is not configured properly
+     * @throws IllegalArgumentException if the given division is not known
+     */
+    VistaLinkProcedureCaller(
+            final String division, final VistaLinkConnectionFactoryRegistry registry)
     {
         fDivision = division;
-        
-        try
-        {
-            final Optional<String> jndiName = VistaLinkUtil.getJndiNameForDivision(division);
-            if (!jndiName.isPresent())
-            {
-                throw new IllegalArgumentException(
-                        "Division " + division + " not supported");
-            }
-                   
-            fVlcfJndiName = jndiName.get();
-            final Context namingContext = new InitialContext();
-            fVlcf = (VistaLinkConnectionFactory)namingContext.lookup(
-                    fVlcfJndiName);
-        }
-        catch (final NamingException e)
-        {
-            throw new ConfigurationException(
-                    "Could not load VistaLinkConnectionFactory from JNDI", e);
-        }
+        fRegistry = registry;
+        fSession = Optional.absent();
+        // Resolve the factory now to fail fast on an unknown division. This is only a
+        // JNDI lookup the first time for each division.
+        fRegistry.getFactory(division);
+    }
+    
+    /**
+     * Constructs an instance for a session of the given caller.
+     */
+    private VistaLinkProcedureCaller(
+            final VistaLinkProcedureCaller parent, final SessionConnections session)
+    {
+        fDivision = parent.fDivision;
+        fRegistry = parent.fRegistry;
+        fCallTimeoutMillis = parent.fCallTimeoutMillis;
+        fSession = Optional.of(session);
+    }
+    
+    /**
+     * Sets the source of the VistALink timeout for each call, e.g., {@link
+     * gov.va.med.srcalc.vista.DivisionCircuitBreaker#getCallTimeoutMillis()}. If not
+     * set, calls use the connection's configured timeout.
+     * @param callTimeoutMillis supplies the timeout in milliseconds
+     */
+    public void setCallTimeoutMillis(final Supplier<Integer> callTimeoutMillis)
+    {
+        fCallTimeoutMillis = Optional.of(callTimeoutMillis);
     }
     
     @Override
@@ -98,6 +146,21 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
     {
         return fDivision;
     }
+    
+    /**
+     * {@inheritDoc}
+     * <p>The session checks out a connection when a call needs one and no idle
+     * connection is available, and keeps up to {@link #MAX_IDLE_SESSION_CONNECTIONS}
+     * connections between calls. A connection is only reused after a successful call:
+     * after a failure, it is returned to the pool.</p>
+     */
+    @Override
+    public RpcSession openSession(final String duz)
+    {
+        final SessionConnections connections = new SessionConnections(duz);
+        return new DelegatingRpcSession(
+                new VistaLinkProcedureCaller(this, connections), connections);
+    }
 
     @Override
     public List<String> doRpc(
@@ -149,9 +212,44 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
         setStringParam(req.getParams(), 1, duz);
         setStringParam(req.getParams(), 2, encryptedSignature);
         setStringParam(req.getParams(), 3, patientDfn);
+        setArrayParam(req.getParams(), 4, makeNoteMap(noteLines));
         
-        // The RPC requires an awkward multi-subscript array here. Transform
-        // the given List into the expected format.
+        // We assume only one line in this response.
+        return doRpc(duz, req).get(0);
+    }
+    
+    @Override
+    public List<String> doSignAndSaveCall(
+            final String duz,
+            final String encryptedSignature,
+            final String patientDfn,
+            final List<String> noteLines,
+            final String cptCode,
+            final String dateTime,
+            final List<String> outcomes)
+            throws LoginException
+    {
+        final RpcRequest req = makeRequestObject(RemoteProcedure.SR_ASRC_SIGN_AND_SAVE);
+        
+        // The note parameters, as for SR ASRC PROGRESS NOTE.
+        setStringParam(req.getParams(), 1, duz);
+        setStringParam(req.getParams(), 2, encryptedSignature);
+        setStringParam(req.getParams(), 3, patientDfn);
+        setArrayParam(req.getParams(), 4, makeNoteMap(noteLines));
+        // The remaining parameters of SR ASRC RISK SAVE.
+        setStringParam(req.getParams(), 5, cptCode);
+        setStringParam(req.getParams(), 6, dateTime);
+        setArrayParam(req.getParams(), 7, outcomes);
+        
+        return doRpc(duz, req);
+    }
+    
+    /**
+     * Transforms the given note lines into the awkward multi-subscript array which the
+     * progress note Remote Procedures require.
+     */
+    private Map<String, String> makeNoteMap(final List<String> noteLines)
+    {
         final Map<String, String> noteMap = new HashMap<String, String>(noteLines.size());
         for(int i = 0; i < noteLines.size(); i++)
         {
@@ -160,10 +258,7 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
                     RpcRequest.buildMultipleMSubscriptKey(String.format("\"TEXT\",%d,0",i + 1)),
                     noteLines.get(i));
         }
-        setArrayParam(req.getParams(), 4, noteMap);
-        
-        // We assume only one line in this response.
-        return doRpc(duz, req).get(0);
+        return noteMap;
     }
     
     @Override
@@ -202,6 +297,27 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
         return doRpc(duz, req).get(0);
     }
     
+    @Override
+    public List<String> doRetrieveAllLabsCall(
+            final String duz,
+            final String patientDfn,
+            final Map<String, List<String>> labNameGroups)
+            throws LoginException
+    {
+        final RpcRequest req = makeRequestObject(RemoteProcedure.SR_ASRC_MULTI_LAB_RESULTS);
+        
+        // Each group is passed as a single "Group^Name 1^Name 2..." array entry.
+        final List<String> groupList = new ArrayList<>(labNameGroups.size());
+        for (final Map.Entry<String, List<String>> group : labNameGroups.entrySet())
+        {
+            groupList.add(group.getKey() + "^" + Joiner.on('^').join(group.getValue()));
+        }
+        setStringParam(req.getParams(), 1, patientDfn);
+        setArrayParam(req.getParams(), 2, groupList);
+        
+        return doRpc(duz, req);
+    }
+    
     /**
      * Makes an {@link RpcRequest} object. The primary benefit of this method
      * is to translate the meaningless {@link FoundationsException}.
@@ -286,8 +402,9 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
      * @throws AccountNotFoundException if VistALink could not find a user with the given
      * DUZ
      * @throws LoginException if any other issue occurred reauthenticating in VistA
-     * @throws RecoverableDataAccessException if a VistALink connection could
-     * not be obtained or any other VistALink error occurs
+     * @throws ConnectionUnavailableException if a VistALink connection could not be
+     * obtained
+     * @throws RecoverableDataAccessException if any other VistALink error occurs
      */
     private List<String> doRpc(final String duz, final RpcRequest request)
             throws AccountNotFoundException, LoginException
@@ -301,6 +418,10 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
 
         try
         {
+            if (fSession.isPresent() && fSession.get().isFor(duz))
+            {
+                return doRpc(cs, request, fSession);
+            }
             return doRpc(cs, request);
         }
         catch (final AccountNotFoundException e)
@@ -311,12 +432,33 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
         }
     }
 
+    /**
+     * Obtains a connection from the division's VistaLinkConnectionFactory. If the
+     * factory fails, discards it from the registry so that the next call looks it up
+     * again.
+     * @throws ResourceException if the connection could not be obtained
+     */
+    private VistaLinkConnection getConnection(final VistaLinkConnectionSpec connectionSpec)
+            throws ResourceException
+    {
+        final VistaLinkConnectionFactory vlcf = fRegistry.getFactory(fDivision);
+        try
+        {
+            return (VistaLinkConnection)vlcf.getConnection(connectionSpec);
+        }
+        catch (final ResourceException e)
+        {
+            fRegistry.invalidate(fDivision, vlcf);
+            throw e;
+        }
+    }
+
     /**
      * Makes the specified remote procedure call. Translates all VistALink exceptions to
      * either standard Java or Spring exceptions.
      * @param connectionSpec specifies connection parameters (e.g., division, user)
      * @param request specifies the remote procedure call to make
-     * @return an immutable list of String lines from the response
+     * @return the lines of the response
      * @throws DataAccessException if there was an error communicating with VistA
      * @throws AccountNotFoundException if the given ConnectionSpec specified a user
      * identifier (e.g., DUZ) that could not be matched to a VistA user
@@ -324,17 +466,50 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
      * code pair but it was not correct
      * @throws LoginException if any other issue occurred reauthenticating in VistA
      */
-    private ImmutableList<String> doRpc(
+    private ResponseLines doRpc(
             final VistaLinkConnectionSpec connectionSpec, final RpcRequest request)
             throws DataAccessException, FailedLoginException, AccountNotFoundException,
                     LoginException
+    {
+        return doRpc(connectionSpec, request, Optional.<SessionConnections>absent());
+    }
+
+    /**
+     * Like {@link #doRpc(VistaLinkConnectionSpec, RpcRequest)}, but uses a connection of
+     * the given session, if present.
+     */
+    private ResponseLines doRpc(
+            final VistaLinkConnectionSpec connectionSpec,
+            final RpcRequest request,
+            final Optional<SessionConnections> session)
+            throws DataAccessException, FailedLoginException, AccountNotFoundException,
+                    LoginException
     {
         try
         {
-            final VistaLinkConnection conn = (VistaLinkConnection)fVlcf.getConnection(connectionSpec);
+            final VistaLinkConnection conn;
+            try
+            {
+                conn = session.isPresent() ?
+                        session.get().acquire(connectionSpec) : getConnection(connectionSpec);
+            }
+            catch (final ResourceException e)
+            {
+                // Distinguish this from a failure after sending the call.
+                throw new ConnectionUnavailableException(
+                        "Could not obtain connection to VistA", e);
+            }
+            // Connections are pooled, so restore the default timeout when done.
+            final int defaultTimeout = conn.getTimeOut();
+            boolean succeeded = false;
             try
             {
+                if (fCallTimeoutMillis.isPresent())
+                {
+                    conn.setTimeOut(fCallTimeoutMillis.get().get());
+                }
                 final RpcResponse response = conn.executeRPC(request);
+                succeeded = true;
                 LOGGER.debug(
                         "Got {} response: {}",
                         response.getResultsType(), response.getResults());
@@ -342,16 +517,24 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
                 // VistALink represents arrays as newline-delimited strings.
                 if(VlType.array.name().equals(response.getResultsType()))
                 {
-                    // String.split() is used here instead of Guava's Splitter 
-                    // because it eliminates an empty string at the end of the 
-                    // response result, which is the desired behavior.
-                    return ImmutableList.copyOf(response.getResults().split("\n"));
+                    // Index the lines in place rather than copying each one. Like
+                    // String.split(), this eliminates an empty string at the end of
+                    // the response result, which is the desired behavior.
+                    return ResponseLines.split(response.getResults());
                 }
-                return ImmutableList.of(response.getResults());
+                return ResponseLines.of(ImmutableList.of(response.getResults()));
             }
             finally
             {
-                conn.close();
+                conn.setTimeOut(defaultTimeout);
+                if (session.isPresent())
+                {
+                    session.get().release(conn, succeeded);
+                }
+                else
+                {
+                    conn.close();
+                }
             }
         }
         catch (final ResourceException e)
@@ -360,7 +543,7 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
             // configuration issue to a failure to allocate resources.
             // RecoverableDataAccessException is our best guess here.
             throw new RecoverableDataAccessException(
-                    "Could not obtain connection to VistA", e);
+                    "Could not release connection to VistA", e);
         }
         // VistALink only specifies VistaLinkFaultException, but these exceptions have
         // been determined empirically.
@@ -394,6 +577,14 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
 
             throw new LoginException("Unable to re-authenticate: " + e.getMessage());
         }
+        catch (final RpcNotInContextFaultException e)
+        {
+            // VistA reports an uninstalled Remote Procedure the same way as one missing
+            // from the context option, which is what the ASRC patch adds it to.
+            throw new RemoteProcedureUnavailableException(
+                    "Remote procedure \"" + request.getRpcName() + "\" is not available",
+                    e);
+        }
         // Catch-all: something went wrong in VistALink but we don't know what.
         catch (final FoundationsException e)
         {
@@ -401,4 +592,98 @@ public final class VistaLinkProcedureCaller implements VistaProcedureCaller
                     "VistALink error: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * The connections of an {@link RpcSession}: checked out on demand and kept between
+     * calls until the session is closed.
+     */
+    private final class SessionConnections implements Closeable
+    {
+        private final String fDuz;
+
+        /**
+         * Guarded by this.
+         */
+        private final Deque<VistaLinkConnection> fIdle = new ArrayDeque<>();
+
+        /**
+         * Guarded by this.
+         */
+        private boolean fClosed = false;
+
+        public SessionConnections(final String duz)
+        {
+            fDuz = duz;
+        }
+
+        /**
+         * Returns true if the session makes calls for the given DUZ.
+         */
+        public boolean isFor(final String duz)
+        {
+            return fDuz.equals(duz);
+        }
+
+        /**
+         * Returns an idle connection of the session, or checks out a new one if there
+         * is none.
+         * @throws ResourceException if a connection could not be obtained
+         */
+        public VistaLinkConnection acquire(final VistaLinkConnectionSpec connectionSpec)
+                throws ResourceException
+        {
+            synchronized (this)
+            {
+                final VistaLinkConnection idle = fIdle.pollFirst();
+                if (idle != null)
+                {
+                    return idle;
+                }
+            }
+            return getConnection(connectionSpec);
+        }
+
+        /**
+         * Keeps the given connection for the session's next call, if reusable and the
+         * session has room. Otherwise, returns it to the pool.
+         * @param reusable whether the connection's last call succeeded
+         * @throws ResourceException if the connection could not be returned to the pool
+         */
+        public void release(final VistaLinkConnection conn, final boolean reusable)
+                throws ResourceException
+        {
+            synchronized (this)
+            {
+                if (reusable && !fClosed && fIdle.size() < MAX_IDLE_SESSION_CONNECTIONS)
+                {
+                    fIdle.addFirst(conn);
+                    return;
+                }
+            }
+            conn.close();
+        }
+
+        @Override
+        public void close()
+        {
+            final List<VistaLinkConnection> idle;
+            synchronized (this)
+            {
+                fClosed = true;
+                idle = new ArrayList<>(fIdle);
+                fIdle.clear();
+            }
+            for (final VistaLinkConnection conn : idle)
+            {
+                try
+                {
+                    conn.close();
+                }
+                catch (final ResourceException e)
+                {
+                    LOGGER.warn("Unable to return a session connection to the pool.", e);
+                }
+            }
+        }
+    }
 }
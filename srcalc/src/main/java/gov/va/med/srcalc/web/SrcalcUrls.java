@@ -161,4 +161,30 @@ public class SrcalcUrls
     {
         return UTILIZATION_REPORT;
     }
+    
+    /**
+     * The URL to which to post to append new results to the research archive.
+     */
+    public static final String RESEARCH_ARCHIVE = ADMIN_BASE + "researchArchive";
+    
+    /**
+     * Returns {@link #RESEARCH_ARCHIVE}.
+     */
+    public String getResearchArchive()
+    {
+        return RESEARCH_ARCHIVE;
+    }
+    
+    /**
+     * The URL of the Remote Procedure call statistics page.
+     */
+    public static final String RPC_METRICS = ADMIN_BASE + "rpcMetrics";
+    
+    /**
+     * Returns {@link #RPC_METRICS}.
+     */
+    public String getRpcMetrics()
+    {
+        return RPC_METRICS;
+    }
 }
@@ -3,6 +3,7 @@ package gov.va.med.srcalc.web.controller;
 import javax.inject.Inject;
 import javax.servlet.http.HttpSession;
 
+import gov.va.med.srcalc.domain.Patient;
 import gov.va.med.srcalc.domain.calculation.Calculation;
 import gov.va.med.srcalc.service.*;
 import gov.va.med.srcalc.web.view.*;
@@ -11,6 +12,8 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.ModelAndView;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Controller for creating a new Calculation.
  */
@@ -31,8 +34,8 @@ public class CalculationController
     }
     
     /**
-     * Creates a brand new calculation with the specified dfn. Any existing calculation is
-     * lost.
+     * Creates a brand new calculation with the specified dfn and presents the specialty
+     * selection while the patient is retrieved. Any existing calculation is lost.
      * @param patientDfn the desired patient's dfn
      * @param session the current session
      */
@@ -42,10 +45,16 @@ public class CalculationController
             final HttpSession session)
     {
         // Start the calculation. A Calculation object must be created here to
-        // store the start time for reporting.
-        final Calculation calc = fCalculationService.startNewCalculation(patientDfn);
+        // store the start time for reporting. The patient is only needed once the user
+        // has selected a specialty, so retrieve it in the meantime.
+        final Calculation calc = new Calculation();
+        final ListenableFuture<Patient> patient =
+                fCalculationService.retrievePatientAsync(patientDfn);
+        final CalculationSession cs = new CalculationSession(calc, patient);
+        // Show the patient right away if it is already available.
+        cs.awaitPatient(0);
         // Store the calculation in the HTTP Session.
-        SrcalcSession.setCalculationSession(session, new CalculationSession(calc));
+        SrcalcSession.setCalculationSession(session, cs);
         
         // Present the view.
         final ModelAndView mav = new ModelAndView(Views.SELECT_SPECIALTY);
@@ -97,11 +106,30 @@ public class CalculationController
     {
         final CalculationSession cs = SrcalcSession.getCalculationSession(session);
         fCalculationService.setSpecialty(cs.getCalculation(), specialtyName);
+        // Retrieve the patient data the specialty needs during the redirect.
+        cs.setPendingPatient(fCalculationService.retrieveSpecialtyDataAsync(
+                cs.getCalculation(), cs.getPatientFuture()));
 
         // Using the POST-redirect-GET pattern.
         return "redirect:/enterVars";
     }
     
+    /**
+     * Restarts the current calculation with freshly-retrieved patient data, keeping the
+     * selected specialty. Any entered values are lost.
+     * @param session the current session
+     */
+    @RequestMapping(value = "/refreshPatient", method = RequestMethod.POST)
+    public String refreshPatient(final HttpSession session)
+    {
+        final CalculationSession cs = SrcalcSession.getCalculationSession(session);
+        final Calculation calc = fCalculationService.refreshPatient(cs.getCalculation());
+        SrcalcSession.setCalculationSession(session, new CalculationSession(calc));
+        
+        // Using the POST-redirect-GET pattern.
+        return "redirect:/enterVars";
+    }
+    
     // Variable entry is in EnterVariablesController.
     
 }
@@ -1,16 +1,35 @@
 package gov.va.med.srcalc.web.controller;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import gov.va.med.srcalc.domain.Patient;
 import gov.va.med.srcalc.domain.calculation.Calculation;
 import gov.va.med.srcalc.domain.calculation.CalculationResult;
+import gov.va.med.srcalc.domain.model.Specialty;
+import gov.va.med.srcalc.web.view.PopulatedDisplayGroup;
 
 /**
- * Encapsulates a session in which a user is running a calculation: both the
- * {@link Calculation} object and the latest {@link CalculationResult}.
+ * <p>Encapsulates a session in which a user is running a calculation: both the
+ * {@link Calculation} object and the latest {@link CalculationResult}.</p>
+ *
+ * <p>The Calculation's patient, or the part of its data needed by the selected
+ * specialty, may still be loading: see {@link #awaitPatient(long)}.</p>
+ *
+ * <p>Also caches the parts of the variable entry form which only depend on the
+ * specialty and patient, so that the form is not rebuilt for every request.</p>
  */
 public class CalculationSession implements Serializable
 {
@@ -21,6 +40,21 @@ public class CalculationSession implements Serializable
 
     private final Calculation fCalculation;
     private Optional<CalculationResult> fLastResult = Optional.absent();
+    /**
+     * The patient being retrieved for the Calculation, if any. Futures are not
+     * serializable, so a deserialized session must already have its patient.
+     */
+    private transient ListenableFuture<Patient> fPendingPatient;
+    
+    /*
+     * The cached variable entry form parts, which are only valid for the specialty and
+     * patient instances they were built from. They are not serialized: a deserialized
+     * session just builds them again.
+     */
+    private transient Specialty fFormSpecialty;
+    private transient Patient fFormPatient;
+    private transient ImmutableList<PopulatedDisplayGroup> fDisplayGroups;
+    private transient ImmutableMap<String, String> fRetrievedValues;
     
     /**
      * Constructs an instance.
@@ -30,6 +64,20 @@ public class CalculationSession implements Serializable
     public CalculationSession(final Calculation calculation)
     {
         fCalculation = Objects.requireNonNull(calculation);
+        fPendingPatient = null;
+    }
+    
+    /**
+     * Constructs an instance whose Calculation's patient is still being retrieved.
+     * @param calculation the associated Calculation, which has no patient yet
+     * @param pendingPatient the patient being retrieved
+     * @throws NullPointerException if either argument is null
+     */
+    public CalculationSession(
+            final Calculation calculation, final ListenableFuture<Patient> pendingPatient)
+    {
+        fCalculation = Objects.requireNonNull(calculation);
+        fPendingPatient = Objects.requireNonNull(pendingPatient);
     }
 
     /**
@@ -40,6 +88,172 @@ public class CalculationSession implements Serializable
         return fCalculation;
     }
 
+    /**
+     * Waits up to the given time for the Calculation's patient to be retrieved, setting
+     * it on the Calculation once available.
+     * @param timeoutMillis the maximum time to wait, in milliseconds
+     * @return an Optional containing the patient, or absent if it is still loading
+     * @throws IllegalStateException if the Calculation has no patient and none is being
+     * retrieved (e.g., the session was restored after a restart)
+     * @throws RuntimeException the retrieval's exception (typically a {@link
+     * org.springframework.dao.DataAccessException}) if the patient could not be
+     * retrieved
+     */
+    public synchronized Optional<Patient> awaitPatient(final long timeoutMillis)
+    {
+        if (fPendingPatient != null)
+        {
+            try
+            {
+                fCalculation.setPatient(
+                        fPendingPatient.get(timeoutMillis, TimeUnit.MILLISECONDS));
+                fPendingPatient = null;
+            }
+            catch (final TimeoutException ex)
+            {
+                return Optional.absent();
+            }
+            catch (final InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                return Optional.absent();
+            }
+            catch (final ExecutionException ex)
+            {
+                // Leave the failed future in place so that each attempt reports the
+                // failure.
+                throw Throwables.propagate(ex.getCause());
+            }
+        }
+        else if (fCalculation.getPatient() == null)
+        {
+            throw new IllegalStateException("The calculation has no patient.");
+        }
+        return Optional.of(fCalculation.getPatient());
+    }
+    
+    /**
+     * Returns a Future for the Calculation's patient, which is already done if the
+     * patient has been retrieved.
+     * @throws IllegalStateException if the Calculation has no patient and none is being
+     * retrieved
+     */
+    public synchronized ListenableFuture<Patient> getPatientFuture()
+    {
+        if (fPendingPatient != null)
+        {
+            return fPendingPatient;
+        }
+        else if (fCalculation.getPatient() == null)
+        {
+            throw new IllegalStateException("The calculation has no patient.");
+        }
+        return Futures.immediateFuture(fCalculation.getPatient());
+    }
+    
+    /**
+     * Returns true if the patient, or the data it needs for the selected specialty, is
+     * still being retrieved, i.e., until {@link #awaitPatient(long)} has returned it. The
+     * Calculation may already have a patient in this case, but not all of its data.
+     */
+    public synchronized boolean isRetrievalPending()
+    {
+        return fPendingPatient != null;
+    }
+    
+    /**
+     * Sets the Future to wait on in {@link #awaitPatient(long)}, e.g., for the patient
+     * to finish loading data for the selected specialty.
+     * @param pendingPatient a Future for the Calculation's patient
+     * @throws NullPointerException if the argument is null
+     */
+    public synchronized void setPendingPatient(final ListenableFuture<Patient> pendingPatient)
+    {
+        fPendingPatient = Objects.requireNonNull(pendingPatient);
+    }
+    
+    /**
+     * Returns the display groups cached by {@link #cacheDisplayGroups(List)} if the
+     * Calculation's specialty and patient have not changed since.
+     * @return an Optional containing an immutable list of the cached groups
+     */
+    public synchronized Optional<List<PopulatedDisplayGroup>> getCachedDisplayGroups()
+    {
+        if (!prepareFormCache())
+        {
+            return Optional.absent();
+        }
+        return Optional.<List<PopulatedDisplayGroup>>fromNullable(fDisplayGroups);
+    }
+    
+    /**
+     * Caches the given display groups for the Calculation's current specialty and
+     * patient. Does nothing while the patient is still loading. The groups must not be
+     * modified after this call.
+     * @param displayGroups the groups built for the variable entry form
+     */
+    public synchronized void cacheDisplayGroups(final List<PopulatedDisplayGroup> displayGroups)
+    {
+        if (prepareFormCache())
+        {
+            fDisplayGroups = ImmutableList.copyOf(displayGroups);
+        }
+    }
+    
+    /**
+     * Returns the retrieved and default values cached by {@link
+     * #cacheRetrievedValues(Map)} if the Calculation's specialty and patient have not
+     * changed since.
+     * @return an Optional containing an immutable map of the values
+     * @see gov.va.med.srcalc.web.view.VariableEntry#getDynamicValues()
+     */
+    public synchronized Optional<Map<String, String>> getCachedRetrievedValues()
+    {
+        if (!prepareFormCache())
+        {
+            return Optional.absent();
+        }
+        return Optional.<Map<String, String>>fromNullable(fRetrievedValues);
+    }
+    
+    /**
+     * Caches a copy of the given retrieved and default values for the Calculation's
+     * current specialty and patient. Does nothing while the patient is still loading.
+     * @param retrievedValues the initial variable entry values, before any values
+     * entered by the user
+     */
+    public synchronized void cacheRetrievedValues(final Map<String, String> retrievedValues)
+    {
+        if (prepareFormCache())
+        {
+            fRetrievedValues = ImmutableMap.copyOf(retrievedValues);
+        }
+    }
+    
+    /**
+     * Discards the cached form parts if the Calculation's specialty or patient has
+     * changed since they were cached.
+     * @return false if nothing may be cached because the patient is still loading
+     */
+    private boolean prepareFormCache()
+    {
+        if (fPendingPatient != null)
+        {
+            return false;
+        }
+        // Compare identities: selecting a specialty or refreshing the patient always
+        // provides a new instance.
+        if (fFormSpecialty != fCalculation.getSpecialty() ||
+                fFormPatient != fCalculation.getPatient())
+        {
+            fFormSpecialty = fCalculation.getSpecialty();
+            fFormPatient = fCalculation.getPatient();
+            fDisplayGroups = null;
+            fRetrievedValues = null;
+        }
+        return true;
+    }
+    
     /**
      * Returns the last CalculationResult if it has been set.
      * @return an Optional containing the last CalculationResult if it has been
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import gov.va.med.srcalc.domain.calculation.*;
 import gov.va.med.srcalc.domain.model.*;
@@ -20,9 +21,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.ModelAndView;
 
+import com.google.common.base.Optional;
+
 /**
  * A "branch" of {@link CalculationController} containing request handlers
  * specifically for variable entry.
@@ -42,6 +46,12 @@ public class EnterVariablesController
      */
     public static final String ERROR_NO_VALUE = "noInput";
     
+    /**
+     * How long to wait for a patient that is still being retrieved before presenting a
+     * progress page instead, in milliseconds.
+     */
+    public static final long PATIENT_WAIT_MILLIS = 2000;
+    
     private final CalculationService fCalculationService;
     
     /**
@@ -58,9 +68,12 @@ public class EnterVariablesController
     /**
      * Constructs a {@link VariableEntry} object with the variables needed for this calculation and 
      * automatically retrieved values for those variables if available. Populates values
-     * by using the most recent {@link CalculationResult} if there is one.
+     * by using the most recent {@link CalculationResult} if there is one. Waits up to
+     * {@link #PATIENT_WAIT_MILLIS} for the patient if it is still being retrieved. The
+     * retrieved values are cached in the {@link CalculationSession}.
      * @param session the current session
-     * @return the {@link VariableEntry} object with needed variables and values
+     * @return the {@link VariableEntry} object with needed variables and values, which
+     * has no values if the patient is still being retrieved or no specialty is selected
      */
     @ModelAttribute
     public VariableEntry constructVariableEntry(
@@ -69,8 +82,17 @@ public class EnterVariablesController
         // Get the Calculation from the session.
         final CalculationSession cs = SrcalcSession.getCalculationSession(session);
         final Calculation calculation = cs.getCalculation();
-        final VariableEntry initialValues = VariableEntry.withRetrievedValues(
-                calculation.getVariables(), calculation.getPatient());
+        if (calculation.getSpecialty() == null)
+        {
+            // There are no variables until the user selects a specialty.
+            return new VariableEntry(Collections.<Variable>emptyList());
+        }
+        if (!cs.awaitPatient(PATIENT_WAIT_MILLIS).isPresent())
+        {
+            // The handler will present the progress page.
+            return new VariableEntry(calculation.getVariables());
+        }
+        final VariableEntry initialValues = getRetrievedValues(cs);
         // In the case of using the "Return to Input Form" button, add the values already
         // in the calculation to the variable entry object to maintain the previously calculated
         // values on the entry page.
@@ -88,7 +110,8 @@ public class EnterVariablesController
     }
     
     /**
-     * Presents that variable entry form.
+     * Presents that variable entry form, or a progress page that reloads itself if the
+     * patient is still being retrieved.
      * @param session the current HTTP session (required)
      * @param response needed to alter the response header to expire the page
      *         after a completed calculation
@@ -107,13 +130,20 @@ public class EnterVariablesController
         response.setHeader("Pragma", "no-cache");
         response.setDateHeader("Expires", 0);
         // Get the Calculation from the session.
-        final Calculation calculation =
-                SrcalcSession.getCalculationSession(session).getCalculation();
+        final CalculationSession cs = SrcalcSession.getCalculationSession(session);
+        final Calculation calculation = cs.getCalculation();
+        // constructVariableEntry() did not wait for the retrieval if this is still
+        // pending, so initialValues has no retrieved values.
+        if (cs.isRetrievalPending())
+        {
+            return new ModelAndView(Views.LOADING_PATIENT)
+                    .addObject("calculation", calculation);
+        }
 
         // Present the view.
         final ModelAndView mav = new ModelAndView(Views.ENTER_VARIABLES);
         mav.addObject("calculation", calculation);
-        mav.addObject("displayGroups", getDisplayGroups(calculation));
+        mav.addObject("displayGroups", getDisplayGroups(cs));
         // Note: "variableEntry" object is automatically added through annotated
         // method parameter.
         return mav;
@@ -136,6 +166,11 @@ public class EnterVariablesController
         // Get the CalculationSession.
         final CalculationSession cs = SrcalcSession.getCalculationSession(session);
         final Calculation calculation = cs.getCalculation();
+        if (cs.isRetrievalPending())
+        {
+            // The form has not been presented yet.
+            return new ModelAndView("redirect:/enterVars");
+        }
         
         // Extract the values from the HTTP POST.
         final InputParserVisitor parserVisitor = new InputParserVisitor(values, valuesBindingResult);
@@ -183,6 +218,81 @@ public class EnterVariablesController
         return new ModelAndView("redirect:/displayResults");
     }
     
+    /**
+     * Calculates the outcomes for the values entered so far, for updating the outcomes
+     * on the variable entry form as the user changes values. Unlike {@link
+     * #enterVariables(HttpSession, HttpServletResponse, VariableEntry, BindingResult)},
+     * this does not run the calculation: nothing is recorded and the last result is not
+     * changed.
+     * @param session the current session
+     * @param values the values entered so far
+     * @param valuesBindingResult the binding result used to record invalid values
+     * @return a map to be converted to json, containing the outcome of each risk model
+     * which has all of its values under "outcomes", and the display names of the
+     * variables with missing or invalid values under "missingVariables" and
+     * "invalidVariables"
+     */
+    @RequestMapping(
+            value = "/enterVars/preview",
+            method = RequestMethod.POST,
+            produces = "application/json")
+    @ResponseBody
+    public HashMap<String, Object> previewCalculation(
+            final HttpSession session,
+            @ModelAttribute(ATTR_VARIABLE_ENTRY) final VariableEntry values,
+            final BindingResult valuesBindingResult)
+    {
+        final CalculationSession cs = SrcalcSession.getCalculationSession(session);
+        final Calculation calculation = cs.getCalculation();
+        final HashMap<String, Object> jsonPreview = new HashMap<>();
+        if (cs.isRetrievalPending() || calculation.getSpecialty() == null)
+        {
+            // The form has not been presented yet, so there are no variables.
+            jsonPreview.put("outcomes", Collections.emptyMap());
+            jsonPreview.put("missingVariables", Collections.emptyList());
+            jsonPreview.put("invalidVariables", Collections.emptyList());
+            return jsonPreview;
+        }
+        
+        final InputParserVisitor parserVisitor = new InputParserVisitor(values, valuesBindingResult);
+        for (final Variable variable : calculation.getVariables())
+        {
+            parserVisitor.visit(variable);
+        }
+        final OutcomePreview preview = fCalculationService.previewCalculation(
+                calculation, parserVisitor.getValues());
+        
+        // Invalid values are never included in the values, so report them separately
+        // from the variables that simply have no value yet. Note that the parser
+        // rejects a missing procedure selection.
+        final List<String> missingNames = new ArrayList<>();
+        final List<String> invalidNames = new ArrayList<>();
+        final List<Variable> sortedVariables = new ArrayList<>(calculation.getVariables());
+        Collections.sort(sortedVariables, new DisplayNameComparator());
+        for (final Variable variable : sortedVariables)
+        {
+            final FieldError error = valuesBindingResult.getFieldError(
+                    VariableEntry.makeDynamicValuePath(variable.getKey()));
+            if (error != null && InputParserVisitor.ERROR_NO_SELECTION.equals(error.getCode()))
+            {
+                missingNames.add(variable.getDisplayName());
+            }
+            else if (bindingResultAlreadyContainsError(variable, valuesBindingResult))
+            {
+                invalidNames.add(variable.getDisplayName());
+            }
+            else if (preview.getMissingVariables().contains(variable))
+            {
+                missingNames.add(variable.getDisplayName());
+            }
+        }
+        
+        jsonPreview.put("outcomes", preview.getOutcomes());
+        jsonPreview.put("missingVariables", missingNames);
+        jsonPreview.put("invalidVariables", invalidNames);
+        return jsonPreview;
+    }
+    
     /**
      * Returns true if the given BindingResult already contains an error for the given
      * variable; false otherwise.
@@ -197,8 +307,37 @@ public class EnterVariablesController
                 valuesBindingResult.hasFieldErrors(numericalKey);
     }
     
-    private List<PopulatedDisplayGroup> getDisplayGroups(final Calculation calculation)
+    /**
+     * Returns a new VariableEntry with the default and retrieved values for the
+     * calculation, which are only computed once for each specialty and patient.
+     */
+    private VariableEntry getRetrievedValues(final CalculationSession cs)
+    {
+        final Optional<Map<String, String>> cached = cs.getCachedRetrievedValues();
+        if (cached.isPresent())
+        {
+            return VariableEntry.withDynamicValues(cached.get());
+        }
+        final Calculation calculation = cs.getCalculation();
+        final VariableEntry retrievedValues = VariableEntry.withRetrievedValues(
+                calculation.getVariables(), calculation.getPatient());
+        cs.cacheRetrievedValues(retrievedValues.getDynamicValues());
+        return retrievedValues;
+    }
+    
+    /**
+     * Returns the display groups for the calculation, which are only built once for
+     * each specialty and patient.
+     */
+    private List<PopulatedDisplayGroup> getDisplayGroups(final CalculationSession cs)
     {
+        final Optional<List<PopulatedDisplayGroup>> cached = cs.getCachedDisplayGroups();
+        if (cached.isPresent())
+        {
+            return cached.get();
+        }
+        
+        final Calculation calculation = cs.getCalculation();
         // Ensure we are in the proper state.
         if (calculation.getSpecialty() == null)
         {
@@ -206,8 +345,10 @@ public class EnterVariablesController
                     "Cannot return list of variables because no specialty has been set.");
         }
         
-        return Collections.unmodifiableList(
+        final List<PopulatedDisplayGroup> displayGroups = Collections.unmodifiableList(
                 buildDisplayGroupList(calculation.getVariables(), calculation));
+        cs.cacheDisplayGroups(displayGroups);
+        return displayGroups;
     }
     
     /**
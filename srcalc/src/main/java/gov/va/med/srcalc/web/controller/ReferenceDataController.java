@@ -1,12 +1,20 @@
 package gov.va.med.srcalc.web.controller;
 
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.ReferenceNote;
+import gov.va.med.srcalc.domain.calculation.ValueRetriever;
 import gov.va.med.srcalc.domain.model.Procedure;
 import gov.va.med.srcalc.service.ModelInspectionService;
+import gov.va.med.srcalc.util.XmlDateAdapter;
 
 import java.util.*;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpSession;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,6 +29,16 @@ import com.google.common.collect.ImmutableList;
 @RequestMapping("/refdata")
 public class ReferenceDataController
 {
+    /**
+     * The default number of note headers to return per page.
+     */
+    public static final int DEFAULT_NOTES_PAGE_SIZE = 20;
+    
+    /**
+     * The maximum number of note headers to return per page.
+     */
+    public static final int MAX_NOTES_PAGE_SIZE = 100;
+    
     private final ModelInspectionService fService;
     
     /**
@@ -64,4 +82,149 @@ public class ReferenceDataController
         return returnList;
     }
     
+    /**
+     * <p>Returns a page of the headers (title, sign date, and body length) of the current
+     * patient's reference notes of the given type. The bodies are returned by {@link
+     * #getReferenceNote(HttpSession, String, int)} so that the variable entry page
+     * only transfers the notes the user reads.</p>
+     * 
+     * <p>The JSON object has a {@code total} note count, the {@code offset}, and the
+     * {@code notes} array. Each note's {@code index} identifies its body.</p>
+     * @param session the current session, which must have a patient
+     * @param type the name of the {@link ValueRetriever} of the notes, for example
+     * {@code ADL_NOTES}
+     * @param offset the index of the first note to return
+     * @param limit the maximum number of notes to return, up to {@link
+     * #MAX_NOTES_PAGE_SIZE}
+     * @return the headers, Not Found for an unknown type, or Conflict if the patient is
+     * still being retrieved
+     */
+    @RequestMapping(
+            value = "/notes/{type}",
+            method = RequestMethod.GET,
+            produces = "application/json")
+    public ResponseEntity<Map<String, Object>> getReferenceNoteHeaders(
+            final HttpSession session,
+            @PathVariable("type") final String type,
+            @RequestParam(value = "offset", defaultValue = "0") final int offset,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_NOTES_PAGE_SIZE)
+                final int limit)
+    {
+        final ValueRetriever retriever = findNotesRetriever(type);
+        if (retriever == null || offset < 0 || limit < 1)
+        {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        final Patient patient = getPatient(session);
+        if (patient == null)
+        {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        
+        final List<ReferenceNote> notes = retriever.getReferenceNotes(patient);
+        
+        final int end = Math.min(notes.size(), offset + Math.min(limit, MAX_NOTES_PAGE_SIZE));
+        final List<Object> headers = new ArrayList<>();
+        for (int i = offset; i < end; ++i)
+        {
+            final Map<String, Object> header = makeNoteHeader(i, notes.get(i));
+            final String body = notes.get(i).getNoteBody();
+            header.put("length", body == null ? 0 : body.length());
+            headers.add(header);
+        }
+        final Map<String, Object> page = new LinkedHashMap<>();
+        page.put("total", notes.size());
+        page.put("offset", offset);
+        page.put("notes", headers);
+        return new ResponseEntity<>(page, makeNoStoreHeaders(), HttpStatus.OK);
+    }
+    
+    /**
+     * Returns the header and body of a single reference note of the current patient.
+     * @param session the current session, which must have a patient
+     * @param type see {@link #getReferenceNoteHeaders(HttpSession, String, int, int)}
+     * @param index the index of the note from the headers
+     * @return the note, Not Found for an unknown type or index, or Conflict if the
+     * patient is still being retrieved
+     */
+    @RequestMapping(
+            value = "/notes/{type}/{index}",
+            method = RequestMethod.GET,
+            produces = "application/json")
+    public ResponseEntity<Map<String, Object>> getReferenceNote(
+            final HttpSession session,
+            @PathVariable("type") final String type,
+            @PathVariable("index") final int index)
+    {
+        final ValueRetriever retriever = findNotesRetriever(type);
+        if (retriever == null)
+        {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        final Patient patient = getPatient(session);
+        if (patient == null)
+        {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        
+        final List<ReferenceNote> notes = retriever.getReferenceNotes(patient);
+        if (index < 0 || index >= notes.size())
+        {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        final Map<String, Object> note = makeNoteHeader(index, notes.get(index));
+        note.put("body", notes.get(index).getNoteBody());
+        return new ResponseEntity<>(note, makeNoStoreHeaders(), HttpStatus.OK);
+    }
+    
+    /**
+     * Returns the ValueRetriever of the given reference note type, or null if the type
+     * is not a reference note type.
+     */
+    private static ValueRetriever findNotesRetriever(final String type)
+    {
+        final ValueRetriever retriever;
+        try
+        {
+            retriever = ValueRetriever.valueOf(type);
+        }
+        catch (final IllegalArgumentException e)
+        {
+            return null;
+        }
+        return ValueRetriever.REFERENCE_NOTES_SET.contains(retriever) ? retriever : null;
+    }
+    
+    /**
+     * Returns the current patient, or null if it is still being retrieved.
+     * @throws IllegalStateException if there is no current calculation
+     */
+    private static Patient getPatient(final HttpSession session)
+    {
+        return SrcalcSession.getCalculationSession(session).getCalculation().getPatient();
+    }
+    
+    private static Map<String, Object> makeNoteHeader(
+            final int index, final ReferenceNote note)
+    {
+        final Map<String, Object> header = new LinkedHashMap<>();
+        header.put("index", index);
+        header.put("localTitle", note.getLocalTitle());
+        // Joda would print the current time for a null date.
+        header.put("signDate", note.getSignDate() == null ?
+                "" : XmlDateAdapter.REFERENCE_NOTE_DATE_FORMAT.print(note.getSignDate()));
+        return header;
+    }
+    
+    /**
+     * Returns headers which prevent caching of patient data, which the ETag filter on
+     * /refdata would otherwise allow.
+     */
+    private static HttpHeaders makeNoStoreHeaders()
+    {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("no-store");
+        return headers;
+    }
 }
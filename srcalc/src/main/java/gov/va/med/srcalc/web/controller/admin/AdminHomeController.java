@@ -1,8 +1,11 @@
 package gov.va.med.srcalc.web.controller.admin;
 
+import gov.va.med.srcalc.db.HistoricalCalcWriter;
+import gov.va.med.srcalc.db.RiskSaveOutbox;
 import gov.va.med.srcalc.domain.model.AbstractVariable;
 import gov.va.med.srcalc.domain.model.RiskModel;
 import gov.va.med.srcalc.service.AdminService;
+import gov.va.med.srcalc.vista.VistaCircuitBreakers;
 import gov.va.med.srcalc.web.SrcalcUrls;
 import gov.va.med.srcalc.web.view.VariableSummary;
 import gov.va.med.srcalc.web.view.Views;
@@ -15,6 +18,7 @@ import javax.inject.Inject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -30,6 +34,9 @@ public class AdminHomeController
     private static final Logger LOGGER = LoggerFactory.getLogger(AdminHomeController.class);
 
     private final AdminService fAdminService;
+    private HistoricalCalcWriter fHistoricalCalcWriter;
+    private RiskSaveOutbox fRiskSaveOutbox;
+    private VistaCircuitBreakers fCircuitBreakers;
     
     /**
      * Constructs an instance that will use the provided service(s) for operations.
@@ -38,6 +45,39 @@ public class AdminHomeController
     public AdminHomeController(final AdminService adminService)
     {
         fAdminService = adminService;
+        fHistoricalCalcWriter = null;
+        fRiskSaveOutbox = null;
+        fCircuitBreakers = null;
+    }
+    
+    /**
+     * Sets the optional background writer whose status to present on the home page.
+     * @param writer the writer, or null
+     */
+    @Autowired(required = false)
+    public void setHistoricalCalcWriter(final HistoricalCalcWriter writer)
+    {
+        fHistoricalCalcWriter = writer;
+    }
+    
+    /**
+     * Sets the optional VistA outbox whose backlog to present on the home page.
+     * @param outbox the outbox, or null
+     */
+    @Autowired(required = false)
+    public void setRiskSaveOutbox(final RiskSaveOutbox outbox)
+    {
+        fRiskSaveOutbox = outbox;
+    }
+    
+    /**
+     * Sets the optional VistA circuit breakers whose states to present on the home page.
+     * @param circuitBreakers the breakers, or null
+     */
+    @Autowired(required = false)
+    public void setCircuitBreakers(final VistaCircuitBreakers circuitBreakers)
+    {
+        fCircuitBreakers = circuitBreakers;
     }
     
     /**
@@ -53,9 +93,22 @@ public class AdminHomeController
      * Presents the Administration Home Page.
      */
     @RequestMapping(method = RequestMethod.GET)
-    public String defaultPage()
+    public ModelAndView defaultPage()
     {
-        return Views.ADMIN_HOME;
+        final ModelAndView mav = new ModelAndView(Views.ADMIN_HOME);
+        if (fHistoricalCalcWriter != null)
+        {
+            mav.addObject("historicalCalcWriter", fHistoricalCalcWriter);
+        }
+        if (fRiskSaveOutbox != null)
+        {
+            mav.addObject("riskSaveOutbox", fRiskSaveOutbox);
+        }
+        if (fCircuitBreakers != null)
+        {
+            mav.addObject("circuitBreakers", fCircuitBreakers.getBreakers().values());
+        }
+        return mav;
     }
     
     /**
@@ -0,0 +1,80 @@
+package gov.va.med.srcalc.web.controller.admin;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import gov.va.med.srcalc.archive.ResultArchiveWriter;
+import gov.va.med.srcalc.service.ReportService;
+import gov.va.med.srcalc.web.SrcalcUrls;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+/**
+ * Web MVC controller for appending new signed results to the research archive.
+ */
+@Controller
+@RequestMapping(SrcalcUrls.RESEARCH_ARCHIVE)
+public class ResearchArchiveController
+{
+    /**
+     * Upon success, this controller will add a flash attribute with this name containing
+     * the number of archived results.
+     */
+    public static final String FLASH_ATTR_ARCHIVED_COUNT = "archivedCount";
+
+    /**
+     * The maximum number of results to write in each archive segment.
+     */
+    public static final int SEGMENT_SIZE = 10000;
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ResearchArchiveController.class);
+
+    private final ReportService fReportService;
+    private final ResultArchiveWriter fArchiveWriter;
+
+    /**
+     * Constructs an instance that will use the provided service(s) for operations.
+     * @param reportService the service to load results
+     * @param archiveWriter the research archive to append to
+     */
+    @Inject
+    public ResearchArchiveController(
+            final ReportService reportService, final ResultArchiveWriter archiveWriter)
+    {
+        fReportService = reportService;
+        fArchiveWriter = archiveWriter;
+    }
+
+    /**
+     * Appends all not-yet-archived results to the research archive and redirects to the
+     * Administration Home Page.
+     * @param redirectAttributes for adding flash attributes
+     * @throws IOException if the archive cannot be read or written
+     */
+    @RequestMapping(method = RequestMethod.POST)
+    public ModelAndView archiveNewResults(final RedirectAttributes redirectAttributes)
+            throws IOException
+    {
+        int total = 0;
+        int appended;
+        // Write a segment at a time to limit memory use.
+        do
+        {
+            appended = fReportService.archiveNewSignedResults(fArchiveWriter, SEGMENT_SIZE);
+            total += appended;
+        } while (appended == SEGMENT_SIZE);
+
+        LOGGER.info("Archived {} results to {}.", total, fArchiveWriter.getDirectory());
+
+        redirectAttributes.addFlashAttribute(FLASH_ATTR_ARCHIVED_COUNT, total);
+        return new ModelAndView("redirect:" + SrcalcUrls.ADMIN_HOME);
+    }
+}
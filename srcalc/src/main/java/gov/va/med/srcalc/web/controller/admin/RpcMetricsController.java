@@ -0,0 +1,64 @@
+package gov.va.med.srcalc.web.controller.admin;
+
+import javax.inject.Inject;
+
+import gov.va.med.srcalc.vista.ProviderTypeCache;
+import gov.va.med.srcalc.vista.RpcMetrics;
+import gov.va.med.srcalc.web.SrcalcUrls;
+import gov.va.med.srcalc.web.view.Views;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.google.common.base.Optional;
+
+/**
+ * Web MVC controller for the Remote Procedure call statistics page.
+ */
+@Controller
+@RequestMapping(SrcalcUrls.RPC_METRICS)
+public class RpcMetricsController
+{
+    private final RpcMetrics fRpcMetrics;
+
+    private Optional<ProviderTypeCache> fProviderTypeCache = Optional.absent();
+
+    /**
+     * Constructs an instance.
+     * @param rpcMetrics the statistics to present
+     */
+    @Inject
+    public RpcMetricsController(final RpcMetrics rpcMetrics)
+    {
+        fRpcMetrics = rpcMetrics;
+    }
+
+    /**
+     * Sets the login Provider Type cache whose hit rate to present. If not set, no cache
+     * statistics are presented.
+     */
+    @Autowired(required = false)
+    public void setProviderTypeCache(final ProviderTypeCache providerTypeCache)
+    {
+        fProviderTypeCache = Optional.of(providerTypeCache);
+    }
+
+    /**
+     * Presents the statistics for each Remote Procedure and division, and for the login
+     * Provider Type cache if configured.
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    public ModelAndView showStatistics()
+    {
+        final ModelAndView mav = new ModelAndView(Views.RPC_METRICS)
+                .addObject("statistics", fRpcMetrics.getStatistics());
+        if (fProviderTypeCache.isPresent())
+        {
+            mav.addObject("providerTypeCache", fProviderTypeCache.get());
+        }
+        return mav;
+    }
+}
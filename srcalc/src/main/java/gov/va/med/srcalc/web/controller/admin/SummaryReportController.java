@@ -11,6 +11,7 @@ import gov.va.med.srcalc.service.ReportService;
 import gov.va.med.srcalc.util.SearchResults;
 import gov.va.med.srcalc.web.SrcalcUrls;
 import gov.va.med.srcalc.web.view.Views;
+import gov.va.med.srcalc.web.view.admin.OutcomeDistributionReport;
 import gov.va.med.srcalc.web.view.admin.SummaryReport;
 import gov.va.med.srcalc.web.view.admin.SummaryReportRow;
 
@@ -46,10 +47,17 @@ public class SummaryReportController
     public static final String ATTRIBUTE_PROCEDURE_LIST = "procedureList";
     
     /**
-     * The attribute name of the {@link SummaryReport} object when showing the report.
+     * The attribute name of the {@link SummaryReport} or {@link
+     * OutcomeDistributionReport} object when showing the report.
      */
     public static final String ATTRIBUTE_REPORT = "report";
     
+    /**
+     * The name of the request parameter that, when present, requests the {@link
+     * OutcomeDistributionReport} instead of the {@link SummaryReport}.
+     */
+    public static final String PARAM_DISTRIBUTION = "distribution";
+    
     private static final Logger LOGGER = LoggerFactory.getLogger(SummaryReportController.class);
     
     private final ReportService fReportService;
@@ -99,6 +107,15 @@ public class SummaryReportController
                 params, new SearchResults<>(rows, results.isTruncated()));
     }
     
+    private OutcomeDistributionReport makeDistributionReport(
+            final ResultSearchParameters params)
+    {
+        // The database aggregates all matching results, so this is never truncated.
+        return new OutcomeDistributionReport(
+                params,
+                new SearchResults<>(fReportService.getOutcomeDistributions(params), false));
+    }
+    
     /**
      * If the parameters are valid, generates and presents the report. If invalid,
      * presents the validation errors.
@@ -122,4 +139,27 @@ public class SummaryReportController
         }
     }
     
+    /**
+     * If the parameters are valid, generates and presents the outcome distribution
+     * report. If invalid, presents the validation errors.
+     * @param params the report parameters
+     * @param bindingResult the BindingResult for the report parameters
+     */
+    @RequestMapping(method = RequestMethod.POST, params = PARAM_DISTRIBUTION)
+    public ModelAndView displayDistributionReport(
+            @ModelAttribute(ATTRIBUTE_REPORT_PARAMETERS) final ResultSearchParameters params,
+            final BindingResult bindingResult)
+    {
+        if (bindingResult.hasErrors())
+        {
+            LOGGER.debug("Re-showing form due to errors: {}", bindingResult);
+            return displayForm(params);
+        }
+        else
+        {
+            return new ModelAndView(Views.OUTCOME_DISTRIBUTION_RESULTS)
+                .addObject(ATTRIBUTE_REPORT, makeDistributionReport(params));
+        }
+    }
+    
 }
@@ -13,11 +13,12 @@ public class BooleanVariableView extends VariableView
     /**
      * Constructs an instance.
      * @param variable the BooleanVariable to copy properties from
-     * @param referenceInfo the reference information for this BooleanVariable
+     * @param referenceNotesType the type of reference notes for this BooleanVariable, or an
+     * empty String if none
      */
-    public BooleanVariableView(final BooleanVariable variable, final String referenceInfo)
+    public BooleanVariableView(final BooleanVariable variable, final String referenceNotesType)
     {
-        super(variable, referenceInfo);
+        super(variable, referenceNotesType);
     }
 
     @Override
@@ -21,11 +21,12 @@ public class DiscreteNumericalVariableView extends VariableView
     /**
      * Constructs an instance.
      * @param variable the DiscreteNumericalVariable to copy properties from
-     * @param referenceInfo the reference information for this DiscreteNumericalVariable
+     * @param referenceNotesType the type of reference notes for this DiscreteNumericalVariable, or an
+     * empty String if none
      */
-    public DiscreteNumericalVariableView(final DiscreteNumericalVariable variable, final String referenceInfo)
+    public DiscreteNumericalVariableView(final DiscreteNumericalVariable variable, final String referenceNotesType)
     {
-        super(variable, referenceInfo);
+        super(variable, referenceNotesType);
         fUnits = variable.getUnits();
         fCategories = ImmutableSortedSet.copyOf(variable.getCategoriesWnlFirst());
     }
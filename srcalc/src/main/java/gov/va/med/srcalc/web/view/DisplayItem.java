@@ -38,7 +38,9 @@ public interface DisplayItem
     public String getHelpTextAsHtml();
     
     /**
-     * Returns the reference/description information for this DisplayItem.
+     * Returns the type of the patient's reference notes to present with this DisplayItem,
+     * or an empty String if there are none. The notes themselves are retrieved on request
+     * from {@code /refdata/notes/{type}}.
      */
-    public String getReferenceInfo();
+    public String getReferenceNotesType();
 }
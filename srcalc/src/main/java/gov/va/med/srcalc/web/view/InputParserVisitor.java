@@ -22,6 +22,11 @@ public class InputParserVisitor extends ExceptionlessVariableVisitor
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(InputParserVisitor.class);
     
+    /**
+     * Error code used when no procedure is selected.
+     */
+    public static final String ERROR_NO_SELECTION = "noSelection";
+    
     private final VariableEntry fVariableEntry;
     private final Errors fErrors;
     private final ArrayList<Value> fValues;
@@ -265,7 +270,7 @@ public class InputParserVisitor extends ExceptionlessVariableVisitor
         final String selectedCpt = getVariableValue(variable);
         if (StringUtils.isEmpty(selectedCpt))
         {
-            rejectDynamicValue(variable.getKey(), "noSelection", "no selection");
+            rejectDynamicValue(variable.getKey(), ERROR_NO_SELECTION, "no selection");
             return;
         }
         final Procedure selectedProcedure =
@@ -23,11 +23,12 @@ public class MultiSelectVariableView extends VariableView
     /**
      * Constructs an immutable instance. 
      * @param variable the MultiSelectVariable to copy properties from.
-     * @param referenceInfo the reference information for this MultiSelectVariable
+     * @param referenceNotesType the type of reference notes for this MultiSelectVariable, or an
+     * empty String if none
      */
-    public MultiSelectVariableView(final MultiSelectVariable variable, final String referenceInfo)
+    public MultiSelectVariableView(final MultiSelectVariable variable, final String referenceNotesType)
     {
-        super(variable, referenceInfo);
+        super(variable, referenceNotesType);
         fDisplayType = variable.getDisplayType();
         fOptions = ImmutableList.copyOf(variable.getOptions());
     }
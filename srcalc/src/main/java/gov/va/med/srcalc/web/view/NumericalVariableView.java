@@ -15,11 +15,12 @@ public class NumericalVariableView extends VariableView
     /**
      * Constructs an instance.
      * @param variable the NumericalVariable to copy properties from
-     * @param referenceInfo the reference information for this NumericalVariable
+     * @param referenceNotesType the type of reference notes for this NumericalVariable, or an
+     * empty String if none
      */
-    public NumericalVariableView(final NumericalVariable variable, final String referenceInfo)
+    public NumericalVariableView(final NumericalVariable variable, final String referenceNotesType)
     {
-        super(variable, referenceInfo);
+        super(variable, referenceNotesType);
         fUnits = variable.getUnits();
     }
     
@@ -29,8 +29,8 @@ public final class PopulatedDisplayGroup implements Comparable<PopulatedDisplayG
     private final ImmutableList<Variable> fVariables;
     
     /**
-     * Constructs an instance from the given List of variables. Also populates the groups with
-     * any patient notes that are automatically retrieved.
+     * Constructs an instance from the given List of variables. Also identifies any patient
+     * notes that are automatically retrieved for each variable.
      * @param variables must have at least one member
      * @throws IllegalArgumentException if the given list is empty or if it
      * contains Variables with different groups
@@ -62,16 +62,19 @@ public final class PopulatedDisplayGroup implements Comparable<PopulatedDisplayG
         for(final Variable var: variables)
         {
             final Visitor visitor = new Visitor();
-            final String refInfo;
-            if(var.getRetriever() != null)
+            // Only identify the notes here: the page retrieves them on request because
+            // they can be very long.
+            final String notesType;
+            if(var.getRetriever() != null &&
+                    !var.getRetriever().getReferenceNotes(patient).isEmpty())
             {
-                refInfo = var.getRetriever().retrieveReferenceInfo(patient, var);
+                notesType = var.getRetriever().name();
             }
             else
             {
-                refInfo = "";
+                notesType = "";
             }
-            fDisplayItems.add(visitor.getView(var, refInfo));
+            fDisplayItems.add(visitor.getView(var, notesType));
         }
     }
     
@@ -156,7 +159,7 @@ public final class PopulatedDisplayGroup implements Comparable<PopulatedDisplayG
     private static class Visitor extends ExceptionlessVariableVisitor
     {
         private VariableView fView;
-        private String fReferenceInfo;
+        private String fReferenceNotesType;
         
         public Visitor()
         {
@@ -165,39 +168,39 @@ public final class PopulatedDisplayGroup implements Comparable<PopulatedDisplayG
         @Override
         public void visitNumerical(final NumericalVariable variable)
         {
-            fView = new NumericalVariableView(variable, fReferenceInfo);
+            fView = new NumericalVariableView(variable, fReferenceNotesType);
         }
         
         @Override
         public void visitBoolean(final BooleanVariable variable)
         {
-            fView = new BooleanVariableView(variable, fReferenceInfo);
+            fView = new BooleanVariableView(variable, fReferenceNotesType);
         }
         
         @Override
         public void visitMultiSelect(final MultiSelectVariable variable)
         {
-            fView = new MultiSelectVariableView(variable, fReferenceInfo);
+            fView = new MultiSelectVariableView(variable, fReferenceNotesType);
         }
         
         @Override
         public void visitProcedure(final ProcedureVariable variable)
         {
-            fView = new ProcedureVariableView(variable, fReferenceInfo);
+            fView = new ProcedureVariableView(variable, fReferenceNotesType);
         }
         
         @Override
         public void visitDiscreteNumerical(final DiscreteNumericalVariable variable)
         {
-            fView = new DiscreteNumericalVariableView(variable, fReferenceInfo);
+            fView = new DiscreteNumericalVariableView(variable, fReferenceNotesType);
         }
         
         /**
          * Visits the given variable and returns the constructed view.
          */
-        public VariableView getView(final Variable variable, final String referenceInfo)
+        public VariableView getView(final Variable variable, final String referenceNotesType)
         {
-            fReferenceInfo = referenceInfo;
+            fReferenceNotesType = referenceNotesType;
             visit(variable);
             return fView;
         }
@@ -13,11 +13,12 @@ public class ProcedureVariableView extends VariableView
     /**
      * Constructs an instance.
      * @param variable the ProcedureVariable to copy information from
-     * @param referenceInfo the reference information for this ProcedureVariable
+     * @param referenceNotesType the type of reference notes for this ProcedureVariable, or an
+     * empty String if none
      */
-    public ProcedureVariableView(final ProcedureVariable variable, final String referenceInfo)
+    public ProcedureVariableView(final ProcedureVariable variable, final String referenceNotesType)
     {
-        super(variable, referenceInfo);
+        super(variable, referenceNotesType);
     }
 
     @Override
@@ -70,12 +70,12 @@ public class ReferenceItem implements DisplayItem
     }
     
     /**
-     * Returns an empty String because reference information is not currently used for
+     * Returns an empty String because reference notes are not currently used for
      * ReferenceItems, but it needs to implement this method in order to build the web page
      * for entering variables.
      */
     @Override
-    public String getReferenceInfo()
+    public String getReferenceNotesType()
     {
         return "";
     }
@@ -3,10 +3,12 @@ package gov.va.med.srcalc.web.view;
 import gov.va.med.srcalc.domain.Patient;
 import gov.va.med.srcalc.domain.calculation.RetrievedValue;
 import gov.va.med.srcalc.domain.model.*;
-import gov.va.med.srcalc.vista.RpcVistaPatientDao;
+import gov.va.med.srcalc.vista.VistaResponseParser;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +86,18 @@ public class VariableEntry
         return variableEntry;
     }
     
+    /**
+     * Constructs a {@link VariableEntry} with a copy of the given dynamic values, such as
+     * the values of an earlier {@link #withRetrievedValues(Collection, Patient)} result.
+     */
+    public static VariableEntry withDynamicValues(final Map<String, String> dynamicValues)
+    {
+        final VariableEntry variableEntry =
+                new VariableEntry(Collections.<Variable>emptyList());
+        variableEntry.fDynamicValues.putAll(dynamicValues);
+        return variableEntry;
+    }
+    
     /**
      * <p>Stores the values entered by the user for dynamic variables (which
      * happens to be all of them). The Map is from {@link Variable#getKey()}
@@ -214,8 +228,8 @@ public class VariableEntry
      */
     public static String makeRetrievalString(final RetrievedValue retrievedValue)
     {
-        final String dateString = RpcVistaPatientDao.VISTA_DATE_OUTPUT_FORMAT.format(
-                retrievedValue.getMeasureDate());
+        final String dateString = VistaResponseParser.DATE_TIME_FORMAT.print(
+                retrievedValue.getMeasureDate().getTime());
         String unitString = "";
         if(retrievedValue.getUnits().length() > 0)
         {
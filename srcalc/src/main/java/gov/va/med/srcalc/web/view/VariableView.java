@@ -13,17 +13,18 @@ public abstract class VariableView implements DisplayItem
 {
     private final Variable fVariable;
     
-    private final String fReferenceInfo;
+    private final String fReferenceNotesType;
     
     /**
      * A constructor that stores a Variable and supplementary information for user viewing.
      * @param variable the variable to return properties from.
-     * @param referenceInfo the reference information (notes) for the specified Variable
+     * @param referenceNotesType the type of the reference notes for the specified
+     * Variable, or an empty String if there are none
      */
-    protected VariableView(final Variable variable, final String referenceInfo)
+    protected VariableView(final Variable variable, final String referenceNotesType)
     {
         fVariable = variable;
-        fReferenceInfo = referenceInfo;
+        fReferenceNotesType = referenceNotesType;
     }
     
     /**
@@ -36,9 +37,9 @@ public abstract class VariableView implements DisplayItem
     }
     
     @Override
-    public String getReferenceInfo()
+    public String getReferenceNotesType()
     {
-        return fReferenceInfo;
+        return fReferenceNotesType;
     }
     
     /**
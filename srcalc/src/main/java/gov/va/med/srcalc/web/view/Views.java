@@ -21,6 +21,7 @@ public class Views
     public static final String SESSION_TIMEOUT = "sessionTimeout.jsp";
     public static final String SELECT_SPECIALTY = "selectSpecialty.jsp";
     public static final String ENTER_VARIABLES = "enterVariables.jsp";
+    public static final String LOADING_PATIENT = "loadingPatient.jsp";
     public static final String DISPLAY_RESULTS = "displayResults.jsp";
     public static final String SUCCESSFUL_SIGN = "successfulSign.jsp";
     public static final String CONFIRM_NEW_CALC = "confirmNewCalc.jsp";
@@ -40,6 +41,8 @@ public class Views
     public static final String EDIT_PROCEDURES = "admin/editProcedures.jsp";
     public static final String SUMMARY_REPORT_FORM = "admin/summaryReportForm.jsp";
     public static final String SUMMARY_REPORT_RESULTS = "admin/summaryReportResults.jsp";
+    public static final String OUTCOME_DISTRIBUTION_RESULTS = "admin/outcomeDistributionResults.jsp";
     public static final String UTILIZATION_REPORT_FORM = "admin/utilizationReportForm.jsp";
     public static final String UTILIZATION_REPORT_RESULTS = "admin/utilizationReportResults.jsp";
+    public static final String RPC_METRICS = "admin/rpcMetrics.jsp";
 }
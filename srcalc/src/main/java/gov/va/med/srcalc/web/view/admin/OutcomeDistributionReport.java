@@ -0,0 +1,44 @@
+package gov.va.med.srcalc.web.view.admin;
+
+import gov.va.med.srcalc.db.ResultSearchParameters;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
+import gov.va.med.srcalc.util.SearchResults;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>Encapsulates Outcome Distribution Report data: a histogram of calculated risk for
+ * each risk model, specialty, and station. This report uses the same parameters as the
+ * {@link SummaryReport}.</p>
+ * 
+ * <p>The references in this class cannot be changed, but it is not truly immutable
+ * because {@link ResultSearchParameters} is mutable.</p>
+ * 
+ * <p>Per Effective Java Item 17, this class is marked final because it was not
+ * designed for inheritance.</p>
+ */
+public final class OutcomeDistributionReport
+    extends BaseReport<ResultSearchParameters, OutcomeDistribution>
+{
+    /**
+     * Constructs an instance with the given properties and a generationDate of now.
+     * @param parameters See {@link #getParameters()}.
+     * @param results See {@link #getResults()}.
+     * @throws NullPointerException if any argument is null
+     */
+    public OutcomeDistributionReport(
+            final ResultSearchParameters parameters,
+            final SearchResults<OutcomeDistribution> results)
+    {
+        super(parameters, results);
+    }
+    
+    /**
+     * Returns the lower bound of each distribution bin as a percentage, for labeling.
+     * @see OutcomeDistribution#getBinLowerPercentages()
+     */
+    public ImmutableList<Integer> getBinLowerPercentages()
+    {
+        return OutcomeDistribution.getBinLowerPercentages();
+    }
+}
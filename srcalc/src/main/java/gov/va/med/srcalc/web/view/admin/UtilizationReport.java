@@ -3,6 +3,7 @@ package gov.va.med.srcalc.web.view.admin;
 import java.util.HashMap;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 
 import gov.va.med.srcalc.db.HistoricalSearchParameters;
@@ -23,9 +24,10 @@ import gov.va.med.srcalc.util.SearchResults;
 public final class UtilizationReport
     extends BaseReport<HistoricalSearchParameters, HistoricalRunInfo>
 {
-    // Note that equals() does not depend on this property, but that's OK because this
-    // property is derived form the others.
+    // Note that equals() does not depend on these properties, but that's OK because they
+    // are derived form the others.
     private final ImmutableSortedMap<String, UtilizationSummary> fSpecialtySummaries;
+    private final UtilizationSummary fOverallSummary;
     
     /**
      * Constructs an instance with the given properties and a generationDate of now.
@@ -47,12 +49,17 @@ public final class UtilizationReport
                     runInfo.getHistoricalCalculation().getSpecialtyName(), runInfo);
         }
         final HashMap<String, UtilizationSummary> summaries = new HashMap<>();
+        // Roll up the specialty summaries rather than iterating over all run infos again.
+        UtilizationSummary overallSummary =
+                UtilizationSummary.fromRunInfos(ImmutableList.<HistoricalRunInfo>of());
         for (final String specialtyName : specialtyGroups.keySet())
         {
-            summaries.put(
-                    specialtyName,
-                    UtilizationSummary.fromRunInfos(specialtyGroups.get(specialtyName)));
+            final UtilizationSummary specialtySummary =
+                    UtilizationSummary.fromRunInfos(specialtyGroups.get(specialtyName));
+            summaries.put(specialtyName, specialtySummary);
+            overallSummary = overallSummary.merge(specialtySummary);
         }
+        fOverallSummary = overallSummary;
         fSpecialtySummaries =
                 ImmutableSortedMap.copyOf(summaries, String.CASE_INSENSITIVE_ORDER);
     }
@@ -65,4 +72,13 @@ public final class UtilizationReport
     {
         return fSpecialtySummaries;
     }
+    
+    /**
+     * Returns a {@link UtilizationSummary} for all calculations in the report, merged from
+     * the {@link #getSpecialtySummaries() specialty summaries}.
+     */
+    public UtilizationSummary getOverallSummary()
+    {
+        return fOverallSummary;
+    }
 }
@@ -8,9 +8,12 @@ import com.google.common.base.MoreObjects;
 import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
 import gov.va.med.srcalc.domain.calculation.HistoricalRunInfo;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
+import gov.va.med.srcalc.util.LogLinearHistogram;
 
 /**
- * <p>Encapsulates summary statistics for a Utilization Report.</p>
+ * <p>Encapsulates summary statistics for a Utilization Report. In addition to the
+ * means, the full distributions of the durations are kept in {@link LogLinearHistogram}s
+ * so that summaries can report percentiles and be merged.</p>
  * 
  * <p>Per Effective Java Item 17, this class is marked final because it was not
  * designed for inheritance.</p>
@@ -19,39 +22,32 @@ public final class UtilizationSummary
 {
     private final int fTotalCount;
     private final int fSignedCount;
-    private final int fSecondsToFirstRunAverage;
-    private final int fSecondsToSignAverage;
+    private final LogLinearHistogram fSecondsToFirstRun;
+    private final LogLinearHistogram fSecondsToSign;
     
     /**
      * Constructs an instance with the given properties.
-     * @param totalCount See {@link #getTotalCount()}.
-     * @param signedCount See {@link #getSignedCount()}.
-     * @param secondsToFirstRunAverage See {@link #getSecondsToFirstRunAverage()}.
-     * @param secondsToSignAverage See {@link #getSecondsToSignAverage()}.
+     * @param secondsToFirstRun the distribution of {@link
+     * HistoricalCalculation#getSecondsToFirstRun()} for all calculations. Defensively
+     * copied.
+     * @param secondsToSign the distribution of {@link SignedResult#getSecondsToSign()}
+     * for signed calculations. Defensively copied.
      */
     public UtilizationSummary(
-            final int totalCount,
-            final int signedCount,
-            final int secondsToFirstRunAverage,
-            final int secondsToSignAverage)
+            final LogLinearHistogram secondsToFirstRun,
+            final LogLinearHistogram secondsToSign)
     {
-        fTotalCount = totalCount;
-        fSignedCount = signedCount;
-        fSecondsToFirstRunAverage = secondsToFirstRunAverage;
-        fSecondsToSignAverage = secondsToSignAverage;
-    }
-    
-    /**
-     * Divides the sum by the count for an arithmetic mean. If the count is 0, returns -1.
-     */
-    private static long divideForMean(long sum, long count)
-    {
-        return (count == 0) ? -1 : sum / count;
+        fSecondsToFirstRun = new LogLinearHistogram(secondsToFirstRun);
+        fSecondsToSign = new LogLinearHistogram(secondsToSign);
+        // The histograms store these as longs, but we never analyze that many
+        // calculations at once.
+        fTotalCount = (int)fSecondsToFirstRun.getTotalCount();
+        fSignedCount = (int)fSecondsToSign.getTotalCount();
     }
     
     /**
      * Constructs an instance, calculating statistics from the given HistoricalRunInfo
-     * objects.
+     * objects. The statistics are calculated in a single pass using constant memory.
      * @return a new instance encapsulating the statistics
      */
     public static UtilizationSummary fromRunInfos(
@@ -59,26 +55,34 @@ public final class UtilizationSummary
     {
         // Calculate statistics via iteration. (A database is better at this, but it's
         // simpler just to code this than try to get the database to do it.)
-        long secondsToFirstRunSum = 0;
-        int signedCount = 0;
-        long secondsToSignSum = 0;
+        final LogLinearHistogram secondsToFirstRun = new LogLinearHistogram();
+        final LogLinearHistogram secondsToSign = new LogLinearHistogram();
         for (final HistoricalRunInfo runInfo: runInfos)
         {
-            secondsToFirstRunSum += runInfo.getHistoricalCalculation().getSecondsToFirstRun();
+            secondsToFirstRun.record(
+                    runInfo.getHistoricalCalculation().getSecondsToFirstRun());
             if (runInfo.isSigned())
             {
-                ++signedCount;
-                secondsToSignSum += runInfo.getSignedResult().get().getSecondsToSign();
+                secondsToSign.record(runInfo.getSignedResult().get().getSecondsToSign());
             }
         }
 
+        return new UtilizationSummary(secondsToFirstRun, secondsToSign);
+    }
+    
+    /**
+     * Returns a new summary of the calculations summarized by both this summary and the
+     * given summary. This allows rolling up summaries calculated for subsets of
+     * calculations (e.g., per specialty or per station) without revisiting the
+     * individual calculations.
+     * @param other the summary to combine with this one
+     * @return a new instance. Neither this object nor the given object is modified.
+     */
+    public UtilizationSummary merge(final UtilizationSummary other)
+    {
         return new UtilizationSummary(
-                runInfos.size(),
-                signedCount,
-                // We use longs to hold the sum, but the average should fit inside an int
-                // (because all the components are ints).
-                (int)divideForMean(secondsToFirstRunSum, runInfos.size()),
-                (int)divideForMean(secondsToSignSum, signedCount));
+                new LogLinearHistogram(fSecondsToFirstRun).merge(other.fSecondsToFirstRun),
+                new LogLinearHistogram(fSecondsToSign).merge(other.fSecondsToSign));
     }
     
     /**
@@ -103,7 +107,49 @@ public final class UtilizationSummary
      */
     public int getSecondsToFirstRunAverage()
     {
-        return fSecondsToFirstRunAverage;
+        return fSecondsToFirstRun.getMean();
+    }
+    
+    /**
+     * Returns the approximate median of {@link HistoricalCalculation#getSecondsToFirstRun()}.
+     * If there are no calculations, returns -1.
+     * @see LogLinearHistogram#getValueAtPercentile(double)
+     */
+    public int getSecondsToFirstRunP50()
+    {
+        return fSecondsToFirstRun.getValueAtPercentile(50.0);
+    }
+    
+    /**
+     * Returns the approximate 90th percentile of {@link
+     * HistoricalCalculation#getSecondsToFirstRun()}. If there are no calculations,
+     * returns -1.
+     * @see LogLinearHistogram#getValueAtPercentile(double)
+     */
+    public int getSecondsToFirstRunP90()
+    {
+        return fSecondsToFirstRun.getValueAtPercentile(90.0);
+    }
+    
+    /**
+     * Returns the approximate 99th percentile of {@link
+     * HistoricalCalculation#getSecondsToFirstRun()}. If there are no calculations,
+     * returns -1.
+     * @see LogLinearHistogram#getValueAtPercentile(double)
+     */
+    public int getSecondsToFirstRunP99()
+    {
+        return fSecondsToFirstRun.getValueAtPercentile(99.0);
+    }
+    
+    /**
+     * Returns the full distribution of {@link HistoricalCalculation#getSecondsToFirstRun()}
+     * for storage or further aggregation.
+     * @return a copy of the internal histogram
+     */
+    public LogLinearHistogram getSecondsToFirstRunHistogram()
+    {
+        return new LogLinearHistogram(fSecondsToFirstRun);
     }
     
     /**
@@ -113,7 +159,47 @@ public final class UtilizationSummary
      */
     public int getSecondsToSignAverage()
     {
-        return fSecondsToSignAverage;
+        return fSecondsToSign.getMean();
+    }
+    
+    /**
+     * Returns the approximate median of {@link SignedResult#getSecondsToSign()}. If there
+     * are no signed calculations, returns -1.
+     * @see LogLinearHistogram#getValueAtPercentile(double)
+     */
+    public int getSecondsToSignP50()
+    {
+        return fSecondsToSign.getValueAtPercentile(50.0);
+    }
+    
+    /**
+     * Returns the approximate 90th percentile of {@link SignedResult#getSecondsToSign()}.
+     * If there are no signed calculations, returns -1.
+     * @see LogLinearHistogram#getValueAtPercentile(double)
+     */
+    public int getSecondsToSignP90()
+    {
+        return fSecondsToSign.getValueAtPercentile(90.0);
+    }
+    
+    /**
+     * Returns the approximate 99th percentile of {@link SignedResult#getSecondsToSign()}.
+     * If there are no signed calculations, returns -1.
+     * @see LogLinearHistogram#getValueAtPercentile(double)
+     */
+    public int getSecondsToSignP99()
+    {
+        return fSecondsToSign.getValueAtPercentile(99.0);
+    }
+    
+    /**
+     * Returns the full distribution of {@link SignedResult#getSecondsToSign()} for
+     * storage or further aggregation.
+     * @return a copy of the internal histogram
+     */
+    public LogLinearHistogram getSecondsToSignHistogram()
+    {
+        return new LogLinearHistogram(fSecondsToSign);
     }
     
     /**
@@ -126,8 +212,8 @@ public final class UtilizationSummary
         return MoreObjects.toStringHelper(this)
                 .add("totalCount", fTotalCount)
                 .add("signedCount", fSignedCount)
-                .add("secondsToFirstRunAverage", fSecondsToFirstRunAverage)
-                .add("secondsToSignAverage", fSecondsToSignAverage)
+                .add("secondsToFirstRun", fSecondsToFirstRun)
+                .add("secondsToSign", fSecondsToSign)
                 .toString();
     }
     
@@ -150,8 +236,8 @@ public final class UtilizationSummary
             
             return this.fTotalCount == other.fTotalCount &&
                     this.fSignedCount == other.fSignedCount &&
-                    this.fSecondsToFirstRunAverage == other.fSecondsToFirstRunAverage &&
-                    this.fSecondsToSignAverage == other.fSecondsToSignAverage;
+                    Objects.equals(this.fSecondsToFirstRun, other.fSecondsToFirstRun) &&
+                    Objects.equals(this.fSecondsToSign, other.fSecondsToSign);
         }
         else
         {
@@ -163,6 +249,6 @@ public final class UtilizationSummary
     public int hashCode()
     {
         return Objects.hash(
-                fTotalCount, fSignedCount, fSecondsToFirstRunAverage, fSecondsToSignAverage);
+                fTotalCount, fSignedCount, fSecondsToFirstRun, fSecondsToSign);
     }
 }
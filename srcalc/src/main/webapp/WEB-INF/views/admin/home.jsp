@@ -19,5 +19,62 @@
     <li><a href="${utilizationReportUrl}">Utilization Report</a></li>
     </ul>
     
+    <h3>VistA</h3>
+    
+    <c:url var="rpcMetricsUrl" value="${srcalcUrls.rpcMetrics}" />
+    <p><a href="${rpcMetricsUrl}">Remote Procedure Call Statistics</a></p>
+    
+    <h3>Research Archive</h3>
+    
+    <c:if test="${not empty archivedCount}">
+    <p class="successMessage">Archived ${archivedCount} new signed calculations.</p>
+    </c:if>
+    <c:url var="researchArchiveUrl" value="${srcalcUrls.researchArchive}" />
+    <form action="${researchArchiveUrl}" method="post">
+    <button type="submit">Archive New Signed Calculations</button>
+    </form>
+    
+    <c:if test="${not empty historicalCalcWriter}">
+    <h3>System Status</h3>
+    
+    <table>
+    <tr><th>Historical calculations waiting to be written</th>
+        <td>${historicalCalcWriter.queueDepth} of ${historicalCalcWriter.capacity}</td></tr>
+    <tr><th>Historical calculations written</th>
+        <td>${historicalCalcWriter.writtenCount}</td></tr>
+    <tr><th>Failed historical calculation batches</th>
+        <td>${historicalCalcWriter.failedBatchCount}</td></tr>
+    </table>
+    </c:if>
+    
+    <c:if test="${not empty riskSaveOutbox}">
+    <h3>VistA Risk Calculation Saves</h3>
+    
+    <table>
+    <tr><th>Waiting to be saved</th><td>${riskSaveOutbox.pendingCount}</td></tr>
+    <tr><th>Abandoned (check VistA Surgery before resending)</th>
+        <td>${riskSaveOutbox.abandonedCount}</td></tr>
+    <tr><th>Saved since startup</th><td>${riskSaveOutbox.savedCount}</td></tr>
+    <tr><th>Failed attempts since startup</th><td>${riskSaveOutbox.failedAttemptCount}</td></tr>
+    </table>
+    </c:if>
+    
+    <c:if test="${not empty circuitBreakers}">
+    <h3>VistA Divisions</h3>
+    
+    <table>
+    <tr><th>Division</th><th>State</th><th>Calls in progress</th>
+        <th>Consecutive failures</th><th>Call timeout (ms)</th><th>Refused calls</th></tr>
+    <c:forEach var="breaker" items="${circuitBreakers}">
+    <tr><td><c:out value="${breaker.division}" /></td>
+        <td>${breaker.state}</td>
+        <td>${breaker.activeCalls} of ${breaker.maxConcurrentCalls}</td>
+        <td>${breaker.consecutiveFailures}</td>
+        <td>${breaker.callTimeoutMillis}</td>
+        <td>${breaker.rejectedCount}</td></tr>
+    </c:forEach>
+    </table>
+    </c:if>
+    
 </section>
 </srcalc:adminPage>
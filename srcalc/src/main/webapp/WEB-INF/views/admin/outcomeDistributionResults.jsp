@@ -0,0 +1,49 @@
+<%@ taglib uri="/WEB-INF/srcalc.tld" prefix="srcalc" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+
+<srcalc:adminPage title="Risk Distribution Report">
+
+<section>
+    <h2>ASRC Risk Distribution Report - ${report.generationDate}</h2>
+    
+    <p>
+    Each row shows how many signed calculations fell into each range of predicted risk
+    for a risk model, specialty, and facility. The below table may be copied and pasted
+    into Excel.
+    </p>
+    
+    <table id="outcomeDistributionTable" class="srcalcTable reportTable">
+    <thead>
+    <tr>
+        <th>Risk Model</th>
+        <th>Surgical Specialty</th>
+        <th>Facility</th>
+        <th>Total</th>
+        <c:forEach var="lowerPercentage" items="${report.binLowerPercentages}" varStatus="binStatus">
+        <c:choose>
+        <c:when test="${binStatus.last}"><th>${lowerPercentage}% +</th></c:when>
+        <c:otherwise><th>${lowerPercentage}% - &lt;${report.binLowerPercentages[binStatus.index + 1]}%</th></c:otherwise>
+        </c:choose>
+        </c:forEach>
+    </tr>
+    </thead>
+    <tbody>
+    <c:forEach var="distribution" items="${report.results.foundItems}">
+    <tr>
+        <td>${distribution.riskModelName}</td>
+        <td>${distribution.specialtyName}</td>
+        <td>${distribution.stationNumber}</td>
+        <td class="numerical">${distribution.totalCount}</td>
+        <c:forEach var="binCount" items="${distribution.binCounts}">
+        <td class="numerical">${binCount}</td>
+        </c:forEach>
+    </tr>
+    </c:forEach>
+    </tbody>
+    </table>
+
+    <c:url var="adminHomeUrl" value="${srcalcUrls.adminHome}" />
+    <p><a href="${adminHomeUrl}">Return to Administration Home</a></p>
+    
+</section>
+</srcalc:adminPage>
@@ -0,0 +1,90 @@
+<%@ taglib tagdir="/WEB-INF/tags" prefix="srcalc" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+
+<srcalc:adminPage title="Remote Procedure Call Statistics">
+
+<section>
+    <h2>Remote Procedure Call Statistics</h2>
+    
+    <p>
+    Statistics for each Remote Procedure called since the server started. Latencies are
+    in milliseconds and include failed calls. Response sizes are in characters.
+    </p>
+    
+    <c:choose>
+    <c:when test="${empty statistics}">
+    <p>No Remote Procedures have been called.</p>
+    </c:when>
+    <c:otherwise>
+    <table id="rpcMetricsTable" class="srcalcTable reportTable">
+    <thead>
+    <tr>
+        <th>Division</th>
+        <th>Remote Procedure</th>
+        <th>Calls</th>
+        <th>Errors</th>
+        <th class="longHeaderShortContent">Latency Average</th>
+        <th class="longHeaderShortContent">Latency Median</th>
+        <th class="longHeaderShortContent">Latency 90th Percentile</th>
+        <th class="longHeaderShortContent">Latency 99th Percentile</th>
+        <th class="longHeaderShortContent">Latency Maximum</th>
+        <th class="longHeaderShortContent">Response Size Average</th>
+        <th class="longHeaderShortContent">Response Size Maximum</th>
+    </tr>
+    </thead>
+    <tbody>
+    <c:forEach var="stats" items="${statistics}">
+    <tr>
+        <td><c:out value="${stats.division}" /></td>
+        <td><c:out value="${stats.procedureName}" /></td>
+        <td>${stats.callCount}</td>
+        <td>${stats.errorCount}</td>
+        <td>${stats.meanLatency}</td>
+        <td>${stats.medianLatency}</td>
+        <td>${stats.latency90thPercentile}</td>
+        <td>${stats.latency99thPercentile}</td>
+        <td>${stats.maxLatency}</td>
+        <td>${stats.meanResponseSize}</td>
+        <td>${stats.maxResponseSize}</td>
+    </tr>
+    </c:forEach>
+    </tbody>
+    </table>
+    </c:otherwise>
+    </c:choose>
+</section>
+
+<c:if test="${not empty providerTypeCache}">
+<section>
+    <h2>Login Provider Type Cache</h2>
+    
+    <p>
+    Logins which reused a cached Provider Type instead of calling
+    SR ASRC PERSON CLASSES, since the server started.
+    </p>
+    
+    <table id="providerTypeCacheTable" class="srcalcTable reportTable">
+    <thead>
+    <tr>
+        <th>Cached Users</th>
+        <th>Hits</th>
+        <th>Misses</th>
+        <th>Hit Rate</th>
+        <th>Failed Loads</th>
+    </tr>
+    </thead>
+    <tbody>
+    <tr>
+        <td>${providerTypeCache.size}</td>
+        <td>${providerTypeCache.hitCount}</td>
+        <td>${providerTypeCache.missCount}</td>
+        <td><fmt:formatNumber type="percent" value="${providerTypeCache.hitRate}" /></td>
+        <td>${providerTypeCache.loadFailureCount}</td>
+    </tr>
+    </tbody>
+    </table>
+</section>
+</c:if>
+
+</srcalc:adminPage>
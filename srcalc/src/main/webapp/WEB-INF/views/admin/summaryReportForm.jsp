@@ -58,6 +58,7 @@
     <ol>
     <li><c:url var="cancelUrl" value="${srcalcUrls.adminHome}" />
         <a class="btn-default" href="${cancelUrl}">Cancel</a></li>
+    <li><button type="submit" name="distribution">Generate Risk Distribution</button></li>
     <li><button class="button-em" type="submit">Generate Report</button></li>
     </ol>
     </div>
@@ -43,32 +43,28 @@
         <th>Total</th>
         <th>Signed</th>
         <th class="longHeaderShortContent">Time to First Run Average (Minutes)</th>
+        <th class="longHeaderShortContent">Time to First Run Median (Minutes)</th>
+        <th class="longHeaderShortContent">Time to First Run 90th Percentile (Minutes)</th>
+        <th class="longHeaderShortContent">Time to First Run 99th Percentile (Minutes)</th>
         <th class="longHeaderShortContent">Time to Sign Average (Minutes)</th>
+        <th class="longHeaderShortContent">Time to Sign Median (Minutes)</th>
+        <th class="longHeaderShortContent">Time to Sign 90th Percentile (Minutes)</th>
+        <th class="longHeaderShortContent">Time to Sign 99th Percentile (Minutes)</th>
     </tr>
     </thead>
     <tbody>
     <c:forEach var="summaryEntry" items="${report.specialtySummaries}">
     <tr>
         <td>${summaryEntry.key}</td>
-        <td class="numerical">${summaryEntry.value.totalCount}</td>
-        <td class="numerical">${summaryEntry.value.signedCount}</td>
-        <td class="numerical">
-        <%-- secondsToFirstRunAverage can be -1 if there were no signed calcs, but in that
-             case there will be no summary row. --%>
-        <fmt:formatNumber
-            value="${summaryEntry.value.secondsToFirstRunAverage / 60}"
-            minFractionDigits="1" maxFractionDigits="1"/>
-        </td>
-        <td class="numerical">
-        <%-- secondsToSignAverage will be -1 if there were no signed calcs. --%>
-        <c:if test="${summaryEntry.value.secondsToSignAverage >= 0}">
-        <fmt:formatNumber
-            value="${summaryEntry.value.secondsToSignAverage / 60}"
-            minFractionDigits="1" maxFractionDigits="1"/>
-        </c:if>
-        </td>
+        <srcalc:utilizationSummaryCells summary="${summaryEntry.value}"/>
     </tr>
     </c:forEach>
+    <c:if test="${not empty report.specialtySummaries}">
+    <tr>
+        <td>All Specialties</td>
+        <srcalc:utilizationSummaryCells summary="${report.overallSummary}"/>
+    </tr>
+    </c:if>
     </tbody>
     </table>
 
@@ -27,24 +27,33 @@
             <c:if test="${displayItem.helpTextAsHtml != ''}">
                 <a class="helpTextToggler"><img src="${qMarkImageUrl}" alt="?"/></a>
             </c:if>
-            <c:if test="${not empty displayItem.referenceInfo}">
+            <c:if test="${not empty displayItem.referenceNotesType}">
                 <a class="referenceInfoToggler"><img src="${noteImageUrl}" alt="N"/></a>
             </c:if>
         </td>
         <td class="attributeValue">
             <jsp:include page="fragments/${displayItem.fragmentName}"/>
 			<div class="variableDef">${displayItem.helpTextAsHtml}</div>
-            <div class="referenceNotes">
-                <!-- Unfortunately this line needs to be long because textarea tags interpret
-                white space literally. -->
-                <textarea readonly class="varReferenceInfo">${displayItem.referenceInfo}</textarea>
+            <c:if test="${not empty displayItem.referenceNotesType}">
+            <%-- The notes can be very long, so enterVariables.js retrieves them when
+                first shown. --%>
+            <div class="referenceNotes" data-notes-type="${displayItem.referenceNotesType}">
+                <ol class="referenceNoteList"></ol>
             </div>
+            </c:if>
         </td>
     </tr>
     </c:forEach>
     </tbody>
     </c:forEach>
     </table>
+    <%-- enterVariables.js fills this in as the values change. --%>
+    <div id="outcomePreview" class="outcomePreview">
+    <h3>Preliminary Outcomes</h3>
+    <table class="outcomePreviewTable"><tbody></tbody></table>
+    <p class="outcomePreviewMissing"></p>
+    <p class="outcomePreviewInvalid"></p>
+    </div>
     <div class="actionButtons">
     <ol>
     <li><button id="runCalcButton" class="button-em" type="submit">Run Calculation</button></li>
@@ -66,5 +75,11 @@
     });
     </script>
     </form:form>
+    <c:url var="refreshPatientUrl" value="/refreshPatient"/>
+    <%-- A separate form because forms cannot be nested. --%>
+    <form id="refreshPatientForm" action="${refreshPatientUrl}" method="post">
+    <button id="refreshPatientButton" type="submit"
+        title="Retrieve the patient's data from VistA again. Entered values will be lost.">Refresh Patient Data</button>
+    </form>
 </section>
 </srcalc:calcPage>
@@ -0,0 +1,19 @@
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib tagdir="/WEB-INF/tags" prefix="srcalc" %>
+
+<srcalc:calcPage title="Retrieving Patient Data">
+
+<section>
+    <h2>Retrieving Patient Data</h2>
+    <%@include file="fragments/calculationSummary.jspf" %>
+    <p>Patient data is still being retrieved from VistA. This page will continue
+    automatically once it is available.</p>
+    <div id="patientProgress"></div>
+    <script type="text/javascript">
+        $("#patientProgress").progressbar({ value: false });
+        // The server waits briefly for the patient on each request, so just reload.
+        setTimeout(function() { window.location.reload(); }, 500);
+    </script>
+</section>
+
+</srcalc:calcPage>
@@ -26,6 +26,14 @@ var ENTERVARIABLES = function() {
     var procedureAllWords = "";
     var procedureAnyWords = "";
     
+    // How long to wait after the last change before updating the outcome preview, in
+    // milliseconds.
+    var PREVIEW_DELAY = 500;
+    
+    // The pending preview timer and request, if any.
+    var previewTimer = null;
+    var previewRequest = null;
+    
     /**
      * Returns the shorter display string for a procedure.
      */
@@ -42,6 +50,8 @@ var ENTERVARIABLES = function() {
 	    hiddenInput.val(cptCode);
 	    userDisplay.html(displayString);
 	    procedureSelectDialog.dialog("close");
+	    // Setting the value does not fire a change event.
+	    scheduleOutcomePreview();
 	}
 	
 	function procedureSearch(rowData) {
@@ -225,6 +235,108 @@ var ENTERVARIABLES = function() {
         }
     }
     
+    /**
+     * Appends the given page of reference note headers to the given list, with a link
+     * to retrieve the next page if there are more notes.
+     */
+    function appendNoteHeaders(noteList, notesType, page) {
+        $.each(page.notes, function(i, note) {
+            var header = $('<a class="referenceNoteHeader"></a>')
+                .text('Local Title: ' + note.localTitle + ' Sign Date: ' + note.signDate);
+            var body = $('<textarea readonly class="varReferenceInfo"></textarea>').hide();
+            header.on('click', function() {
+                toggleNoteBody(notesType, note.index, body);
+            });
+            noteList.append($('<li></li>').append(header, body));
+        });
+        var nextOffset = page.offset + page.notes.length;
+        if (nextOffset < page.total) {
+            var more = $('<a class="referenceNoteMore"></a>')
+                .text('Show more notes (' + (page.total - nextOffset) + ' remaining)');
+            more.on('click', function() {
+                more.closest('li').remove();
+                loadNoteHeaders(noteList, notesType, nextOffset);
+            });
+            noteList.append($('<li></li>').append(more));
+        }
+    }
+
+    /**
+     * Retrieves a page of reference note headers starting at the given offset.
+     */
+    function loadNoteHeaders(noteList, notesType, offset) {
+        $.getJSON('refdata/notes/' + notesType, { offset: offset }, function(page) {
+            appendNoteHeaders(noteList, notesType, page);
+        });
+    }
+
+    /**
+     * Shows or hides the body of a reference note, retrieving it the first time.
+     */
+    function toggleNoteBody(notesType, index, body) {
+        if (body.data('loaded')) {
+            body.slideToggle(200);
+            return;
+        }
+        $.getJSON('refdata/notes/' + notesType + '/' + index, function(note) {
+            // Use val() so that the note is never interpreted as HTML.
+            body.val(note.body).data('loaded', true).slideDown(200);
+        });
+    }
+
+    /**
+     * Shows the given outcome preview returned by enterVars/preview.
+     */
+    function showOutcomePreview(preview) {
+        var container = $('#outcomePreview');
+        var rows = container.find('.outcomePreviewTable tbody').empty();
+        $.each(preview.outcomes, function(modelName, outcome) {
+            rows.append($('<tr></tr>').append(
+                $('<th></th>').text(modelName),
+                $('<td></td>').text((outcome * 100).toFixed(1) + '%')));
+        });
+        container.find('.outcomePreviewMissing').text(
+            preview.missingVariables.length > 0 ?
+                'Still needed: ' + preview.missingVariables.join(', ') : '');
+        container.find('.outcomePreviewInvalid').text(
+            preview.invalidVariables.length > 0 ?
+                'Invalid: ' + preview.invalidVariables.join(', ') : '');
+        container.toggle(!$.isEmptyObject(preview.outcomes) ||
+            preview.missingVariables.length > 0 || preview.invalidVariables.length > 0);
+    }
+
+    /**
+     * Requests an outcome preview for the current form values, abandoning any
+     * previous request that has not returned yet.
+     */
+    function requestOutcomePreview() {
+        previewTimer = null;
+        if (previewRequest) {
+            previewRequest.abort();
+        }
+        previewRequest = $.ajax({
+            url: 'enterVars/preview',
+            type: 'POST',
+            dataType: 'json',
+            data: $('#riskVarForm').serialize(),
+            success: showOutcomePreview,
+            complete: function() {
+                previewRequest = null;
+            }
+        });
+    }
+
+    /**
+     * Schedules an outcome preview once the user has stopped changing values for
+     * PREVIEW_DELAY.
+     */
+    function scheduleOutcomePreview() {
+        if (previewTimer) {
+            window.clearTimeout(previewTimer);
+        }
+        previewTimer = window.setTimeout(requestOutcomePreview, PREVIEW_DELAY);
+    }
+
     /*** Public API ***/
     return {
         /**
@@ -276,8 +388,20 @@ var ENTERVARIABLES = function() {
 	        // Click handler for reference notes
 	        $('.attributeName').find('.referenceInfoToggler').on('click', function(){
 	        	// slide toggle the reference notes associated with this variable
-	        	$(this).closest('tr').find('.referenceNotes').slideToggle(200);
+	        	var notes = $(this).closest('tr').find('.referenceNotes');
+	        	// Retrieve the first page of note headers when first shown.
+	        	if (!notes.data('loaded')) {
+	        	    notes.data('loaded', true);
+	        	    loadNoteHeaders(
+	        	        notes.find('.referenceNoteList'), notes.data('notes-type'), 0);
+	        	}
+	        	notes.slideToggle(200);
 	        });
+	        
+	        // Update the outcome preview as the values change, and once for the
+	        // initial values.
+	        $('#riskVarForm').on('change keyup', 'input, select', scheduleOutcomePreview);
+	        requestOutcomePreview();
         }
     }
 }();
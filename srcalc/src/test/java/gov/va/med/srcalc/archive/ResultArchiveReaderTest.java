@@ -0,0 +1,70 @@
+package gov.va.med.srcalc.archive;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the {@link ResultArchiveReader} class.
+ */
+public class ResultArchiveReaderTest
+{
+    @Rule
+    public final TemporaryFolder fTempFolder = new TemporaryFolder();
+
+    @Test
+    public final void testOpenNonexistent() throws Exception
+    {
+        final ResultArchiveReader reader =
+                ResultArchiveReader.open(new File(fTempFolder.getRoot(), "nonexistent"));
+
+        assertEquals(ImmutableList.of(), reader.getSegments());
+        assertEquals(0, reader.getRowCount());
+    }
+
+    @Test
+    public final void testScan() throws Exception
+    {
+        final ResultArchiveWriter writer = new ResultArchiveWriter(fTempFolder.getRoot());
+        int nextId = 1;
+        for (int segment = 0; segment < 3; ++segment)
+        {
+            final List<SignedResult> results = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i)
+            {
+                results.add(SampleCalculations.withId(
+                        SampleCalculations.signedThoracic(), nextId++));
+            }
+            writer.appendSegment(results);
+        }
+        // Ignore other files in the directory.
+        fTempFolder.newFile("README.txt");
+
+        final ResultArchiveReader reader = ResultArchiveReader.open(fTempFolder.getRoot());
+
+        assertEquals(3, reader.getSegments().size());
+        assertEquals(3000, reader.getRowCount());
+        double sum = 0.0;
+        int expectedId = 1;
+        for (final ArchiveSegment segment : reader.getSegments())
+        {
+            for (int row = 0; row < segment.getRowCount(); ++row)
+            {
+                assertEquals(expectedId++, segment.getId(row));
+                sum += segment.getOutcome(row, SampleCalculations.THORACIC_MODEL_30_DAY);
+            }
+        }
+        assertEquals(3000 * 20.1, sum, 0.01);
+    }
+}
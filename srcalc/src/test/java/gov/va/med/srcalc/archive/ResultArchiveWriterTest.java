@@ -0,0 +1,229 @@
+package gov.va.med.srcalc.archive;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests the {@link ResultArchiveWriter} class, using {@link ArchiveSegment} to verify
+ * the written segments.
+ */
+public class ResultArchiveWriterTest
+{
+    @Rule
+    public final TemporaryFolder fTempFolder = new TemporaryFolder();
+
+    private File fDirectory;
+
+    @Before
+    public void setup()
+    {
+        // Does not exist yet.
+        fDirectory = new File(fTempFolder.getRoot(), "archive");
+    }
+
+    /**
+     * Returns a SignedResult with no CPT code or provider type and the given ID, signed
+     * 3 minutes after the given start.
+     */
+    private static SignedResult minimalResult(final int id, final DateTime start)
+    {
+        return minimalResult(id, start, start.plusMinutes(3));
+    }
+
+    /**
+     * Returns a SignedResult with no CPT code or provider type and the given ID.
+     */
+    private static SignedResult minimalResult(
+            final int id, final DateTime start, final DateTime signatureTimestamp)
+    {
+        final HistoricalCalculation historical = new HistoricalCalculation(
+                "Neurosurgery", "442", start, 20, Optional.<String>absent());
+        return SampleCalculations.withId(new SignedResult(
+                historical,
+                55,
+                Optional.<String>absent(),
+                signatureTimestamp,
+                ImmutableMap.of("age", "41.0", "dnr", "false"),
+                ImmutableMap.of("Neurosurgery 30-Day", 0.341f)), id);
+    }
+
+    @Test
+    public final void testRoundTrip() throws Exception
+    {
+        final SignedResult thoracic =
+                SampleCalculations.withId(SampleCalculations.signedThoracic(), 3);
+        // Use an earlier start and ID but a later signature to exercise negative
+        // deltas and signature order.
+        final SignedResult neuro = minimalResult(
+                2,
+                new DateTime(2014, 12, 1, 8, 0),
+                thoracic.getSignatureTimestamp().plusMinutes(1));
+        final ResultArchiveWriter writer = new ResultArchiveWriter(fDirectory);
+
+        assertEquals(ArchivePosition.START, writer.getLastArchivedPosition());
+        final File segmentFile = writer.appendSegment(ImmutableList.of(thoracic, neuro));
+        assertEquals(ArchivePosition.of(neuro), writer.getLastArchivedPosition());
+
+        final ArchiveSegment segment = ArchiveSegment.open(segmentFile);
+        assertEquals(2, segment.getRowCount());
+        assertEquals(ArchivePosition.of(neuro), segment.getLastPosition());
+
+        final HistoricalCalculation thoracicHistorical = thoracic.getHistoricalCalculation();
+        assertEquals(3, segment.getId(0));
+        assertEquals(thoracicHistorical.getSpecialtyName(), segment.getSpecialtyName(0));
+        assertEquals(thoracicHistorical.getUserStation(), segment.getUserStation(0));
+        assertEquals(thoracicHistorical.getProviderType(), segment.getProviderType(0));
+        assertEquals(thoracic.getCptCode(), segment.getCptCode(0));
+        assertEquals(thoracicHistorical.getStartTimestamp(), segment.getStartTimestamp(0));
+        assertEquals(thoracic.getSignatureTimestamp(), segment.getSignatureTimestamp(0));
+        assertEquals(
+                thoracicHistorical.getSecondsToFirstRun(), segment.getSecondsToFirstRun(0));
+        assertEquals(thoracic.getInputs(), segment.getInputs(0));
+        assertEquals(thoracic.getOutcomes(), segment.getOutcomes(0));
+        assertEquals(
+                25.1f,
+                segment.getOutcome(0, SampleCalculations.THORACIC_MODEL_90_DAY),
+                0.0f);
+
+        assertEquals(2, segment.getId(1));
+        assertEquals(Optional.absent(), segment.getProviderType(1));
+        assertEquals(Optional.absent(), segment.getCptCode(1));
+        assertEquals(
+                neuro.getHistoricalCalculation().getStartTimestamp().getMillis(),
+                segment.getStartTimestampMillis(1));
+        assertEquals(
+                neuro.getSignatureTimestamp().getMillis(),
+                segment.getSignatureTimestampMillis(1));
+        assertEquals(neuro.getInputs(), segment.getInputs(1));
+        assertEquals(neuro.getOutcomes(), segment.getOutcomes(1));
+        assertTrue(Float.isNaN(segment.getOutcome(1, SampleCalculations.THORACIC_MODEL_90_DAY)));
+        assertTrue(Float.isNaN(segment.getOutcome(1, "nonexistent model")));
+    }
+
+    /**
+     * The archive is exported for research, so it must not contain patient identifiers.
+     */
+    @Test
+    public final void testNoPatientDfn() throws Exception
+    {
+        final File segmentFile = new ResultArchiveWriter(fDirectory).appendSegment(
+                ImmutableList.of(minimalResult(1, new DateTime(2015, 6, 1, 8, 0))));
+
+        try (final DataInputStream in =
+                new DataInputStream(new FileInputStream(segmentFile)))
+        {
+            in.readInt();  // magic
+            in.readShort();  // version
+            final int columnCount = in.readShort();
+            in.readInt();  // row count
+            for (int i = 0; i < columnCount; ++i)
+            {
+                assertNotEquals(ResultArchiveFormat.COL_PATIENT_DFN, in.readInt());
+                in.readInt();  // offset
+                in.readInt();  // length
+            }
+        }
+    }
+
+    @Test
+    public final void testAppend() throws Exception
+    {
+        final ResultArchiveWriter writer = new ResultArchiveWriter(fDirectory);
+        final DateTime start = new DateTime(2015, 6, 1, 8, 0);
+        final List<SignedResult> firstBatch = new ArrayList<>();
+        for (int id = 1; id <= 100; ++id)
+        {
+            firstBatch.add(minimalResult(id, start.plusMinutes(id)));
+        }
+
+        final File first = writer.appendSegment(firstBatch);
+        // A lower ID signed later is still archived.
+        final SignedResult later = minimalResult(50, start.plusDays(1));
+        final File second = writer.appendSegment(ImmutableList.of(later));
+
+        assertEquals(ResultArchiveFormat.segmentFileName(1), first.getName());
+        assertEquals(ResultArchiveFormat.segmentFileName(2), second.getName());
+        assertEquals(ArchivePosition.of(later), writer.getLastArchivedPosition());
+        // The first segment is not touched by the second append.
+        assertEquals(100, ArchiveSegment.open(first).getRowCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testAppendAlreadyArchived() throws Exception
+    {
+        final ResultArchiveWriter writer = new ResultArchiveWriter(fDirectory);
+        final DateTime start = new DateTime(2015, 6, 1, 8, 0);
+        writer.appendSegment(ImmutableList.of(minimalResult(5, start)));
+
+        writer.appendSegment(ImmutableList.of(minimalResult(5, start)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testAppendOutOfOrder() throws Exception
+    {
+        final DateTime start = new DateTime(2015, 6, 1, 8, 0);
+        new ResultArchiveWriter(fDirectory).appendSegment(ImmutableList.of(
+                minimalResult(5, start), minimalResult(4, start)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testAppendSignedOutOfOrder() throws Exception
+    {
+        final DateTime start = new DateTime(2015, 6, 1, 8, 0);
+        new ResultArchiveWriter(fDirectory).appendSegment(ImmutableList.of(
+                minimalResult(4, start.plusMinutes(1)), minimalResult(5, start)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testAppendEmpty() throws Exception
+    {
+        new ResultArchiveWriter(fDirectory).appendSegment(ImmutableList.<SignedResult>of());
+    }
+
+    @Test(expected = IOException.class)
+    public final void testOpenNotSegment() throws Exception
+    {
+        final File file = fTempFolder.newFile("segment-00000001.srca");
+        try (final FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write("not an archive segment".getBytes("US-ASCII"));
+        }
+
+        ArchiveSegment.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public final void testOpenTruncated() throws Exception
+    {
+        final File segmentFile = new ResultArchiveWriter(fDirectory).appendSegment(
+                ImmutableList.of(minimalResult(1, new DateTime(2015, 6, 1, 8, 0))));
+        try (final RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw"))
+        {
+            raf.setLength(raf.length() / 2);
+        }
+
+        ArchiveSegment.open(segmentFile);
+    }
+}
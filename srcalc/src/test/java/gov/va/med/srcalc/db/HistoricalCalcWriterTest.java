@@ -0,0 +1,273 @@
+package gov.va.med.srcalc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Optional;
+
+/**
+ * Tests the {@link HistoricalCalcWriter} class using a mock SessionFactory.
+ */
+public class HistoricalCalcWriterTest
+{
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Rule
+    public final TemporaryFolder fTempFolder = new TemporaryFolder();
+
+    private SessionFactory fMockSessionFactory;
+    private StatelessSession fMockSession;
+    private File fJournalFile;
+    private HistoricalCalcWriter fWriter;
+
+    @Before
+    public void setup() throws Exception
+    {
+        fMockSession = mock(
+                StatelessSession.class, withSettings().extraInterfaces(SessionImplementor.class));
+        when(fMockSession.beginTransaction()).thenReturn(mock(Transaction.class));
+        fMockSessionFactory = mock(SessionFactory.class);
+        when(fMockSessionFactory.openStatelessSession()).thenReturn(fMockSession);
+        when(fMockSessionFactory.getClassMetadata(HistoricalCalculation.class))
+            .thenReturn(mock(ClassMetadata.class));
+        fJournalFile = new File(fTempFolder.getRoot(), "historical.journal");
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (fWriter != null)
+        {
+            fWriter.shutdown();
+        }
+    }
+
+    private static HistoricalCalculation newCalc()
+    {
+        return new HistoricalCalculation(
+                "Thoracic", "442", DateTime.now(), 10, Optional.<String>absent());
+    }
+
+    /**
+     * Waits for the writer to have written the given number of objects.
+     */
+    private static void awaitWritten(final HistoricalCalcWriter writer, final long count)
+            throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (writer.getWrittenCount() < count)
+        {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Makes the first insert block until released.
+     * @return a latch counted down once the first insert has begun, followed by a latch
+     * to count down to release it
+     */
+    private CountDownLatch[] blockFirstInsert()
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable
+            {
+                started.countDown();
+                assertTrue(release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+                return null;
+            }
+        }).doReturn(null).when(fMockSession).insert(any());
+        return new CountDownLatch[] {started, release};
+    }
+
+    @Test
+    public final void testWrite() throws Exception
+    {
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 5, fJournalFile);
+        fWriter.start();
+        final HistoricalCalculation calc1 = newCalc();
+        final HistoricalCalculation calc2 = newCalc();
+
+        assertTrue(fWriter.offer(calc1));
+        assertTrue(fWriter.offer(calc2));
+        awaitWritten(fWriter, 2);
+
+        verify(fMockSession).insert(same(calc1));
+        verify(fMockSession).insert(same(calc2));
+        assertEquals(0, fWriter.getQueueDepth());
+        assertEquals(0, fWriter.getFailedBatchCount());
+        // The objects were written, so there is nothing to reclaim.
+        assertFalse(fWriter.reclaim(calc1));
+    }
+
+    @Test
+    public final void testBatching() throws Exception
+    {
+        final CountDownLatch[] latches = blockFirstInsert();
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 3, fJournalFile);
+        fWriter.start();
+
+        // Block the background thread on the first object so the rest accumulate.
+        fWriter.offer(newCalc());
+        assertTrue(latches[0].await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 5; ++i)
+        {
+            fWriter.offer(newCalc());
+        }
+        assertEquals(6, fWriter.getQueueDepth());
+        latches[1].countDown();
+        awaitWritten(fWriter, 6);
+
+        // 1 + 3 + 2
+        verify(fMockSessionFactory, times(3)).openStatelessSession();
+        verify(fMockSession, times(3)).close();
+    }
+
+    @Test
+    public final void testOfferFull() throws Exception
+    {
+        final CountDownLatch[] latches = blockFirstInsert();
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 2, 1, fJournalFile);
+
+        // Not started yet.
+        assertFalse(fWriter.offer(newCalc()));
+
+        fWriter.start();
+        assertTrue(fWriter.offer(newCalc()));
+        assertTrue(latches[0].await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(fWriter.offer(newCalc()));
+        assertTrue(fWriter.offer(newCalc()));
+        assertFalse(fWriter.offer(newCalc()));
+        assertEquals(2, fWriter.getCapacity());
+
+        latches[1].countDown();
+        awaitWritten(fWriter, 3);
+    }
+
+    @Test
+    public final void testReclaim() throws Exception
+    {
+        final CountDownLatch[] latches = blockFirstInsert();
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 1, fJournalFile);
+        fWriter.start();
+        final HistoricalCalculation inFlight = newCalc();
+        final HistoricalCalculation queued = newCalc();
+
+        fWriter.offer(inFlight);
+        assertTrue(latches[0].await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        fWriter.offer(queued);
+
+        assertTrue(fWriter.reclaim(queued));
+        assertEquals(1, fWriter.getQueueDepth());
+        // An equal but different object is not reclaimed.
+        assertFalse(fWriter.reclaim(newCalc()));
+
+        latches[1].countDown();
+        // Waits for the write to complete.
+        assertFalse(fWriter.reclaim(inFlight));
+        assertEquals(1, fWriter.getWrittenCount());
+        verify(fMockSession, never()).insert(same(queued));
+    }
+
+    @Test
+    public final void testRetryFailedBatch() throws Exception
+    {
+        when(fMockSession.insert(any()))
+            .thenThrow(new HibernateException("test failure"))
+            .thenReturn(null);
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 5, fJournalFile);
+        fWriter.setRetryDelayMillis(10);
+        fWriter.start();
+        final HistoricalCalculation calc = newCalc();
+
+        fWriter.offer(calc);
+        awaitWritten(fWriter, 1);
+
+        assertEquals(1, fWriter.getFailedBatchCount());
+        verify(fMockSession, times(2)).insert(same(calc));
+    }
+
+    @Test
+    public final void testJournal() throws Exception
+    {
+        // Simulate the database being down.
+        when(fMockSession.insert(any())).thenThrow(new HibernateException("test failure"));
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 5, fJournalFile);
+        fWriter.start();
+        fWriter.offer(newCalc());
+        fWriter.offer(newCalc());
+
+        fWriter.shutdown();
+        assertFalse(fWriter.isRunning());
+        assertTrue(fJournalFile.exists());
+
+        // Now the database is back up.
+        final StatelessSession newSession = mock(
+                StatelessSession.class, withSettings().extraInterfaces(SessionImplementor.class));
+        when(newSession.beginTransaction()).thenReturn(mock(Transaction.class));
+        when(fMockSessionFactory.openStatelessSession()).thenReturn(newSession);
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 5, fJournalFile);
+        fWriter.start();
+
+        assertEquals(2, fWriter.getWrittenCount());
+        verify(newSession, times(2)).insert(any(HistoricalCalculation.class));
+        assertFalse(fJournalFile.exists());
+    }
+
+    @Test
+    public final void testJournalInFlight() throws Exception
+    {
+        final CountDownLatch[] latches = blockFirstInsert();
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 5, fJournalFile);
+        fWriter.setShutdownWaitMillis(10);
+        fWriter.start();
+        fWriter.offer(newCalc());
+        assertTrue(latches[0].await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        fWriter.offer(newCalc());
+
+        // The first batch is still being written.
+        fWriter.shutdown();
+        latches[1].countDown();
+
+        final StatelessSession newSession = mock(
+                StatelessSession.class, withSettings().extraInterfaces(SessionImplementor.class));
+        when(newSession.beginTransaction()).thenReturn(mock(Transaction.class));
+        when(fMockSessionFactory.openStatelessSession()).thenReturn(newSession);
+        fWriter = new HistoricalCalcWriter(fMockSessionFactory, 10, 5, fJournalFile);
+        fWriter.start();
+
+        assertEquals(2, fWriter.getWrittenCount());
+        verify(newSession, times(2)).insert(any(HistoricalCalculation.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidCapacity()
+    {
+        new HistoricalCalcWriter(fMockSessionFactory, 0, 5, fJournalFile);
+    }
+}
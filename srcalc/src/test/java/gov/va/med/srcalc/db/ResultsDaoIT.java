@@ -4,10 +4,15 @@ import static org.junit.Assert.*;
 
 import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
 import gov.va.med.srcalc.domain.calculation.HistoricalRunInfo;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.test.util.IntegrationTest;
 import gov.va.med.srcalc.util.SearchResults;
 
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.stat.Statistics;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.junit.Before;
@@ -228,6 +233,249 @@ public class ResultsDaoIT extends IntegrationTest
         
     }
     
+    /**
+     * Returns a list of {@link OutcomeDistribution#BIN_COUNT} bin counts with the given
+     * bins incremented, for building expected values.
+     */
+    private static ImmutableList<Integer> binCounts(final float... outcomes)
+    {
+        final Integer[] counts = new Integer[OutcomeDistribution.BIN_COUNT];
+        Arrays.fill(counts, 0);
+        for (final float outcome : outcomes)
+        {
+            ++counts[OutcomeDistribution.binIndex(outcome)];
+        }
+        return ImmutableList.copyOf(counts);
+    }
+    
+    @Test
+    public final void testGetOutcomeDistributions()
+    {
+        /* Setup */
+        final float cardiacOutcome = 0.735f;
+        final float thoracicOutcome = 0.244f;
+        fResultsDao.persistSignedResult(new SignedResult(
+                new HistoricalCalculation(
+                        SPECIALTY_CARDIAC,
+                        STATION_NUMBER_2,
+                        new DateTime(2015, 6, 9, 8, 0),
+                        30,
+                        Optional.<String>absent()),
+                1005,
+                Optional.<String>absent(),
+                new DateTime(2015, 6, 9, 8, 5),
+                VALUES_NON_PROCEDURE,
+                ImmutableMap.of("Cardiac 30-Day", cardiacOutcome)));
+        fResultsDao.persistSignedResult(new SignedResult(
+                new HistoricalCalculation(
+                        SPECIALTY_THORACIC,
+                        STATION_NUMBER_1,
+                        new DateTime(2015, 6, 9, 8, 0),
+                        30,
+                        Optional.<String>absent()),
+                1006,
+                Optional.of(CPT_CODE_1),
+                new DateTime(2015, 6, 9, 8, 5),
+                VALUES_PROCEDURE_1,
+                ImmutableMap.of("Thoracic 30-Day", thoracicOutcome)));
+        simulateNewSession();
+        // Note that sample outcomes above 100% land in the last bin.
+        final ImmutableList<OutcomeDistribution> expectedDistributions = ImmutableList.of(
+                new OutcomeDistribution(
+                        "Cardiac 30-Day", SPECIALTY_CARDIAC, STATION_NUMBER_2,
+                        binCounts(73.5f, cardiacOutcome)),
+                new OutcomeDistribution(
+                        "Neurosurgery 30-Day", SPECIALTY_NEURO, STATION_NUMBER_3,
+                        binCounts(24.5f)),
+                new OutcomeDistribution(
+                        "Thoracic 30-Day", SPECIALTY_THORACIC, STATION_NUMBER_2,
+                        binCounts(13.9f)),
+                new OutcomeDistribution(
+                        "Thoracic 30-Day", SPECIALTY_THORACIC, STATION_NUMBER_1,
+                        binCounts(20.1f, thoracicOutcome)),
+                new OutcomeDistribution(
+                        "Thoracic 90-Day", SPECIALTY_THORACIC, STATION_NUMBER_1,
+                        binCounts(24.4f)));
+        
+        /* Behavior & Verification */
+        assertEquals(
+                expectedDistributions,
+                fResultsDao.getOutcomeDistributions(new ResultSearchParameters()));
+    }
+    
+    @Test
+    public final void testGetSignedResultsAfter()
+    {
+        final DateTime now = DateTime.now();
+        // Result 2 was signed first. Result 1 has a lower ID but was signed later, so
+        // it is still after result 2.
+        assertTrue(fSampleResult1.getId() < fSampleResult2.getId());
+        final List<SignedResult> results = fResultsDao.getSignedResultsAfter(
+                fSampleResult2.getSignatureTimestamp(), fSampleResult2.getId(), now, 2);
+        
+        assertEquals(ImmutableList.of(fSampleResult1, fSampleResult3), results);
+        // The inputs are still available for archiving.
+        assertEquals(fSampleResult1.getInputs(), results.get(0).getInputs());
+        assertEquals(
+                ImmutableList.of(fSampleResult4),
+                fResultsDao.getSignedResultsAfter(
+                        fSampleResult3.getSignatureTimestamp(),
+                        fSampleResult3.getId(),
+                        now,
+                        10));
+        assertEquals(
+                ImmutableList.of(),
+                fResultsDao.getSignedResultsAfter(
+                        fSampleResult4.getSignatureTimestamp(),
+                        fSampleResult4.getId(),
+                        now,
+                        10));
+    }
+    
+    @Test
+    public final void testGetSignedResultsAfterSignedBefore()
+    {
+        assertEquals(
+                ImmutableList.of(fSampleResult1),
+                fResultsDao.getSignedResultsAfter(
+                        fSampleResult2.getSignatureTimestamp(),
+                        fSampleResult2.getId(),
+                        fSampleResult3.getSignatureTimestamp(),
+                        10));
+    }
+    
+    /**
+     * Persists the given number of additional SignedResults, each with two inputs and
+     * two outcomes.
+     */
+    private void populateManyResults(final int count)
+    {
+        final DateTime start = new DateTime(2015, 7, 1, 8, 0);
+        for (int i = 0; i < count; ++i)
+        {
+            final HistoricalCalculation historical = new HistoricalCalculation(
+                    SPECIALTY_THORACIC,
+                    STATION_NUMBER_1,
+                    start.plusMinutes(i),
+                    30,
+                    Optional.of(PROVIDER_TYPE_1));
+            fResultsDao.persistSignedResult(new SignedResult(
+                    historical,
+                    2000 + i,
+                    Optional.of(CPT_CODE_1),
+                    start.plusMinutes(i + 1),
+                    ImmutableMap.of("procedure", VALUES_PROCEDURE_1.get("procedure"),
+                            "age", String.valueOf(i % 90)),
+                    ImmutableMap.of("Thoracic 90-Day", 24.4f, "Thoracic 30-Day", 20.1f)));
+        }
+        simulateNewSession();
+    }
+    
+    /**
+     * Returns the maximum number of SQL statements necessary to load the given number of
+     * SignedResults' inputs or outcomes.
+     */
+    private static int batchCount(final int resultCount)
+    {
+        return (resultCount + SignedResult.COLLECTION_BATCH_SIZE - 1) /
+                SignedResult.COLLECTION_BATCH_SIZE;
+    }
+    
+    @Test
+    public final void testGetSignedResultsQueryCount()
+    {
+        populateManyResults(ResultSearchParameters.MAX_RESULTS);
+        final Statistics statistics = getHibernateSession().getSessionFactory().getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try
+        {
+            statistics.clear();
+            
+            final SearchResults<SignedResult> results =
+                    fResultsDao.getSignedResults(new ResultSearchParameters());
+            for (final SignedResult result : results.getFoundItems())
+            {
+                assertEquals(2, result.getInputs().size());
+                assertFalse(result.getOutcomes().isEmpty());
+            }
+            
+            assertEquals(ResultSearchParameters.MAX_RESULTS, results.getFoundItems().size());
+            // 1 for the results (joined with their HistoricalCalculations), then batches
+            // for the outcomes and inputs. Notably, this does not grow with each result.
+            final int resultCount = ResultSearchParameters.MAX_RESULTS + 1;
+            final long statementCount = statistics.getPrepareStatementCount();
+            assertTrue(
+                    "Executed " + statementCount + " statements",
+                    statementCount <= 1 + 2 * batchCount(resultCount));
+        }
+        finally
+        {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+    
+    @Test
+    public final void testGetSignedResultsAfterQueryCount()
+    {
+        final int resultCount = 1000;
+        populateManyResults(resultCount);
+        final Statistics statistics = getHibernateSession().getSessionFactory().getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try
+        {
+            statistics.clear();
+            
+            final List<SignedResult> results = fResultsDao.getSignedResultsAfter(
+                    fSampleResult4.getSignatureTimestamp(),
+                    fSampleResult4.getId(),
+                    DateTime.now(),
+                    resultCount);
+            for (final SignedResult result : results)
+            {
+                assertEquals(2, result.getInputs().size());
+                assertEquals(2, result.getOutcomes().size());
+            }
+            
+            assertEquals(resultCount, results.size());
+            // 1 for the results (joined with their HistoricalCalculations), then batches
+            // for the outcomes and inputs.
+            final long statementCount = statistics.getPrepareStatementCount();
+            assertTrue(
+                    "Executed " + statementCount + " statements",
+                    statementCount <= 1 + 2 * batchCount(resultCount));
+        }
+        finally
+        {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+    
+    @Test
+    public final void testGetOutcomeDistributionsFiltered()
+    {
+        final ResultSearchParameters params = new ResultSearchParameters();
+        params.setSpecialtyNames(ImmutableSet.of(SPECIALTY_THORACIC));
+        params.setStationNumber(STATION_NUMBER_1);
+        params.setCptCode(CPT_CODE_1);
+        params.setMinDate(new LocalDate(2015, 3, 4));
+        params.setMaxDate(new LocalDate(2015, 3, 4));
+        
+        final ImmutableList<OutcomeDistribution> expectedDistributions = ImmutableList.of(
+                new OutcomeDistribution(
+                        "Thoracic 30-Day", SPECIALTY_THORACIC, STATION_NUMBER_1,
+                        binCounts(20.1f)),
+                new OutcomeDistribution(
+                        "Thoracic 90-Day", SPECIALTY_THORACIC, STATION_NUMBER_1,
+                        binCounts(24.4f)));
+        
+        assertEquals(expectedDistributions, fResultsDao.getOutcomeDistributions(params));
+        
+        // Make sure nothing is found when the filters exclude everything.
+        params.setMaxDate(new LocalDate(2015, 3, 3));
+        assertEquals(
+                ImmutableList.of(), fResultsDao.getOutcomeDistributions(params));
+    }
+    
     @Test
     public final void testGetHistoricalRunsByDate()
     {
@@ -0,0 +1,166 @@
+package gov.va.med.srcalc.db;
+
+import static org.junit.Assert.*;
+
+import gov.va.med.srcalc.domain.calculation.PendingRiskSave;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.test.util.IntegrationTest;
+
+import org.hibernate.Query;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.base.Optional;
+
+/**
+ * Tests the claiming queries of {@link RiskSaveOutbox} against an actual database. The
+ * background processing itself is covered by {@link RiskSaveOutboxTest}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"/srcalc-context.xml", "/test-context.xml"})
+@Transactional // run each test in its own (rolled-back) transaction
+public class RiskSaveOutboxIT extends IntegrationTest
+{
+    private static final String OWNER_A = "owner-a";
+
+    private static final String OWNER_B = "owner-b";
+
+    private final DateTime fNow = new DateTime(2015, 6, 1, 10, 30);
+
+    private final DateTime fLeaseExpiry = fNow.plus(RiskSaveOutbox.CLAIM_LEASE_MILLIS);
+
+    private PendingRiskSave fEntry;
+
+    @Before
+    public void populateEntry()
+    {
+        fEntry = new PendingRiskSave(
+                SampleCalculations.thoracicResult().signed(), "500", "11716", fNow);
+        getHibernateSession().save(fEntry);
+        simulateNewSession();
+    }
+
+    private int claim(final String owner, final DateTime now)
+    {
+        return getHibernateSession().createQuery(RiskSaveOutbox.CLAIM_HQL)
+                .setParameter("owner", owner)
+                .setParameter("leaseExpiry", fLeaseExpiry)
+                .setParameter("resultId", fEntry.getResultId())
+                .setParameter("now", now)
+                .executeUpdate();
+    }
+
+    private int executeAs(final Query update, final String owner)
+    {
+        return update
+                .setParameter("resultId", fEntry.getResultId())
+                .setParameter("owner", owner)
+                .executeUpdate();
+    }
+
+    private PendingRiskSave reload()
+    {
+        simulateNewSession();
+        return (PendingRiskSave)getHibernateSession().get(
+                PendingRiskSave.class, fEntry.getResultId());
+    }
+
+    @Test
+    public final void testClaim()
+    {
+        assertEquals(1, claim(OWNER_A, fNow));
+        // Another instance cannot claim it until the lease expires.
+        assertEquals(0, claim(OWNER_B, fNow.plusMinutes(1)));
+
+        final PendingRiskSave claimed = reload();
+        assertEquals(Optional.of(OWNER_A), claimed.getClaimOwner());
+        assertEquals(
+                fLeaseExpiry.getMillis(),
+                claimed.getNextAttemptTimestamp().get().getMillis());
+
+        // Nor after, since the first attempt may have saved the result.
+        assertEquals(0, claim(OWNER_B, fLeaseExpiry));
+    }
+
+    @Test
+    public final void testAbandonLapsed()
+    {
+        claim(OWNER_A, fNow);
+        final Query abandonLapsed = getHibernateSession()
+                .createQuery(RiskSaveOutbox.ABANDON_LAPSED_HQL)
+                .setParameter("lastError", RiskSaveOutbox.LAPSED_CLAIM_ERROR);
+
+        assertEquals(0, abandonLapsed.setParameter("now", fNow).executeUpdate());
+        assertEquals(1, abandonLapsed.setParameter("now", fLeaseExpiry).executeUpdate());
+
+        final PendingRiskSave abandoned = reload();
+        assertTrue(abandoned.isAbandoned());
+        assertEquals(
+                Optional.of(RiskSaveOutbox.LAPSED_CLAIM_ERROR), abandoned.getLastError());
+        assertEquals(Optional.absent(), abandoned.getClaimOwner());
+    }
+
+    @Test
+    public final void testNotDue()
+    {
+        assertEquals(0, claim(OWNER_A, fNow.minusMinutes(1)));
+        assertEquals(Optional.absent(), reload().getClaimOwner());
+    }
+
+    @Test
+    public final void testDeleteOwned()
+    {
+        claim(OWNER_A, fNow);
+
+        assertEquals(0, executeAs(
+                getHibernateSession().createQuery(RiskSaveOutbox.DELETE_HQL), OWNER_B));
+        assertEquals(1, executeAs(
+                getHibernateSession().createQuery(RiskSaveOutbox.DELETE_HQL), OWNER_A));
+        assertNull(reload());
+    }
+
+    @Test
+    public final void testReschedule()
+    {
+        claim(OWNER_A, fNow);
+        final DateTime nextAttempt = fNow.plusMinutes(5);
+
+        final Query reschedule = getHibernateSession()
+                .createQuery(RiskSaveOutbox.RESCHEDULE_HQL)
+                .setParameter("attemptCount", 1)
+                .setParameter("lastError", "connection reset")
+                .setParameter("nextAttempt", nextAttempt);
+        assertEquals(1, executeAs(reschedule, OWNER_A));
+
+        final PendingRiskSave rescheduled = reload();
+        assertEquals(1, rescheduled.getAttemptCount());
+        assertEquals(Optional.of("connection reset"), rescheduled.getLastError());
+        assertEquals(
+                nextAttempt.getMillis(),
+                rescheduled.getNextAttemptTimestamp().get().getMillis());
+        assertEquals(Optional.absent(), rescheduled.getClaimOwner());
+    }
+
+    @Test
+    public final void testAbandon()
+    {
+        claim(OWNER_A, fNow);
+
+        final Query abandon = getHibernateSession()
+                .createQuery(RiskSaveOutbox.ABANDON_HQL)
+                .setParameter("attemptCount", 3)
+                .setParameter("lastError", "bad data");
+        assertEquals(0, executeAs(abandon, OWNER_B));
+        assertEquals(1, executeAs(abandon, OWNER_A));
+
+        final PendingRiskSave abandoned = reload();
+        assertTrue(abandoned.isAbandoned());
+        assertEquals(3, abandoned.getAttemptCount());
+        assertEquals(Optional.absent(), abandoned.getClaimOwner());
+    }
+}
@@ -0,0 +1,284 @@
+package gov.va.med.srcalc.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import gov.va.med.srcalc.domain.calculation.PendingRiskSave;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+import gov.va.med.srcalc.vista.ConnectionUnavailableException;
+import gov.va.med.srcalc.vista.DivisionUnavailableException;
+import gov.va.med.srcalc.vista.MockVistaDaoFactory;
+import gov.va.med.srcalc.vista.VistaSurgeryDao;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projection;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.dao.RecoverableDataAccessException;
+
+/**
+ * Tests the {@link RiskSaveOutbox} class using a mock SessionFactory.
+ */
+public class RiskSaveOutboxTest
+{
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static final long INITIAL_DELAY = 100;
+
+    private static final long MAX_DELAY = 1000;
+
+    private Session fMockSession;
+    private Criteria fMockCriteria;
+    private Query fMockLapsedQuery;
+    private Query fMockClaimQuery;
+    private Query fMockDeleteQuery;
+    private Query fMockRescheduleQuery;
+    private Query fMockAbandonQuery;
+    private SessionFactory fMockSessionFactory;
+    private MockVistaDaoFactory fVistaDaoFactory;
+    private VistaSurgeryDao fMockSurgeryDao;
+    private SignedResult fResult;
+    private PendingRiskSave fEntry;
+    private RiskSaveOutbox fOutbox;
+
+    @Before
+    public void setup()
+    {
+        fResult = SampleCalculations.thoracicResult().signed();
+        fEntry = new PendingRiskSave(
+                fResult, MockVistaDaoFactory.KNOWN_DIVISION, "11716", new DateTime());
+
+        fMockCriteria = mock(Criteria.class);
+        when(fMockCriteria.add(any(Criterion.class))).thenReturn(fMockCriteria);
+        when(fMockCriteria.addOrder(any(Order.class))).thenReturn(fMockCriteria);
+        when(fMockCriteria.setProjection(any(Projection.class))).thenReturn(fMockCriteria);
+        when(fMockCriteria.setMaxResults(anyInt())).thenReturn(fMockCriteria);
+        when(fMockCriteria.list()).thenReturn(Arrays.asList(fEntry.getResultId()));
+        fMockLapsedQuery = mockUpdate();
+        when(fMockLapsedQuery.executeUpdate()).thenReturn(0);
+        fMockClaimQuery = mockUpdate();
+        fMockDeleteQuery = mockUpdate();
+        fMockRescheduleQuery = mockUpdate();
+        fMockAbandonQuery = mockUpdate();
+        fMockSession = mock(Session.class);
+        when(fMockSession.beginTransaction()).thenReturn(mock(Transaction.class));
+        when(fMockSession.createCriteria(PendingRiskSave.class)).thenReturn(fMockCriteria);
+        when(fMockSession.createQuery(RiskSaveOutbox.ABANDON_LAPSED_HQL))
+            .thenReturn(fMockLapsedQuery);
+        when(fMockSession.createQuery(RiskSaveOutbox.CLAIM_HQL)).thenReturn(fMockClaimQuery);
+        when(fMockSession.createQuery(RiskSaveOutbox.DELETE_HQL)).thenReturn(fMockDeleteQuery);
+        when(fMockSession.createQuery(RiskSaveOutbox.RESCHEDULE_HQL))
+            .thenReturn(fMockRescheduleQuery);
+        when(fMockSession.createQuery(RiskSaveOutbox.ABANDON_HQL))
+            .thenReturn(fMockAbandonQuery);
+        when(fMockSession.get(PendingRiskSave.class, fEntry.getResultId()))
+            .thenReturn(fEntry);
+        when(fMockSession.get(SignedResult.class, fEntry.getResultId())).thenReturn(fResult);
+        fMockSessionFactory = mock(SessionFactory.class);
+        when(fMockSessionFactory.openSession()).thenReturn(fMockSession);
+
+        fVistaDaoFactory = new MockVistaDaoFactory();
+        fMockSurgeryDao = fVistaDaoFactory.getVistaSurgeryDao();
+        fOutbox = new RiskSaveOutbox(
+                fMockSessionFactory, fVistaDaoFactory, 3, INITIAL_DELAY, MAX_DELAY);
+    }
+
+    @After
+    public void tearDown()
+    {
+        fOutbox.shutdown();
+    }
+
+    /**
+     * Returns a mock bulk update Query which updates one row.
+     */
+    private static Query mockUpdate()
+    {
+        final Query query = mock(Query.class);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.executeUpdate()).thenReturn(1);
+        return query;
+    }
+
+    @Test
+    public final void testSave()
+    {
+        assertEquals(1, fOutbox.saveDueEntries());
+
+        verify(fMockClaimQuery).setParameter("owner", fOutbox.getOwner());
+        verify(fMockClaimQuery).executeUpdate();
+        verify(fMockSurgeryDao).saveCalculationResult(fResult);
+        verify(fMockDeleteQuery).setParameter("resultId", fEntry.getResultId());
+        verify(fMockDeleteQuery).setParameter("owner", fOutbox.getOwner());
+        verify(fMockDeleteQuery).executeUpdate();
+        assertEquals(1, fOutbox.getSavedCount());
+        assertEquals(0, fOutbox.getFailedAttemptCount());
+    }
+
+    @Test
+    public final void testClaimedByAnotherInstance()
+    {
+        when(fMockClaimQuery.executeUpdate()).thenReturn(0);
+
+        // The entry still counts as due so that the caller checks for more.
+        assertEquals(1, fOutbox.saveDueEntries());
+
+        verify(fMockSession, never()).get(PendingRiskSave.class, fEntry.getResultId());
+        verify(fMockSurgeryDao, never()).saveCalculationResult(any(SignedResult.class));
+        verify(fMockDeleteQuery, never()).executeUpdate();
+        assertEquals(0, fOutbox.getSavedCount());
+    }
+
+    @Test
+    public final void testClaimExpired()
+    {
+        // Another instance has since claimed the entry, so leave it alone.
+        when(fMockDeleteQuery.executeUpdate()).thenReturn(0);
+
+        assertEquals(1, fOutbox.saveDueEntries());
+
+        verify(fMockSurgeryDao).saveCalculationResult(fResult);
+        verify(fMockDeleteQuery).executeUpdate();
+        verify(fMockSession, never()).delete(any());
+    }
+
+    @Test
+    public final void testAbandonLapsedClaims()
+    {
+        fOutbox.saveDueEntries();
+
+        verify(fMockLapsedQuery).setParameter(
+                "lastError", RiskSaveOutbox.LAPSED_CLAIM_ERROR);
+        verify(fMockLapsedQuery).executeUpdate();
+    }
+
+    @Test
+    public final void testTransientFailure()
+    {
+        doThrow(new ConnectionUnavailableException("connection refused", null))
+            .when(fMockSurgeryDao).saveCalculationResult(fResult);
+        final DateTime before = new DateTime();
+
+        assertEquals(1, fOutbox.saveDueEntries());
+
+        verify(fMockRescheduleQuery).setParameter("attemptCount", 1);
+        verify(fMockRescheduleQuery).executeUpdate();
+        verify(fMockDeleteQuery, never()).executeUpdate();
+        assertFalse(fEntry.isAbandoned());
+        assertEquals(1, fEntry.getAttemptCount());
+        assertFalse(fEntry.getNextAttemptTimestamp().get().isBefore(
+                before.plus(INITIAL_DELAY)));
+        assertTrue(fEntry.getLastError().get().contains("connection refused"));
+        assertEquals(0, fOutbox.getSavedCount());
+        assertEquals(1, fOutbox.getFailedAttemptCount());
+    }
+
+    @Test
+    public final void testPossiblySaved()
+    {
+        // The call may have reached VistA, so a retry could save the result twice.
+        doThrow(new RecoverableDataAccessException("read timed out"))
+            .when(fMockSurgeryDao).saveCalculationResult(fResult);
+
+        fOutbox.saveDueEntries();
+
+        verify(fMockAbandonQuery).executeUpdate();
+        verify(fMockRescheduleQuery, never()).executeUpdate();
+        assertTrue(fEntry.isAbandoned());
+        assertEquals(1, fEntry.getAttemptCount());
+        assertTrue(fEntry.getLastError().get().contains("read timed out"));
+    }
+
+    @Test
+    public final void testMaxAttempts()
+    {
+        doThrow(new DivisionUnavailableException("division unavailable"))
+            .when(fMockSurgeryDao).saveCalculationResult(fResult);
+
+        // The outbox allows 3 attempts.
+        fOutbox.saveDueEntries();
+        fOutbox.saveDueEntries();
+        assertFalse(fEntry.isAbandoned());
+        fOutbox.saveDueEntries();
+
+        assertTrue(fEntry.isAbandoned());
+        assertEquals(3, fEntry.getAttemptCount());
+        assertEquals(3, fOutbox.getFailedAttemptCount());
+    }
+
+    @Test
+    public final void testNonTransientFailure()
+    {
+        doThrow(new InvalidDataAccessResourceUsageException("bad data"))
+            .when(fMockSurgeryDao).saveCalculationResult(fResult);
+
+        fOutbox.saveDueEntries();
+
+        verify(fMockAbandonQuery).executeUpdate();
+        verify(fMockRescheduleQuery, never()).executeUpdate();
+        assertTrue(fEntry.isAbandoned());
+        assertEquals(1, fEntry.getAttemptCount());
+    }
+
+    @Test
+    public final void testMissingResult()
+    {
+        when(fMockSession.get(SignedResult.class, fEntry.getResultId())).thenReturn(null);
+
+        assertEquals(1, fOutbox.saveDueEntries());
+
+        verify(fMockSurgeryDao, never()).saveCalculationResult(any(SignedResult.class));
+        assertTrue(fEntry.isAbandoned());
+    }
+
+    @Test
+    public final void testRetryDelay()
+    {
+        assertEquals(100, fOutbox.retryDelayMillis(1));
+        assertEquals(200, fOutbox.retryDelayMillis(2));
+        assertEquals(400, fOutbox.retryDelayMillis(3));
+        assertEquals(800, fOutbox.retryDelayMillis(4));
+        assertEquals(MAX_DELAY, fOutbox.retryDelayMillis(5));
+        assertEquals(MAX_DELAY, fOutbox.retryDelayMillis(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public final void testStartSavesBacklog() throws Exception
+    {
+        // Only return the entry once.
+        when(fMockCriteria.list()).thenReturn(Arrays.asList(fEntry.getResultId())).thenReturn(
+                Arrays.asList());
+
+        fOutbox.start();
+        assertTrue(fOutbox.isRunning());
+
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (fOutbox.getSavedCount() < 1)
+        {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        verify(fMockSurgeryDao).saveCalculationResult(fResult);
+
+        fOutbox.shutdown();
+        assertFalse(fOutbox.isRunning());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidDelays()
+    {
+        new RiskSaveOutbox(fMockSessionFactory, fVistaDaoFactory, 3, MAX_DELAY, INITIAL_DELAY);
+    }
+}
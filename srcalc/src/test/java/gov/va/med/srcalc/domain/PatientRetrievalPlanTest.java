@@ -0,0 +1,108 @@
+package gov.va.med.srcalc.domain;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import gov.va.med.srcalc.domain.PatientRetrievalPlan.Section;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.ValueRetriever;
+import gov.va.med.srcalc.domain.model.SampleModels;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests the {@link PatientRetrievalPlan} class and the on-demand loading in {@link
+ * Patient}.
+ */
+public class PatientRetrievalPlanTest
+{
+    @Test
+    public final void testForVariables()
+    {
+        final PatientRetrievalPlan plan = PatientRetrievalPlan.forVariables(ImmutableList.of(
+                SampleModels.genderVariable(),
+                SampleModels.wbcVariable(),
+                SampleModels.procedureVariable()));
+
+        // Gender needs no additional data and procedures have no retriever.
+        assertEquals(PatientRetrievalPlan.MINIMAL.getSections(), plan.getSections());
+        assertEquals(ImmutableSet.of(VistaLabs.WBC), plan.getLabs());
+    }
+
+    @Test
+    public final void testForRetriever()
+    {
+        assertTrue(PatientRetrievalPlan.forRetriever(ValueRetriever.AGE).isEmpty());
+        assertEquals(
+                PatientRetrievalPlan.of(Section.VITALS),
+                PatientRetrievalPlan.forRetriever(ValueRetriever.WEIGHT_6_MONTHS_AGO));
+        assertEquals(
+                PatientRetrievalPlan.ofLab(VistaLabs.GLUCOSE),
+                PatientRetrievalPlan.forRetriever(ValueRetriever.GLUCOSE));
+        assertEquals(
+                PatientRetrievalPlan.of(Section.DNR_NOTES),
+                PatientRetrievalPlan.forRetriever(ValueRetriever.DNR_NOTES));
+        // Every retriever is recognized.
+        for (final ValueRetriever retriever : ValueRetriever.values())
+        {
+            assertNotEquals(
+                    PatientRetrievalPlan.ALL, PatientRetrievalPlan.forRetriever(retriever));
+        }
+    }
+
+    @Test
+    public final void testSetOperations()
+    {
+        final PatientRetrievalPlan vitals = PatientRetrievalPlan.of(Section.VITALS);
+        final PatientRetrievalPlan both =
+                vitals.union(PatientRetrievalPlan.ofLab(VistaLabs.BUN));
+
+        assertTrue(both.overlaps(vitals));
+        assertFalse(both.overlaps(PatientRetrievalPlan.MINIMAL));
+        assertEquals(vitals, both.intersection(vitals));
+        assertEquals(PatientRetrievalPlan.ofLab(VistaLabs.BUN), both.minus(vitals));
+        assertEquals(
+                PatientRetrievalPlan.ALL,
+                PatientRetrievalPlan.ALL.minus(both).union(both));
+        assertTrue(PatientRetrievalPlan.NONE.isEmpty());
+    }
+
+    @Test
+    public final void testPatientLoadsOnDemand()
+    {
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        final Patient.Loader loader = mock(Patient.Loader.class);
+        final PatientRetrievalPlan unloaded =
+                PatientRetrievalPlan.ALL.minus(PatientRetrievalPlan.MINIMAL);
+        patient.setLoader(loader, unloaded);
+
+        // Loaded data does not call the loader.
+        patient.getHealthFactors();
+        verifyZeroInteractions(loader);
+
+        // A single lab only loads that lab, and only once.
+        patient.getLab(VistaLabs.ALBUMIN);
+        patient.getLab(VistaLabs.ALBUMIN);
+        verify(loader, times(1)).load(patient, PatientRetrievalPlan.ofLab(VistaLabs.ALBUMIN));
+
+        // The rest of the labs.
+        patient.getLabs();
+        verify(loader).load(
+                patient,
+                PatientRetrievalPlan.ALL_LABS.minus(
+                        PatientRetrievalPlan.ofLab(VistaLabs.ALBUMIN)));
+
+        // Several sections at once.
+        final PatientRetrievalPlan notes = PatientRetrievalPlan.of(Section.ADL_NOTES)
+                .union(PatientRetrievalPlan.of(Section.DNR_NOTES));
+        patient.load(notes);
+        patient.getAdlNotes();
+        patient.getDnrNotes();
+        verify(loader).load(patient, notes);
+
+        assertEquals(PatientRetrievalPlan.of(Section.VITALS), patient.getUnloaded());
+    }
+}
@@ -143,4 +143,31 @@ public class CalculationTest
         // Behavior verification
         calc.calculate(incompleteValues, SampleCalculations.radiologistPerson());
     }
+    
+    @Test
+    public final void testPreview() throws Exception
+    {
+        final Specialty thoracicSpecialty = SampleModels.thoracicSpecialty();
+        final ImmutableList<Value> incompleteValues = ImmutableList.of(
+                new BooleanValue(SampleModels.dnrVariable(), true),
+                new NumericalValue(SampleModels.ageVariable(), 12));
+        final Calculation calc = Calculation.forPatient(SampleCalculations.dummyPatient(1));
+        calc.setSpecialty(thoracicSpecialty);
+        
+        final OutcomePreview preview = calc.preview(incompleteValues);
+        assertFalse(preview.isComplete());
+        assertFalse(preview.getMissingVariables().contains(SampleModels.ageVariable()));
+        assertTrue(preview.getOutcomes().isEmpty());
+        // Previewing is not running the calculation.
+        assertFalse(calc.getHistoricalCalculation().isPresent());
+        
+        final OutcomePreview completePreview =
+                calc.preview(SampleCalculations.thoracicValues().values());
+        assertTrue(completePreview.isComplete());
+        assertEquals(
+                calc.calculate(
+                        SampleCalculations.thoracicValues().values(),
+                        SampleCalculations.radiologistPerson()).getOutcomes(),
+                completePreview.getOutcomes());
+    }
 }
@@ -0,0 +1,66 @@
+package gov.va.med.srcalc.domain.calculation;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import nl.jqno.equalsverifier.EqualsVerifier;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for the {@link OutcomeDistribution} class.
+ */
+public class OutcomeDistributionTest
+{
+    @Test
+    public final void testBasic()
+    {
+        final ImmutableList<Integer> binCounts = ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        final OutcomeDistribution distribution = new OutcomeDistribution(
+                "Thoracic 30-Day", "Thoracic", "442", binCounts);
+        
+        assertEquals("Thoracic 30-Day", distribution.getRiskModelName());
+        assertEquals("Thoracic", distribution.getSpecialtyName());
+        assertEquals("442", distribution.getStationNumber());
+        assertEquals(binCounts, distribution.getBinCounts());
+        assertEquals(55, distribution.getTotalCount());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public final void testWrongBinCount()
+    {
+        new OutcomeDistribution(
+                "Thoracic 30-Day", "Thoracic", "442",
+                Collections.nCopies(OutcomeDistribution.BIN_COUNT - 1, 0));
+    }
+    
+    @Test
+    public final void testBinIndex()
+    {
+        assertEquals(0, OutcomeDistribution.binIndex(0.0f));
+        assertEquals(0, OutcomeDistribution.binIndex(0.099f));
+        assertEquals(1, OutcomeDistribution.binIndex(0.1f));
+        assertEquals(7, OutcomeDistribution.binIndex(0.735f));
+        assertEquals(OutcomeDistribution.BIN_COUNT - 1, OutcomeDistribution.binIndex(1.0f));
+        // Out-of-range values are clamped.
+        assertEquals(0, OutcomeDistribution.binIndex(-0.5f));
+        assertEquals(OutcomeDistribution.BIN_COUNT - 1, OutcomeDistribution.binIndex(24.4f));
+    }
+    
+    @Test
+    public final void testGetBinLowerPercentages()
+    {
+        assertEquals(
+                ImmutableList.of(0, 10, 20, 30, 40, 50, 60, 70, 80, 90),
+                OutcomeDistribution.getBinLowerPercentages());
+    }
+    
+    @Test
+    public final void testEquals()
+    {
+        EqualsVerifier.forClass(OutcomeDistribution.class).verify();
+    }
+}
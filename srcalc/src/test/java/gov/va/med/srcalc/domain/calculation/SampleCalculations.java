@@ -167,4 +167,15 @@ public class SampleCalculations
             ImmutableMap.of(THORACIC_MODEL_90_DAY, 25.1f, THORACIC_MODEL_30_DAY, 20.1f));
         
     }
+    
+    /**
+     * Sets the ID of the given SignedResult as if it had been persisted. Useful for tests
+     * outside of this package.
+     * @return the given result for convenience
+     */
+    public static SignedResult withId(final SignedResult result, final int id)
+    {
+        result.setId(id);
+        return result;
+    }
 }
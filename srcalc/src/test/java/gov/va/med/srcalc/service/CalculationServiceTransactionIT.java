@@ -0,0 +1,68 @@
+package gov.va.med.srcalc.service;
+
+import static org.junit.Assert.*;
+
+import gov.va.med.srcalc.domain.calculation.Calculation;
+import gov.va.med.srcalc.domain.model.SampleModels;
+import gov.va.med.srcalc.test.util.TestAuthnProvider;
+import gov.va.med.srcalc.vista.MockVistaPatientDao;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <p>Integration Test verifying that the Spring-instantiated {@link CalculationService}
+ * does not call VistA during a database transaction, which would hold a database
+ * connection while waiting on VistA.</p>
+ *
+ * <p>Unlike the other service ITs, the tests do not run in a transaction, so they must
+ * not modify the database.</p>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"/srcalc-context.xml", "/test-context.xml"})
+public class CalculationServiceTransactionIT
+{
+    private static final int PATIENT_DFN = 1;
+    
+    @Inject // field-based autowiring only in tests
+    CalculationService fCalculationService;
+    
+    @Inject
+    MockVistaPatientDao fPatientDao;
+    
+    @Rule
+    public final TestAuthnProvider fAuthnProvider = new TestAuthnProvider();
+    
+    @Before
+    public void setup()
+    {
+        assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+        fPatientDao.reset();
+    }
+    
+    @Test
+    public void testStartNewCalculation()
+    {
+        fCalculationService.startNewCalculation(PATIENT_DFN);
+        
+        assertFalse(fPatientDao.wasCalledInTransaction());
+    }
+    
+    @Test
+    public void testRetrievePatient() throws Exception
+    {
+        final Calculation calc = new Calculation();
+        calc.setPatient(fCalculationService.retrievePatientAsync(PATIENT_DFN).get());
+        fCalculationService.setSpecialty(calc, SampleModels.thoracicSpecialty().getName());
+        fCalculationService.refreshPatient(calc);
+        
+        assertFalse(fPatientDao.wasCalledInTransaction());
+    }
+}
@@ -5,19 +5,32 @@ import static org.mockito.Mockito.*;
 
 import java.util.HashMap;
 
+import gov.va.med.srcalc.db.HistoricalCalcWriter;
 import gov.va.med.srcalc.db.ResultsDao;
+import gov.va.med.srcalc.db.RiskSaveOutbox;
 import gov.va.med.srcalc.db.SpecialtyDao;
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+import gov.va.med.srcalc.domain.VistaPerson;
 import gov.va.med.srcalc.domain.calculation.*;
 import gov.va.med.srcalc.domain.model.*;
 import gov.va.med.srcalc.test.util.TestAuthnProvider;
+import gov.va.med.srcalc.test.util.TrackingTransactionManager;
 import gov.va.med.srcalc.vista.*;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.RecoverableDataAccessException;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Tests the {@link DefaultCalculationService} class. Note that these are unit tests, not
@@ -33,6 +46,7 @@ public class DefaultCalculationServiceTest
     private VistaPatientDao fMockPatientDao;
     private VistaSurgeryDao fMockSurgeryDao;
     private ResultsDao fMockResultsDao;
+    private TrackingTransactionManager fTransactionManager;
     
     @Rule
     public final TestAuthnProvider fAuthnProvider = new TestAuthnProvider();
@@ -52,16 +66,24 @@ public class DefaultCalculationServiceTest
         fMockPatientDao = mockVistaDaos.getVistaPatientDao();
         when(fMockPatientDao.getPatient(SAMPLE_PATIENT_DFN))
             .thenReturn(SampleCalculations.dummyPatient(SAMPLE_PATIENT_DFN));
+        when(fMockPatientDao.getPatient(
+                eq(SAMPLE_PATIENT_DFN), any(PatientRetrievalPlan.class)))
+            .thenReturn(SampleCalculations.dummyPatient(SAMPLE_PATIENT_DFN));
         // Default to bad signature.
         when(fMockPatientDao.saveRiskCalculationNote(anyInt(), anyString(), anyString()))
             .thenReturn(VistaPatientDao.SaveNoteCode.INVALID_SIGNATURE);
         when(fMockPatientDao.saveRiskCalculationNote(
                 eq(SAMPLE_PATIENT_DFN), eq(VALID_ESIG_CODE), anyString()))
             .thenReturn(VistaPatientDao.SaveNoteCode.SUCCESS);
+        // Default to a VistA which must save the note and the result separately.
+        when(fMockPatientDao.saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), anyString(), anyString()))
+            .thenReturn(Optional.<NoteAndResultStatus>absent());
 
         // These don't need any special setup: we just verify certain calls.
         fMockSurgeryDao = mockVistaDaos.getVistaSurgeryDao();
         fMockResultsDao = mock(ResultsDao.class);
+        fTransactionManager = new TrackingTransactionManager();
     }
     
     /**
@@ -70,7 +92,11 @@ public class DefaultCalculationServiceTest
     private DefaultCalculationService createWithMocks()
     {
         return new DefaultCalculationService(
-                fMockSpecialtyDao, fMockPatientDao, fMockSurgeryDao, fMockResultsDao);
+                fMockSpecialtyDao,
+                fMockPatientDao,
+                fMockSurgeryDao,
+                fMockResultsDao,
+                fTransactionManager);
     }
     
     @Test
@@ -102,6 +128,56 @@ public class DefaultCalculationServiceTest
                 calc.getStartDateTime().compareTo(testStartDateTime) >= 0);
     }
     
+    @Test
+    public final void testRetrievePatientAsync() throws Exception
+    {
+        final DefaultCalculationService s = createWithMocks();
+        
+        // Without a PatientPrefetcher, the patient is retrieved immediately.
+        final ListenableFuture<Patient> patient = s.retrievePatientAsync(SAMPLE_PATIENT_DFN);
+        assertTrue(patient.isDone());
+        assertEquals(SAMPLE_PATIENT_DFN, patient.get().getDfn());
+        // The specialty is not known yet.
+        verify(fMockPatientDao).getPatient(SAMPLE_PATIENT_DFN, PatientRetrievalPlan.MINIMAL);
+    }
+    
+    @Test
+    public final void testRetrieveSpecialtyDataAsync() throws Exception
+    {
+        final Patient patient = SampleCalculations.dummyPatient(SAMPLE_PATIENT_DFN);
+        final Patient.Loader loader = mock(Patient.Loader.class);
+        patient.setLoader(loader, PatientRetrievalPlan.ALL);
+        final DefaultCalculationService s = createWithMocks();
+        final Calculation calc = Calculation.forPatient(patient);
+        s.setSpecialty(calc, SampleModels.thoracicSpecialty().getName());
+        
+        final ListenableFuture<Patient> loaded =
+                s.retrieveSpecialtyDataAsync(calc, Futures.immediateFuture(patient));
+        
+        assertSame(patient, loaded.get());
+        verify(loader).load(
+                patient, PatientRetrievalPlan.forVariables(calc.getVariables()));
+    }
+    
+    @Test
+    public final void testRefreshPatient() throws InvalidIdentifierException
+    {
+        final Patient refreshedPatient = SampleCalculations.dummyPatient(SAMPLE_PATIENT_DFN);
+        final DefaultCalculationService s = createWithMocks();
+        final Calculation calc = s.startNewCalculation(SAMPLE_PATIENT_DFN);
+        s.setSpecialty(calc, SampleModels.thoracicSpecialty().getName());
+        // Only the data needed by the specialty is retrieved.
+        when(fMockPatientDao.refreshPatient(
+                SAMPLE_PATIENT_DFN,
+                PatientRetrievalPlan.forVariables(calc.getVariables())))
+            .thenReturn(refreshedPatient);
+        
+        final Calculation refreshed = s.refreshPatient(calc);
+        
+        assertSame(refreshedPatient, refreshed.getPatient());
+        assertEquals(calc.getSpecialty(), refreshed.getSpecialty());
+    }
+    
     @Test
     public final void testSetValidSpecialty() throws InvalidIdentifierException
     {
@@ -159,6 +235,43 @@ public class DefaultCalculationServiceTest
             .persistHistoricalCalc(any(HistoricalCalculation.class));
     }
     
+    @Test
+    public final void testRunCalculationWriteBehind() throws Exception
+    {
+        // Setup
+        final HistoricalCalcWriter writer = mock(HistoricalCalcWriter.class);
+        when(writer.offer(any(HistoricalCalculation.class))).thenReturn(true);
+        final DefaultCalculationService s = createWithMocks();
+        s.setHistoricalCalcWriter(writer);
+        final Calculation calc = s.startNewCalculation(SAMPLE_PATIENT_DFN);
+        s.setSpecialty(calc, SampleModels.thoracicSpecialty().getName());
+        
+        /* Behavior & Verification */
+        
+        s.runCalculation(calc, SampleCalculations.thoracicValues().values());
+        verify(writer).offer(calc.getHistoricalCalculation().get());
+        verify(fMockResultsDao, never())
+            .persistHistoricalCalc(any(HistoricalCalculation.class));
+    }
+    
+    @Test
+    public final void testRunCalculationWriteBehindFull() throws Exception
+    {
+        // Setup
+        final HistoricalCalcWriter writer = mock(HistoricalCalcWriter.class);
+        when(writer.offer(any(HistoricalCalculation.class))).thenReturn(false);
+        final DefaultCalculationService s = createWithMocks();
+        s.setHistoricalCalcWriter(writer);
+        final Calculation calc = s.startNewCalculation(SAMPLE_PATIENT_DFN);
+        s.setSpecialty(calc, SampleModels.thoracicSpecialty().getName());
+        
+        /* Behavior & Verification */
+        
+        s.runCalculation(calc, SampleCalculations.thoracicValues().values());
+        // The queue was full, so it must be persisted synchronously.
+        verify(fMockResultsDao).persistHistoricalCalc(calc.getHistoricalCalculation().get());
+    }
+    
     @Test
     public final void testSignCalculation() throws Exception
     {
@@ -177,6 +290,169 @@ public class DefaultCalculationServiceTest
         // happening should be <1%.
         verify(fMockSurgeryDao).saveCalculationResult(expectedSignedResult);
         verify(fMockResultsDao).persistSignedResult(expectedSignedResult);
+        assertEquals(1, fTransactionManager.getCommitCount());
+    }
+    
+    @Test
+    public final void testSignCalculationReclaimed() throws Exception
+    {
+        final HistoricalCalcWriter writer = mock(HistoricalCalcWriter.class);
+        final DefaultCalculationService s = createWithMocks();
+        s.setHistoricalCalcWriter(writer);
+        final CalculationResult result = SampleCalculations.thoracicResult();
+        final HistoricalCalculation historical =
+                result.signed().getHistoricalCalculation();
+        // The HistoricalCalculation is still queued.
+        when(writer.reclaim(historical)).thenReturn(true);
+
+        // Behavior
+        s.signRiskCalculation(result, VALID_ESIG_CODE);
+        
+        // Verification
+        final InOrder inOrder = inOrder(writer, fMockResultsDao);
+        inOrder.verify(writer).reclaim(historical);
+        inOrder.verify(fMockResultsDao).persistHistoricalCalc(historical);
+        inOrder.verify(fMockResultsDao).persistSignedResult(any(SignedResult.class));
+    }
+    
+    @Test
+    public final void testSignCalculationOutbox() throws Exception
+    {
+        final RiskSaveOutbox outbox = mock(RiskSaveOutbox.class);
+        final DefaultCalculationService s = createWithMocks();
+        s.setRiskSaveOutbox(outbox);
+        final CalculationResult result = SampleCalculations.thoracicResult();
+        final SignedResult expectedSignedResult = result.signed();
+        final VistaPerson user = SampleCalculations.radiologistPerson();
+
+        // Behavior
+        s.signRiskCalculation(result, VALID_ESIG_CODE);
+        
+        // Verification
+        final InOrder inOrder = inOrder(fMockResultsDao, outbox);
+        inOrder.verify(fMockResultsDao).persistSignedResult(expectedSignedResult);
+        inOrder.verify(outbox).enqueue(
+                expectedSignedResult, user.getStationNumber(), user.getDuz());
+        verify(fMockSurgeryDao, never()).saveCalculationResult((SignedResult)anyObject());
+    }
+    
+    @Test
+    public final void testSignCalculationCombined() throws Exception
+    {
+        final RiskSaveOutbox outbox = mock(RiskSaveOutbox.class);
+        final DefaultCalculationService s = createWithMocks();
+        s.setRiskSaveOutbox(outbox);
+        final CalculationResult result = SampleCalculations.thoracicResult();
+        final SignedResult expectedSignedResult = result.signed();
+        when(fMockPatientDao.saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), eq(VALID_ESIG_CODE), anyString()))
+            .thenReturn(Optional.of(
+                    new NoteAndResultStatus(VistaPatientDao.SaveNoteCode.SUCCESS, true)));
+
+        // Behavior
+        assertEquals(
+                VistaPatientDao.SaveNoteCode.SUCCESS,
+                s.signRiskCalculation(result, VALID_ESIG_CODE));
+        
+        // Verification: VistA saved both in one call, so only the database is left.
+        verify(fMockPatientDao).saveRiskCalculationNoteAndResult(
+                expectedSignedResult, VALID_ESIG_CODE, result.buildNoteBody());
+        verify(fMockPatientDao, never()).saveRiskCalculationNote(
+                anyInt(), anyString(), anyString());
+        verify(fMockResultsDao).persistSignedResult(expectedSignedResult);
+        verifyZeroInteractions(outbox, fMockSurgeryDao);
+        assertEquals(1, fTransactionManager.getCommitCount());
+    }
+    
+    @Test
+    public final void testSignCalculationCombinedDatabaseFailure() throws Exception
+    {
+        final RiskSaveOutbox outbox = mock(RiskSaveOutbox.class);
+        final DefaultCalculationService s = createWithMocks();
+        s.setRiskSaveOutbox(outbox);
+        final CalculationResult result = SampleCalculations.thoracicResult();
+        when(fMockPatientDao.saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), eq(VALID_ESIG_CODE), anyString()))
+            .thenReturn(Optional.of(
+                    new NoteAndResultStatus(VistaPatientDao.SaveNoteCode.SUCCESS, true)));
+        final RecoverableDataAccessException failure =
+                new RecoverableDataAccessException("database down");
+        doThrow(failure).doNothing()
+            .when(fMockResultsDao).persistSignedResult(any(SignedResult.class));
+
+        // Behavior: VistA Surgery has the result but the database does not.
+        try
+        {
+            s.signRiskCalculation(result, VALID_ESIG_CODE);
+            fail("expected exception");
+        }
+        catch (final RecoverableDataAccessException ex)
+        {
+            assertSame(failure, ex);
+        }
+        // Sign again.
+        assertEquals(
+                VistaPatientDao.SaveNoteCode.SUCCESS,
+                s.signRiskCalculation(result, VALID_ESIG_CODE));
+        
+        // Verification: the second attempt must not save the result to VistA again.
+        verify(fMockPatientDao, times(1)).saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), anyString(), anyString());
+        verify(fMockPatientDao).saveRiskCalculationNote(
+                result.getPatientDfn(), VALID_ESIG_CODE, result.buildNoteBody());
+        verify(fMockResultsDao, times(2)).persistSignedResult(any(SignedResult.class));
+        verifyZeroInteractions(outbox, fMockSurgeryDao);
+    }
+    
+    @Test
+    public final void testSignCalculationCombinedResultNotSaved() throws Exception
+    {
+        final RiskSaveOutbox outbox = mock(RiskSaveOutbox.class);
+        final DefaultCalculationService s = createWithMocks();
+        s.setRiskSaveOutbox(outbox);
+        final CalculationResult result = SampleCalculations.thoracicResult();
+        final SignedResult expectedSignedResult = result.signed();
+        final VistaPerson user = SampleCalculations.radiologistPerson();
+        when(fMockPatientDao.saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), eq(VALID_ESIG_CODE), anyString()))
+            .thenReturn(Optional.of(
+                    new NoteAndResultStatus(VistaPatientDao.SaveNoteCode.SUCCESS, false)));
+
+        // Behavior
+        assertEquals(
+                VistaPatientDao.SaveNoteCode.SUCCESS,
+                s.signRiskCalculation(result, VALID_ESIG_CODE));
+        
+        // Verification: the note is signed, so record it and save the result separately.
+        verify(fMockPatientDao, never()).saveRiskCalculationNote(
+                anyInt(), anyString(), anyString());
+        final InOrder inOrder = inOrder(fMockResultsDao, outbox);
+        inOrder.verify(fMockResultsDao).persistSignedResult(expectedSignedResult);
+        inOrder.verify(outbox).enqueue(
+                expectedSignedResult, user.getStationNumber(), user.getDuz());
+        assertEquals(1, fTransactionManager.getCommitCount());
+    }
+    
+    @Test
+    public final void testSignCalculationCombinedInvalidSig() throws Exception
+    {
+        final DefaultCalculationService s = createWithMocks();
+        final CalculationResult result = SampleCalculations.thoracicResult();
+        when(fMockPatientDao.saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), anyString(), anyString()))
+            .thenReturn(Optional.of(new NoteAndResultStatus(
+                    VistaPatientDao.SaveNoteCode.INVALID_SIGNATURE, false)));
+
+        // Behavior
+        assertEquals(
+                VistaPatientDao.SaveNoteCode.INVALID_SIGNATURE,
+                s.signRiskCalculation(result, "invalidCode"));
+        
+        // Verification
+        verify(fMockPatientDao, never()).saveRiskCalculationNote(
+                anyInt(), anyString(), anyString());
+        verify(fMockResultsDao, never()).persistSignedResult(any(SignedResult.class));
+        verifyZeroInteractions(fMockSurgeryDao);
     }
     
     @Test
@@ -195,4 +471,66 @@ public class DefaultCalculationServiceTest
         verify(fMockSurgeryDao, never()).saveCalculationResult((SignedResult)anyObject());
         verify(fMockResultsDao, never()).persistSignedResult((SignedResult)anyObject());
     }
+    
+    /**
+     * Returns an Answer which fails if a transaction is active and otherwise returns the
+     * given value.
+     */
+    private <T> Answer<T> outsideTransaction(final T value)
+    {
+        return new Answer<T>()
+        {
+            @Override
+            public T answer(final InvocationOnMock invocation)
+            {
+                assertFalse(
+                        invocation.getMethod().getName() + " called in a transaction",
+                        fTransactionManager.isActive());
+                return value;
+            }
+        };
+    }
+    
+    @Test
+    public final void testVistaCallsOutsideTransaction() throws Exception
+    {
+        final Patient patient = SampleCalculations.dummyPatient(SAMPLE_PATIENT_DFN);
+        when(fMockPatientDao.getPatient(SAMPLE_PATIENT_DFN))
+            .then(outsideTransaction(patient));
+        when(fMockPatientDao.getPatient(
+                eq(SAMPLE_PATIENT_DFN), any(PatientRetrievalPlan.class)))
+            .then(outsideTransaction(patient));
+        when(fMockPatientDao.refreshPatient(
+                eq(SAMPLE_PATIENT_DFN), any(PatientRetrievalPlan.class)))
+            .then(outsideTransaction(patient));
+        when(fMockPatientDao.saveRiskCalculationNote(
+                eq(SAMPLE_PATIENT_DFN), eq(VALID_ESIG_CODE), anyString()))
+            .then(outsideTransaction(VistaPatientDao.SaveNoteCode.SUCCESS));
+        when(fMockPatientDao.saveRiskCalculationNoteAndResult(
+                any(SignedResult.class), eq(VALID_ESIG_CODE), anyString()))
+            .then(outsideTransaction(Optional.<NoteAndResultStatus>absent()));
+        // With an outbox, the database work is the only work in the transaction.
+        final RiskSaveOutbox outbox = mock(RiskSaveOutbox.class);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+            {
+                assertTrue(fTransactionManager.isActive());
+                return null;
+            }
+        }).when(fMockResultsDao).persistSignedResult(any(SignedResult.class));
+        final DefaultCalculationService s = createWithMocks();
+        s.setRiskSaveOutbox(outbox);
+        
+        final Calculation calc = s.startNewCalculation(SAMPLE_PATIENT_DFN);
+        s.retrievePatientAsync(SAMPLE_PATIENT_DFN).get();
+        s.setSpecialty(calc, SampleModels.thoracicSpecialty().getName());
+        s.refreshPatient(calc);
+        s.signRiskCalculation(SampleCalculations.thoracicResult(), VALID_ESIG_CODE);
+        
+        verify(fMockResultsDao).persistSignedResult(any(SignedResult.class));
+        verify(fMockSurgeryDao, never()).saveCalculationResult(any(SignedResult.class));
+        assertEquals(1, fTransactionManager.getCommitCount());
+    }
 }
@@ -1,16 +1,37 @@
 package gov.va.med.srcalc.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
+import gov.va.med.srcalc.archive.ArchivePosition;
+import gov.va.med.srcalc.archive.ResultArchiveWriter;
 import gov.va.med.srcalc.db.ResultSearchParameters;
 import gov.va.med.srcalc.db.ResultsDao;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
 
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.ImmutableList;
 
 /**
  * Unit tests for {@link DefaultReportService}.
  */
 public class DefaultReportServiceTest
 {
+    @Rule
+    public final TemporaryFolder fTempFolder = new TemporaryFolder();
+    
     private final ResultsDao fMockResultsDao;
     
     public DefaultReportServiceTest()
@@ -37,4 +58,74 @@ public class DefaultReportServiceTest
         verify(fMockResultsDao).getSignedResults(searchParams);
     }
     
+    @Test
+    public final void testGetOutcomeDistributions()
+    {
+        /* Setup */
+        final ResultSearchParameters searchParams = new ResultSearchParameters();
+        searchParams.setStationNumber("442");
+        final ImmutableList<OutcomeDistribution> distributions = ImmutableList.of(
+                new OutcomeDistribution(
+                        "model", "specialty", "442",
+                        Collections.nCopies(OutcomeDistribution.BIN_COUNT, 1)));
+        when(fMockResultsDao.getOutcomeDistributions(searchParams))
+            .thenReturn(distributions);
+        final DefaultReportService service = new DefaultReportService(fMockResultsDao);
+        
+        /* Behavior & Verification */
+        assertEquals(distributions, service.getOutcomeDistributions(searchParams));
+    }
+    
+    @Test
+    public final void testArchiveNewSignedResults() throws Exception
+    {
+        /* Setup */
+        final ResultArchiveWriter writer = new ResultArchiveWriter(fTempFolder.getRoot());
+        final SignedResult result =
+                SampleCalculations.withId(SampleCalculations.signedThoracic(), 7);
+        when(fMockResultsDao.getSignedResultsAfter(
+                eq(ArchivePosition.START.getSignatureTimestamp()),
+                eq(0),
+                any(DateTime.class),
+                eq(10)))
+            .thenReturn(ImmutableList.of(result));
+        final DefaultReportService service = new DefaultReportService(fMockResultsDao);
+        
+        /* Behavior & Verification */
+        assertEquals(1, service.archiveNewSignedResults(writer, 10));
+        assertEquals(ArchivePosition.of(result), writer.getLastArchivedPosition());
+        // Nothing new.
+        assertEquals(0, service.archiveNewSignedResults(writer, 10));
+        final ArgumentCaptor<DateTime> signedBefore = ArgumentCaptor.forClass(DateTime.class);
+        verify(fMockResultsDao).getSignedResultsAfter(
+                eq(result.getSignatureTimestamp()), eq(7), signedBefore.capture(), eq(10));
+        // Recently-signed results are not archived yet.
+        assertTrue(signedBefore.getValue().isBefore(
+                DateTime.now().minusMinutes(DefaultReportService.ARCHIVE_DELAY_MINUTES - 1)));
+    }
+    
+    @Test
+    public final void testArchiveNewSignedResultsExclusive() throws Exception
+    {
+        /* Setup */
+        final ResultArchiveWriter writer = new ResultArchiveWriter(fTempFolder.getRoot());
+        when(fMockResultsDao.getSignedResultsAfter(
+                any(DateTime.class), anyInt(), any(DateTime.class), anyInt()))
+            .thenAnswer(new Answer<List<SignedResult>>()
+            {
+                @Override
+                public List<SignedResult> answer(final InvocationOnMock invocation)
+                {
+                    // Another request must not append between reading the last
+                    // position and appending.
+                    assertTrue(Thread.holdsLock(writer));
+                    return ImmutableList.of();
+                }
+            });
+        final DefaultReportService service = new DefaultReportService(fMockResultsDao);
+        
+        /* Behavior & Verification */
+        assertEquals(0, service.archiveNewSignedResults(writer, 10));
+    }
+    
 }
@@ -0,0 +1,66 @@
+package gov.va.med.srcalc.test.util;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * A {@link PlatformTransactionManager} for unit tests which manages no resources and
+ * only tracks whether a transaction is active.
+ */
+public class TrackingTransactionManager implements PlatformTransactionManager
+{
+    private boolean fActive = false;
+    private int fCommitCount = 0;
+    private int fRollbackCount = 0;
+
+    @Override
+    public TransactionStatus getTransaction(final TransactionDefinition definition)
+    {
+        if (fActive)
+        {
+            throw new IllegalStateException("A transaction is already active.");
+        }
+        fActive = true;
+        return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public void commit(final TransactionStatus status)
+    {
+        fActive = false;
+        ++fCommitCount;
+    }
+
+    @Override
+    public void rollback(final TransactionStatus status)
+    {
+        fActive = false;
+        ++fRollbackCount;
+    }
+
+    /**
+     * Returns true if a transaction has begun but not yet committed or rolled back.
+     */
+    public boolean isActive()
+    {
+        return fActive;
+    }
+
+    /**
+     * Returns the number of committed transactions.
+     */
+    public int getCommitCount()
+    {
+        return fCommitCount;
+    }
+
+    /**
+     * Returns the number of rolled-back transactions.
+     */
+    public int getRollbackCount()
+    {
+        return fRollbackCount;
+    }
+}
@@ -0,0 +1,101 @@
+package gov.va.med.srcalc.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ConcurrentLogLinearHistogram} class.
+ */
+public class ConcurrentLogLinearHistogramTest
+{
+    @Test
+    public final void testEmpty()
+    {
+        assertEquals(new LogLinearHistogram(), new ConcurrentLogLinearHistogram().snapshot());
+    }
+    
+    @Test
+    public final void testSnapshotMatchesSequential()
+    {
+        final Random random = new Random(38);
+        final LogLinearHistogram expected = new LogLinearHistogram();
+        final ConcurrentLogLinearHistogram histogram = new ConcurrentLogLinearHistogram();
+        for (int i = 0; i < 1000; ++i)
+        {
+            final int value = random.nextInt(100000);
+            expected.record(value);
+            histogram.record(value);
+        }
+        
+        assertEquals(expected, histogram.snapshot());
+    }
+    
+    @Test
+    public final void testSnapshotIsCopy()
+    {
+        final ConcurrentLogLinearHistogram histogram = new ConcurrentLogLinearHistogram();
+        histogram.record(5);
+        final LogLinearHistogram snapshot = histogram.snapshot();
+        histogram.record(500);
+        
+        assertEquals(1, snapshot.getTotalCount());
+        assertEquals(5, snapshot.getMax());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public final void testNegative()
+    {
+        new ConcurrentLogLinearHistogram().record(-1);
+    }
+    
+    @Test
+    public final void testConcurrentRecording() throws Exception
+    {
+        final int threads = 4;
+        final int valuesPerThread = 10000;
+        final ConcurrentLogLinearHistogram histogram = new ConcurrentLogLinearHistogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; ++t)
+            {
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for (int i = 1; i <= valuesPerThread; ++i)
+                        {
+                            histogram.record(i);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        
+        final LogLinearHistogram snapshot = histogram.snapshot();
+        assertEquals(threads * valuesPerThread, snapshot.getTotalCount());
+        assertEquals(threads * (valuesPerThread * (valuesPerThread + 1L) / 2), snapshot.getSum());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(valuesPerThread, snapshot.getMax());
+    }
+}
@@ -0,0 +1,143 @@
+package gov.va.med.srcalc.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the {@link LogLinearHistogram} class.
+ */
+public class LogLinearHistogramTest
+{
+    @Test
+    public final void testEmpty()
+    {
+        final LogLinearHistogram histogram = new LogLinearHistogram();
+        
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(-1, histogram.getMin());
+        assertEquals(-1, histogram.getMax());
+        assertEquals(-1, histogram.getMean());
+        assertEquals(-1, histogram.getValueAtPercentile(50.0));
+        assertEquals(ImmutableList.of(), histogram.getBuckets());
+    }
+    
+    @Test
+    public final void testSmallValuesExact()
+    {
+        final LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 0; i < LogLinearHistogram.LINEAR_LIMIT; ++i)
+        {
+            histogram.record(i);
+        }
+        
+        assertEquals(LogLinearHistogram.LINEAR_LIMIT, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(31, histogram.getMax());
+        assertEquals(15, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(0.0));
+        assertEquals(15, histogram.getValueAtPercentile(50.0));
+        assertEquals(31, histogram.getValueAtPercentile(100.0));
+        assertEquals(LogLinearHistogram.LINEAR_LIMIT, histogram.getBuckets().size());
+        assertEquals(
+                new LogLinearHistogram.Bucket(7, 7, 1), histogram.getBuckets().get(7));
+    }
+    
+    @Test
+    public final void testLargeValuesWithinPrecision()
+    {
+        final Random random = new Random(42);
+        final LogLinearHistogram histogram = new LogLinearHistogram();
+        final int[] values = new int[10000];
+        long sum = 0;
+        for (int i = 0; i < values.length; ++i)
+        {
+            // Durations up to about 3 hours.
+            values[i] = random.nextInt(10000);
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        
+        assertEquals(values.length, histogram.getTotalCount());
+        assertEquals(sum, histogram.getSum());
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals((int)(sum / values.length), histogram.getMean());
+        final double tolerance = 1.0 / LogLinearHistogram.SUB_BUCKETS_PER_MAGNITUDE;
+        for (final double percentile : new double[] {50.0, 90.0, 99.0, 99.9})
+        {
+            final int expected = values[(int)Math.ceil(percentile / 100.0 * values.length) - 1];
+            final int actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(
+                    "p" + percentile + " was " + actual + " but expected " + expected,
+                    Math.abs(actual - expected) <= expected * tolerance);
+        }
+    }
+    
+    @Test
+    public final void testExtremeValues()
+    {
+        final LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(Integer.MAX_VALUE);
+        histogram.record(0);
+        
+        assertEquals(Integer.MAX_VALUE, histogram.getMax());
+        assertEquals(Integer.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+        final LogLinearHistogram.Bucket lastBucket = histogram.getBuckets().get(1);
+        assertEquals(Integer.MAX_VALUE, lastBucket.getUpperBound());
+    }
+    
+    @Test
+    public final void testMerge()
+    {
+        final LogLinearHistogram all = new LogLinearHistogram();
+        final LogLinearHistogram odds = new LogLinearHistogram();
+        final LogLinearHistogram evens = new LogLinearHistogram();
+        for (int i = 0; i < 1000; ++i)
+        {
+            all.record(i * 7);
+            ((i % 2 == 0) ? evens : odds).record(i * 7);
+        }
+        
+        final LogLinearHistogram merged = new LogLinearHistogram(odds).merge(evens);
+        
+        assertEquals(all, merged);
+        assertEquals(all.hashCode(), merged.hashCode());
+        assertEquals(all.getValueAtPercentile(90.0), merged.getValueAtPercentile(90.0));
+        // The copied histogram is not affected by the merge.
+        assertEquals(500, odds.getTotalCount());
+    }
+    
+    @Test
+    public final void testMergeEmpty()
+    {
+        final LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(5);
+        
+        histogram.merge(new LogLinearHistogram());
+        
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(5, histogram.getMin());
+        assertEquals(5, histogram.getMax());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public final void testRecordNegative()
+    {
+        new LogLinearHistogram().record(-1);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidPercentile()
+    {
+        new LogLinearHistogram().getValueAtPercentile(100.1);
+    }
+}
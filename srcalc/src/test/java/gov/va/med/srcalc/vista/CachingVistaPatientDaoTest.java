@@ -0,0 +1,130 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+import gov.va.med.srcalc.vista.VistaPatientDao.SaveNoteCode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+/**
+ * Tests the {@link CachingVistaPatientDao} class.
+ */
+public class CachingVistaPatientDaoTest
+{
+    private static final String DIVISION = "500";
+    private static final String DUZ = "11716";
+    private static final int DFN = 123;
+
+    private VistaPatientDao fMockTarget;
+    private PatientCache fCache;
+    private CachingVistaPatientDao fDao;
+
+    @Before
+    public void setup()
+    {
+        fMockTarget = mock(VistaPatientDao.class);
+        when(fMockTarget.getPatient(DFN, PatientRetrievalPlan.ALL))
+            .thenReturn(SampleCalculations.dummyPatient(DFN));
+        when(fMockTarget.refreshPatient(DFN, PatientRetrievalPlan.ALL))
+            .thenReturn(SampleCalculations.dummyPatient(DFN));
+        fCache = new PatientCache(10, 60);
+        fDao = new CachingVistaPatientDao(fMockTarget, fCache, DIVISION, DUZ);
+    }
+
+    @Test
+    public final void testGetPatient()
+    {
+        final Patient first = fDao.getPatient(DFN);
+        // A different DAO instance for the same user, as for a new request.
+        final Patient second =
+                new CachingVistaPatientDao(fMockTarget, fCache, DIVISION, DUZ).getPatient(DFN);
+
+        assertSame(first, second);
+        verify(fMockTarget, times(1)).getPatient(DFN, PatientRetrievalPlan.ALL);
+    }
+
+    @Test
+    public final void testRefreshPatient()
+    {
+        final Patient cached = fDao.getPatient(DFN);
+
+        final Patient refreshed = fDao.refreshPatient(DFN, PatientRetrievalPlan.ALL);
+
+        assertNotSame(cached, refreshed);
+        // The refreshed data replaces the cached data.
+        assertSame(refreshed, fDao.getPatient(DFN));
+        verify(fMockTarget, times(1)).getPatient(DFN, PatientRetrievalPlan.ALL);
+    }
+
+    @Test
+    public final void testGetPatientLoadsPlan()
+    {
+        final Patient partial = SampleCalculations.dummyPatient(DFN);
+        final Patient.Loader loader = mock(Patient.Loader.class);
+        partial.setLoader(loader, PatientRetrievalPlan.ALL.minus(PatientRetrievalPlan.MINIMAL));
+        when(fMockTarget.getPatient(DFN, PatientRetrievalPlan.MINIMAL)).thenReturn(partial);
+        final PatientRetrievalPlan vitals =
+                PatientRetrievalPlan.of(PatientRetrievalPlan.Section.VITALS);
+
+        fDao.getPatient(DFN, PatientRetrievalPlan.MINIMAL);
+        // The cached patient did not retrieve the vitals, so they are loaded.
+        assertSame(partial, fDao.getPatient(DFN, vitals));
+
+        verify(loader).load(partial, vitals);
+        verify(fMockTarget, times(1)).getPatient(DFN, PatientRetrievalPlan.MINIMAL);
+    }
+
+    @Test
+    public final void testSaveNoteInvalidates()
+    {
+        when(fMockTarget.saveRiskCalculationNote(DFN, "good", "body"))
+            .thenReturn(SaveNoteCode.SUCCESS);
+        fDao.getPatient(DFN);
+
+        assertEquals(SaveNoteCode.SUCCESS, fDao.saveRiskCalculationNote(DFN, "good", "body"));
+
+        assertEquals(0, fCache.size());
+        fDao.getPatient(DFN);
+        verify(fMockTarget, times(2)).getPatient(DFN, PatientRetrievalPlan.ALL);
+    }
+
+    @Test
+    public final void testSaveNoteFailureKeeps()
+    {
+        when(fMockTarget.saveRiskCalculationNote(DFN, "bad", "body"))
+            .thenReturn(SaveNoteCode.INVALID_SIGNATURE);
+        fDao.getPatient(DFN);
+
+        assertEquals(
+                SaveNoteCode.INVALID_SIGNATURE,
+                fDao.saveRiskCalculationNote(DFN, "bad", "body"));
+
+        assertEquals(1, fCache.size());
+    }
+
+    @Test
+    public final void testSaveNoteAndResultInvalidates()
+    {
+        final SignedResult result = SampleCalculations.thoracicResult().signed();
+        final int dfn = result.getPatientDfn();
+        when(fMockTarget.getPatient(dfn, PatientRetrievalPlan.ALL))
+            .thenReturn(SampleCalculations.dummyPatient(dfn));
+        when(fMockTarget.saveRiskCalculationNoteAndResult(result, "good", "body"))
+            .thenReturn(Optional.of(new NoteAndResultStatus(SaveNoteCode.SUCCESS, true)));
+        fDao.getPatient(dfn);
+
+        assertEquals(
+                Optional.of(new NoteAndResultStatus(SaveNoteCode.SUCCESS, true)),
+                fDao.saveRiskCalculationNoteAndResult(result, "good", "body"));
+
+        assertEquals(0, fCache.size());
+    }
+}
@@ -0,0 +1,69 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link CaretPieces} class.
+ */
+public class CaretPiecesTest
+{
+    @Test
+    public final void testPieces()
+    {
+        final CaretPieces pieces =
+                CaretPieces.of("403962R;O^METOPROLOL TARTRATE 50MG TAB^3110228^^^3");
+
+        assertEquals(6, pieces.size());
+        assertEquals("403962R;O", pieces.getString(0));
+        assertEquals("METOPROLOL TARTRATE 50MG TAB", pieces.getString(1));
+        assertEquals("", pieces.getString(3));
+        assertEquals("3", pieces.get(5).toString());
+        assertEquals("3110228^^^3", pieces.after(1).toString());
+    }
+
+    @Test
+    public final void testNoDelimiter()
+    {
+        final CaretPieces pieces = CaretPieces.of("ALCOHOL USE");
+
+        assertEquals(1, pieces.size());
+        assertEquals("ALCOHOL USE", pieces.getString(0));
+    }
+
+    @Test
+    public final void testManyPieces()
+    {
+        final CaretPieces pieces = CaretPieces.of("0^1^2^3^4^5^6^7^8^9^10^");
+
+        assertEquals(12, pieces.size());
+        assertEquals("10", pieces.getString(10));
+        assertEquals("", pieces.getString(11));
+    }
+
+    /**
+     * Verifies splitting a view, as when parsing a {@link ResponseLines} line.
+     */
+    @Test
+    public final void testView()
+    {
+        final CaretPieces pieces =
+                CaretPieces.of(ResponseLines.split("x^y\n07/14/15^ALCOHOL USE").line(1));
+
+        assertEquals("07/14/15", pieces.getString(0));
+        assertTrue("ALCOHOL USE".contentEquals(pieces.get(1)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void testMissingPiece()
+    {
+        CaretPieces.of("a^b").get(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void testNothingAfterLast()
+    {
+        CaretPieces.of("a^b").after(1);
+    }
+}
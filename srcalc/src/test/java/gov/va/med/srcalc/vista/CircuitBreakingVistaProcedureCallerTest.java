@@ -0,0 +1,109 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.security.auth.login.LoginException;
+
+import gov.va.med.srcalc.vista.DivisionCircuitBreaker.State;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+
+/**
+ * Tests the {@link CircuitBreakingVistaProcedureCaller} class.
+ */
+public class CircuitBreakingVistaProcedureCallerTest
+{
+    private static final String DUZ = "11716";
+    private static final String DFN = "1";
+
+    private VistaProcedureCaller fTarget;
+
+    private DivisionCircuitBreaker fBreaker;
+
+    private CircuitBreakingVistaProcedureCaller fCaller;
+
+    @Before
+    public void setup()
+    {
+        fTarget = mock(VistaProcedureCaller.class);
+        when(fTarget.getDivision()).thenReturn("500");
+        // Open after 2 failures.
+        fBreaker = new VistaCircuitBreakers(2, 10, 2, 60000, 1000, 20000)
+                .getBreaker("500");
+        fCaller = new CircuitBreakingVistaProcedureCaller(fTarget, fBreaker);
+    }
+
+    @Test
+    public final void testPassesThrough() throws Exception
+    {
+        final List<String> lines = Arrays.asList("line1", "line2");
+        when(fTarget.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN)).thenReturn(lines);
+
+        assertEquals(lines, fCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN));
+        assertEquals("500", fCaller.getDivision());
+        assertEquals(0, fBreaker.getActiveCalls());
+    }
+
+    @Test
+    public final void testFailsFast() throws Exception
+    {
+        when(fTarget.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN))
+            .thenThrow(new RecoverableDataAccessException("timed out"));
+
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                fCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN);
+                fail("Expected a RecoverableDataAccessException.");
+            }
+            catch (final RecoverableDataAccessException e)
+            {
+                // expected
+            }
+        }
+
+        try
+        {
+            fCaller.doRetrieveLabsCall(DUZ, DFN, Arrays.asList("ALBUMIN"));
+            fail("Expected a DivisionUnavailableException.");
+        }
+        catch (final DivisionUnavailableException e)
+        {
+            // expected
+        }
+        verify(fTarget, never()).doRetrieveLabsCall(DUZ, DFN, Arrays.asList("ALBUMIN"));
+    }
+
+    /**
+     * Verifies that application-level errors do not count as division failures.
+     */
+    @Test
+    public final void testApplicationErrors() throws Exception
+    {
+        when(fTarget.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN))
+            .thenThrow(new LoginException("bad DUZ"));
+
+        for (int i = 0; i < 3; ++i)
+        {
+            try
+            {
+                fCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN);
+                fail("Expected a LoginException.");
+            }
+            catch (final LoginException e)
+            {
+                // expected
+            }
+        }
+
+        assertEquals(State.CLOSED, fBreaker.getState());
+        assertEquals(0, fBreaker.getConsecutiveFailures());
+    }
+}
@@ -0,0 +1,181 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import gov.va.med.srcalc.vista.DivisionCircuitBreaker.Permit;
+import gov.va.med.srcalc.vista.DivisionCircuitBreaker.State;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Tests the {@link DivisionCircuitBreaker} and {@link VistaCircuitBreakers} classes.
+ */
+public class DivisionCircuitBreakerTest
+{
+    private static final String DIVISION = "500";
+    private static final int MAX_CALLS = 2;
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_MILLIS = 30000;
+    private static final int MIN_TIMEOUT = 1000;
+    private static final int MAX_TIMEOUT = 20000;
+
+    /**
+     * A Ticker that only moves when told to.
+     */
+    private static final class ManualTicker extends Ticker
+    {
+        private long fNanos = 0;
+
+        @Override
+        public long read()
+        {
+            return fNanos;
+        }
+
+        public void advanceMillis(final long millis)
+        {
+            fNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private ManualTicker fTicker;
+
+    private DivisionCircuitBreaker fBreaker;
+
+    @Before
+    public void setup()
+    {
+        fTicker = new ManualTicker();
+        fBreaker = new VistaCircuitBreakers(
+                MAX_CALLS, 10, FAILURE_THRESHOLD, OPEN_MILLIS, MIN_TIMEOUT, MAX_TIMEOUT, fTicker)
+                .getBreaker(DIVISION);
+    }
+
+    /**
+     * Makes a call taking the given time.
+     */
+    private void call(final long millis, final boolean succeeded)
+    {
+        final Permit permit = fBreaker.acquire();
+        fTicker.advanceMillis(millis);
+        fBreaker.release(permit, succeeded);
+    }
+
+    private void assertRefused()
+    {
+        try
+        {
+            fBreaker.acquire();
+            fail("Expected a DivisionUnavailableException.");
+        }
+        catch (final DivisionUnavailableException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testRegistry()
+    {
+        final VistaCircuitBreakers breakers =
+                new VistaCircuitBreakers(1, 1, 1, 1, 1, 1);
+
+        assertSame(breakers.getBreaker("500"), breakers.getBreaker("500"));
+        breakers.getBreaker("442");
+        assertEquals("442", breakers.getBreakers().firstKey());
+        assertEquals(2, breakers.getBreakers().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidTimeouts()
+    {
+        new VistaCircuitBreakers(1, 1, 1, 1, 10, 5);
+    }
+
+    @Test
+    public final void testOpensAfterConsecutiveFailures()
+    {
+        call(10, false);
+        call(10, false);
+        // A success resets the count.
+        call(10, true);
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; ++i)
+        {
+            call(10, false);
+        }
+        assertEquals(State.CLOSED, fBreaker.getState());
+
+        call(10, false);
+
+        assertEquals(State.OPEN, fBreaker.getState());
+        assertRefused();
+        assertEquals(1, fBreaker.getRejectedCount());
+    }
+
+    @Test
+    public final void testHalfOpen()
+    {
+        for (int i = 0; i < FAILURE_THRESHOLD; ++i)
+        {
+            call(10, false);
+        }
+        fTicker.advanceMillis(OPEN_MILLIS);
+
+        // One trial call is allowed, but no others while it is in progress.
+        final Permit trial = fBreaker.acquire();
+        assertEquals(State.HALF_OPEN, fBreaker.getState());
+        assertRefused();
+
+        // A failed trial re-opens the breaker.
+        fBreaker.release(trial, false);
+        assertEquals(State.OPEN, fBreaker.getState());
+        assertRefused();
+
+        // A successful trial closes it.
+        fTicker.advanceMillis(OPEN_MILLIS);
+        call(10, true);
+        assertEquals(State.CLOSED, fBreaker.getState());
+        assertEquals(0, fBreaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public final void testBulkhead()
+    {
+        final Permit first = fBreaker.acquire();
+        final Permit second = fBreaker.acquire();
+        assertEquals(MAX_CALLS, fBreaker.getActiveCalls());
+
+        assertRefused();
+        // Refusing for concurrency is not a failure.
+        assertEquals(State.CLOSED, fBreaker.getState());
+
+        fBreaker.release(first, true);
+        fBreaker.release(fBreaker.acquire(), true);
+        fBreaker.release(second, true);
+        assertEquals(0, fBreaker.getActiveCalls());
+    }
+
+    @Test
+    public final void testAdaptiveTimeout()
+    {
+        // No data yet.
+        assertEquals(MAX_TIMEOUT, fBreaker.getCallTimeoutMillis());
+
+        // A steady 400 ms latency converges to the minimum timeout.
+        for (int i = 0; i < 50; ++i)
+        {
+            call(400, true);
+        }
+        assertEquals(MIN_TIMEOUT, fBreaker.getCallTimeoutMillis());
+
+        // A sudden increase raises the timeout above the new latency.
+        call(5000, true);
+        final int timeout = fBreaker.getCallTimeoutMillis();
+        assertTrue("timeout was " + timeout, timeout > 5000 && timeout < MAX_TIMEOUT);
+    }
+}
@@ -0,0 +1,140 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Tests the {@link InstrumentedVistaProcedureCaller} and {@link RpcMetrics} classes.
+ */
+public class InstrumentedVistaProcedureCallerTest
+{
+    private static final String DUZ = "11716";
+    private static final String DFN = "1";
+
+    /**
+     * A Ticker which advances a fixed amount each time it is read.
+     */
+    private static final class SteppingTicker extends Ticker
+    {
+        private long fNanos = 0;
+        private long fStepNanos = 0;
+
+        @Override
+        public long read()
+        {
+            final long nanos = fNanos;
+            fNanos += fStepNanos;
+            return nanos;
+        }
+
+        public void setStepMillis(final long millis)
+        {
+            fStepNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private VistaProcedureCaller fTarget;
+
+    private SteppingTicker fTicker;
+
+    private RpcMetrics fMetrics;
+
+    private InstrumentedVistaProcedureCaller fCaller;
+
+    @Before
+    public void setup()
+    {
+        fTarget = mock(VistaProcedureCaller.class);
+        when(fTarget.getDivision()).thenReturn("500");
+        fTicker = new SteppingTicker();
+        fMetrics = new RpcMetrics();
+        fCaller = new InstrumentedVistaProcedureCaller(fTarget, fMetrics, fTicker);
+    }
+
+    @Test
+    public final void testRecordsSuccess() throws Exception
+    {
+        final List<String> lines = Arrays.asList("line1", "line22");
+        when(fTarget.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN)).thenReturn(lines);
+
+        fTicker.setStepMillis(120);
+        assertEquals(lines, fCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN));
+        assertEquals("500", fCaller.getDivision());
+
+        final List<RpcStatistics> statistics = fMetrics.getStatistics();
+        assertEquals(1, statistics.size());
+        final RpcStatistics stats = statistics.get(0);
+        assertEquals("500", stats.getDivision());
+        assertEquals(RemoteProcedure.SR_ASRC_GET_PATIENT.getProcedureName(), stats.getProcedureName());
+        assertEquals(1, stats.getCallCount());
+        assertEquals(0, stats.getErrorCount());
+        assertEquals(120, stats.getMaxLatency());
+        assertEquals(11, stats.getMaxResponseSize());
+    }
+
+    @Test
+    public final void testRecordsErrors() throws Exception
+    {
+        when(fTarget.doRetrieveLabsCall(DUZ, DFN, Arrays.asList("ALBUMIN")))
+            .thenReturn("ALBUMIN^3.0")
+            .thenThrow(new RecoverableDataAccessException("timed out"));
+
+        fTicker.setStepMillis(10);
+        fCaller.doRetrieveLabsCall(DUZ, DFN, Arrays.asList("ALBUMIN"));
+        fTicker.setStepMillis(5000);
+        try
+        {
+            fCaller.doRetrieveLabsCall(DUZ, DFN, Arrays.asList("ALBUMIN"));
+            fail("Expected a RecoverableDataAccessException.");
+        }
+        catch (final RecoverableDataAccessException e)
+        {
+            // expected
+        }
+
+        final RpcStatistics stats = fMetrics.getStatistics().get(0);
+        assertEquals(RemoteProcedure.SR_ASRC_LAB_RESULTS.getProcedureName(), stats.getProcedureName());
+        assertEquals(2, stats.getCallCount());
+        assertEquals(1, stats.getErrorCount());
+        assertEquals(10, stats.getMedianLatency());
+        assertEquals(5000, stats.getMaxLatency());
+        // Only the successful call has a response.
+        assertEquals("ALBUMIN^3.0".length(), stats.getMaxResponseSize());
+    }
+
+    @Test
+    public final void testSortedByDivisionAndProcedure() throws Exception
+    {
+        final VistaProcedureCaller otherTarget = mock(VistaProcedureCaller.class);
+        when(otherTarget.getDivision()).thenReturn("442");
+        final InstrumentedVistaProcedureCaller otherCaller =
+                new InstrumentedVistaProcedureCaller(otherTarget, fMetrics, fTicker);
+
+        fCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN);
+        fCaller.doSaveRiskCalculationCall(DUZ, DFN, "10000", "20160101", Arrays.asList("x"));
+        otherCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, DFN);
+
+        final List<RpcStatistics> statistics = fMetrics.getStatistics();
+        assertEquals(3, statistics.size());
+        assertEquals("442", statistics.get(0).getDivision());
+        assertEquals(
+                RemoteProcedure.SR_ASRC_GET_PATIENT.getProcedureName(),
+                statistics.get(1).getProcedureName());
+        assertEquals(
+                RemoteProcedure.SR_ASRC_RISK_SAVE.getProcedureName(),
+                statistics.get(2).getProcedureName());
+
+        fMetrics.reset();
+        assertEquals(0, fMetrics.getStatistics().size());
+    }
+}
@@ -114,4 +114,14 @@ public class MockVistaDaoFactory implements VistaDaoFactory
     {
         return fSurgeryDao;
     }
+
+    /**
+     * Returns the same mock VistaSurgeryDao as {@link #getVistaSurgeryDao()} regardless
+     * of the given user.
+     */
+    @Override
+    public VistaSurgeryDao getVistaSurgeryDao(final String division, final String duz)
+    {
+        return fSurgeryDao;
+    }
 }
@@ -1,18 +1,65 @@
 package gov.va.med.srcalc.vista;
 
 import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
 import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.base.Optional;
 
 /**
- * A mock {@link VistaPatientDao} just for tests.
+ * A mock {@link VistaPatientDao} just for tests. Records whether it has been called
+ * during a database transaction, which would hold a database connection while waiting
+ * on VistA.
  */
 public class MockVistaPatientDao implements VistaPatientDao
 {
+    private volatile boolean fCalledInTransaction = false;
+    
+    /**
+     * Returns true if any method has been called during a database transaction.
+     */
+    public boolean wasCalledInTransaction()
+    {
+        return fCalledInTransaction;
+    }
+    
+    /**
+     * Forgets any previous calls.
+     */
+    public void reset()
+    {
+        fCalledInTransaction = false;
+    }
+    
+    private void recordCall()
+    {
+        if (TransactionSynchronizationManager.isActualTransactionActive())
+        {
+            fCalledInTransaction = true;
+        }
+    }
+    
     @Override
     public Patient getPatient(final int dfn)
     {
+        recordCall();
         return SampleCalculations.dummyPatient(dfn);
     }
+    
+    @Override
+    public Patient getPatient(final int dfn, final PatientRetrievalPlan plan)
+    {
+        return getPatient(dfn);
+    }
+    
+    @Override
+    public Patient refreshPatient(final int dfn, final PatientRetrievalPlan plan)
+    {
+        return getPatient(dfn);
+    }
 
     /**
      * Assumes the dummy result is returning a valid save.
@@ -21,7 +68,19 @@ public class MockVistaPatientDao implements VistaPatientDao
     public SaveNoteCode saveRiskCalculationNote(final int patientDfn,
             final String electronicSignature, final String noteBody)
     {
+        recordCall();
         return SaveNoteCode.SUCCESS;
     }
     
+    /**
+     * Assumes the dummy result is returning a valid save.
+     */
+    @Override
+    public Optional<NoteAndResultStatus> saveRiskCalculationNoteAndResult(
+            final SignedResult result, final String electronicSignature, final String noteBody)
+    {
+        recordCall();
+        return Optional.of(new NoteAndResultStatus(SaveNoteCode.SUCCESS, true));
+    }
+    
 }
@@ -0,0 +1,156 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.RecoverableDataAccessException;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Tests the {@link PatientCache} class.
+ */
+public class PatientCacheTest
+{
+    private static final String DIVISION = "500";
+    private static final String DUZ = "11716";
+    private static final int DFN = 123;
+
+    /**
+     * A Ticker that only moves when told to.
+     */
+    private static final class ManualTicker extends Ticker
+    {
+        private long fNanos = 0;
+
+        @Override
+        public long read()
+        {
+            return fNanos;
+        }
+
+        public void advance(final long seconds)
+        {
+            fNanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    /**
+     * A loader that counts how many times it was called.
+     */
+    private static final class CountingLoader implements Callable<Patient>
+    {
+        private final AtomicInteger fCount = new AtomicInteger();
+
+        @Override
+        public Patient call()
+        {
+            fCount.incrementAndGet();
+            return SampleCalculations.dummyPatient(DFN);
+        }
+
+        public int getCount()
+        {
+            return fCount.get();
+        }
+    }
+
+    @Test
+    public final void testCaches()
+    {
+        final PatientCache cache = new PatientCache(10, 60);
+        final CountingLoader loader = new CountingLoader();
+
+        final Patient first = cache.get(DIVISION, DFN, DUZ, loader);
+        final Patient second = cache.get(DIVISION, DFN, DUZ, loader);
+
+        assertSame(first, second);
+        assertEquals(1, loader.getCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public final void testKeyedByUserAndDivision()
+    {
+        final PatientCache cache = new PatientCache(10, 60);
+        final CountingLoader loader = new CountingLoader();
+
+        cache.get(DIVISION, DFN, DUZ, loader);
+        cache.get(DIVISION, DFN, "other DUZ", loader);
+        cache.get("605", DFN, DUZ, loader);
+        cache.get(DIVISION, DFN + 1, DUZ, loader);
+
+        assertEquals(4, loader.getCount());
+    }
+
+    @Test
+    public final void testExpires()
+    {
+        final ManualTicker ticker = new ManualTicker();
+        final PatientCache cache = new PatientCache(10, 60, ticker);
+        final CountingLoader loader = new CountingLoader();
+
+        cache.get(DIVISION, DFN, DUZ, loader);
+        ticker.advance(59);
+        cache.get(DIVISION, DFN, DUZ, loader);
+        assertEquals(1, loader.getCount());
+
+        ticker.advance(1);
+        cache.get(DIVISION, DFN, DUZ, loader);
+        assertEquals(2, loader.getCount());
+    }
+
+    @Test
+    public final void testInvalidatePatient()
+    {
+        final PatientCache cache = new PatientCache(10, 60);
+        final CountingLoader loader = new CountingLoader();
+        cache.get(DIVISION, DFN, DUZ, loader);
+        cache.get(DIVISION, DFN, "other DUZ", loader);
+        cache.get(DIVISION, DFN + 1, DUZ, loader);
+        cache.get("605", DFN, DUZ, loader);
+
+        cache.invalidatePatient(DIVISION, DFN);
+
+        // Only the other patient and division remain.
+        assertEquals(2, cache.size());
+        cache.get(DIVISION, DFN + 1, DUZ, loader);
+        cache.get("605", DFN, DUZ, loader);
+        assertEquals(4, loader.getCount());
+    }
+
+    @Test
+    public final void testLoaderException()
+    {
+        final PatientCache cache = new PatientCache(10, 60);
+        final RecoverableDataAccessException exception =
+                new RecoverableDataAccessException("VistA is down");
+        try
+        {
+            cache.get(DIVISION, DFN, DUZ, new Callable<Patient>()
+            {
+                @Override
+                public Patient call()
+                {
+                    throw exception;
+                }
+            });
+            fail("Expected an exception.");
+        }
+        catch (final DataAccessException e)
+        {
+            // The original exception, not a wrapper.
+            assertSame(exception, e);
+        }
+        // Failures are not cached.
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,91 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.PatientRetrievalPlan;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Tests the {@link PatientPrefetcher} class.
+ */
+public class PatientPrefetcherTest
+{
+    private static final int PATIENT_DFN = 500;
+    
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final MockVistaDaoFactory fDaoFactory = new MockVistaDaoFactory();
+
+    private final PatientPrefetcher fPrefetcher = new PatientPrefetcher(fDaoFactory, 2, 2);
+
+    @After
+    public void tearDown()
+    {
+        fPrefetcher.shutdown();
+    }
+
+    @Test
+    public final void testPrefetch() throws Exception
+    {
+        final Patient patient = SampleCalculations.dummyPatient(PATIENT_DFN);
+        when(fDaoFactory.getVistaPatientDao().getPatient(
+                PATIENT_DFN, PatientRetrievalPlan.MINIMAL)).thenReturn(patient);
+
+        assertSame(
+                patient,
+                fPrefetcher.prefetch(PATIENT_DFN, PatientRetrievalPlan.MINIMAL)
+                    .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public final void testLoad() throws Exception
+    {
+        final Patient patient = SampleCalculations.dummyPatient(PATIENT_DFN);
+        final Patient.Loader loader = mock(Patient.Loader.class);
+        patient.setLoader(loader, PatientRetrievalPlan.ALL);
+        final PatientRetrievalPlan vitals =
+                PatientRetrievalPlan.of(PatientRetrievalPlan.Section.VITALS);
+
+        assertSame(
+                patient,
+                fPrefetcher.load(Futures.immediateFuture(patient), vitals)
+                    .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        verify(loader).load(patient, vitals);
+    }
+
+    @Test
+    public final void testPrefetchFailure() throws Exception
+    {
+        final RecoverableDataAccessException failure =
+                new RecoverableDataAccessException("VistA unavailable");
+        when(fDaoFactory.getVistaPatientDao().getPatient(
+                PATIENT_DFN, PatientRetrievalPlan.MINIMAL)).thenThrow(failure);
+
+        try
+        {
+            fPrefetcher.prefetch(PATIENT_DFN, PatientRetrievalPlan.MINIMAL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("expected exception");
+        }
+        catch (final ExecutionException ex)
+        {
+            assertSame(failure, ex.getCause());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidThreads()
+    {
+        new PatientPrefetcher(fDaoFactory, 0, 1);
+    }
+}
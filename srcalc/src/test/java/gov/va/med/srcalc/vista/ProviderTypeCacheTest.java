@@ -0,0 +1,190 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.login.AccountExpiredException;
+import javax.security.auth.login.LoginException;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests the {@link ProviderTypeCache} class.
+ */
+public class ProviderTypeCacheTest
+{
+    private static final String DIVISION = "500";
+    private static final String DUZ = "11716";
+    private static final long REFRESH_SECONDS = 60;
+    private static final long EXPIRE_SECONDS = 120;
+
+    /**
+     * A Ticker that only moves when told to.
+     */
+    private static final class ManualTicker extends Ticker
+    {
+        private long fNanos = 0;
+
+        @Override
+        public long read()
+        {
+            return fNanos;
+        }
+
+        public void advance(final long seconds)
+        {
+            fNanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    /**
+     * A loader that returns the configured Provider Type and counts how many times it
+     * was called.
+     */
+    private static final class CountingLoader implements Callable<Optional<String>>
+    {
+        private Optional<String> fProviderType = Optional.of("Physician");
+        private boolean fFailing = false;
+        private int fCount = 0;
+
+        @Override
+        public Optional<String> call() throws LoginException
+        {
+            ++fCount;
+            if (fFailing)
+            {
+                throw new AccountExpiredException("Expired");
+            }
+            return fProviderType;
+        }
+    }
+
+    private static ProviderTypeCache newCache(final Ticker ticker)
+    {
+        // Refresh on the calling thread so that the tests are deterministic.
+        return new ProviderTypeCache(
+                10,
+                REFRESH_SECONDS,
+                EXPIRE_SECONDS,
+                ticker,
+                MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public final void testCaches() throws Exception
+    {
+        final ProviderTypeCache cache = newCache(Ticker.systemTicker());
+        final CountingLoader loader = new CountingLoader();
+
+        assertEquals(Optional.of("Physician"), cache.get(DIVISION, DUZ, loader));
+        assertEquals(Optional.of("Physician"), cache.get(DIVISION, DUZ, loader));
+        cache.get("605", DUZ, loader);
+
+        assertEquals(2, loader.fCount);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1.0 / 3.0, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public final void testCachesAbsent() throws Exception
+    {
+        final ProviderTypeCache cache = newCache(Ticker.systemTicker());
+        final CountingLoader loader = new CountingLoader();
+        loader.fProviderType = Optional.absent();
+
+        cache.get(DIVISION, DUZ, loader);
+
+        assertEquals(Optional.absent(), cache.get(DIVISION, DUZ, loader));
+        assertEquals(1, loader.fCount);
+    }
+
+    @Test
+    public final void testRefreshes() throws Exception
+    {
+        final ManualTicker ticker = new ManualTicker();
+        final ProviderTypeCache cache = newCache(ticker);
+        final CountingLoader loader = new CountingLoader();
+        cache.get(DIVISION, DUZ, loader);
+
+        loader.fProviderType = Optional.of("Nurse");
+        ticker.advance(REFRESH_SECONDS - 1);
+        assertEquals(Optional.of("Physician"), cache.get(DIVISION, DUZ, loader));
+        ticker.advance(2);
+
+        assertEquals(Optional.of("Nurse"), cache.get(DIVISION, DUZ, loader));
+        assertEquals(2, loader.fCount);
+    }
+
+    @Test
+    public final void testKeepsValueIfRefreshFails() throws Exception
+    {
+        final ManualTicker ticker = new ManualTicker();
+        final ProviderTypeCache cache = newCache(ticker);
+        final CountingLoader loader = new CountingLoader();
+        cache.get(DIVISION, DUZ, loader);
+
+        loader.fFailing = true;
+        ticker.advance(REFRESH_SECONDS + 1);
+
+        assertEquals(Optional.of("Physician"), cache.get(DIVISION, DUZ, loader));
+        assertEquals(2, loader.fCount);
+        assertEquals(1, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public final void testExpires() throws Exception
+    {
+        final ManualTicker ticker = new ManualTicker();
+        final ProviderTypeCache cache = newCache(ticker);
+        final CountingLoader loader = new CountingLoader();
+        cache.get(DIVISION, DUZ, loader);
+
+        ticker.advance(EXPIRE_SECONDS);
+        cache.get(DIVISION, DUZ, loader);
+
+        // Loaded again instead of refreshed.
+        assertEquals(2, loader.fCount);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public final void testInvalidateAll() throws Exception
+    {
+        final ProviderTypeCache cache = newCache(Ticker.systemTicker());
+        final CountingLoader loader = new CountingLoader();
+        cache.get(DIVISION, DUZ, loader);
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.getSize());
+        cache.get(DIVISION, DUZ, loader);
+        assertEquals(2, loader.fCount);
+    }
+
+    @Test
+    public final void testLoaderException() throws Exception
+    {
+        final ProviderTypeCache cache = newCache(Ticker.systemTicker());
+        final CountingLoader loader = new CountingLoader();
+        loader.fFailing = true;
+        try
+        {
+            cache.get(DIVISION, DUZ, loader);
+            fail("Expected an exception.");
+        }
+        catch (final AccountExpiredException e)
+        {
+            // The original exception, not a wrapper.
+        }
+        // Failures are not cached.
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,106 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import gov.va.med.srcalc.domain.ReferenceNote;
+import gov.va.med.srcalc.util.XmlDateAdapter;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ReferenceNotesParser} class.
+ */
+public class ReferenceNotesParserTest
+{
+    /**
+     * Three notes, most recent first, in the line format returned by the RPC.
+     */
+    private static final List<String> THREE_NOTES = Arrays.asList(
+            "<notes>",
+            "<note localTitle='Third' signDate='04/03/2004 10:00'>",
+            "<body>",
+            "<![CDATA[Third line 1]]>",
+            "<![CDATA[Third line 2]]>",
+            "</body>",
+            "</note>",
+            "<note localTitle='Second' signDate='badDate'>",
+            "<body>",
+            "<![CDATA[Second line 1]]>",
+            "</body>",
+            "</note>",
+            "<note localTitle='First' signDate='04/01/2004 22:24'><body>First</body></note>",
+            "</notes>");
+
+    private final ReferenceNotesParser fParser = new ReferenceNotesParser();
+
+    @Test
+    public final void testParseAll() throws Exception
+    {
+        final List<ReferenceNote> notes =
+                fParser.parse(THREE_NOTES, ReferenceNotesParser.ALL_NOTES);
+
+        assertEquals(3, notes.size());
+        final ReferenceNote third = notes.get(0);
+        assertEquals("Third", third.getLocalTitle());
+        assertEquals("\nThird line 1\nThird line 2\n", third.getNoteBody());
+        assertEquals(
+                XmlDateAdapter.REFERENCE_NOTE_DATE_FORMAT.parseDateTime("04/03/2004 10:00"),
+                third.getSignDate());
+        // Invalid dates are left null.
+        assertEquals("Second", notes.get(1).getLocalTitle());
+        assertNull(notes.get(1).getSignDate());
+        assertEquals("First", notes.get(2).getLocalTitle());
+        assertEquals("First", notes.get(2).getNoteBody());
+    }
+
+    @Test
+    public final void testMaxNotes() throws Exception
+    {
+        final List<ReferenceNote> notes = fParser.parse(THREE_NOTES, 2);
+
+        assertEquals(2, notes.size());
+        assertEquals("Third", notes.get(0).getLocalTitle());
+        assertEquals("Second", notes.get(1).getLocalTitle());
+    }
+
+    /**
+     * Verifies that adjacent notes on the same line are both parsed.
+     */
+    @Test
+    public final void testAdjacentNotes() throws Exception
+    {
+        final List<ReferenceNote> notes = fParser.parse(
+                Arrays.asList(
+                        "<notes><note localTitle='A'><body>a</body></note>" +
+                        "<note localTitle='B'><body>b</body></note></notes>"),
+                ReferenceNotesParser.ALL_NOTES);
+
+        assertEquals(2, notes.size());
+        assertEquals("A", notes.get(0).getLocalTitle());
+        assertEquals("B", notes.get(1).getLocalTitle());
+    }
+
+    @Test
+    public final void testNoNotes() throws Exception
+    {
+        assertEquals(
+                Collections.emptyList(),
+                fParser.parse(
+                        Arrays.asList("<notes>", "</notes>"),
+                        ReferenceNotesParser.ALL_NOTES));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public final void testMalformed() throws Exception
+    {
+        fParser.parse(
+                Arrays.asList("<notes>", "</note>"),
+                ReferenceNotesParser.ALL_NOTES);
+    }
+}
@@ -0,0 +1,80 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.io.CharStreams;
+
+/**
+ * Tests the {@link ResponseLines} class.
+ */
+public class ResponseLinesTest
+{
+    /**
+     * Verifies that {@link ResponseLines#split(String)} matches {@link String#split(String)}.
+     */
+    @Test
+    public final void testSplitLikeString()
+    {
+        for (final String buffer : Arrays.asList(
+                "", "\n", "\n\n", "a", "a\n", "a\n\n", "\na", "a\n\nb", "a\nb\n"))
+        {
+            assertEquals(
+                    "Buffer: \"" + buffer + "\"",
+                    Arrays.asList(buffer.split("\n")),
+                    ResponseLines.split(buffer));
+        }
+    }
+
+    @Test
+    public final void testLineViews()
+    {
+        final ResponseLines lines = ResponseLines.split("first^line\nsecond");
+
+        assertEquals(2, lines.size());
+        assertEquals("first^line", lines.line(0).toString());
+        assertEquals('s', lines.line(1).charAt(0));
+        assertEquals("lin", lines.line(0).subSequence(6, 9).toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void testLineOutOfBounds()
+    {
+        ResponseLines.split("a\n").line(1);
+    }
+
+    @Test
+    public final void testOf()
+    {
+        final ResponseLines split = ResponseLines.split("a\nb");
+        assertSame(split, ResponseLines.of(split));
+
+        final List<String> list = Arrays.asList("a", "b");
+        final ResponseLines wrapped = ResponseLines.of(list);
+        assertEquals(list, wrapped);
+        assertEquals("b", wrapped.line(1).toString());
+    }
+
+    @Test
+    public final void testAsReader() throws Exception
+    {
+        assertEquals("a\n\nb", read(ResponseLines.split("a\n\nb\n\n")));
+        assertEquals("a\n\nb", read(ResponseLines.of(Arrays.asList("a", "", "b"))));
+        assertEquals("", read(ResponseLines.of(Collections.<String>emptyList())));
+        assertEquals("", read(ResponseLines.split("\n")));
+    }
+
+    private static String read(final ResponseLines lines) throws Exception
+    {
+        try (final Reader reader = lines.asReader())
+        {
+            return CharStreams.toString(reader);
+        }
+    }
+}
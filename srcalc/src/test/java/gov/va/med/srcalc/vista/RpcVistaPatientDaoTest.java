@@ -1,20 +1,34 @@
 package gov.va.med.srcalc.vista;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import gov.va.med.srcalc.domain.*;
 import gov.va.med.srcalc.domain.calculation.RetrievedValue;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.vista.VistaPatientDao.SaveNoteCode;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.login.LoginException;
 
@@ -22,8 +36,15 @@ import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mockito.stubbing.OngoingStubbing;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * Tests the {@link RpcVistaPatientDao} class.
@@ -101,6 +122,15 @@ public class RpcVistaPatientDaoTest
     private final static int PATIENT_DFN = 500;
     private final static double DOUBLE_PRECISION = .001;
 
+    /**
+     * Matches any lab name groups argument to
+     * {@link VistaProcedureCaller#doRetrieveAllLabsCall(String, String, Map)}.
+     */
+    private static Map<String, List<String>> anyLabNameGroups()
+    {
+        return any();
+    }
+    
     /**
      * Creates a mock VistaProcedureCaller that returns the minimal information. Callers
      * may perform further mocking to expand the returned data.
@@ -110,6 +140,15 @@ public class RpcVistaPatientDaoTest
         try
         {
             final VistaProcedureCaller caller = mock(VistaProcedureCaller.class);
+            when(caller.getDivision()).thenReturn("500");
+            // Sessions just make their calls through the mock.
+            when(caller.openSession(anyString())).thenReturn(new DelegatingRpcSession(caller));
+            // By default, act like a site without the multi-lab Remote Procedure.
+            when(caller.doRetrieveAllLabsCall(
+                    eq(RADIOLOGIST_DUZ),
+                    eq(String.valueOf(PATIENT_DFN)),
+                    anyLabNameGroups()))
+                .thenThrow(new RemoteProcedureUnavailableException("Not installed", null));
             // Anything besides a valid measurement is returned as an empty string
             when(caller.doRetrieveLabsCall(
                     eq(RADIOLOGIST_DUZ), eq(String.valueOf(PATIENT_DFN)), anyListOf(String.class)))
@@ -157,6 +196,28 @@ public class RpcVistaPatientDaoTest
         assertEquals(50, patient.getAge());
     }
     
+    /**
+     * Verifies that each retrieval makes its calls through its own session.
+     */
+    @Test
+    public final void testRetrievesInSession() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        final Closeable sessionResource = mock(Closeable.class);
+        when(caller.openSession(RADIOLOGIST_DUZ))
+            .thenReturn(new DelegatingRpcSession(caller, sessionResource));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        final Patient patient = dao.getPatient(PATIENT_DFN, PatientRetrievalPlan.MINIMAL);
+        verify(caller, times(1)).openSession(RADIOLOGIST_DUZ);
+        verify(sessionResource, times(1)).close();
+        
+        // Loading on demand opens another session.
+        patient.getLabs();
+        verify(caller, times(2)).openSession(RADIOLOGIST_DUZ);
+        verify(sessionResource, times(2)).close();
+    }
+    
     @Test
     public final void testSaveNoteInvalidSignature() throws Exception
     {
@@ -186,6 +247,141 @@ public class RpcVistaPatientDaoTest
                 dao.saveRiskCalculationNote(PATIENT_DFN, ELECTRONIC_SIGNATURE, DUMMY_BODY));
     }
     
+    /**
+     * Stubs {@link VistaProcedureCaller#doSignAndSaveCall} on the given mock caller.
+     */
+    private static OngoingStubbing<List<String>> whenSignAndSave(
+            final VistaProcedureCaller caller) throws LoginException
+    {
+        return when(caller.doSignAndSaveCall(
+                anyString(),
+                anyString(),
+                anyString(),
+                anyListOf(String.class),
+                anyString(),
+                anyString(),
+                anyListOf(String.class)));
+    }
+    
+    @Test
+    public final void testSignAndSave() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        whenSignAndSave(caller).thenReturn(ImmutableList.of(
+                RemoteProcedure.VALID_SIGNATURE_RETURN, RemoteProcedure.RISK_SAVED_RETURN));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        final SignedResult result = SampleCalculations.thoracicResult().signed();
+        
+        assertEquals(
+                Optional.of(new NoteAndResultStatus(SaveNoteCode.SUCCESS, true)),
+                dao.saveRiskCalculationNoteAndResult(result, ELECTRONIC_SIGNATURE, DUMMY_BODY));
+        verify(caller).doSignAndSaveCall(
+                eq(RADIOLOGIST_DUZ),
+                anyString(),
+                eq(String.valueOf(result.getPatientDfn())),
+                eq(ImmutableList.of(DUMMY_BODY, "")),
+                eq(RpcVistaSurgeryDao.formatCptCode(result)),
+                eq(RpcVistaSurgeryDao.formatSignatureTimestamp(result)),
+                eq(RpcVistaSurgeryDao.formatOutcomes(result)));
+        verify(caller, never()).doSaveProgressNoteCall(
+                anyString(), anyString(), anyString(), anyListOf(String.class));
+    }
+    
+    @Test
+    public final void testSignAndSaveInvalidSignature() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        // VistA does not save the result without a signed note.
+        whenSignAndSave(caller).thenReturn(ImmutableList.of(INVALID_SIGNATURE_RETURN, ""));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        assertEquals(
+                Optional.of(new NoteAndResultStatus(SaveNoteCode.INVALID_SIGNATURE, false)),
+                dao.saveRiskCalculationNoteAndResult(
+                        SampleCalculations.thoracicResult().signed(), "BadSig", DUMMY_BODY));
+    }
+    
+    @Test
+    public final void testSignAndSaveRejectedResult() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        whenSignAndSave(caller).thenReturn(ImmutableList.of(
+                RemoteProcedure.VALID_SIGNATURE_RETURN,
+                "0^Risk probability is not a valid percentage."));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        // The note is signed anyway, so the caller must know to save the result.
+        assertEquals(
+                Optional.of(new NoteAndResultStatus(SaveNoteCode.SUCCESS, false)),
+                dao.saveRiskCalculationNoteAndResult(
+                        SampleCalculations.thoracicResult().signed(),
+                        ELECTRONIC_SIGNATURE,
+                        DUMMY_BODY));
+    }
+    
+    @Test
+    public final void testSignAndSaveMissingResult() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        whenSignAndSave(caller).thenReturn(
+                ImmutableList.of(RemoteProcedure.VALID_SIGNATURE_RETURN));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        assertEquals(
+                Optional.of(new NoteAndResultStatus(SaveNoteCode.SUCCESS, false)),
+                dao.saveRiskCalculationNoteAndResult(
+                        SampleCalculations.thoracicResult().signed(),
+                        ELECTRONIC_SIGNATURE,
+                        DUMMY_BODY));
+    }
+    
+    @Test
+    public final void testSignAndSaveFallback() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.getDivision()).thenReturn("signAndSaveFallback");
+        whenSignAndSave(caller)
+            .thenThrow(new RemoteProcedureUnavailableException("Not installed", null));
+        final SignedResult result = SampleCalculations.thoracicResult().signed();
+        
+        // The first save discovers the Remote Procedure is unavailable...
+        assertEquals(
+                Optional.<NoteAndResultStatus>absent(),
+                new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ)
+                    .saveRiskCalculationNoteAndResult(result, ELECTRONIC_SIGNATURE, DUMMY_BODY));
+        // ... and the second doesn't try it again.
+        assertEquals(
+                Optional.<NoteAndResultStatus>absent(),
+                new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ)
+                    .saveRiskCalculationNoteAndResult(result, ELECTRONIC_SIGNATURE, DUMMY_BODY));
+        verify(caller, times(1)).doSignAndSaveCall(
+                anyString(),
+                anyString(),
+                anyString(),
+                anyListOf(String.class),
+                anyString(),
+                anyString(),
+                anyListOf(String.class));
+    }
+    
+    @Test
+    public final void testExpiringDivisionSet()
+    {
+        final Ticker ticker = mock(Ticker.class);
+        when(ticker.read()).thenReturn(0L);
+        final Set<String> divisions = RpcVistaPatientDao.newExpiringDivisionSet(ticker);
+        divisions.add("500");
+        final long expiry = TimeUnit.MINUTES.toNanos(
+                RpcVistaPatientDao.PROCEDURE_RECHECK_MINUTES);
+        
+        // The division is remembered for a while...
+        when(ticker.read()).thenReturn(expiry - 1);
+        assertTrue(divisions.contains("500"));
+        // ... and then the Remote Procedure is tried again.
+        when(ticker.read()).thenReturn(expiry);
+        assertFalse(divisions.contains("500"));
+    }
+    
     @Test
     public final void testLabRetrievalFailure() throws Exception
     {
@@ -497,4 +693,249 @@ public class RpcVistaPatientDaoTest
         assertEquals(null, patient.getHeight());
         assertEquals(null, patient.getBmi());
     }
+    
+    @Test
+    public final void testConcurrentRetrieval() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.doRpc(
+                RADIOLOGIST_DUZ, RemoteProcedure.GMV_LATEST_VM, String.valueOf(PATIENT_DFN)))
+            .thenReturn(FULL_VITALS);
+        when(caller.doRpc(
+                eq(RADIOLOGIST_DUZ), eq(RemoteProcedure.GMV_EXTRACT_REC), anyString()))
+            .thenReturn(VALID_WEIGHT_6_MONTHS_AGO);
+        when(caller.doRetrieveLabsCall(
+                RADIOLOGIST_DUZ, 
+                String.valueOf(PATIENT_DFN),
+                VistaLabs.ALBUMIN.getPossibleLabNames()))
+            .thenReturn(ALBUMIN_SUCCESS);
+        when(caller.doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_HEALTH_FACTORS,
+                String.valueOf(PATIENT_DFN)))
+            .thenReturn(VALID_HEALTH_FACTORS);
+        when(caller.doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_ACTIVE_MEDS,
+                String.valueOf(PATIENT_DFN)))
+            .thenReturn(VALID_ACTIVE_MEDICATIONS);
+        when(caller.doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_ADL_NOTES,
+                String.valueOf(PATIENT_DFN),
+                ADL_ENTERPRISE_TITLE))
+            .thenReturn(VALID_ADL_NOTES);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final Patient sequential =
+                    new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ).getPatient(PATIENT_DFN);
+            final Patient concurrent =
+                    new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ, executor, 10000)
+                    .getPatient(PATIENT_DFN);
+            
+            // RetrievedValue does not implement equals(), so compare the values.
+            assertEquals(178.0, concurrent.getWeight().getValue(), DOUBLE_PRECISION);
+            assertEquals(190.0, concurrent.getWeight6MonthsAgo().getValue(), DOUBLE_PRECISION);
+            assertEquals(71.0, concurrent.getHeight().getValue(), DOUBLE_PRECISION);
+            assertEquals(24.88, concurrent.getBmi().getValue(), DOUBLE_PRECISION);
+            assertEquals(sequential.getLabs().keySet(), concurrent.getLabs().keySet());
+            assertEquals(
+                    3.0, concurrent.getLabs().get(VistaLabs.ALBUMIN).getValue(), DOUBLE_PRECISION);
+            assertEquals(sequential.getHealthFactors(), concurrent.getHealthFactors());
+            assertEquals(sequential.getActiveMedications(), concurrent.getActiveMedications());
+            assertEquals(1, concurrent.getAdlNotes().size());
+            assertEquals(VALID_NOTE_BODY, concurrent.getAdlNotes().get(0).getNoteBody());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public final void testConcurrentRetrievalTimeout() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.doRetrieveLabsCall(
+                RADIOLOGIST_DUZ, 
+                String.valueOf(PATIENT_DFN),
+                VistaLabs.ALBUMIN.getPossibleLabNames()))
+            .thenReturn(ALBUMIN_SUCCESS);
+        // Simulate a hung call.
+        when(caller.doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_ACTIVE_MEDS,
+                String.valueOf(PATIENT_DFN)))
+            .thenAnswer(new Answer<List<String>>()
+            {
+                @Override
+                public List<String> answer(final InvocationOnMock invocation)
+                        throws InterruptedException
+                {
+                    Thread.sleep(60000);
+                    return VALID_ACTIVE_MEDICATIONS;
+                }
+            });
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final RpcVistaPatientDao dao =
+                    new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ, executor, 500);
+            final long start = System.currentTimeMillis();
+            final Patient patient = dao.getPatient(PATIENT_DFN);
+            
+            // The hung section is abandoned and left empty...
+            assertTrue(System.currentTimeMillis() - start < 30000);
+            assertEquals(Collections.<String>emptyList(), patient.getActiveMedications());
+            // ... but the other sections are still populated.
+            assertEquals(1, patient.getLabs().size());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public final void testMultiLabRetrieval() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.getDivision()).thenReturn("multiLab");
+        when(caller.doRetrieveAllLabsCall(
+                eq(RADIOLOGIST_DUZ),
+                eq(String.valueOf(PATIENT_DFN)),
+                anyLabNameGroups()))
+            .thenReturn(ImmutableList.of(
+                    "ALBUMIN^" + ALBUMIN_SUCCESS,
+                    "BUN^" + INVALID_LAB,
+                    "NOT_A_LAB^" + ALBUMIN_SUCCESS));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        final Patient patient = dao.getPatient(PATIENT_DFN);
+        
+        // Invalid lines are skipped.
+        assertEquals(1, patient.getLabs().size());
+        final RetrievedValue value = patient.getLabs().get(VistaLabs.ALBUMIN);
+        assertEquals(3.0, value.getValue(), .0001);
+        assertEquals(new DateTime(2015, 2, 2, 14, 35, 12, 0).toDate(), value.getMeasureDate());
+        assertEquals("g/dl", value.getUnits());
+        verify(caller, never()).doRetrieveLabsCall(
+                anyString(), anyString(), anyListOf(String.class));
+    }
+    
+    @Test
+    public final void testMultiLabNoResults() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.getDivision()).thenReturn("multiLabEmpty");
+        when(caller.doRetrieveAllLabsCall(
+                eq(RADIOLOGIST_DUZ),
+                eq(String.valueOf(PATIENT_DFN)),
+                anyLabNameGroups()))
+            .thenReturn(ImmutableList.of(""));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        assertEquals(0, dao.getPatient(PATIENT_DFN).getLabs().size());
+    }
+    
+    @Test
+    public final void testMultiLabFallback() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.getDivision()).thenReturn("multiLabFallback");
+        when(caller.doRetrieveLabsCall(
+                RADIOLOGIST_DUZ, 
+                String.valueOf(PATIENT_DFN),
+                VistaLabs.ALBUMIN.getPossibleLabNames()))
+            .thenReturn(ALBUMIN_SUCCESS);
+        
+        // The first retrieval discovers the Remote Procedure is unavailable...
+        final Patient first = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ)
+            .getPatient(PATIENT_DFN);
+        // ... and the second doesn't try it again.
+        final Patient second = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ)
+            .getPatient(PATIENT_DFN);
+        
+        assertEquals(1, first.getLabs().size());
+        assertEquals(1, second.getLabs().size());
+        verify(caller, times(1)).doRetrieveAllLabsCall(
+                eq(RADIOLOGIST_DUZ),
+                eq(String.valueOf(PATIENT_DFN)),
+                anyLabNameGroups());
+        verify(caller, times(2 * VistaLabs.values().length)).doRetrieveLabsCall(
+                anyString(), anyString(), anyListOf(String.class));
+    }
+    
+    @Test
+    public final void testSelectiveRetrieval() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.getDivision()).thenReturn("selective");
+        when(caller.doRetrieveAllLabsCall(
+                eq(RADIOLOGIST_DUZ),
+                eq(String.valueOf(PATIENT_DFN)),
+                anyLabNameGroups()))
+            .thenReturn(ImmutableList.of("ALBUMIN^" + ALBUMIN_SUCCESS));
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        final PatientRetrievalPlan plan = PatientRetrievalPlan.MINIMAL.union(
+                PatientRetrievalPlan.ofLab(VistaLabs.ALBUMIN));
+        
+        final Patient patient = dao.getPatient(PATIENT_DFN, plan);
+        
+        // Only the planned sections were retrieved...
+        verify(caller).doRetrieveAllLabsCall(
+                RADIOLOGIST_DUZ,
+                String.valueOf(PATIENT_DFN),
+                ImmutableMap.of(
+                        VistaLabs.ALBUMIN.name(), VistaLabs.ALBUMIN.getPossibleLabNames()));
+        verify(caller).doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_HEALTH_FACTORS,
+                String.valueOf(PATIENT_DFN));
+        verify(caller).doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_ACTIVE_MEDS,
+                String.valueOf(PATIENT_DFN));
+        verify(caller, never()).doRpc(
+                RADIOLOGIST_DUZ, RemoteProcedure.GMV_LATEST_VM, String.valueOf(PATIENT_DFN));
+        verify(caller, never()).doRpc(
+                RADIOLOGIST_DUZ,
+                RemoteProcedure.SR_ASRC_ADL_NOTES,
+                String.valueOf(PATIENT_DFN),
+                ADL_ENTERPRISE_TITLE);
+        assertEquals(PatientRetrievalPlan.ALL.minus(plan), patient.getUnloaded());
+        // ... and the planned lab was retrieved without another call.
+        assertEquals(3.0, patient.getLab(VistaLabs.ALBUMIN).getValue(), .0001);
+        verify(caller, times(1)).doRetrieveAllLabsCall(
+                eq(RADIOLOGIST_DUZ),
+                eq(String.valueOf(PATIENT_DFN)),
+                anyLabNameGroups());
+    }
+    
+    @Test
+    public final void testLoadOnDemand() throws Exception
+    {
+        final VistaProcedureCaller caller = mockVistaProcedureCaller();
+        when(caller.doRpc(
+                RADIOLOGIST_DUZ, RemoteProcedure.GMV_LATEST_VM, String.valueOf(PATIENT_DFN)))
+            .thenReturn(FULL_VITALS);
+        when(caller.doRpc(
+                eq(RADIOLOGIST_DUZ), eq(RemoteProcedure.GMV_EXTRACT_REC), anyString()))
+            .thenReturn(NO_RESULT_6_MONTHS_AGO);
+        final RpcVistaPatientDao dao = new RpcVistaPatientDao(caller, RADIOLOGIST_DUZ);
+        
+        final Patient patient = dao.getPatient(PATIENT_DFN, PatientRetrievalPlan.NONE);
+        verify(caller, never()).doRpc(
+                RADIOLOGIST_DUZ, RemoteProcedure.GMV_LATEST_VM, String.valueOf(PATIENT_DFN));
+        
+        // Accessing the vitals loads them, but only once.
+        assertEquals(178.0, patient.getWeight().getValue(), DOUBLE_PRECISION);
+        assertEquals(71.0, patient.getHeight().getValue(), DOUBLE_PRECISION);
+        verify(caller, times(1)).doRpc(
+                RADIOLOGIST_DUZ, RemoteProcedure.GMV_LATEST_VM, String.valueOf(PATIENT_DFN));
+        assertEquals(
+                ImmutableSet.of(PatientRetrievalPlan.Section.VITALS),
+                PatientRetrievalPlan.ALL.minus(patient.getUnloaded()).getSections());
+    }
 }
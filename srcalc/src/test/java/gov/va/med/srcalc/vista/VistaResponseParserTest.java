@@ -0,0 +1,296 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.calculation.RetrievedValue;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the {@link VistaResponseParser} class.
+ */
+public class VistaResponseParserTest
+{
+    private static final double DOUBLE_PRECISION = .001;
+
+    /**
+     * The number of mutated responses to parse in {@link #testFuzz()}.
+     */
+    private static final int FUZZ_ITERATIONS = 20000;
+
+    /**
+     * Characters likely to confuse the parser when inserted.
+     */
+    private static final String FUZZ_CHARACTERS = "0123456789^/@:.*-+() \tabcXYZ";
+
+    private static final List<String> FULL_VITALS = ImmutableList.of(
+            "Temp.:       (03/05/10@09:00)  98.5 F  (36.9 C)  _NURSE,ONE_Vitals",
+            "Pulse:       (03/05/10@09:00)  74  _NURSE,ONE_Vitals",
+            "Ht.:         (08/24/09@14:00)  5 ft 11 in (180.34 cm)  _NURSE,ONE_Vitals",
+            "Wt.:         (03/05/10@09:00)  178 lb  (80.74 kg)  _NURSE,ONE",
+            "Body Mass Index:             24.88  _Vitals",
+            "Pain:        (03/05/10@09:00)  1  _NURSE,ONE_Vitals");
+
+    private static final List<String> PARTIAL_VITALS = ImmutableList.of(
+            "Ht.:         (01/02/02@08:00)  6 ft  (182.88 cm)  _LABTECH,FIFTYNINE_Vitals",
+            "Wt.:         (03/21/10@08:00)  208 lb  (94.35 kg)  _LABTECH,FIFTYNINE",
+            "Body Mass Index:             28.27*  _Vitals");
+
+    private static final List<String> WEIGHTS = ImmutableList.of(
+            "21557^04/17/09@12:00   Wt:   185.00 lb (84.09 kg)  _NURSE,ONE",
+            "@12:00   Body Mass Index:   25.86",
+            "22296^08/24/09@14:00   Wt:   190.00 lb (86.36 kg)  _NURSE,ONE",
+            "@14:00   Body Mass Index:   26.56");
+
+    private static final String LAB_RESULT = "ALBUMIN^3.0^02/02/2015@14:35:12^g/dl";
+
+    private static final String HEALTH_FACTOR = "08/25/2014^REFUSED INFLUENZA IMMUNIZATION";
+
+    private static Date date(
+            final int year, final int month, final int day, final int hour, final int minute)
+    {
+        return new DateTime(year, month, day, hour, minute).toDate();
+    }
+
+    private static Patient newPatient()
+    {
+        return new Patient(1, "TESTPATIENT", Patient.Gender.Male, 50);
+    }
+
+    @Test
+    public final void testParseLatestVitals()
+    {
+        final Patient patient = newPatient();
+        VistaResponseParser.parseLatestVitals(FULL_VITALS, patient);
+
+        assertEquals(71.0, patient.getHeight().getValue(), DOUBLE_PRECISION);
+        assertEquals(date(2009, 8, 24, 14, 0), patient.getHeight().getMeasureDate());
+        assertEquals(178.0, patient.getWeight().getValue(), DOUBLE_PRECISION);
+        assertEquals(date(2010, 3, 5, 9, 0), patient.getWeight().getMeasureDate());
+        assertEquals(24.88, patient.getBmi().getValue(), DOUBLE_PRECISION);
+        assertEquals(date(2010, 3, 5, 9, 0), patient.getBmi().getMeasureDate());
+    }
+
+    @Test
+    public final void testParsePartialVitals()
+    {
+        final Patient patient = newPatient();
+        VistaResponseParser.parseLatestVitals(PARTIAL_VITALS, patient);
+
+        assertEquals(72.0, patient.getHeight().getValue(), DOUBLE_PRECISION);
+        assertEquals(date(2002, 1, 2, 8, 0), patient.getHeight().getMeasureDate());
+        assertEquals(208.0, patient.getWeight().getValue(), DOUBLE_PRECISION);
+        assertEquals(28.27, patient.getBmi().getValue(), DOUBLE_PRECISION);
+    }
+
+    @Test
+    public final void testParseInvalidVitals()
+    {
+        final Patient patient = newPatient();
+        VistaResponseParser.parseLatestVitals(ImmutableList.of(
+                "Wt.: (Invalid Date) 1 value Name,Nurse",
+                "Body Mass Index:             24.88  _Vitals"), patient);
+
+        assertNull(patient.getWeight());
+        // The BMI takes its date from the weight.
+        assertNull(patient.getBmi());
+    }
+
+    @Test
+    public final void testParseWeight()
+    {
+        final Optional<RetrievedValue> weight = VistaResponseParser.parseWeight(WEIGHTS);
+
+        assertEquals(190.0, weight.get().getValue(), DOUBLE_PRECISION);
+        assertEquals(date(2009, 8, 24, 14, 0), weight.get().getMeasureDate());
+        assertEquals("lbs.", weight.get().getUnits());
+        assertFalse(VistaResponseParser.parseWeight(ImmutableList.of(
+                "0^NO WEIGHT ENTERED WITHIN THIS PERIOD")).isPresent());
+    }
+
+    @Test
+    public final void testParseLabResult()
+    {
+        final RetrievedValue value = VistaResponseParser.parseLabResult(LAB_RESULT).get();
+
+        assertEquals(3.0, value.getValue(), DOUBLE_PRECISION);
+        assertEquals(new DateTime(2015, 2, 2, 14, 35, 12, 0).toDate(), value.getMeasureDate());
+        assertEquals("g/dl", value.getUnits());
+        assertFalse(VistaResponseParser.parseLabResult("This is invalid. ~@!#$").isPresent());
+        assertFalse(VistaResponseParser.parseLabResult(
+                "ALBUMIN^3.0^02/30/2015@14:35:12^g/dl").isPresent());
+    }
+
+    @Test
+    public final void testParseDate()
+    {
+        assertEquals(new LocalDate(2014, 8, 25), VistaResponseParser.parseDate("08/25/2014"));
+        assertEquals(new LocalDate(2014, 8, 25), VistaResponseParser.parseDate("08/25/14"));
+        assertEquals(new LocalDate(2012, 2, 29), VistaResponseParser.parseDate("02/29/12"));
+        assertNull(VistaResponseParser.parseDate("02/29/13"));
+        assertNull(VistaResponseParser.parseDate("13/01/14"));
+        assertNull(VistaResponseParser.parseDate("1/1/2014"));
+    }
+
+    @Test
+    public final void testParseDateTime()
+    {
+        assertEquals(date(2010, 3, 5, 9, 0), VistaResponseParser.parseDateTime("03/05/10@09:00"));
+        // VistA uses 24:00 for the end of the day.
+        assertEquals(
+                date(2010, 3, 6, 0, 0), VistaResponseParser.parseDateTime("03/05/10@24:00"));
+        assertNull(VistaResponseParser.parseDateTime("03/05/10@25:00"));
+        assertNull(VistaResponseParser.parseDateTime("03/05/10 09:00"));
+    }
+
+    /**
+     * Verifies that {@link VistaResponseParser#parseDateTime(CharSequence)} agrees with
+     * {@link VistaResponseParser#DATE_TIME_FORMAT} for random date-times.
+     */
+    @Test
+    public final void testDateTimeRoundTrip()
+    {
+        final Random random = new Random(42);
+        final DateTimeFormatter format = VistaResponseParser.DATE_TIME_FORMAT;
+        final LocalDateTime start = new LocalDateTime(2000, 1, 1, 0, 0);
+        for (int i = 0; i < 1000; ++i)
+        {
+            final Date expected = start.plusMinutes(random.nextInt(20 * 365 * 24 * 60))
+                    .toDate();
+            final String text = format.print(expected.getTime());
+            assertEquals(text, expected, VistaResponseParser.parseDateTime(text));
+        }
+    }
+
+    @Test
+    public final void testParseNumbers()
+    {
+        assertEquals(28.27, VistaResponseParser.parseDecimal("28.27*"), DOUBLE_PRECISION);
+        assertEquals(-1.5, VistaResponseParser.parseDecimal("-1.5"), DOUBLE_PRECISION);
+        assertTrue(Double.isNaN(VistaResponseParser.parseDecimal("")));
+        assertTrue(Double.isNaN(VistaResponseParser.parseDecimal(".")));
+        assertTrue(Double.isNaN(VistaResponseParser.parseDecimal("1.2.3")));
+        assertTrue(Double.isNaN(VistaResponseParser.parseDecimal("1-2")));
+        assertEquals(11, VistaResponseParser.parseNonNegativeInt("11*"));
+        assertEquals(-1, VistaResponseParser.parseNonNegativeInt("(180.34"));
+        assertEquals(-1, VistaResponseParser.parseNonNegativeInt("99999999999"));
+    }
+
+    @Test
+    public final void testSplitWhitespace()
+    {
+        final List<CharSequence> words =
+                VistaResponseParser.splitWhitespace("  5 ft\t11 in (180.34 cm) ");
+
+        assertEquals(6, words.size());
+        assertEquals("5", words.get(0).toString());
+        assertEquals("cm)", words.get(5).toString());
+        assertTrue(VistaResponseParser.splitWhitespace("   ").isEmpty());
+    }
+
+    @Test
+    public final void testToFileManDate()
+    {
+        assertEquals("3150202", VistaResponseParser.toFileManDate(new LocalDate(2015, 2, 2)));
+        assertEquals("2991231", VistaResponseParser.toFileManDate(new LocalDate(1999, 12, 31)));
+    }
+
+    /**
+     * Returns the given line with a random mutation: a deleted, replaced, or inserted
+     * character, or truncation.
+     */
+    private static String mutate(final Random random, final String line)
+    {
+        final StringBuilder mutated = new StringBuilder(line);
+        final int position = mutated.length() == 0 ? 0 : random.nextInt(mutated.length());
+        final char c = FUZZ_CHARACTERS.charAt(random.nextInt(FUZZ_CHARACTERS.length()));
+        switch (random.nextInt(4))
+        {
+            case 0:
+                if (mutated.length() > 0)
+                {
+                    mutated.deleteCharAt(position);
+                }
+                break;
+            case 1:
+                if (mutated.length() > 0)
+                {
+                    mutated.setCharAt(position, c);
+                }
+                break;
+            case 2:
+                mutated.insert(position, c);
+                break;
+            default:
+                mutated.setLength(position);
+                break;
+        }
+        return mutated.toString();
+    }
+
+    private static List<String> mutate(final Random random, final List<String> lines)
+    {
+        final List<String> mutated = new ArrayList<>(lines);
+        // Apply a few mutations to random lines.
+        for (int i = random.nextInt(3); i >= 0; --i)
+        {
+            final int index = random.nextInt(mutated.size());
+            mutated.set(index, mutate(random, mutated.get(index)));
+        }
+        return mutated;
+    }
+
+    /**
+     * Parses randomly-mutated copies of recorded VistA responses to verify that malformed
+     * input never causes an exception and never produces an impossible value.
+     */
+    @Test
+    public final void testFuzz()
+    {
+        // Use a fixed seed so that any failure is reproducible.
+        final Random random = new Random(20151019L);
+        final DateTimeFormatter labFormat = DateTimeFormat.forPattern("MM/dd/yyyy@HH:mm:ss");
+        for (int i = 0; i < FUZZ_ITERATIONS; ++i)
+        {
+            final Patient patient = newPatient();
+            VistaResponseParser.parseLatestVitals(
+                    mutate(random, random.nextBoolean() ? FULL_VITALS : PARTIAL_VITALS),
+                    patient);
+            if (patient.getBmi() != null)
+            {
+                assertNotNull(patient.getWeight());
+            }
+            if (patient.getHeight() != null)
+            {
+                assertFalse(Double.isNaN(patient.getHeight().getValue()));
+            }
+
+            VistaResponseParser.parseWeight(mutate(random, WEIGHTS));
+
+            final String lab = mutate(random, LAB_RESULT);
+            final Optional<RetrievedValue> labValue = VistaResponseParser.parseLabResult(lab);
+            if (labValue.isPresent())
+            {
+                // Any date accepted must be one the strict formatter also accepts.
+                labFormat.parseDateTime(CaretPieces.of(lab).getString(2));
+            }
+
+            final String healthFactor = mutate(random, HEALTH_FACTOR);
+            VistaResponseParser.parseDate(CaretPieces.of(healthFactor).get(0));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package gov.va.med.srcalc.vista;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link VistaRpcExecutors} class.
+ */
+public class VistaRpcExecutorsTest
+{
+    private VistaRpcExecutors fExecutors;
+
+    @Before
+    public void setup()
+    {
+        fExecutors = new VistaRpcExecutors(2, 10, 5000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        fExecutors.shutdown();
+    }
+
+    @Test
+    public final void testPerDivision() throws Exception
+    {
+        final ExecutorService executor500 = fExecutors.getExecutor("500");
+
+        assertSame(executor500, fExecutors.getExecutor("500"));
+        assertNotSame(executor500, fExecutors.getExecutor("605"));
+        final String threadName = executor500.submit(new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                return Thread.currentThread().getName();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertTrue(threadName.startsWith(VistaRpcExecutors.THREAD_NAME_PREFIX + "500-"));
+    }
+
+    @Test
+    public final void testShutdown()
+    {
+        final ExecutorService executor = fExecutors.getExecutor("500");
+
+        fExecutors.shutdown();
+
+        assertTrue(executor.isShutdown());
+        try
+        {
+            fExecutors.getExecutor("500");
+            fail("Expected an IllegalStateException.");
+        }
+        catch (final IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidThreads()
+    {
+        new VistaRpcExecutors(0, 10, 5000);
+    }
+}
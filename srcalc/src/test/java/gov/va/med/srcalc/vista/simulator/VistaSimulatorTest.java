@@ -0,0 +1,176 @@
+package gov.va.med.srcalc.vista.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.security.auth.login.FailedLoginException;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.VistaLabs;
+import gov.va.med.srcalc.domain.VistaPerson;
+import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RemoteProcedureUnavailableException;
+import gov.va.med.srcalc.vista.RpcVistaPatientDao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests the {@link VistaSimulator} class and the simulated VistA objects which use it.
+ */
+public class VistaSimulatorTest
+{
+    private static final String DUZ = "11716";
+
+    private VistaSimulator fSimulator;
+
+    private SimulatedVistaProcedureCaller fCaller;
+
+    @Before
+    public void setup() throws Exception
+    {
+        fSimulator = new VistaSimulator(
+                RecordedResponses.fromClasspath(RecordedResponses.DEFAULT_DIRECTORY),
+                new SyntheticPatients(1));
+        fCaller = new SimulatedVistaProcedureCaller(fSimulator, "500");
+    }
+
+    @Test
+    public final void testReplaysRecordings() throws Exception
+    {
+        final List<String> vitals = fCaller.doRpc(DUZ, RemoteProcedure.GMV_LATEST_VM, "1");
+        assertTrue(vitals.get(0).startsWith("Temp.:"));
+        assertEquals("500", fCaller.getDivision());
+    }
+
+    @Test(expected = RemoteProcedureUnavailableException.class)
+    public final void testNoRecording() throws Exception
+    {
+        final VistaSimulator simulator = new VistaSimulator(
+                new RecordedResponses(Collections.<RemoteProcedure, List<String>>emptyMap()),
+                new SyntheticPatients(1));
+        simulator.respond(DUZ, RemoteProcedure.GMV_LATEST_VM, "1");
+    }
+
+    @Test
+    public final void testSyntheticPatientsDeterministic()
+    {
+        final SyntheticPatients patients = new SyntheticPatients(1);
+        final SyntheticPatients samePatients = new SyntheticPatients(1);
+
+        assertEquals(patients.getPatientLines("42"), samePatients.getPatientLines("42"));
+        assertTrue(patients.getPatientLines("42").get(0).startsWith("SIMULATED,PATIENT42^"));
+        final List<String> albumin = VistaLabs.ALBUMIN.getPossibleLabNames();
+        assertEquals(
+                patients.getLabResult("42", albumin),
+                samePatients.getLabResult("42", albumin));
+        // The multi-lab result for a group matches the single lab result.
+        final String albuminResult = patients.getLabResult("42", albumin);
+        final List<String> allLabs = patients.getAllLabResults(
+                "42", ImmutableMap.of(VistaLabs.ALBUMIN.name(), albumin));
+        if (albuminResult.isEmpty())
+        {
+            assertEquals(Arrays.asList(""), allLabs);
+        }
+        else
+        {
+            assertEquals(Arrays.asList("ALBUMIN^" + albuminResult), allLabs);
+        }
+    }
+
+    @Test
+    public final void testInjectsErrors() throws Exception
+    {
+        fSimulator.setLatencies(ImmutableMap.of(
+                RemoteProcedure.SR_ASRC_RISK_SAVE, new LatencyModel(0, 0.0, 1.0)));
+
+        // Other procedures still succeed.
+        assertEquals(
+                RemoteProcedure.VALID_SIGNATURE_RETURN,
+                fCaller.doSaveProgressNoteCall(DUZ, "sig", "1", Arrays.asList("note")));
+        try
+        {
+            fCaller.doSaveRiskCalculationCall(DUZ, "1", "", "01/01/2016@1200", Arrays.asList("x"));
+            fail("Expected a RecoverableDataAccessException.");
+        }
+        catch (final RecoverableDataAccessException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testInjectsLatency() throws Exception
+    {
+        fSimulator.setDefaultLatency(new LatencyModel(50, 0.0, 0.0));
+
+        final long start = System.nanoTime();
+        fCaller.doRetrieveLabsCall(DUZ, "1", VistaLabs.ALBUMIN.getPossibleLabNames());
+        assertTrue(System.nanoTime() - start >= 50 * 1000 * 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidLatencyModel()
+    {
+        new LatencyModel(100, 0.5, 1.5);
+    }
+
+    @Test
+    public final void testLoadsPatient()
+    {
+        final Patient patient = new RpcVistaPatientDao(fCaller, DUZ).getPatient(1234);
+
+        assertEquals(1234, patient.getDfn());
+        assertEquals("SIMULATED,PATIENT1234", patient.getName());
+        assertNotNull(patient.getHeight());
+        assertNotNull(patient.getWeight());
+        assertFalse(patient.getLabs().isEmpty());
+        assertEquals(2, patient.getActiveMedications().size());
+        assertEquals(1, patient.getAdlNotes().size());
+    }
+
+    /**
+     * Measures the connections saved by loading a patient in one session.
+     */
+    @Test
+    public final void testSessionReducesConnections() throws Exception
+    {
+        final long start = fSimulator.getConnectionCount();
+        new RpcVistaPatientDao(fCaller, DUZ).getPatient(1234);
+        assertEquals(1, fSimulator.getConnectionCount() - start);
+        
+        // Outside of a session, each call makes its own connection.
+        fCaller.doRpc(DUZ, RemoteProcedure.SR_ASRC_GET_PATIENT, "1234");
+        fCaller.doRpc(DUZ, RemoteProcedure.GMV_LATEST_VM, "1234");
+        assertEquals(3, fSimulator.getConnectionCount() - start);
+    }
+
+    @Test
+    public final void testAuthenticates() throws Exception
+    {
+        final SimulatedVistaAuthenticator authenticator =
+                new SimulatedVistaAuthenticator(fCaller);
+
+        final VistaPerson person =
+                authenticator.authenticateViaAccessVerify("12345", "verify", "127.0.0.1");
+        assertEquals("500", person.getStationNumber());
+        assertEquals("12345", person.getDuz());
+        assertEquals(VistaSimulator.DEFAULT_PROVIDER_TYPE, person.getProviderType().get());
+        // Non-numeric credentials map to a stable DUZ.
+        assertEquals(
+                authenticator.authenticateViaCcowToken("token", "127.0.0.1").getDuz(),
+                authenticator.authenticateViaCcowToken("token", "127.0.0.1").getDuz());
+    }
+
+    @Test(expected = FailedLoginException.class)
+    public final void testRejectsEmptyCredentials() throws Exception
+    {
+        new SimulatedVistaAuthenticator(fCaller).authenticateViaAccessVerify("", "", "127.0.0.1");
+    }
+}
@@ -326,6 +326,12 @@ public class MockVistaLinkConnection implements VistaLinkConnection
         {
             return makeStringResponse(RemoteProcedure.RISK_SAVED_RETURN);
         }
+        else if (request.getRpcName().equals(RemoteProcedure.SR_ASRC_SIGN_AND_SAVE.getProcedureName()))
+        {
+            return makeArrayResponse(ImmutableList.of(
+                    RemoteProcedure.VALID_SIGNATURE_RETURN,
+                    RemoteProcedure.RISK_SAVED_RETURN));
+        }
         else if (request.getRpcName().equals(RemoteProcedure.SR_ASRC_LAB_RESULTS.getProcedureName()) &&
                 request.getParams().getParam(1).equals(PATIENT_DFN))
         {
@@ -1,5 +1,7 @@
 package gov.va.med.srcalc.vista.vistalink;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.resource.cci.ConnectionSpec;
 
 import gov.va.med.vistalink.adapter.cci.VistaLinkConnectionFactory;
@@ -21,6 +23,8 @@ public class MockVistaLinkConnectionFactory extends VistaLinkConnectionFactory
      * Change this when changing the class.
      */
     private static final long serialVersionUID = 1L;
+    
+    private final AtomicInteger fConnectionCount = new AtomicInteger();
 
     public MockVistaLinkConnectionFactory()
     {
@@ -38,6 +42,15 @@ public class MockVistaLinkConnectionFactory extends VistaLinkConnectionFactory
     @Override
     public MockVistaLinkConnection getConnection(final ConnectionSpec connectionSpec)
     {
+        fConnectionCount.incrementAndGet();
         return new MockVistaLinkConnection((VistaLinkConnectionSpec)connectionSpec);
     }
+    
+    /**
+     * Returns the number of connections returned so far.
+     */
+    public int getConnectionCount()
+    {
+        return fConnectionCount.get();
+    }
 }
@@ -2,6 +2,13 @@ package gov.va.med.srcalc.vista.vistalink;
 
 import static org.junit.Assert.*;
 import gov.va.med.srcalc.domain.VistaPerson;
+import gov.va.med.srcalc.vista.DivisionCircuitBreaker;
+import gov.va.med.srcalc.vista.DivisionUnavailableException;
+import gov.va.med.srcalc.vista.ProviderTypeCache;
+import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RpcMetrics;
+import gov.va.med.srcalc.vista.RpcStatistics;
+import gov.va.med.srcalc.vista.VistaCircuitBreakers;
 
 import javax.security.auth.login.FailedLoginException;
 
@@ -79,4 +86,78 @@ public class VistaLinkAuthenticatorTest
                 actualVistaPerson.getProviderType());
     }
     
+    @Test
+    public final void shouldReuseCachedProviderType() throws Exception
+    {
+        final ProviderTypeCache cache = new ProviderTypeCache(10, 60, 120);
+        final RpcMetrics metrics = new RpcMetrics();
+        final VistaLinkAuthenticator authenticator = new VistaLinkAuthenticator(
+                VistaLinkUtilTest.SUPPORTED_DIVISON);
+        authenticator.setProviderTypeCache(cache);
+        authenticator.setRpcMetrics(metrics);
+        
+        authenticator.authenticateViaCcowToken(MockVistaLinkConnection.CCOW_TOKEN, "10.0.1.4");
+        final VistaPerson actualVistaPerson = authenticator.authenticateViaCcowToken(
+                MockVistaLinkConnection.CCOW_TOKEN, "10.0.1.4");
+        
+        assertEquals(
+                Optional.of(MockVistaLinkConnection.RADIOLOGIST_PROVIDER_TYPE),
+                actualVistaPerson.getProviderType());
+        assertEquals(1, cache.getHitCount());
+        // Both logins validated the token, but only the first loaded the Provider Type.
+        assertEquals(2, getCallCount(metrics, RemoteProcedure.XUS_KAAJEE_GET_USER_VIA_PROXY));
+        assertEquals(1, getCallCount(metrics, RemoteProcedure.SR_ASRC_PERSON_CLASSES));
+        cache.shutdown();
+    }
+    
+    @Test
+    public final void shouldGuardLoginWithCircuitBreaker() throws Exception
+    {
+        final DivisionCircuitBreaker breaker =
+                new VistaCircuitBreakers(1, 10, 1, 60000, 1000, 20000)
+                .getBreaker(VistaLinkUtilTest.SUPPORTED_DIVISON);
+        final VistaLinkAuthenticator authenticator = new VistaLinkAuthenticator(
+                VistaLinkUtilTest.SUPPORTED_DIVISON);
+        authenticator.setCircuitBreaker(breaker);
+        
+        // A rejected login is still a response from VistA.
+        try
+        {
+            authenticator.authenticateViaAccessVerify("bob", "robert", "192.168.1.4");
+            fail("expected exception");
+        }
+        catch (final FailedLoginException ex)
+        {
+            // expected
+        }
+        assertEquals(DivisionCircuitBreaker.State.CLOSED, breaker.getState());
+        authenticator.authenticateViaCcowToken(
+                MockVistaLinkConnection.CCOW_TOKEN, "10.0.1.4");
+        assertEquals(0, breaker.getActiveCalls());
+        
+        // Simulate an unresponsive division.
+        breaker.release(breaker.acquire(), false);
+        try
+        {
+            authenticator.authenticateViaCcowToken(
+                    MockVistaLinkConnection.CCOW_TOKEN, "10.0.1.4");
+            fail("expected exception");
+        }
+        catch (final DivisionUnavailableException ex)
+        {
+            assertEquals(1, breaker.getRejectedCount());
+        }
+    }
+    
+    private static long getCallCount(final RpcMetrics metrics, final RemoteProcedure procedure)
+    {
+        for (final RpcStatistics stats : metrics.getStatistics())
+        {
+            if (stats.getProcedureName().equals(procedure.getProcedureName()))
+            {
+                return stats.getCallCount();
+            }
+        }
+        return 0;
+    }
 }
@@ -0,0 +1,126 @@
+package gov.va.med.srcalc.vista.vistalink;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import javax.resource.ResourceException;
+import javax.resource.cci.Connection;
+import javax.resource.cci.ConnectionSpec;
+
+import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.vistalink.adapter.cci.VistaLinkConnectionFactory;
+import gov.va.med.vistalink.adapter.spi.VistaLinkManagedConnectionFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.mock.jndi.SimpleNamingContextBuilder;
+
+/**
+ * Tests the {@link VistaLinkConnectionFactoryRegistry} class.
+ */
+public class VistaLinkConnectionFactoryRegistryTest
+{
+    private VistaLinkConnectionFactoryRegistry fRegistry;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        VistaLinkUtilTest.setupJndiForVistaLink();
+        fRegistry = new VistaLinkConnectionFactoryRegistry();
+    }
+
+    /**
+     * Replaces the connection factory bound in JNDI.
+     */
+    private static void rebind(final VistaLinkConnectionFactory factory) throws Exception
+    {
+        SimpleNamingContextBuilder.emptyActivatedContextBuilder()
+                .bind(VistaLinkUtilTest.VLCF_JNDI_NAME, factory);
+    }
+
+    @Test
+    public final void testCachesFactory() throws Exception
+    {
+        final VistaLinkConnectionFactory first =
+                fRegistry.getFactory(VistaLinkUtilTest.SUPPORTED_DIVISON);
+        // A new binding should not be noticed until the cached factory is invalidated.
+        final MockVistaLinkConnectionFactory second = new MockVistaLinkConnectionFactory();
+        rebind(second);
+
+        assertSame(first, fRegistry.getFactory(VistaLinkUtilTest.SUPPORTED_DIVISON));
+
+        fRegistry.invalidate(VistaLinkUtilTest.SUPPORTED_DIVISON, first);
+        assertSame(second, fRegistry.getFactory(VistaLinkUtilTest.SUPPORTED_DIVISON));
+    }
+
+    @Test
+    public final void testInvalidateReplaced() throws Exception
+    {
+        final VistaLinkConnectionFactory cached =
+                fRegistry.getFactory(VistaLinkUtilTest.SUPPORTED_DIVISON);
+
+        // Invalidating a factory that is no longer cached does nothing.
+        fRegistry.invalidate(
+                VistaLinkUtilTest.SUPPORTED_DIVISON, new MockVistaLinkConnectionFactory());
+
+        assertSame(cached, fRegistry.getFactory(VistaLinkUtilTest.SUPPORTED_DIVISON));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testUnknownDivision()
+    {
+        fRegistry.getFactory("222");
+    }
+
+    @Test
+    public final void testIsDivisionKnown()
+    {
+        assertTrue(fRegistry.isDivisionKnown(VistaLinkUtilTest.SUPPORTED_DIVISON));
+        assertFalse(fRegistry.isDivisionKnown("222"));
+    }
+
+    /**
+     * Verifies that a {@link VistaLinkProcedureCaller} discards a failing factory so
+     * that the next call uses a freshly looked-up one.
+     */
+    @Test
+    public final void testRefreshOnFailure() throws Exception
+    {
+        rebind(new VistaLinkConnectionFactory(new VistaLinkManagedConnectionFactory(), null)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Connection getConnection(final ConnectionSpec connectionSpec)
+                    throws ResourceException
+            {
+                throw new ResourceException("adapter undeployed");
+            }
+        });
+        final VistaLinkProcedureCaller caller = new VistaLinkProcedureCaller(
+                VistaLinkUtilTest.SUPPORTED_DIVISON, fRegistry);
+        try
+        {
+            caller.doRpc(
+                    MockVistaLinkConnection.RADIOLOGIST_DUZ,
+                    RemoteProcedure.SR_ASRC_GET_PATIENT,
+                    MockVistaLinkConnection.PATIENT_DFN);
+            fail("Expected a RecoverableDataAccessException.");
+        }
+        catch (final RecoverableDataAccessException e)
+        {
+            // expected
+        }
+
+        rebind(new MockVistaLinkConnectionFactory());
+
+        assertEquals(
+                Arrays.asList(MockVistaLinkConnection.PATIENT_DATA),
+                caller.doRpc(
+                        MockVistaLinkConnection.RADIOLOGIST_DUZ,
+                        RemoteProcedure.SR_ASRC_GET_PATIENT,
+                        MockVistaLinkConnection.PATIENT_DFN));
+    }
+}
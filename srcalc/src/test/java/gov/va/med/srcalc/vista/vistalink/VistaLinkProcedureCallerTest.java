@@ -10,6 +10,7 @@ import javax.security.auth.login.LoginException;
 
 import gov.va.med.srcalc.domain.VistaLabs;
 import gov.va.med.srcalc.vista.RemoteProcedure;
+import gov.va.med.srcalc.vista.RpcSession;
 import gov.va.med.srcalc.vista.vistalink.VistaLinkProcedureCaller;
 import gov.va.med.vistalink.adapter.cci.VistaLinkDuzConnectionSpec;
 
@@ -86,6 +87,27 @@ public class VistaLinkProcedureCallerTest
         assertEquals(RemoteProcedure.RISK_SAVED_RETURN, result);
     }
     
+    @Test
+    public final void testDoSignAndSaveCall() throws Exception
+    {
+        final VistaLinkProcedureCaller caller =
+                new VistaLinkProcedureCaller(VistaLinkUtilTest.SUPPORTED_DIVISON);
+        final List<String> result = caller.doSignAndSaveCall(
+                MockVistaLinkConnection.RADIOLOGIST_DUZ,
+                "fakeEncryptedSig",
+                MockVistaLinkConnection.PATIENT_DFN,
+                Arrays.asList("line1", "line2"),
+                "12345",
+                "01/01/2015@1001",
+                Arrays.asList("Model^02.1"));
+        
+        assertEquals(
+                Arrays.asList(
+                        RemoteProcedure.VALID_SIGNATURE_RETURN,
+                        RemoteProcedure.RISK_SAVED_RETURN),
+                result);
+    }
+    
     @Test
     public final void testDoRetrieveLabsCallSgot() throws Exception
     {
@@ -112,6 +134,55 @@ public class VistaLinkProcedureCallerTest
         assertEquals(MockVistaLinkConnection.ALBUMIN_LAB_DATA, result);
     }
 
+    /**
+     * Verifies that calls made through a session reuse its connection, and that other
+     * calls do not.
+     */
+    @Test
+    public final void testSessionReusesConnection() throws Exception
+    {
+        final VistaLinkConnectionFactoryRegistry registry =
+                new VistaLinkConnectionFactoryRegistry();
+        final MockVistaLinkConnectionFactory factory = (MockVistaLinkConnectionFactory)
+                registry.getFactory(VistaLinkUtilTest.SUPPORTED_DIVISON);
+        final VistaLinkProcedureCaller caller =
+                new VistaLinkProcedureCaller(VistaLinkUtilTest.SUPPORTED_DIVISON, registry);
+        final int before = factory.getConnectionCount();
+        
+        try (final RpcSession session =
+                caller.openSession(MockVistaLinkConnection.RADIOLOGIST_DUZ))
+        {
+            assertEquals(VistaLinkUtilTest.SUPPORTED_DIVISON, session.getDivision());
+            session.doRpc(
+                    MockVistaLinkConnection.RADIOLOGIST_DUZ,
+                    RemoteProcedure.SR_ASRC_GET_PATIENT,
+                    MockVistaLinkConnection.PATIENT_DFN);
+            final String result = session.doRetrieveLabsCall(
+                    MockVistaLinkConnection.RADIOLOGIST_DUZ,
+                    MockVistaLinkConnection.PATIENT_DFN,
+                    VistaLabs.SGOT.getPossibleLabNames());
+            assertEquals(MockVistaLinkConnection.SGOT_LAB_DATA, result);
+            assertEquals(1, factory.getConnectionCount() - before);
+            
+            // Calls for another user use their own connection.
+            try
+            {
+                session.doRpc("12222", RemoteProcedure.XUS_GET_USER_INFO);
+                fail("Expected an AccountNotFoundException.");
+            }
+            catch (final AccountNotFoundException e)
+            {
+                // expected
+            }
+            assertEquals(2, factory.getConnectionCount() - before);
+        }
+        
+        // Calls outside of a session each use their own connection.
+        caller.doRpc(MockVistaLinkConnection.RADIOLOGIST_DUZ, RemoteProcedure.XUS_GET_USER_INFO);
+        caller.doRpc(MockVistaLinkConnection.RADIOLOGIST_DUZ, RemoteProcedure.XUS_GET_USER_INFO);
+        assertEquals(4, factory.getConnectionCount() - before);
+    }
+    
     @Test(expected = IllegalArgumentException.class)
     public final void testInvalidDivision()
     {
@@ -22,7 +22,10 @@ public class VistaLinkUtilTest
      */
     static final String SUPPORTED_DIVISON = "500";
 
-    private final static String VLCF_JNDI_NAME = "java:comp/env/vlj/Asrc500";
+    /**
+     * The JNDI name at which {@link setupJndiForVistaLink} binds the connection factory.
+     */
+    static final String VLCF_JNDI_NAME = "java:comp/env/vlj/Asrc500";
 
     /**
      * Populate JNDI with a {@link MockVistaLinkConnectionFactory} and configures
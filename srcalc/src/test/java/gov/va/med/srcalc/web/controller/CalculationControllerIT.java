@@ -5,8 +5,11 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.ReferenceNote;
 import gov.va.med.srcalc.domain.calculation.ProcedureValue;
 import gov.va.med.srcalc.domain.model.SampleModels;
 import gov.va.med.srcalc.test.util.IntegrationTest;
@@ -16,6 +19,7 @@ import gov.va.med.srcalc.vista.VistaPatientDao;
 import gov.va.med.srcalc.web.controller.CalculationController;
 import gov.va.med.srcalc.web.controller.DisplayResultsController;
 import gov.va.med.srcalc.web.view.VariableEntry;
+import gov.va.med.srcalc.web.view.Views;
 import static gov.va.med.srcalc.web.view.VariableEntry.makeDynamicValuePath;
 
 import org.junit.Before;
@@ -35,6 +39,8 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.google.common.util.concurrent.SettableFuture;
+
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
@@ -133,6 +139,23 @@ public class CalculationControllerIT extends IntegrationTest
         selectSpecialty(SampleModels.thoracicSpecialty().getName());
     }
     
+    @Test
+    public void testRefreshPatient() throws Exception
+    {
+        selectThoracicSpecialty();
+        
+        simulateNewSession();
+        
+        fMockMvc.perform(post("/refreshPatient").session(fSession))
+            .andExpect(redirectedUrl("/enterVars"));
+        
+        // The specialty is kept.
+        fMockMvc.perform(get("/enterVars").session(fSession))
+            .andExpect(model().attribute(
+                    "calculation",
+                    hasProperty("specialty", equalTo(SampleModels.thoracicSpecialty()))));
+    }
+    
     /**
      * Tests the HTTP interface to enter variables and display the calculation
      * results. Does not test the calculation itself; for that, see
@@ -185,10 +208,17 @@ public class CalculationControllerIT extends IntegrationTest
         
         simulateNewSession();
         
-        fMockMvc.perform(post("/enterVars").session(fSession)
+        final Object displayGroups = fMockMvc.perform(get("/enterVars").session(fSession))
+            .andReturn().getModelAndView().getModel().get("displayGroups");
+        
+        final MvcResult result = fMockMvc.perform(post("/enterVars").session(fSession)
                 .param(makeDynamicValuePath("age"), "-2"))
             .andExpect(model().attributeHasErrors("variableEntry"))
-            .andExpect(status().is(200));
+            .andExpect(status().is(200))
+            .andReturn();
+        
+        // The re-display reuses the display groups instead of building them again.
+        assertSame(displayGroups, result.getModelAndView().getModel().get("displayGroups"));
     }
     
     @Test
@@ -221,6 +251,94 @@ public class CalculationControllerIT extends IntegrationTest
             .andExpect(status().is(200));
     }
     
+    @Test
+    public void previewThoracicVariables() throws Exception
+    {
+        selectThoracicSpecialty();
+        
+        simulateNewSession();
+        
+        // Incomplete and invalid values.
+        fMockMvc.perform(post("/enterVars/preview").session(fSession)
+                .param(makeDynamicValuePath("age"), "-2")
+                .param(makeDynamicValuePath("dnr"), "false"))
+            .andExpect(status().is(200))
+            .andExpect(jsonPath("$.outcomes", is(Collections.emptyMap())))
+            .andExpect(jsonPath("$.missingVariables", not(empty())))
+            .andExpect(jsonPath("$.invalidVariables", hasSize(1)));
+        
+        final DynamicVarParams varParams = new DynamicVarParams();
+        varParams.add("procedure", "26546");
+        varParams.add("asaClassification", "Class 3");
+        varParams.add("age", "55");
+        varParams.add("dnr", "false");
+        varParams.add("bmi", "18.7");
+        varParams.add("preopPneumonia", "true");
+        varParams.add("alkalinePhosphatase", ">125mU/ml");
+        varParams.add("bun", VariableEntry.SPECIAL_NUMERICAL);
+        varParams.add(VariableEntry.makeNumericalInputName("bun"), "15.0");
+        fMockMvc.perform(varParams.addTo(post("/enterVars/preview").session(fSession)))
+            .andExpect(status().is(200))
+            .andExpect(jsonPath("$.outcomes", not(Collections.emptyMap())))
+            .andExpect(jsonPath("$.missingVariables", empty()))
+            .andExpect(jsonPath("$.invalidVariables", empty()));
+        
+        // A preview is not a calculation run.
+        final CalculationSession cs = SrcalcSession.getCalculationSession(fSession);
+        assertFalse(cs.getOptionalLastResult().isPresent());
+        assertFalse(cs.getCalculation().getHistoricalCalculation().isPresent());
+    }
+    
+    @Test
+    public void previewWithoutSpecialty() throws Exception
+    {
+        testStartNewCalculationWithDfn();
+        
+        fMockMvc.perform(post("/enterVars/preview").session(fSession)
+                .param(makeDynamicValuePath("age"), "55"))
+            .andExpect(status().is(200))
+            .andExpect(jsonPath("$.outcomes", is(Collections.emptyMap())))
+            .andExpect(jsonPath("$.missingVariables", empty()))
+            .andExpect(jsonPath("$.invalidVariables", empty()));
+    }
+    
+    /**
+     * Tests selecting a specialty while its patient data is still loading, even though
+     * the calculation already has a patient.
+     */
+    @Test
+    public void selectSpecialtyWhileLoading() throws Exception
+    {
+        testStartNewCalculationWithDfn();
+        
+        fMockMvc.perform(post("/selectSpecialty").session(fSession)
+                .param("specialty", SampleModels.thoracicSpecialty().getName()))
+            .andExpect(redirectedUrl("/enterVars"));
+        final CalculationSession cs = SrcalcSession.getCalculationSession(fSession);
+        final Patient patient = cs.getCalculation().getPatient();
+        assertNotNull(patient);
+        // Simulate the specialty data taking longer than PATIENT_WAIT_MILLIS.
+        final SettableFuture<Patient> specialtyData = SettableFuture.create();
+        cs.setPendingPatient(specialtyData);
+        
+        fMockMvc.perform(get("/enterVars").session(fSession))
+            .andExpect(view().name(Views.LOADING_PATIENT))
+            .andExpect(model().attributeDoesNotExist("displayGroups"));
+        fMockMvc.perform(post("/enterVars").session(fSession)
+                .param(makeDynamicValuePath("age"), "55"))
+            .andExpect(redirectedUrl("/enterVars"));
+        fMockMvc.perform(post("/enterVars/preview").session(fSession)
+                .param(makeDynamicValuePath("age"), "55"))
+            .andExpect(status().is(200))
+            .andExpect(jsonPath("$.outcomes", is(Collections.emptyMap())))
+            .andExpect(jsonPath("$.missingVariables", empty()));
+        
+        specialtyData.set(patient);
+        fMockMvc.perform(get("/enterVars").session(fSession))
+            .andExpect(view().name(Views.ENTER_VARIABLES))
+            .andExpect(model().attributeExists("displayGroups"));
+    }
+    
     @Test
     public void getProcedures() throws Exception
     {
@@ -232,6 +350,60 @@ public class CalculationControllerIT extends IntegrationTest
             .andExpect(jsonPath("$[0].cptCode").value("10001"));
     }
     
+    @Test
+    public void getReferenceNotes() throws Exception
+    {
+        selectThoracicSpecialty();
+        final Patient patient = SrcalcSession.getCalculationSession(fSession)
+                .getCalculation().getPatient();
+        patient.getAdlNotes().clear();
+        for (int i = 0; i < 3; ++i)
+        {
+            final ReferenceNote note = new ReferenceNote();
+            note.setLocalTitle("ADL NOTE " + i);
+            note.setNoteBody("Body " + i);
+            patient.getAdlNotes().add(note);
+        }
+        
+        simulateNewSession();
+        
+        // Headers only, paged.
+        fMockMvc.perform(get("/refdata/notes/ADL_NOTES").session(fSession)
+                .param("offset", "1").param("limit", "1"))
+            .andExpect(status().is(200))
+            .andExpect(header().string("Cache-Control", "no-store"))
+            .andExpect(jsonPath("$.total", is(3)))
+            .andExpect(jsonPath("$.notes", hasSize(1)))
+            .andExpect(jsonPath("$.notes[0].index", is(1)))
+            .andExpect(jsonPath("$.notes[0].localTitle", is("ADL NOTE 1")))
+            .andExpect(jsonPath("$.notes[0].body").doesNotExist());
+        
+        fMockMvc.perform(get("/refdata/notes/ADL_NOTES/2").session(fSession))
+            .andExpect(status().is(200))
+            .andExpect(jsonPath("$.body", is("Body 2")));
+        
+        fMockMvc.perform(get("/refdata/notes/ADL_NOTES/3").session(fSession))
+            .andExpect(status().isNotFound());
+        fMockMvc.perform(get("/refdata/notes/ALBUMIN").session(fSession))
+            .andExpect(status().isNotFound());
+    }
+    
+    @Test
+    public void getReferenceNotesWhilePatientLoads() throws Exception
+    {
+        selectThoracicSpecialty();
+        // Simulate the patient still being retrieved.
+        SrcalcSession.getCalculationSession(fSession).getCalculation().setPatient(null);
+        
+        fMockMvc.perform(get("/refdata/notes/ADL_NOTES").session(fSession))
+            .andExpect(status().isConflict());
+        fMockMvc.perform(get("/refdata/notes/ADL_NOTES/0").session(fSession))
+            .andExpect(status().isConflict());
+        // An unknown type is still Not Found.
+        fMockMvc.perform(get("/refdata/notes/ALBUMIN").session(fSession))
+            .andExpect(status().isNotFound());
+    }
+    
     @Test
     public void populateDynamicValues() throws Exception
     {
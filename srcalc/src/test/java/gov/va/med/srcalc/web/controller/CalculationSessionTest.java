@@ -0,0 +1,139 @@
+package gov.va.med.srcalc.web.controller;
+
+import static org.junit.Assert.*;
+
+import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.calculation.Calculation;
+import gov.va.med.srcalc.domain.calculation.SampleCalculations;
+import gov.va.med.srcalc.domain.model.SampleModels;
+import gov.va.med.srcalc.web.view.PopulatedDisplayGroup;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Tests the {@link CalculationSession} class.
+ */
+public class CalculationSessionTest
+{
+    @Test
+    public final void testAwaitLoadedPatient()
+    {
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        final CalculationSession cs = new CalculationSession(Calculation.forPatient(patient));
+        
+        assertSame(patient, cs.awaitPatient(0).get());
+    }
+    
+    @Test
+    public final void testAwaitPendingPatient()
+    {
+        final SettableFuture<Patient> future = SettableFuture.create();
+        final Calculation calc = new Calculation();
+        final CalculationSession cs = new CalculationSession(calc, future);
+        
+        // Still loading.
+        assertFalse(cs.awaitPatient(10).isPresent());
+        assertNull(calc.getPatient());
+        
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        future.set(patient);
+        assertSame(patient, cs.awaitPatient(0).get());
+        assertSame(patient, calc.getPatient());
+    }
+    
+    @Test
+    public final void testAwaitFailedPatient()
+    {
+        final SettableFuture<Patient> future = SettableFuture.create();
+        final RecoverableDataAccessException failure =
+                new RecoverableDataAccessException("VistA unavailable");
+        future.setException(failure);
+        final CalculationSession cs = new CalculationSession(new Calculation(), future);
+        
+        // The failure should be reported on each attempt.
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                cs.awaitPatient(0);
+                fail("expected exception");
+            }
+            catch (final RecoverableDataAccessException ex)
+            {
+                assertSame(failure, ex);
+            }
+        }
+    }
+    
+    @Test
+    public final void testAwaitLoadingSpecialtyData()
+    {
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        final CalculationSession cs = new CalculationSession(Calculation.forPatient(patient));
+        assertTrue(cs.getPatientFuture().isDone());
+        assertFalse(cs.isRetrievalPending());
+        
+        final SettableFuture<Patient> future = SettableFuture.create();
+        cs.setPendingPatient(future);
+        
+        // Waits for the data even though the Calculation has a patient.
+        assertFalse(cs.awaitPatient(10).isPresent());
+        assertTrue(cs.isRetrievalPending());
+        assertSame(future, cs.getPatientFuture());
+        future.set(patient);
+        // Still pending until awaited.
+        assertTrue(cs.isRetrievalPending());
+        assertSame(patient, cs.awaitPatient(0).get());
+        assertFalse(cs.isRetrievalPending());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public final void testAwaitNoPatient()
+    {
+        new CalculationSession(new Calculation()).awaitPatient(0);
+    }
+    
+    @Test
+    public final void testFormCache()
+    {
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        final Calculation calc = Calculation.forPatient(patient);
+        calc.setSpecialty(SampleModels.thoracicSpecialty());
+        final CalculationSession cs = new CalculationSession(calc);
+        assertFalse(cs.getCachedDisplayGroups().isPresent());
+        
+        final List<PopulatedDisplayGroup> groups = ImmutableList.of(
+                new PopulatedDisplayGroup(SampleModels.medicationsVariableGroup(), patient));
+        cs.cacheDisplayGroups(groups);
+        cs.cacheRetrievedValues(ImmutableMap.of("age", "50"));
+        assertEquals(groups, cs.getCachedDisplayGroups().get());
+        assertEquals(ImmutableMap.of("age", "50"), cs.getCachedRetrievedValues().get());
+        
+        // Selecting a specialty invalidates the cache.
+        calc.setSpecialty(SampleModels.thoracicSpecialty());
+        assertFalse(cs.getCachedDisplayGroups().isPresent());
+        assertFalse(cs.getCachedRetrievedValues().isPresent());
+    }
+    
+    @Test
+    public final void testFormCacheWhileLoading()
+    {
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        final CalculationSession cs = new CalculationSession(Calculation.forPatient(patient));
+        final SettableFuture<Patient> future = SettableFuture.create();
+        cs.setPendingPatient(future);
+        
+        // Nothing is cached until the patient's data has loaded.
+        cs.cacheRetrievedValues(ImmutableMap.of("age", "50"));
+        future.set(patient);
+        cs.awaitPatient(0);
+        assertFalse(cs.getCachedRetrievedValues().isPresent());
+    }
+}
@@ -0,0 +1,51 @@
+package gov.va.med.srcalc.web.controller.admin;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import gov.va.med.srcalc.test.util.IntegrationTest;
+import gov.va.med.srcalc.web.SrcalcUrls;
+
+/**
+ * Integration Tests for {@link ResearchArchiveController}. The archive format itself is
+ * covered by unit tests.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration  // need to tell Spring to instantiate a WebApplicationContext.
+@ContextConfiguration({"/srcalc-context.xml", "/srcalc-controller.xml", "/test-context.xml"})
+@Transactional // run each test in its own (rolled-back) transaction
+public class ResearchArchiveControllerIT extends IntegrationTest
+{
+    @Autowired  // Field-based autowiring only in tests
+    WebApplicationContext fWac;
+
+    private MockMvc fMockMvc;
+
+    @Before
+    public void setup()
+    {
+        fMockMvc = MockMvcBuilders.webAppContextSetup(fWac).build();
+    }
+
+    @Test
+    public final void testArchiveNewResults() throws Exception
+    {
+        fMockMvc.perform(post(SrcalcUrls.RESEARCH_ARCHIVE))
+            .andExpect(status().is3xxRedirection())
+            .andExpect(redirectedUrl(SrcalcUrls.ADMIN_HOME))
+            .andExpect(flash().attributeExists(
+                    ResearchArchiveController.FLASH_ATTR_ARCHIVED_COUNT));
+    }
+}
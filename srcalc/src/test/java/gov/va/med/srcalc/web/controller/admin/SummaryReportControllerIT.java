@@ -20,16 +20,20 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
 
 import gov.va.med.srcalc.db.ResultSearchParameters;
 import gov.va.med.srcalc.db.ResultsDao;
+import gov.va.med.srcalc.domain.calculation.OutcomeDistribution;
 import gov.va.med.srcalc.domain.calculation.SampleCalculations;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
 import gov.va.med.srcalc.test.util.IntegrationTest;
 import gov.va.med.srcalc.util.SearchResults;
 import gov.va.med.srcalc.web.SrcalcUrls;
 import gov.va.med.srcalc.web.view.Views;
+import gov.va.med.srcalc.web.view.admin.OutcomeDistributionReport;
 import gov.va.med.srcalc.web.view.admin.SummaryReport;
 import gov.va.med.srcalc.web.view.admin.SummaryReportRow;
 
@@ -141,4 +145,38 @@ public class SummaryReportControllerIT extends IntegrationTest
             .andExpect(view().name(Views.SUMMARY_REPORT_FORM));
     }
     
+    @Test
+    public final void testDisplayDistributionReport() throws Exception
+    {
+        final SignedResult result = SampleCalculations.signedThoracic();
+        final ImmutableList.Builder<OutcomeDistribution> expectedDistributions =
+                ImmutableList.builder();
+        // Both sample outcomes are above 100% so they land in the last bin.
+        final ImmutableList<Integer> binCounts =
+                ImmutableList.of(0, 0, 0, 0, 0, 0, 0, 0, 0, 1);
+        for (final String modelName : ImmutableSortedSet.copyOf(result.getOutcomes().keySet()))
+        {
+            expectedDistributions.add(new OutcomeDistribution(
+                    modelName,
+                    result.getHistoricalCalculation().getSpecialtyName(),
+                    result.getHistoricalCalculation().getUserStation(),
+                    binCounts));
+        }
+        
+        fMockMvc.perform(post(SrcalcUrls.SUMMARY_REPORT)
+                .param(SummaryReportController.PARAM_DISTRIBUTION, "")
+                .param("cptCode", "")
+                .param("maxDate", "")
+                .param("maxDate", "")
+                .param("stationNumber", "")
+                .param("_specialtyNames", "on"))
+            .andExpect(status().isOk())
+            .andExpect(view().name(Views.OUTCOME_DISTRIBUTION_RESULTS))
+            .andExpect(model().attribute(
+                    SummaryReportController.ATTRIBUTE_REPORT,
+                    new OutcomeDistributionReport(
+                            new ResultSearchParameters(),
+                            new SearchResults<>(expectedDistributions.build(), false))));
+    }
+    
 }
@@ -3,6 +3,7 @@ package gov.va.med.srcalc.web.view;
 import static org.junit.Assert.*;
 import gov.va.med.srcalc.domain.HealthFactor;
 import gov.va.med.srcalc.domain.Patient;
+import gov.va.med.srcalc.domain.ReferenceNote;
 import gov.va.med.srcalc.domain.calculation.SampleCalculations;
 import gov.va.med.srcalc.domain.calculation.ValueRetriever;
 import gov.va.med.srcalc.domain.model.*;
@@ -50,6 +51,26 @@ public class PopulatedDisplayGroupTest
                 group.toString());
     }
     
+    @Test
+    public final void testReferenceNotesType()
+    {
+        final Patient patient = SampleCalculations.dummyPatient(1);
+        final AbstractVariable fsVar = SampleModels.functionalStatusVariable();
+        fsVar.setRetriever(ValueRetriever.ADL_NOTES);
+        
+        // No notes: nothing to present.
+        final PopulatedDisplayGroup withoutNotes = new PopulatedDisplayGroup(
+                Arrays.asList(fsVar), patient);
+        assertEquals("", withoutNotes.getDisplayItems().get(0).getReferenceNotesType());
+        
+        final ReferenceNote note = new ReferenceNote();
+        note.setNoteBody("A very long note.");
+        patient.getAdlNotes().add(note);
+        final PopulatedDisplayGroup withNotes = new PopulatedDisplayGroup(
+                Arrays.asList(fsVar), patient);
+        assertEquals("ADL_NOTES", withNotes.getDisplayItems().get(0).getReferenceNotesType());
+    }
+    
     @Test
     public final void testBasic()
     {
@@ -74,14 +74,41 @@ public class UtilizationReportTest
                 HistoricalRunInfo.signed(result3));
         final ImmutableMap<String, UtilizationSummary> expectedSummaries = ImmutableMap.of(
                 specialty1,
-                new UtilizationSummary(2, 2, 70, 65),
+                UtilizationSummary.fromRunInfos(ImmutableList.of(runInfos.get(0), runInfos.get(2))),
                 specialty2,
-                new UtilizationSummary(1, 1, firstRun2, signed2));
+                UtilizationSummary.fromRunInfos(ImmutableList.of(runInfos.get(1))));
         
         /* Behavior & Verification */
         final UtilizationReport actualReport = new UtilizationReport(
                 new HistoricalSearchParameters(), new SearchResults<>(runInfos, false));
         assertEquals(expectedSummaries, actualReport.getSpecialtySummaries());
+        final UtilizationSummary summary1 = actualReport.getSpecialtySummaries().get(specialty1);
+        assertEquals(2, summary1.getTotalCount());
+        assertEquals(2, summary1.getSignedCount());
+        assertEquals(70, summary1.getSecondsToFirstRunAverage());
+        assertEquals(65, summary1.getSecondsToSignAverage());
+        final UtilizationSummary summary2 = actualReport.getSpecialtySummaries().get(specialty2);
+        assertEquals(1, summary2.getTotalCount());
+        assertEquals(1, summary2.getSignedCount());
+        assertEquals(firstRun2, summary2.getSecondsToFirstRunAverage());
+        assertEquals(signed2, summary2.getSecondsToSignAverage());
+    }
+    
+    @Test
+    public final void testGetOverallSummary()
+    {
+        final ImmutableList<HistoricalRunInfo> runInfos = ImmutableList.of(
+                HistoricalRunInfo.signed(makeSignedResult("One", 40, 60)),
+                HistoricalRunInfo.signed(makeSignedResult("Two", 111, 222)),
+                HistoricalRunInfo.unsigned(makeHistoricalCalc("One", 100)));
+        
+        final UtilizationReport actualReport = new UtilizationReport(
+                new HistoricalSearchParameters(), new SearchResults<>(runInfos, false));
+        
+        // Merging the specialty summaries should be equivalent to summarizing all at once.
+        assertEquals(
+                UtilizationSummary.fromRunInfos(runInfos),
+                actualReport.getOverallSummary());
     }
     
     @Test
@@ -6,6 +6,7 @@ import static org.junit.Assert.*;
 import gov.va.med.srcalc.domain.calculation.HistoricalCalculation;
 import gov.va.med.srcalc.domain.calculation.HistoricalRunInfo;
 import gov.va.med.srcalc.domain.calculation.SignedResult;
+import gov.va.med.srcalc.util.LogLinearHistogram;
 import nl.jqno.equalsverifier.EqualsVerifier;
 
 import org.joda.time.DateTime;
@@ -113,6 +114,78 @@ public class UtilizationSummaryTest
         assertEquals(-1, actualSummary.getSecondsToSignAverage());
     }
     
+    @Test
+    public final void testPercentiles()
+    {
+        // 100 calculations with seconds to first run of 1 through 100. Only the first 10
+        // are signed, with seconds to sign of 10 through 19.
+        final ImmutableList.Builder<HistoricalRunInfo> runInfos = ImmutableList.builder();
+        for (int i = 1; i <= 100; ++i)
+        {
+            if (i <= 10)
+            {
+                runInfos.add(HistoricalRunInfo.signed(makeSignedResult(i, i + 9)));
+            }
+            else
+            {
+                runInfos.add(HistoricalRunInfo.unsigned(makeHistoricalCalc(i)));
+            }
+        }
+        
+        final UtilizationSummary actualSummary =
+                UtilizationSummary.fromRunInfos(runInfos.build());
+        
+        // Percentiles above 32 seconds are approximate, so just check they are within
+        // the histogram's precision.
+        final double tolerance = 1.0 / LogLinearHistogram.SUB_BUCKETS_PER_MAGNITUDE;
+        assertEquals(50, actualSummary.getSecondsToFirstRunP50(), 50 * tolerance);
+        assertEquals(90, actualSummary.getSecondsToFirstRunP90(), 90 * tolerance);
+        assertEquals(99, actualSummary.getSecondsToFirstRunP99(), 99 * tolerance);
+        // Values below 32 seconds are exact.
+        assertEquals(14, actualSummary.getSecondsToSignP50());
+        assertEquals(18, actualSummary.getSecondsToSignP90());
+        assertEquals(19, actualSummary.getSecondsToSignP99());
+        assertEquals(100, actualSummary.getSecondsToFirstRunHistogram().getTotalCount());
+        assertEquals(10, actualSummary.getSecondsToSignHistogram().getTotalCount());
+    }
+    
+    @Test
+    public final void testNoCalculationPercentiles()
+    {
+        final UtilizationSummary actualSummary =
+                UtilizationSummary.fromRunInfos(ImmutableList.<HistoricalRunInfo>of());
+        
+        assertEquals(-1, actualSummary.getSecondsToFirstRunP50());
+        assertEquals(-1, actualSummary.getSecondsToFirstRunP99());
+        assertEquals(-1, actualSummary.getSecondsToSignP50());
+        assertEquals(-1, actualSummary.getSecondsToSignP99());
+    }
+    
+    @Test
+    public final void testMerge()
+    {
+        final HistoricalRunInfo info1 = HistoricalRunInfo.signed(makeSignedResult(40, 120));
+        final HistoricalRunInfo info2 = HistoricalRunInfo.signed(makeSignedResult(100, 100));
+        final HistoricalRunInfo info3 = HistoricalRunInfo.unsigned(makeHistoricalCalc(70));
+        final UtilizationSummary summary1 =
+                UtilizationSummary.fromRunInfos(ImmutableList.of(info1, info3));
+        final UtilizationSummary summary2 =
+                UtilizationSummary.fromRunInfos(ImmutableList.of(info2));
+        
+        final UtilizationSummary merged = summary1.merge(summary2);
+        
+        assertEquals(
+                UtilizationSummary.fromRunInfos(ImmutableList.of(info1, info2, info3)),
+                merged);
+        assertEquals(3, merged.getTotalCount());
+        assertEquals(2, merged.getSignedCount());
+        assertEquals(70, merged.getSecondsToFirstRunAverage());
+        assertEquals(110, merged.getSecondsToSignAverage());
+        // The originals are not modified.
+        assertEquals(2, summary1.getTotalCount());
+        assertEquals(1, summary2.getTotalCount());
+    }
+    
     @Test
     public final void testEquals()
     {